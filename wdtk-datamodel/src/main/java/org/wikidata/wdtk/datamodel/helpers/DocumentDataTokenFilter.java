@@ -0,0 +1,253 @@
+package org.wikidata.wdtk.datamodel.helpers;
+
+/*
+ * #%L
+ * Wikidata Toolkit Data Model
+ * %%
+ * Copyright (C) 2014 - 2018 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.wikidata.wdtk.datamodel.interfaces.DocumentDataFilter;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyIdValue;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserDelegate;
+
+/**
+ * This is a utility class that applies a {@link DocumentDataFilter} to the
+ * JSON serialization of entity documents while they are parsed. Terms in
+ * other languages, statement groups of other properties, and site links to
+ * other sites are skipped at the level of JSON tokens, so that no objects
+ * are created for them. The resulting documents are equal to those obtained
+ * by deserializing everything and applying {@link DatamodelFilter}
+ * afterwards.
+ * <p>
+ * Terms are filtered by the language keys of the JSON maps, which agree with
+ * the language codes of the terms in all JSON that Wikibase produces.
+ */
+public class DocumentDataTokenFilter {
+
+	/**
+	 * Kind of JSON containers whose content is not filtered.
+	 */
+	private static final int OTHER = 0;
+	/**
+	 * Kind of JSON objects that serialize entity documents, or forms and
+	 * senses of lexemes.
+	 */
+	private static final int DOCUMENT = 1;
+	/**
+	 * Kind of JSON objects where only some keys are kept.
+	 */
+	private static final int FILTERED_MAP = 2;
+	/**
+	 * Kind of JSON arrays that contain forms or senses.
+	 */
+	private static final int DOCUMENT_LIST = 3;
+
+	private final Set<String> languages;
+
+	private final Set<String> propertyIds;
+
+	private final Set<String> siteKeys;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param filter
+	 *            the filter settings to be used
+	 * @param siteIri
+	 *            the IRI of the site that the parsed documents belong to;
+	 *            properties of other sites in the filter are ignored, since
+	 *            they never match the statements of the documents
+	 */
+	public DocumentDataTokenFilter(DocumentDataFilter filter, String siteIri) {
+		this.languages = filter.getLanguageFilter();
+		this.siteKeys = filter.getSiteLinkFilter();
+		if (filter.getPropertyFilter() == null) {
+			this.propertyIds = null;
+		} else {
+			this.propertyIds = new HashSet<>();
+			for (PropertyIdValue property : filter.getPropertyFilter()) {
+				if (siteIri.equals(property.getSiteIri())) {
+					this.propertyIds.add(property.getId());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks if the given filter removes any data from documents.
+	 *
+	 * @param filter
+	 *            the filter settings to check
+	 * @return true if any of the filters is set
+	 */
+	public static boolean isActive(DocumentDataFilter filter) {
+		return filter.getLanguageFilter() != null
+				|| filter.getPropertyFilter() != null
+				|| filter.getSiteLinkFilter() != null;
+	}
+
+	/**
+	 * Wraps the given parser so that it omits the data that is removed by
+	 * the filter. The wrapped parser should be positioned before the start of
+	 * a JSON object that serializes an entity document.
+	 *
+	 * @param parser
+	 *            the parser to wrap
+	 * @return the filtering parser
+	 */
+	public JsonParser filter(JsonParser parser) {
+		return new FilteringParser(parser);
+	}
+
+	/**
+	 * Returns the keys to keep in the value of the given field of a document,
+	 * or null if the value is not filtered.
+	 *
+	 * @param fieldName
+	 *            the name of the field
+	 */
+	private Set<String> getKeys(String fieldName) {
+		switch (fieldName) {
+		case "labels":
+		case "descriptions":
+		case "aliases":
+		case "lemmas":
+		case "representations":
+		case "glosses":
+			return this.languages;
+		case "claims":
+		case "statements":
+			return this.propertyIds;
+		case "sitelinks":
+			return this.siteKeys;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Parser that skips the values of map keys that are removed by the
+	 * filter. It keeps a stack with the kind of each open JSON container to
+	 * find the maps that need to be filtered.
+	 */
+	private class FilteringParser extends JsonParserDelegate {
+
+		private int[] kinds = new int[16];
+		private Set<?>[] keys = new Set<?>[16];
+		private int depth = 0;
+
+		FilteringParser(JsonParser parser) {
+			super(parser);
+		}
+
+		@Override
+		public JsonToken nextToken() throws IOException {
+			JsonToken token = this.delegate.nextToken();
+			if (token == null) {
+				return null;
+			}
+			switch (token) {
+			case FIELD_NAME:
+				while (token == JsonToken.FIELD_NAME
+						&& this.kinds[this.depth - 1] == FILTERED_MAP
+						&& !this.keys[this.depth - 1].contains(this.delegate
+								.currentName())) {
+					this.delegate.nextToken();
+					this.delegate.skipChildren();
+					token = this.delegate.nextToken();
+				}
+				if (token == JsonToken.END_OBJECT) {
+					this.depth--;
+				}
+				break;
+			case START_OBJECT:
+			case START_ARRAY:
+				push(token);
+				break;
+			case END_OBJECT:
+			case END_ARRAY:
+				this.depth--;
+				break;
+			default:
+				break;
+			}
+			return token;
+		}
+
+		@Override
+		public JsonToken nextValue() throws IOException {
+			JsonToken token = nextToken();
+			if (token == JsonToken.FIELD_NAME) {
+				token = nextToken();
+			}
+			return token;
+		}
+
+		@Override
+		public JsonParser skipChildren() throws IOException {
+			JsonToken token = this.delegate.currentToken();
+			if (token == JsonToken.START_OBJECT
+					|| token == JsonToken.START_ARRAY) {
+				this.delegate.skipChildren();
+				this.depth--;
+			}
+			return this;
+		}
+
+		/**
+		 * Records a newly opened container on the stack.
+		 */
+		private void push(JsonToken token) throws IOException {
+			int kind = OTHER;
+			Set<String> containerKeys = null;
+			int parentKind = this.depth == 0 ? OTHER
+					: this.kinds[this.depth - 1];
+			if (this.depth == 0 && token == JsonToken.START_OBJECT) {
+				kind = DOCUMENT;
+			} else if (parentKind == DOCUMENT) {
+				String fieldName = this.delegate.currentName();
+				if ("forms".equals(fieldName) || "senses".equals(fieldName)) {
+					kind = DOCUMENT_LIST;
+				} else if (token == JsonToken.START_OBJECT) {
+					containerKeys = getKeys(fieldName);
+					if (containerKeys != null) {
+						kind = FILTERED_MAP;
+					}
+				}
+			} else if (parentKind == DOCUMENT_LIST
+					&& token == JsonToken.START_OBJECT) {
+				kind = DOCUMENT;
+			}
+
+			if (this.depth == this.kinds.length) {
+				this.kinds = Arrays.copyOf(this.kinds, 2 * this.depth);
+				this.keys = Arrays.copyOf(this.keys, 2 * this.depth);
+			}
+			this.kinds[this.depth] = kind;
+			this.keys[this.depth] = containerKeys;
+			this.depth++;
+		}
+	}
+}
@@ -20,6 +20,8 @@ package org.wikidata.wdtk.datamodel.helpers;
  * #L%
  */
 
+import org.wikidata.wdtk.datamodel.implementation.EntityIdValueCache;
+import org.wikidata.wdtk.datamodel.implementation.EntityIdValueImpl;
 import org.wikidata.wdtk.datamodel.interfaces.*;
 
 import java.util.Objects;
@@ -61,6 +63,19 @@ public class Equality {
 			return false;
 		}
 
+		// distinct canonical instances never have the same id, since only the
+		// instance stored in the cache is marked as canonical
+		if (EntityIdValueCache.isCanonical(o1)
+				&& EntityIdValueCache.isCanonical((EntityIdValue) o2)) {
+			return false;
+		}
+		if (o1 instanceof EntityIdValueImpl && o2 instanceof EntityIdValueImpl) {
+			return ((EntityIdValueImpl) o1).getNumericId() == ((EntityIdValueImpl) o2)
+					.getNumericId()
+					&& o1.getEntityType().equals(((EntityIdValue) o2).getEntityType())
+					&& o1.getSiteIri().equals(((EntityIdValue) o2).getSiteIri());
+		}
+
 		EntityIdValue other = (EntityIdValue) o2;
 		return o1.getId().equals(other.getId())
 				&& o1.getSiteIri().equals(other.getSiteIri())
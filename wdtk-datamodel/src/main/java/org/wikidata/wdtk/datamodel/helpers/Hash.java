@@ -21,6 +21,7 @@ package org.wikidata.wdtk.datamodel.helpers;
 
 import java.util.Objects;
 
+import org.wikidata.wdtk.datamodel.implementation.EntityIdValueImpl;
 import org.wikidata.wdtk.datamodel.interfaces.AliasUpdate;
 import org.wikidata.wdtk.datamodel.interfaces.Claim;
 import org.wikidata.wdtk.datamodel.interfaces.DatatypeIdValue;
@@ -86,7 +87,11 @@ public class Hash {
 	 */
 	public static int hashCode(EntityIdValue o) {
 		int result;
-		result = o.getId().hashCode();
+		if (o instanceof EntityIdValueImpl) {
+			result = ((EntityIdValueImpl) o).getIdHashCode();
+		} else {
+			result = o.getId().hashCode();
+		}
 		result = PRIME * result + o.getSiteIri().hashCode();
 		result = PRIME * result + o.getEntityType().hashCode();
 		return result;
@@ -79,17 +79,17 @@ public class DataObjectFactoryImpl implements DataObjectFactory {
 
 	@Override
 	public ItemIdValue getItemIdValue(String id, String siteIri) {
-		return new ItemIdValueImpl(id, siteIri);
+		return EntityIdValueCache.intern(new ItemIdValueImpl(id, siteIri));
 	}
 
 	@Override
 	public PropertyIdValue getPropertyIdValue(String id, String siteIri) {
-		return new PropertyIdValueImpl(id, siteIri);
+		return EntityIdValueCache.intern(new PropertyIdValueImpl(id, siteIri));
 	}
 
 	@Override
 	public LexemeIdValue getLexemeIdValue(String id, String siteIri) {
-		return new LexemeIdValueImpl(id, siteIri);
+		return EntityIdValueCache.intern(new LexemeIdValueImpl(id, siteIri));
 	}
 
 	@Override
@@ -104,7 +104,7 @@ public class DataObjectFactoryImpl implements DataObjectFactory {
 
 	@Override
 	public MediaInfoIdValue getMediaInfoIdValue(String id, String siteIri) {
-		return new MediaInfoIdValueImpl(id, siteIri);
+		return EntityIdValueCache.intern(new MediaInfoIdValueImpl(id, siteIri));
 	}
 
 	@Override
@@ -0,0 +1,141 @@
+package org.wikidata.wdtk.datamodel.implementation;
+
+/*
+ * #%L
+ * Wikidata Toolkit Data Model
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.wikidata.wdtk.datamodel.interfaces.EntityIdValue;
+
+/**
+ * Cache of canonical instances of {@link EntityIdValueImpl} objects. When
+ * enabled, the ids of items, properties, lexemes and media infos that are
+ * created by {@link DataObjectFactoryImpl} or during JSON deserialization are
+ * replaced by a canonical instance for the same id and site IRI. Processing
+ * a dump creates the same ids, such as the ids of properties or of common
+ * values like Q5, millions of times, and keeping a single object for each of
+ * them reduces the memory used by entity documents that are retained.
+ * <p>
+ * The cache is disabled by default, and is enabled by setting a maximum
+ * size with {@link #setMaximumSize(int)}. Ids are added until the maximum
+ * size is reached, and are never removed. Since ids that are used often are
+ * usually seen early, this keeps the most useful ids without the cost of
+ * tracking usage. An instance is only marked as canonical after it has been
+ * stored in the cache, and canonical instances are never replaced, so two
+ * different canonical instances are never equal. This allows
+ * {@link org.wikidata.wdtk.datamodel.helpers.Equality} to compare them by
+ * reference. A thread that does not see the mark yet simply compares the
+ * ids.
+ * <p>
+ * This class is thread-safe. The maximum size may be exceeded slightly when
+ * several threads add ids at the same time.
+ */
+public final class EntityIdValueCache {
+
+	private static final ConcurrentHashMap<EntityIdValueImpl, EntityIdValueImpl> values = new ConcurrentHashMap<>();
+
+	private static volatile int maximumSize = 0;
+
+	private EntityIdValueCache() {
+	}
+
+	/**
+	 * Sets the maximum number of ids that are kept in the cache. The cache is
+	 * enabled if this number is positive. Ids that are already in the cache
+	 * are kept when the size is reduced, but no further ids are added until
+	 * the cache is smaller than the new size.
+	 *
+	 * @param maximumSize
+	 *            the maximum number of ids in the cache, or 0 to disable
+	 *            the cache
+	 */
+	public static void setMaximumSize(int maximumSize) {
+		if (maximumSize < 0) {
+			throw new IllegalArgumentException(
+					"The maximum size must not be negative.");
+		}
+		EntityIdValueCache.maximumSize = maximumSize;
+	}
+
+	/**
+	 * Returns the maximum number of ids that are kept in the cache, or 0 if
+	 * the cache is disabled.
+	 *
+	 * @return the maximum size of the cache
+	 */
+	public static int getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 * Returns the number of ids that are currently in the cache.
+	 *
+	 * @return the size of the cache
+	 */
+	public static int size() {
+		return values.size();
+	}
+
+	/**
+	 * Returns true if the given value is the canonical instance of its id in
+	 * this cache.
+	 *
+	 * @param value
+	 *            the value to check
+	 * @return true if the value is canonical
+	 */
+	public static boolean isCanonical(EntityIdValue value) {
+		return value instanceof EntityIdValueImpl
+				&& ((EntityIdValueImpl) value).canonical;
+	}
+
+	/**
+	 * Returns the canonical instance that is equal to the given value. If
+	 * there is none, the given value becomes the canonical instance if the
+	 * cache is enabled and not full, and is returned as is otherwise.
+	 *
+	 * @param value
+	 *            the value to look up
+	 * @return an equal value, which is canonical if possible
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends EntityIdValueImpl> T intern(T value) {
+		if (maximumSize == 0 || value.canonical) {
+			return value;
+		}
+		EntityIdValueImpl result = values.get(value);
+		if (result != null) {
+			// equal ids have the same entity type and hence the same class
+			return (T) result;
+		}
+		if (values.size() >= maximumSize) {
+			return value;
+		}
+		// Publish the value while it is still compared by content, so that a
+		// concurrent insertion of an equal value is found by the map. Only
+		// the instance that won the insertion is marked as canonical.
+		result = values.putIfAbsent(value, value);
+		if (result != null) {
+			return (T) result;
+		}
+		value.canonical = true;
+		return value;
+	}
+}
@@ -77,11 +77,24 @@ public abstract class EntityIdValueImpl extends ValueImpl implements
 	private final String siteIri;
 
 	/**
-	 * Inner helper object to store the actual data. Used to get the nested JSON
-	 * structure that is required here.
+	 * The JSON entity type of this id, such as {@link #JSON_ENTITY_TYPE_ITEM}.
+	 * This is always one of the constants of this class.
 	 */
-	private final JacksonInnerEntityId value;
-	
+	private final String jsonEntityType;
+
+	/**
+	 * The numeric part of the id, such as 42 for "Q42". The string id is
+	 * derived from this number when it is requested, so that values do not
+	 * need to keep a string of their own.
+	 */
+	private final int numericId;
+
+	/**
+	 * True if this object is the canonical instance for its id in
+	 * {@link EntityIdValueCache}.
+	 */
+	boolean canonical = false;
+
 	/**
 	 * Constructor.
 	 * @param id
@@ -93,7 +106,8 @@ public abstract class EntityIdValueImpl extends ValueImpl implements
 			String id,
 			String siteIri) {
 		super(JSON_VALUE_TYPE_ENTITY_ID);
-		this.value = new JacksonInnerEntityId(id);
+		this.jsonEntityType = guessEntityTypeFromId(id, true);
+		this.numericId = parseNumericId(id);
 		Validate.notNull(siteIri, "Entity site IRIs cannot be null");
 		this.siteIri = siteIri;
 	}
@@ -106,7 +120,8 @@ public abstract class EntityIdValueImpl extends ValueImpl implements
 			@JsonProperty("value") JacksonInnerEntityId value,
 			@JacksonInject String siteIri) {
 		super(JSON_VALUE_TYPE_ENTITY_ID);
-		this.value = value;
+		this.jsonEntityType = value.getJsonEntityType();
+		this.numericId = value.getNumericId();
 		this.siteIri = siteIri;
 	}
 
@@ -123,17 +138,17 @@ public abstract class EntityIdValueImpl extends ValueImpl implements
 	public static EntityIdValue fromId(String id, String siteIri) {
 		switch (guessEntityTypeFromId(id, true)) {
 			case EntityIdValueImpl.JSON_ENTITY_TYPE_ITEM:
-				return new ItemIdValueImpl(id, siteIri);
+				return EntityIdValueCache.intern(new ItemIdValueImpl(id, siteIri));
 			case EntityIdValueImpl.JSON_ENTITY_TYPE_PROPERTY:
-				return new PropertyIdValueImpl(id, siteIri);
+				return EntityIdValueCache.intern(new PropertyIdValueImpl(id, siteIri));
 			case EntityIdValueImpl.JSON_ENTITY_TYPE_LEXEME:
-				return new LexemeIdValueImpl(id, siteIri);
+				return EntityIdValueCache.intern(new LexemeIdValueImpl(id, siteIri));
 			case EntityIdValueImpl.JSON_ENTITY_TYPE_FORM:
 				return new FormIdValueImpl(id, siteIri);
 			case EntityIdValueImpl.JSON_ENTITY_TYPE_SENSE:
 				return new SenseIdValueImpl(id, siteIri);
 				case EntityIdValueImpl.JSON_ENTITY_TYPE_MEDIA_INFO:
-				return new MediaInfoIdValueImpl(id, siteIri);
+				return EntityIdValueCache.intern(new MediaInfoIdValueImpl(id, siteIri));
 			default:
 				throw new IllegalArgumentException("Entity id \"" + id + "\" is not supported.");
 		}
@@ -185,6 +200,35 @@ public abstract class EntityIdValueImpl extends ValueImpl implements
 		return guessEntityTypeFromId(id, false);
 	}
 
+	/**
+	 * Returns the numeric part of the id, such as 42 for "Q42".
+	 *
+	 * @return the numeric id
+	 */
+	@JsonIgnore
+	public int getNumericId() {
+		return this.numericId;
+	}
+
+	/**
+	 * Returns the hash code of the string returned by {@link #getId()},
+	 * computed from the numeric id without creating the string.
+	 *
+	 * @return the hash code of the string id
+	 */
+	@JsonIgnore
+	public int getIdHashCode() {
+		int result = getIdPrefix(this.jsonEntityType);
+		int divisor = 1;
+		while (divisor <= this.numericId / 10) {
+			divisor *= 10;
+		}
+		for (; divisor > 0; divisor /= 10) {
+			result = 31 * result + '0' + (this.numericId / divisor) % 10;
+		}
+		return result;
+	}
+
 	/**
 	 * Returns the inner value helper object. Only for use by Jackson during
 	 * serialization.
@@ -193,7 +237,7 @@ public abstract class EntityIdValueImpl extends ValueImpl implements
 	 */
 	@JsonProperty("value")
 	public JacksonInnerEntityId getValue() {
-		return value;
+		return new JacksonInnerEntityId(this.jsonEntityType, this.numericId);
 	}
 
 	@JsonIgnore
@@ -205,7 +249,7 @@ public abstract class EntityIdValueImpl extends ValueImpl implements
 	@JsonIgnore
 	@Override
 	public String getId() {
-		return this.value.getStringId();
+		return getIdPrefix(this.jsonEntityType) + Integer.toString(this.numericId);
 	}
 
 	@JsonIgnore
@@ -220,13 +264,94 @@ public abstract class EntityIdValueImpl extends ValueImpl implements
 	}
 
 	protected void assertHasJsonEntityType(String expectedType) {
-		if(!expectedType.equals(value.entityType)) {
+		if(!expectedType.equals(this.jsonEntityType)) {
 			throw new IllegalArgumentException(
 					"The value should have the entity-type \"" + expectedType + "\": " + this
 			);
 		}
 	}
 
+	/**
+	 * Parses the numeric part of an id such as "Q42". Only the canonical
+	 * form of ids is accepted, without signs or leading zeros, so that the id
+	 * can be restored from the number.
+	 *
+	 * @param id
+	 *      the identifier of the entity, such as "Q42"
+	 * @return the numeric part of the id
+	 * @throws IllegalArgumentException
+	 *      if the id is invalid
+	 */
+	static int parseNumericId(String id) {
+		int length = id.length();
+		if (length <= 1 || length > 11
+				|| (id.charAt(1) == '0' && length > 2)) {
+			throw new IllegalArgumentException(
+					"Wikibase entity ids must have the form \"(L|P|Q)<positive integer>\". Given id was \""
+							+ id + "\"");
+		}
+		long result = 0;
+		for (int i = 1; i < length; i++) {
+			char c = id.charAt(i);
+			if (c < '0' || c > '9') {
+				throw new IllegalArgumentException(
+						"Wikibase entity ids must have the form \"(L|P|Q)<positive integer>\". Given id was \""
+								+ id + "\"");
+			}
+			result = 10 * result + (c - '0');
+		}
+		if (result > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Entity id \"" + id
+					+ "\" is too large.");
+		}
+		return (int) result;
+	}
+
+	/**
+	 * Returns the letter that starts the ids of the given JSON entity type.
+	 *
+	 * @param jsonEntityType
+	 *      the entity type string as used in JSON
+	 * @return the id prefix
+	 * @throws IllegalArgumentException
+	 *      if the type has no ids of the form letter and number
+	 */
+	static char getIdPrefix(String jsonEntityType) {
+		switch (jsonEntityType) {
+			case JSON_ENTITY_TYPE_ITEM:
+				return 'Q';
+			case JSON_ENTITY_TYPE_LEXEME:
+				return 'L';
+			case JSON_ENTITY_TYPE_PROPERTY:
+				return 'P';
+			case JSON_ENTITY_TYPE_MEDIA_INFO:
+				return 'M';
+			default:
+				throw new IllegalArgumentException("Entities of type \""
+						+ jsonEntityType + "\" are not supported in property values.");
+		}
+	}
+
+	/**
+	 * Returns the constant of this class that is equal to the given JSON
+	 * entity type, so that values do not keep strings that were created by
+	 * the JSON parser.
+	 */
+	private static String getJsonEntityTypeConstant(String jsonEntityType) {
+		switch (jsonEntityType) {
+			case JSON_ENTITY_TYPE_ITEM:
+				return JSON_ENTITY_TYPE_ITEM;
+			case JSON_ENTITY_TYPE_LEXEME:
+				return JSON_ENTITY_TYPE_LEXEME;
+			case JSON_ENTITY_TYPE_PROPERTY:
+				return JSON_ENTITY_TYPE_PROPERTY;
+			case JSON_ENTITY_TYPE_MEDIA_INFO:
+				return JSON_ENTITY_TYPE_MEDIA_INFO;
+			default:
+				return jsonEntityType;
+		}
+	}
+
 	/**
 	 * Helper object that represents the JSON object structure of the value.
 	 */
@@ -239,10 +364,10 @@ public abstract class EntityIdValueImpl extends ValueImpl implements
 
 		private final int numericId;
 
-		JacksonInnerEntityId(String id) {
-			this.id = id;
-			entityType = guessEntityTypeFromId(id, true);
-			numericId = buildNumericId(id);
+		JacksonInnerEntityId(String entityType, int numericId) {
+			this.id = buildIdFromNumericId(entityType, numericId);
+			this.entityType = entityType;
+			this.numericId = numericId;
 		}
 
 		/**
@@ -260,18 +385,18 @@ public abstract class EntityIdValueImpl extends ValueImpl implements
 					throw new IllegalArgumentException("You should provide an id or an entity type and a numeric id");
 				} else {
 					this.id = buildIdFromNumericId(entityType, numericId);
-					this.entityType = entityType;
+					this.entityType = getJsonEntityTypeConstant(entityType);
 					this.numericId = numericId;
 				}
 			} else {
 				this.id = id;
 				if(entityType == null || numericId == 0) {
 					this.entityType = guessEntityTypeFromId(id, true);
-					this.numericId = buildNumericId(id);
+					this.numericId = parseNumericId(id);
 				} else if(!id.equals(buildIdFromNumericId(entityType, numericId))) {
 					throw new IllegalArgumentException("Numerical id is different from the string id");
 				} else {
-					this.entityType = entityType;
+					this.entityType = getJsonEntityTypeConstant(entityType);
 					this.numericId = numericId;
 				}
 			}
@@ -311,35 +436,8 @@ public abstract class EntityIdValueImpl extends ValueImpl implements
 			return id;
 		}
 
-		private int buildNumericId(String id) {
-			if (id.length() <= 1) {
-				throw new IllegalArgumentException(
-							"Wikibase entity ids must have the form \"(L|P|Q)<positive integer>\". Given id was \""
-									+ id + "\"");
-			}
-			try {
-				return Integer.parseInt(id.substring(1));
-			} catch (NumberFormatException e) {
-				throw new IllegalArgumentException(
-						"Wikibase entity ids must have the form \"(L|P|Q)<positive integer>\". Given id was \""  + id
-									+ "\"");
-			}
-		}
-
 		private String buildIdFromNumericId(String entityType, int numericId) {
-			switch (entityType) {
-				case JSON_ENTITY_TYPE_ITEM:
-					return  "Q" + numericId;
-				case JSON_ENTITY_TYPE_LEXEME:
-					return  "L" + numericId;
-				case JSON_ENTITY_TYPE_PROPERTY:
-					return "P" + numericId;
-				case JSON_ENTITY_TYPE_MEDIA_INFO:
-					return "M" + numericId;
-				default:
-					throw new IllegalArgumentException("Entities of type \""
-							+ entityType + "\" are not supported in property values.");
-			}
+			return getIdPrefix(entityType) + Integer.toString(numericId);
 		}
 	}
 }
@@ -67,7 +67,8 @@ public class ItemIdValueImpl extends EntityIdValueImpl implements
 	static ItemIdValueImpl fromIri(String iri) {
 		int separator = iri.lastIndexOf('/') + 1;
 		try {
-			return new ItemIdValueImpl(iri.substring(separator), iri.substring(0, separator));
+			return new ItemIdValueImpl(iri.substring(separator),
+					StringPool.intern(iri.substring(0, separator)));
 		} catch (IllegalArgumentException e) {
 			throw new IllegalArgumentException("Invalid Wikibase entity IRI: " + iri, e);
 		}
@@ -98,7 +99,7 @@ public class ItemIdValueImpl extends EntityIdValueImpl implements
 	@JsonIgnore
 	@Override
 	public boolean isPlaceholder() {
-		return getId().equals("Q0");
+		return getNumericId() == 0;
 	}
 
 	@Override
@@ -41,6 +41,10 @@ import java.util.Map;
  */
 abstract class LabeledStatementDocumentImpl extends StatementDocumentImpl implements LabeledStatementDocument {
 
+	/**
+	 * Labels by language code, as an immutable {@link SortedArrayMap} or
+	 * empty.
+	 */
 	protected final Map<String, MonolingualTextValue> labels;
 
 	/**
@@ -61,7 +65,7 @@ abstract class LabeledStatementDocumentImpl extends StatementDocumentImpl implem
 			List<StatementGroup> claims,
 			long revisionId) {
 		super(id, claims, revisionId);
-		this.labels = (labels == null) ? Collections.emptyMap() : constructTermMap(labels);
+		this.labels = (labels == null) ? Collections.emptyMap() : SortedArrayMap.copyOf(constructTermMap(labels));
 	}
 
 	/**
@@ -74,13 +78,13 @@ abstract class LabeledStatementDocumentImpl extends StatementDocumentImpl implem
 			@JsonProperty("lastrevid") long revisionId,
 			@JacksonInject("siteIri") String siteIri) {
 		super(jsonId, claims, revisionId, siteIri);
-		this.labels = (labels == null) ? Collections.emptyMap() : labels;
+		this.labels = SortedArrayMap.copyOf(labels);
 	}
 
 	/**
 	 * Protected constructor provided to ease the creation
 	 * of copies. No check is made and each field is reused without
-	 * copying.
+	 * copying, unless it has to be converted to a {@link SortedArrayMap}.
 	 *
 	 * @param labels
 	 * 		a map from language codes to monolingual values with
@@ -94,7 +98,7 @@ abstract class LabeledStatementDocumentImpl extends StatementDocumentImpl implem
 			Map<String, List<Statement>> claims,
 			long revisionId) {
 		super(subject, claims, revisionId);
-		this.labels = labels;
+		this.labels = SortedArrayMap.copyOf(labels);
 	}
 
 	@JsonProperty("labels")
@@ -80,7 +80,7 @@ public class PropertyIdValueImpl extends EntityIdValueImpl implements
 	@JsonIgnore
 	@Override
 	public boolean isPlaceholder() {
-		return getId().equals("P0");
+		return getNumericId() == 0;
 	}
 
 	@Override
@@ -207,7 +207,7 @@ public class QuantityValueImpl extends ValueImpl implements QuantityValue {
         protected static ItemIdValue parseUnit(String unit) {
 		    Validate.notNull(unit, "Unit cannot be null");
             Validate.notEmpty(unit, "Unit cannot be empty. Use \"1\" for unit-less quantities.");
-            return "1".equals(unit) ? null : ItemIdValueImpl.fromIri(unit);
+            return "1".equals(unit) ? null : EntityIdValueCache.intern(ItemIdValueImpl.fromIri(unit));
         }
 		
         JacksonInnerQuantity(
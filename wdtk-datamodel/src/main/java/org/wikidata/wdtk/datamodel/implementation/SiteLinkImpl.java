@@ -92,7 +92,7 @@ public class SiteLinkImpl implements SiteLink {
 		Validate.notNull(title);
 		this.title = title;
 		Validate.notNull(site);
-		this.site = site;
+		this.site = StringPool.intern(site);
 		this.badges = (badges == null || badges.isEmpty())
 			? Collections.emptyList()
 			: constructBadges(badges, siteIri);
@@ -101,7 +101,7 @@ public class SiteLinkImpl implements SiteLink {
 	private List<ItemIdValue> constructBadges(List<String> badges, String siteIri) {
 		List<ItemIdValue> output = new ArrayList<>(badges.size());
 		for(String badge : badges) {
-			output.add(new ItemIdValueImpl(badge, siteIri));
+			output.add(EntityIdValueCache.intern(new ItemIdValueImpl(badge, siteIri)));
 		}
 		return output;
 	}
@@ -161,6 +161,7 @@ public class SitesImpl implements Sites {
 	public void setSiteInformation(String siteKey, String group,
 			String languageCode, String siteType, String filePath,
 			String pagePath) {
+		siteKey = StringPool.intern(siteKey);
 		this.sites.put(siteKey, new SiteInformation(siteKey, group,
 				languageCode, siteType, filePath, pagePath));
 	}
@@ -0,0 +1,184 @@
+package org.wikidata.wdtk.datamodel.implementation;
+
+/*
+ * #%L
+ * Wikidata Toolkit Data Model
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable map with string keys that stores its keys and values in two
+ * arrays, sorted by key. Documents keep many small maps, such as labels by
+ * language or statements by property, and this representation avoids the
+ * entry objects and the unused table slots of a {@link java.util.HashMap}.
+ * Lookups use a linear search for small maps and a binary search otherwise.
+ * Iteration is in the order of the keys.
+ *
+ * @param <V>
+ *            the type of the values
+ */
+final class SortedArrayMap<V> extends AbstractMap<String, V> {
+
+	/**
+	 * Size up to which keys are searched linearly. Keys are compared with
+	 * {@link String#equals(Object)} in this case, which is fast for keys that
+	 * are the same instance, such as pooled language codes.
+	 */
+	static final int LINEAR_SEARCH_SIZE = 8;
+
+	private final String[] keys;
+
+	private final Object[] values;
+
+	private SortedArrayMap(String[] keys, Object[] values) {
+		this.keys = keys;
+		this.values = values;
+	}
+
+	/**
+	 * Returns an immutable map with the same contents as the given map. Maps
+	 * that are already of this class are returned as they are.
+	 *
+	 * @param map
+	 *            the map to copy, which must not contain null keys, or null
+	 *            for an empty map
+	 * @return an immutable map with the same entries
+	 */
+	@SuppressWarnings("unchecked")
+	static <V> Map<String, V> copyOf(Map<String, ? extends V> map) {
+		if (map instanceof SortedArrayMap) {
+			return (Map<String, V>) map;
+		}
+		if (map == null || map.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		List<Entry<String, V>> entries = new ArrayList<>(
+				((Map<String, V>) map).entrySet());
+		entries.sort(Entry.comparingByKey());
+		String[] keys = new String[entries.size()];
+		Object[] values = new Object[entries.size()];
+		for (int i = 0; i < keys.length; i++) {
+			Entry<String, V> entry = entries.get(i);
+			keys[i] = entry.getKey();
+			values[i] = entry.getValue();
+		}
+		return new SortedArrayMap<>(keys, values);
+	}
+
+	@Override
+	public int size() {
+		return this.keys.length;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.keys.length == 0;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V get(Object key) {
+		int index = indexOf(key);
+		return index < 0 ? null : (V) this.values[index];
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void forEach(BiConsumer<? super String, ? super V> action) {
+		for (int i = 0; i < this.keys.length; i++) {
+			action.accept(this.keys[i], (V) this.values[i]);
+		}
+	}
+
+	@Override
+	public Set<Entry<String, V>> entrySet() {
+		return new AbstractSet<Entry<String, V>>() {
+
+			@Override
+			public Iterator<Entry<String, V>> iterator() {
+				return new EntryIterator();
+			}
+
+			@Override
+			public int size() {
+				return SortedArrayMap.this.keys.length;
+			}
+		};
+	}
+
+	/**
+	 * Returns the index of the given key, or a negative number if the key is
+	 * not in this map.
+	 */
+	private int indexOf(Object key) {
+		if (!(key instanceof String)) {
+			return -1;
+		}
+		if (this.keys.length <= LINEAR_SEARCH_SIZE) {
+			for (int i = 0; i < this.keys.length; i++) {
+				if (this.keys[i].equals(key)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+		return Arrays.binarySearch(this.keys, key);
+	}
+
+	/**
+	 * Iterator over the entries of the map.
+	 */
+	private class EntryIterator implements Iterator<Entry<String, V>> {
+
+		private int index = 0;
+
+		@Override
+		public boolean hasNext() {
+			return this.index < SortedArrayMap.this.keys.length;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public Entry<String, V> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Entry<String, V> entry = new SimpleImmutableEntry<>(
+					SortedArrayMap.this.keys[this.index],
+					(V) SortedArrayMap.this.values[this.index]);
+			this.index++;
+			return entry;
+		}
+	}
+}
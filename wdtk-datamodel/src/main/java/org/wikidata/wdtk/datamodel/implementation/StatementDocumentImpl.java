@@ -46,7 +46,8 @@ abstract class StatementDocumentImpl extends EntityDocumentImpl implements State
 
 	/**
 	 * This is what is called <i>claim</i> in the JSON model. It corresponds to
-	 * the statement group in the WDTK model.
+	 * the statement group in the WDTK model. The map is an immutable
+	 * {@link SortedArrayMap} or empty.
 	 */
 	protected final Map<String, List<Statement>> claims;
 
@@ -71,15 +72,16 @@ abstract class StatementDocumentImpl extends EntityDocumentImpl implements State
 			List<StatementGroup> claims,
 			long revisionId) {
 		super(id, revisionId);
-		this.claims = new HashMap<>();
+		Map<String, List<Statement>> claimMap = new HashMap<>();
 		if(claims != null) {
 			for(StatementGroup group : claims) {
 				EntityIdValue otherId = group.getSubject();
 				otherId.getIri();
 				Validate.isTrue(group.getSubject().equals(id), "Subject for the statement group and the document are different: "+otherId.toString()+" vs "+id.toString());
-				this.claims.put(group.getProperty().getId(), group.getStatements());
+				claimMap.put(group.getProperty().getId(), group.getStatements());
 			}
 		}
+		this.claims = SortedArrayMap.copyOf(claimMap);
 	}
 	
 	/**
@@ -94,7 +96,7 @@ abstract class StatementDocumentImpl extends EntityDocumentImpl implements State
 			Map<String, List<Statement>> claims,
 			long revisionId) {
 		super(id, revisionId);
-		this.claims = claims;
+		this.claims = SortedArrayMap.copyOf(claims);
 	}
 
 	/**
@@ -107,7 +109,7 @@ abstract class StatementDocumentImpl extends EntityDocumentImpl implements State
 			@JacksonInject("siteIri") String siteIri) {
 		super(jsonId, revisionId, siteIri);
 		if (claims != null) {
-			this.claims = new HashMap<>();
+			Map<String, List<Statement>> claimMap = new HashMap<>();
 			EntityIdValue subject = this.getEntityId();
 			for (Entry<String, List<StatementImpl.PreStatement>> entry : claims
 					.entrySet()) {
@@ -115,8 +117,9 @@ abstract class StatementDocumentImpl extends EntityDocumentImpl implements State
 				for (StatementImpl.PreStatement statement : entry.getValue()) {
 					statements.add(statement.withSubject(subject));
 				}
-				this.claims.put(entry.getKey(), statements);
+				claimMap.put(entry.getKey(), statements);
 			}
+			this.claims = SortedArrayMap.copyOf(claimMap);
 		} else {
 			this.claims = Collections.emptyMap();
 		}
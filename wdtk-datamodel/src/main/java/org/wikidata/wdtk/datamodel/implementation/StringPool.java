@@ -0,0 +1,117 @@
+package org.wikidata.wdtk.datamodel.implementation;
+
+/*
+ * #%L
+ * Wikidata Toolkit Data Model
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.interfaces.TimeValue;
+import org.wikidata.wdtk.datamodel.interfaces.WikimediaLanguageCodes;
+
+/**
+ * Pool of canonical instances of strings that occur very often in entity
+ * data, but only have few distinct values, such as language codes, site keys
+ * and calendar model IRIs. The JSON deserialization of terms, monolingual
+ * text values, site links, time values and quantity values replaces these
+ * strings by their pooled instance, so that the strings created by the JSON
+ * parser can be garbage collected right away, even if the data objects are
+ * kept.
+ * <p>
+ * The pool is preloaded with the known Wikimedia language codes, the keys of
+ * the Wikipedia sites in these languages, and the standard IRIs. The keys of
+ * sites that are registered in {@link SitesImpl} are added as well. Other
+ * strings are added when they are first seen, until the pool reaches
+ * {@link #MAXIMUM_SIZE} entries. Strings are never removed. This class is
+ * thread-safe.
+ */
+public final class StringPool {
+
+	/**
+	 * Maximal number of strings in the pool. This bounds the memory that is
+	 * used when reading data with an unexpectedly large number of distinct
+	 * values.
+	 */
+	public static final int MAXIMUM_SIZE = 100000;
+
+	/**
+	 * Keys of sites that are not specific to one language.
+	 */
+	static final String[] MULTILINGUAL_SITE_KEYS = { "commonswiki",
+			"mediawikiwiki", "metawiki", "sourceswiki", "specieswiki",
+			"wikidatawiki", "wikifunctionswiki", "wikimaniawiki" };
+
+	private static final ConcurrentHashMap<String, String> strings = new ConcurrentHashMap<>();
+
+	static {
+		for (String languageCode : WikimediaLanguageCodes
+				.getWikimediaLanguageCodes()) {
+			add(languageCode);
+			add(languageCode.replace('-', '_') + "wiki");
+		}
+		for (String siteKey : MULTILINGUAL_SITE_KEYS) {
+			add(siteKey);
+		}
+		add(Datamodel.SITE_WIKIDATA);
+		add(Datamodel.SITE_WIKIMEDIA_COMMONS);
+		add(TimeValue.CM_GREGORIAN_PRO);
+		add(TimeValue.CM_JULIAN_PRO);
+	}
+
+	private StringPool() {
+	}
+
+	/**
+	 * Returns the pooled instance of the given string. If the string is not in
+	 * the pool, it is added unless the pool is full.
+	 *
+	 * @param string
+	 *            the string to look up, or null
+	 * @return a string that is equal to the given one, or null if the given
+	 *         string is null
+	 */
+	public static String intern(String string) {
+		if (string == null) {
+			return null;
+		}
+		String result = strings.get(string);
+		if (result != null) {
+			return result;
+		}
+		if (strings.size() >= MAXIMUM_SIZE) {
+			return string;
+		}
+		result = strings.putIfAbsent(string, string);
+		return result == null ? string : result;
+	}
+
+	/**
+	 * Returns the number of strings in the pool.
+	 *
+	 * @return the size of the pool
+	 */
+	public static int size() {
+		return strings.size();
+	}
+
+	private static void add(String string) {
+		strings.putIfAbsent(string, string);
+	}
+}
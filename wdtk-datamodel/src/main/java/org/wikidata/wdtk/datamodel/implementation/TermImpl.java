@@ -66,7 +66,7 @@ public class TermImpl implements MonolingualTextValue {
 			@JsonProperty("language") String languageCode,
 			@JsonProperty("value") String text) {
 		Validate.notNull(languageCode, "A language has to be provided to create a MonolingualTextValue");
-		this.languageCode = languageCode;
+		this.languageCode = StringPool.intern(languageCode);
 		Validate.notNull(text, "A text has to be provided to create a MonolingualTextValue");
 		this.text = text;
 	}
@@ -50,7 +50,15 @@ import java.util.Map.Entry;
 		@Type(value = MediaInfoDocumentImpl.class, name = EntityDocumentImpl.JSON_TYPE_MEDIA_INFO) })
 public abstract class TermedStatementDocumentImpl extends LabeledStatementDocumentImpl implements TermedStatementDocument {
 
+	/**
+	 * Descriptions by language code, as an immutable {@link SortedArrayMap}
+	 * or empty.
+	 */
 	protected final Map<String, MonolingualTextValue> descriptions;
+	/**
+	 * Aliases by language code, as an immutable {@link SortedArrayMap} or
+	 * empty.
+	 */
 	protected final Map<String, List<MonolingualTextValue>> aliases;
 
 	/**
@@ -79,12 +87,12 @@ public abstract class TermedStatementDocumentImpl extends LabeledStatementDocume
 			long revisionId) {
 		super(id, labels, claims, revisionId);
 		if (descriptions != null) {
-			this.descriptions = constructTermMap(descriptions);
+			this.descriptions = SortedArrayMap.copyOf(constructTermMap(descriptions));
 		} else {
 			this.descriptions = Collections.emptyMap();
 		}
 		if (aliases != null) {
-			this.aliases = constructTermListMap(aliases);
+			this.aliases = SortedArrayMap.copyOf(constructTermListMap(aliases));
 		} else {
 			this.aliases = Collections.emptyMap();
 		}
@@ -102,22 +110,14 @@ public abstract class TermedStatementDocumentImpl extends LabeledStatementDocume
 			@JsonProperty("lastrevid") long revisionId,
 			@JacksonInject("siteIri") String siteIri) {
 		super(jsonId, labels, claims, revisionId, siteIri);
-		if (descriptions != null) {
-			this.descriptions = descriptions;
-		} else {
-			this.descriptions = Collections.emptyMap();
-		}
-		if (aliases != null) {
-			this.aliases = aliases;
-		} else {
-			this.aliases = Collections.emptyMap();
-		}
+		this.descriptions = SortedArrayMap.copyOf(descriptions);
+		this.aliases = SortedArrayMap.copyOf(aliases);
 	}
 	
 	/**
 	 * Protected constructor provided to ease the creation
 	 * of copies. No check is made and each field is reused without
-	 * copying.
+	 * copying, unless it has to be converted to a {@link SortedArrayMap}.
 	 * 
 	 * @param labels
 	 * 		a map from language codes to monolingual values with
@@ -139,8 +139,8 @@ public abstract class TermedStatementDocumentImpl extends LabeledStatementDocume
 			Map<String, List<Statement>> claims,
 			long revisionId) {
 		super(subject, labels, claims, revisionId);
-		this.descriptions = descriptions;
-		this.aliases = aliases;
+		this.descriptions = SortedArrayMap.copyOf(descriptions);
+		this.aliases = SortedArrayMap.copyOf(aliases);
 	}
 
 
@@ -311,7 +311,7 @@ public class TimeValueImpl extends ValueImpl implements TimeValue {
 			this.before = before;
 			this.after = after;
 			this.precision = precision;
-			this.calendarmodel = calendarModel;
+			this.calendarmodel = StringPool.intern(calendarModel);
 
 			this.decomposeTimeString();
 		}
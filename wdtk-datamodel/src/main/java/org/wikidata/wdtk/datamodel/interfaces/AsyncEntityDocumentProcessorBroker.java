@@ -0,0 +1,649 @@
+package org.wikidata.wdtk.datamodel.interfaces;
+
+/*
+ * #%L
+ * Wikidata Toolkit Data Model
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Broker implementation of {@link EntityDocumentProcessor} that distributes
+ * entity documents to multiple registered listeners asynchronously. Each
+ * listener has a bounded ring buffer of documents and a thread of its own,
+ * which takes the documents from the buffer and passes them on. A slow
+ * listener therefore does not hold up the others, or the thread that
+ * publishes the documents, as long as its buffer is not full. What happens
+ * when a buffer is full is decided by the {@link OverflowPolicy} of the
+ * listener.
+ * <p>
+ * Each listener receives the documents in the order in which they were
+ * published, and it is called from one thread only, so listeners do not
+ * need to be thread-safe. Documents are shared by all listeners and must
+ * not be modified. The current state of all buffers can be inspected with
+ * {@link #getSubscriberStatus()}.
+ * <p>
+ * The threads of the listeners are started by {@link #open()}, or when the
+ * first document is published. {@link #close()} waits until all listeners
+ * have processed the documents in their buffers and stops the threads.
+ * Listeners that are {@link EntityDocumentDumpProcessor}s are opened and
+ * closed on their own threads, before the first and after the last
+ * document. Afterwards, the broker can be opened again. Listeners must be registered
+ * before the threads are started. If a listener throws an exception, it
+ * does not receive any further documents, and the exception is thrown when
+ * the next document is published, or when the broker is closed.
+ */
+public class AsyncEntityDocumentProcessorBroker implements
+		EntityDocumentDumpProcessor {
+
+	/**
+	 * Default number of documents in the buffer of each listener.
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * Ways of handling documents that are published while the buffer of a
+	 * listener is full.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * The publishing thread waits until there is space in the buffer. The
+		 * listener receives all documents, but all other listeners and the
+		 * publisher slow down to its speed.
+		 */
+		BLOCK,
+		/**
+		 * The new document is dropped for this listener.
+		 */
+		DROP_NEWEST,
+		/**
+		 * The oldest document in the buffer is dropped for this listener to
+		 * make space for the new one.
+		 */
+		DROP_OLDEST
+	}
+
+	/**
+	 * Snapshot of the state of one listener and its buffer.
+	 */
+	public static class SubscriberStatus {
+
+		final EntityDocumentProcessor processor;
+		final int capacity;
+		final int queueDepth;
+		final int maxQueueDepth;
+		final long publishedCount;
+		final long processedCount;
+		final long droppedCount;
+		final long lag;
+
+		SubscriberStatus(EntityDocumentProcessor processor, int capacity,
+				int queueDepth, int maxQueueDepth, long publishedCount,
+				long processedCount, long droppedCount, long lag) {
+			this.processor = processor;
+			this.capacity = capacity;
+			this.queueDepth = queueDepth;
+			this.maxQueueDepth = maxQueueDepth;
+			this.publishedCount = publishedCount;
+			this.processedCount = processedCount;
+			this.droppedCount = droppedCount;
+			this.lag = lag;
+		}
+
+		/**
+		 * Returns the listener.
+		 *
+		 * @return the listener
+		 */
+		public EntityDocumentProcessor getProcessor() {
+			return this.processor;
+		}
+
+		/**
+		 * Returns the size of the buffer of the listener.
+		 *
+		 * @return maximal number of buffered documents
+		 */
+		public int getCapacity() {
+			return this.capacity;
+		}
+
+		/**
+		 * Returns the number of documents that have been published but not
+		 * processed yet, including the document that is being processed.
+		 *
+		 * @return number of pending documents
+		 */
+		public int getQueueDepth() {
+			return this.queueDepth;
+		}
+
+		/**
+		 * Returns the largest number of documents that were in the buffer at
+		 * the same time.
+		 *
+		 * @return maximal number of buffered documents
+		 */
+		public int getMaxQueueDepth() {
+			return this.maxQueueDepth;
+		}
+
+		/**
+		 * Returns the number of documents that have been published to the
+		 * listener, including dropped documents.
+		 *
+		 * @return number of documents
+		 */
+		public long getPublishedCount() {
+			return this.publishedCount;
+		}
+
+		/**
+		 * Returns the number of documents that the listener has processed.
+		 *
+		 * @return number of documents
+		 */
+		public long getProcessedCount() {
+			return this.processedCount;
+		}
+
+		/**
+		 * Returns the number of documents that were dropped since the buffer
+		 * was full or the listener had failed.
+		 *
+		 * @return number of documents
+		 */
+		public long getDroppedCount() {
+			return this.droppedCount;
+		}
+
+		/**
+		 * Returns how far the listener lags behind the publisher, measured
+		 * as the time since the oldest pending document was published.
+		 *
+		 * @return lag in milliseconds, or 0 if no document is pending
+		 */
+		public long getLag() {
+			return this.lag;
+		}
+
+		@Override
+		public String toString() {
+			return this.processor.getClass().getSimpleName() + ": "
+					+ this.queueDepth + "/" + this.capacity + " queued (max "
+					+ this.maxQueueDepth + "), " + this.processedCount
+					+ " processed, " + this.droppedCount + " dropped, lag "
+					+ this.lag + " ms";
+		}
+	}
+
+	/**
+	 * A registered listener with its ring buffer. The buffer is guarded by
+	 * the lock; the counters are also only changed while holding it.
+	 */
+	private static class Subscriber implements Runnable {
+
+		final EntityDocumentProcessor processor;
+		final OverflowPolicy policy;
+		final EntityDocument[] documents;
+		final long[] publishTimes;
+
+		final ReentrantLock lock = new ReentrantLock();
+		final Condition notEmpty = this.lock.newCondition();
+		final Condition notFull = this.lock.newCondition();
+
+		/**
+		 * Index of the oldest document in the buffer.
+		 */
+		int head = 0;
+		/**
+		 * Number of documents in the buffer.
+		 */
+		int size = 0;
+		int maxSize = 0;
+		long publishedCount = 0;
+		long processedCount = 0;
+		long droppedCount = 0;
+		/**
+		 * Publication time of the document that is being processed, or -1 if
+		 * no document is being processed.
+		 */
+		long processingSince = -1;
+		boolean closed = false;
+		Throwable failure = null;
+		boolean failureReported = false;
+		Thread thread = null;
+
+		Subscriber(EntityDocumentProcessor processor, int capacity,
+				OverflowPolicy policy) {
+			this.processor = processor;
+			this.policy = policy;
+			this.documents = new EntityDocument[capacity];
+			this.publishTimes = new long[capacity];
+		}
+
+		/**
+		 * Adds a document to the buffer, applying the overflow policy if it
+		 * is full. Documents are dropped if the listener has failed.
+		 *
+		 * @return the failure of the listener if it has not been reported
+		 *         yet, or null
+		 */
+		Throwable publish(EntityDocument document, long publishTime) {
+			this.lock.lock();
+			try {
+				this.publishedCount++;
+				if (this.failure != null) {
+					this.droppedCount++;
+					if (!this.failureReported) {
+						this.failureReported = true;
+						return this.failure;
+					}
+					return null;
+				}
+
+				if (this.size == this.documents.length) {
+					switch (this.policy) {
+					case DROP_NEWEST:
+						this.droppedCount++;
+						return null;
+					case DROP_OLDEST:
+						this.documents[this.head] = null;
+						this.head = (this.head + 1) % this.documents.length;
+						this.size--;
+						this.droppedCount++;
+						break;
+					case BLOCK:
+					default:
+						while (this.size == this.documents.length
+								&& this.failure == null) {
+							this.notFull.await();
+						}
+						if (this.failure != null) {
+							this.droppedCount++;
+							return null;
+						}
+					}
+				}
+
+				int tail = (this.head + this.size) % this.documents.length;
+				this.documents[tail] = document;
+				this.publishTimes[tail] = publishTime;
+				this.size++;
+				this.maxSize = Math.max(this.maxSize, this.size);
+				this.notEmpty.signal();
+				return null;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				this.droppedCount++;
+				return new RuntimeException(
+						"Interrupted while waiting for a listener", e);
+			} finally {
+				this.lock.unlock();
+			}
+		}
+
+		/**
+		 * Opens the listener if it is an {@link EntityDocumentDumpProcessor},
+		 * passes all documents to it until the broker is closed, and closes
+		 * it again. Any failure, including errors, is recorded, so that
+		 * publishers that wait for space in the buffer are released.
+		 */
+		@Override
+		public void run() {
+			EntityDocumentDumpProcessor dumpProcessor = null;
+			if (this.processor instanceof EntityDocumentDumpProcessor) {
+				dumpProcessor = (EntityDocumentDumpProcessor) this.processor;
+			}
+			try {
+				if (dumpProcessor != null) {
+					dumpProcessor.open();
+				}
+				processDocuments();
+			} catch (Throwable e) {
+				recordFailure(e);
+			}
+			if (dumpProcessor != null) {
+				try {
+					dumpProcessor.close();
+				} catch (Throwable e) {
+					recordFailure(e);
+				}
+			}
+		}
+
+		/**
+		 * Passes documents from the buffer to the listener until the broker
+		 * is closed and the buffer is empty.
+		 */
+		void processDocuments() {
+			while (true) {
+				EntityDocument document;
+				this.lock.lock();
+				try {
+					while (this.size == 0 && !this.closed) {
+						this.notEmpty.await();
+					}
+					if (this.size == 0) {
+						return;
+					}
+					document = this.documents[this.head];
+					this.processingSince = this.publishTimes[this.head];
+					this.documents[this.head] = null;
+					this.head = (this.head + 1) % this.documents.length;
+					this.size--;
+					this.notFull.signal();
+				} catch (InterruptedException e) {
+					return;
+				} finally {
+					this.lock.unlock();
+				}
+
+				deliver(document);
+
+				this.lock.lock();
+				try {
+					this.processingSince = -1;
+					this.processedCount++;
+				} finally {
+					this.lock.unlock();
+				}
+			}
+		}
+
+		/**
+		 * Records that the listener has failed, unless it has failed before.
+		 */
+		void recordFailure(Throwable failure) {
+			this.lock.lock();
+			try {
+				if (this.failure == null) {
+					fail(failure);
+				}
+			} finally {
+				this.lock.unlock();
+			}
+		}
+
+		/**
+		 * Records that the listener has failed and drops all buffered
+		 * documents. Must be called while holding the lock.
+		 */
+		void fail(Throwable failure) {
+			this.failure = failure;
+			this.processingSince = -1;
+			this.droppedCount += this.size;
+			for (int i = 0; i < this.size; i++) {
+				this.documents[(this.head + i) % this.documents.length] = null;
+			}
+			this.size = 0;
+			this.notFull.signalAll();
+		}
+
+		/**
+		 * Passes a document to the listener, calling the processing method
+		 * for its type.
+		 */
+		void deliver(EntityDocument document) {
+			if (document instanceof ItemDocument) {
+				this.processor.processItemDocument((ItemDocument) document);
+			} else if (document instanceof PropertyDocument) {
+				this.processor
+						.processPropertyDocument((PropertyDocument) document);
+			} else if (document instanceof LexemeDocument) {
+				this.processor.processLexemeDocument((LexemeDocument) document);
+			} else if (document instanceof MediaInfoDocument) {
+				this.processor
+						.processMediaInfoDocument((MediaInfoDocument) document);
+			} else if (document instanceof EntityRedirectDocument) {
+				this.processor
+						.processEntityRedirectDocument((EntityRedirectDocument) document);
+			}
+		}
+
+		SubscriberStatus getStatus(long now) {
+			this.lock.lock();
+			try {
+				long oldest = this.processingSince;
+				if (oldest < 0 && this.size > 0) {
+					oldest = this.publishTimes[this.head];
+				}
+				long lag = oldest < 0 ? 0 : TimeUnit.NANOSECONDS
+						.toMillis(now - oldest);
+				return new SubscriberStatus(this.processor,
+						this.documents.length, this.size
+								+ (this.processingSince < 0 ? 0 : 1),
+						this.maxSize, this.publishedCount,
+						this.processedCount, this.droppedCount, lag);
+			} finally {
+				this.lock.unlock();
+			}
+		}
+	}
+
+	private final List<Subscriber> subscribers = new ArrayList<>();
+
+	private volatile boolean started = false;
+
+	/**
+	 * Registers a listener which will be called for all entity documents that
+	 * are published, using a buffer of {@link #DEFAULT_CAPACITY} documents
+	 * and {@link OverflowPolicy#BLOCK}. The method avoids duplicates in the
+	 * sense that the exact same object cannot be registered twice.
+	 *
+	 * @param entityDocumentProcessor
+	 *            the listener to register
+	 */
+	public void registerEntityDocumentProcessor(
+			EntityDocumentProcessor entityDocumentProcessor) {
+		registerEntityDocumentProcessor(entityDocumentProcessor,
+				DEFAULT_CAPACITY, OverflowPolicy.BLOCK);
+	}
+
+	/**
+	 * Registers a listener which will be called for all entity documents that
+	 * are published. The method avoids duplicates in the sense that the
+	 * exact same object cannot be registered twice.
+	 *
+	 * @param entityDocumentProcessor
+	 *            the listener to register
+	 * @param capacity
+	 *            the number of documents that can be buffered for the
+	 *            listener
+	 * @param overflowPolicy
+	 *            what to do with documents that are published while the
+	 *            buffer is full
+	 * @throws IllegalStateException
+	 *             if the threads of the listeners have been started already
+	 */
+	public synchronized void registerEntityDocumentProcessor(
+			EntityDocumentProcessor entityDocumentProcessor, int capacity,
+			OverflowPolicy overflowPolicy) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException(
+					"The capacity must be positive.");
+		}
+		if (this.started) {
+			throw new IllegalStateException(
+					"Listeners cannot be registered while the broker is open.");
+		}
+		for (Subscriber subscriber : this.subscribers) {
+			if (subscriber.processor == entityDocumentProcessor) {
+				return;
+			}
+		}
+		this.subscribers.add(new Subscriber(entityDocumentProcessor, capacity,
+				overflowPolicy));
+	}
+
+	/**
+	 * Returns the current state of the buffers of all listeners, in the
+	 * order in which the listeners were registered.
+	 *
+	 * @return list of status objects
+	 */
+	public synchronized List<SubscriberStatus> getSubscriberStatus() {
+		long now = System.nanoTime();
+		List<SubscriberStatus> result = new ArrayList<>(this.subscribers.size());
+		for (Subscriber subscriber : this.subscribers) {
+			result.add(subscriber.getStatus(now));
+		}
+		return result;
+	}
+
+	/**
+	 * Starts the threads of all listeners, if they are not running yet. Each
+	 * thread opens its listener if it is an
+	 * {@link EntityDocumentDumpProcessor}.
+	 */
+	@Override
+	public synchronized void open() {
+		if (this.started) {
+			return;
+		}
+		for (int i = 0; i < this.subscribers.size(); i++) {
+			Subscriber subscriber = this.subscribers.get(i);
+			subscriber.closed = false;
+			subscriber.failure = null;
+			subscriber.failureReported = false;
+			subscriber.thread = new Thread(subscriber, "wdtk-broker-" + i
+					+ "-" + subscriber.processor.getClass().getSimpleName());
+			subscriber.thread.setDaemon(true);
+			subscriber.thread.start();
+		}
+		this.started = true;
+	}
+
+	/**
+	 * Waits until all listeners have processed the documents in their
+	 * buffers and have been closed if they are
+	 * {@link EntityDocumentDumpProcessor}s, and stops their threads. If a
+	 * listener has failed, its exception is thrown, unless it has been thrown
+	 * when publishing a document already.
+	 */
+	@Override
+	public synchronized void close() {
+		if (!this.started) {
+			return;
+		}
+		this.started = false;
+
+		for (Subscriber subscriber : this.subscribers) {
+			subscriber.lock.lock();
+			try {
+				subscriber.closed = true;
+				subscriber.notEmpty.signalAll();
+			} finally {
+				subscriber.lock.unlock();
+			}
+		}
+
+		Throwable failure = null;
+		for (Subscriber subscriber : this.subscribers) {
+			try {
+				subscriber.thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(
+						"Interrupted while waiting for listeners", e);
+			}
+			subscriber.thread = null;
+			if (subscriber.failure != null && !subscriber.failureReported
+					&& failure == null) {
+				subscriber.failureReported = true;
+				failure = subscriber.failure;
+			}
+		}
+		if (failure != null) {
+			throwFailure(failure);
+		}
+	}
+
+	@Override
+	public void processItemDocument(ItemDocument itemDocument) {
+		publish(itemDocument);
+	}
+
+	@Override
+	public void processPropertyDocument(PropertyDocument propertyDocument) {
+		publish(propertyDocument);
+	}
+
+	@Override
+	public void processLexemeDocument(LexemeDocument lexemeDocument) {
+		publish(lexemeDocument);
+	}
+
+	@Override
+	public void processMediaInfoDocument(MediaInfoDocument mediaInfoDocument) {
+		publish(mediaInfoDocument);
+	}
+
+	@Override
+	public void processEntityRedirectDocument(
+			EntityRedirectDocument entityRedirectDocument) {
+		publish(entityRedirectDocument);
+	}
+
+	/**
+	 * Adds a document to the buffers of all listeners, starting their
+	 * threads first if needed. The document is passed to all listeners
+	 * before the first failure of a listener is thrown.
+	 *
+	 * @param document
+	 *            the document to publish
+	 */
+	private void publish(EntityDocument document) {
+		if (!this.started) {
+			open();
+		}
+		long publishTime = System.nanoTime();
+		Throwable failure = null;
+		for (Subscriber subscriber : this.subscribers) {
+			Throwable subscriberFailure = subscriber.publish(document,
+					publishTime);
+			if (failure == null) {
+				failure = subscriberFailure;
+			}
+		}
+		if (failure != null) {
+			throwFailure(failure);
+		}
+	}
+
+	/**
+	 * Throws the failure of a listener, wrapping it if it is a checked
+	 * exception.
+	 *
+	 * @param failure
+	 *            the failure to throw
+	 */
+	private static void throwFailure(Throwable failure) {
+		if (failure instanceof Error) {
+			throw (Error) failure;
+		} else if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else {
+			throw new RuntimeException(failure);
+		}
+	}
+}
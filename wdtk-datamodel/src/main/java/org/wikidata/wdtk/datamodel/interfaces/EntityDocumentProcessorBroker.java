@@ -25,7 +25,10 @@ import java.util.Set;
 
 /**
  * Simple broker implementation of {@link EntityDocumentProcessor} which
- * distributes entity documents to multiple registered listeners.
+ * distributes entity documents to multiple registered listeners. The
+ * listeners are called one after the other on the calling thread; see
+ * {@link AsyncEntityDocumentProcessorBroker} for a broker that calls each
+ * listener on a thread of its own.
  *
  * @author Markus Kroetzsch
  *
@@ -28,7 +28,9 @@ import org.wikidata.wdtk.datamodel.implementation.DataObjectFactoryImpl;
  * removing some of the data from {@link EntityDocument} objects before passing
  * them on to another processor. There is an overhead involved in using this,
  * even if no filters are set, since a deep copy of the data is created to
- * filter it.
+ * filter it. Documents that are parsed from JSON can be filtered more
+ * efficiently while parsing, using
+ * {@link org.wikidata.wdtk.datamodel.helpers.DocumentDataTokenFilter}.
  *
  *
  * @author Markus Kroetzsch
@@ -69,4 +71,14 @@ public class EntityDocumentProcessorFilter implements EntityDocumentProcessor {
 		entityDocumentProcessor.processLexemeDocument(datamodelFilter.filter(lexemeDocument));
 	}
 
+	@Override
+	public void processMediaInfoDocument(MediaInfoDocument mediaInfoDocument) {
+		entityDocumentProcessor.processMediaInfoDocument(datamodelFilter.filter(mediaInfoDocument));
+	}
+
+	@Override
+	public void processEntityRedirectDocument(EntityRedirectDocument entityRedirectDocument) {
+		entityDocumentProcessor.processEntityRedirectDocument(entityRedirectDocument);
+	}
+
 }
@@ -0,0 +1,69 @@
+package org.wikidata.wdtk.datamodel.interfaces;
+
+/*
+ * #%L
+ * Wikidata Toolkit Data Model
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+/**
+ * Interface for {@link EntityDocumentProcessor} objects that aggregate data
+ * and that can be split into independent copies, so that a dump can be
+ * processed by several threads. Each thread works with its own fork of the
+ * processor, and the results of all forks are merged into the original
+ * processor once processing has finished. Processors therefore do not need
+ * to be thread-safe.
+ * <p>
+ * Forks are created with {@link #fork()} and may be created and used on
+ * other threads than the original, while the original itself does not
+ * process any documents. When all documents have been processed,
+ * {@link #merge(MergeableEntityDocumentProcessor)} is called on the original
+ * once for each fork, from the thread that owns the original.
+ * Afterwards, the original holds the same results as if it had processed all
+ * documents itself, except that the order in which documents were seen is
+ * not known. Forks are not used after they have been merged. If the
+ * processor is also an {@link EntityDocumentDumpProcessor}, only the
+ * original is opened and closed, and all forks have been merged before it
+ * is closed.
+ *
+ * @param <T>
+ *            the type of the processor, which forks have and which is
+ *            accepted when merging
+ */
+public interface MergeableEntityDocumentProcessor<T extends MergeableEntityDocumentProcessor<T>>
+		extends EntityDocumentProcessor {
+
+	/**
+	 * Creates a new processor of the same configuration as this one, but
+	 * without any of the data that this processor has collected so far.
+	 *
+	 * @return the new processor
+	 */
+	T fork();
+
+	/**
+	 * Adds the data that was collected by the given fork to the data of this
+	 * processor.
+	 *
+	 * @param fork
+	 *            a processor that was created by {@link #fork()} on this
+	 *            processor
+	 */
+	void merge(T fork);
+
+}
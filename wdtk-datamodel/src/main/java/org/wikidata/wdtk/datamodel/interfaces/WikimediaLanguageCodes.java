@@ -20,8 +20,10 @@ package org.wikidata.wdtk.datamodel.interfaces;
  * #L%
  */
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This class helps to interpret Wikimedia language codes in terms of official
@@ -605,6 +607,15 @@ public class WikimediaLanguageCodes {
 
 	}
 	
+	/**
+	 * Returns all Wikimedia language codes that are known to this class.
+	 *
+	 * @return an unmodifiable set of Wikimedia language codes
+	 */
+	public static Set<String> getWikimediaLanguageCodes() {
+		return Collections.unmodifiableSet(LANGUAGE_CODES.keySet());
+	}
+
 	/**
 	 * Translate a Wikimedia language code to its preferred value
 	 * if this code is deprecated, or return it untouched if the string
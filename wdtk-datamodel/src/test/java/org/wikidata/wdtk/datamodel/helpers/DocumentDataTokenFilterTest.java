@@ -0,0 +1,138 @@
+package org.wikidata.wdtk.datamodel.helpers;
+
+/*
+ * #%L
+ * Wikidata Toolkit Data Model
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.wikidata.wdtk.datamodel.implementation.DataObjectFactoryImpl;
+import org.wikidata.wdtk.datamodel.interfaces.DocumentDataFilter;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocument;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.LexemeDocument;
+import org.wikidata.wdtk.datamodel.interfaces.MediaInfoDocument;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
+
+public class DocumentDataTokenFilterTest {
+
+	private String loadJson(String filename) throws IOException {
+		InputStream stream = DocumentDataTokenFilterTest.class.getClassLoader()
+				.getResourceAsStream("JsonDeserializer/" + filename);
+		return IOUtils.toString(stream, StandardCharsets.UTF_8);
+	}
+
+	private DocumentDataFilter makeFilter() {
+		DocumentDataFilter filter = new DocumentDataFilter();
+		filter.setLanguageFilter(new HashSet<>(Arrays.asList("en", "fr")));
+		filter.setPropertyFilter(new HashSet<>(Arrays.asList(
+				Datamodel.makeWikidataPropertyIdValue("P31"),
+				Datamodel.makeWikidataPropertyIdValue("P1855"),
+				Datamodel.makeWikidataPropertyIdValue("P5137"),
+				Datamodel.makePropertyIdValue("P180",
+						Datamodel.SITE_WIKIMEDIA_COMMONS))));
+		filter.setSiteLinkFilter(Collections.singleton("enwiki"));
+		return filter;
+	}
+
+	@Test
+	public void testFilterMatchesDatamodelFilter() throws IOException {
+		assertFilterMatchesDatamodelFilter(makeFilter());
+	}
+
+	@Test
+	public void testEmptyFilterSets() throws IOException {
+		DocumentDataFilter filter = new DocumentDataFilter();
+		filter.setLanguageFilter(Collections.emptySet());
+		filter.setPropertyFilter(Collections.emptySet());
+		filter.setSiteLinkFilter(Collections.emptySet());
+		assertFilterMatchesDatamodelFilter(filter);
+	}
+
+	@Test
+	public void testLanguageFilterOnly() throws IOException {
+		DocumentDataFilter filter = new DocumentDataFilter();
+		filter.setLanguageFilter(Collections.singleton("de"));
+		assertFilterMatchesDatamodelFilter(filter);
+	}
+
+	@Test
+	public void testFilteredData() throws IOException {
+		JsonDeserializer deserializer = new JsonDeserializer(
+				Datamodel.SITE_WIKIDATA, makeFilter());
+		ItemDocument item = deserializer.deserializeItemDocument(loadJson("item.json"));
+
+		assertEquals(Collections.singleton("en"), item.getLabels().keySet());
+		assertEquals(Collections.singleton("enwiki"), item.getSiteLinks()
+				.keySet());
+		assertEquals(1, item.getStatementGroups().size());
+		assertEquals("P31", item.getStatementGroups().get(0).getProperty()
+				.getId());
+	}
+
+	@Test
+	public void testInactiveFilter() {
+		assertTrue(DocumentDataTokenFilter.isActive(makeFilter()));
+		assertEquals(false, DocumentDataTokenFilter
+				.isActive(new DocumentDataFilter()));
+	}
+
+	private void assertFilterMatchesDatamodelFilter(DocumentDataFilter filter)
+			throws IOException {
+		DatamodelFilter datamodelFilter = new DatamodelFilter(
+				new DataObjectFactoryImpl(), filter);
+
+		JsonDeserializer deserializer = new JsonDeserializer(
+				Datamodel.SITE_WIKIDATA);
+		JsonDeserializer filteringDeserializer = new JsonDeserializer(
+				Datamodel.SITE_WIKIDATA, filter);
+		assertEquals(datamodelFilter.filter(deserializer
+				.deserializeItemDocument(loadJson("item.json"))),
+				filteringDeserializer.deserializeItemDocument(loadJson("item.json")));
+		assertEquals(datamodelFilter.filter(deserializer
+				.deserializePropertyDocument(loadJson("property.json"))),
+				filteringDeserializer.deserializePropertyDocument(loadJson("property.json")));
+		assertEquals(datamodelFilter.filter(deserializer
+				.deserializeLexemeDocument(loadJson("lexeme.json"))),
+				filteringDeserializer.deserializeLexemeDocument(loadJson("lexeme.json")));
+		EntityDocument document = filteringDeserializer
+				.deserializeEntityDocument(loadJson("property.json"));
+		assertEquals(datamodelFilter.filter((PropertyDocument) deserializer
+				.deserializeEntityDocument(loadJson("property.json"))), document);
+
+		JsonDeserializer commonsDeserializer = new JsonDeserializer(
+				Datamodel.SITE_WIKIMEDIA_COMMONS);
+		JsonDeserializer filteringCommonsDeserializer = new JsonDeserializer(
+				Datamodel.SITE_WIKIMEDIA_COMMONS, filter);
+		MediaInfoDocument mediaInfo = commonsDeserializer
+				.deserializeMediaInfoDocument(loadJson("mediainfo.json"));
+		assertEquals(datamodelFilter.filter(mediaInfo),
+				filteringCommonsDeserializer.deserializeMediaInfoDocument(loadJson("mediainfo.json")));
+	}
+}
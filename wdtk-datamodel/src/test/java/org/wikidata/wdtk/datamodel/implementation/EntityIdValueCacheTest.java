@@ -0,0 +1,145 @@
+package org.wikidata.wdtk.datamodel.implementation;
+
+/*
+ * #%L
+ * Wikidata Toolkit Data Model
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Test;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.helpers.DatamodelMapper;
+import org.wikidata.wdtk.datamodel.interfaces.ItemIdValue;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyIdValue;
+import org.wikidata.wdtk.datamodel.interfaces.ValueSnak;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class EntityIdValueCacheTest {
+
+	// a site IRI of its own keeps ids of other tests out of the cache
+	private static final String SITE_IRI = "http://example.org/cache-test/";
+
+	private final DataObjectFactoryImpl factory = new DataObjectFactoryImpl();
+
+	@After
+	public void tearDown() {
+		EntityIdValueCache.setMaximumSize(0);
+	}
+
+	@Test
+	public void disabledByDefault() {
+		ItemIdValue item1 = factory.getItemIdValue("Q1", SITE_IRI);
+		ItemIdValue item2 = factory.getItemIdValue("Q1", SITE_IRI);
+		assertEquals(item1, item2);
+		assertNotSame(item1, item2);
+		assertFalse(EntityIdValueCache.isCanonical(item1));
+	}
+
+	@Test
+	public void factoryReturnsCanonicalInstances() {
+		EntityIdValueCache.setMaximumSize(1000);
+		ItemIdValue item1 = factory.getItemIdValue("Q5", SITE_IRI);
+		ItemIdValue item2 = factory.getItemIdValue("Q5", SITE_IRI);
+		PropertyIdValue property = factory.getPropertyIdValue("P5", SITE_IRI);
+		assertSame(item1, item2);
+		assertSame(property, EntityIdValueImpl.fromId("P5", SITE_IRI));
+		assertTrue(EntityIdValueCache.isCanonical(item1));
+		assertNotEquals(item1, property);
+		assertNotSame(item1, factory.getItemIdValue("Q5", Datamodel.SITE_WIKIDATA + "x/"));
+	}
+
+	@Test
+	public void equalityWithOtherInstances() {
+		ItemIdValue uncached = factory.getItemIdValue("Q6", SITE_IRI);
+		EntityIdValueCache.setMaximumSize(1000);
+		ItemIdValue cached = factory.getItemIdValue("Q6", SITE_IRI);
+		assertNotSame(uncached, cached);
+		assertEquals(uncached, cached);
+		assertEquals(cached, uncached);
+		assertEquals(uncached.hashCode(), cached.hashCode());
+		assertNotEquals(cached, factory.getItemIdValue("Q7", SITE_IRI));
+	}
+
+	@Test
+	public void sizeIsBounded() {
+		EntityIdValueCache.setMaximumSize(EntityIdValueCache.size() + 1);
+		ItemIdValue item1 = factory.getItemIdValue("Q100", SITE_IRI);
+		ItemIdValue item2 = factory.getItemIdValue("Q101", SITE_IRI);
+		assertTrue(EntityIdValueCache.isCanonical(item1));
+		assertFalse(EntityIdValueCache.isCanonical(item2));
+		assertNotSame(item2, factory.getItemIdValue("Q101", SITE_IRI));
+		assertSame(item1, factory.getItemIdValue("Q100", SITE_IRI));
+	}
+
+	@Test
+	public void jsonDeserializationUsesCache() throws IOException {
+		EntityIdValueCache.setMaximumSize(1000);
+		ObjectMapper mapper = new DatamodelMapper(SITE_IRI);
+		String json = "{\"snaktype\":\"value\",\"property\":\"P31\",\"datatype\":\"wikibase-item\",\"datavalue\":{\"type\":\"wikibase-entityid\",\"value\":{\"entity-type\":\"item\",\"numeric-id\":5,\"id\":\"Q5\"}}}";
+		ValueSnak snak1 = (ValueSnak) mapper.readValue(json, SnakImpl.class);
+		ValueSnak snak2 = (ValueSnak) mapper.readValue(json, SnakImpl.class);
+		assertSame(snak1.getPropertyId(), snak2.getPropertyId());
+		assertSame(snak1.getValue(), snak2.getValue());
+		assertSame(snak1.getValue(), factory.getItemIdValue("Q5", SITE_IRI));
+	}
+
+	@Test
+	public void concurrentInterningKeepsEquality() throws InterruptedException {
+		int count = 20000;
+		EntityIdValueCache.setMaximumSize(EntityIdValueCache.size() + 2 * count);
+		ItemIdValue[][] results = new ItemIdValue[2][count];
+		Thread[] threads = new Thread[2];
+		for (int i = 0; i < threads.length; i++) {
+			ItemIdValue[] result = results[i];
+			threads[i] = new Thread(() -> {
+				for (int j = 0; j < count; j++) {
+					result[j] = factory.getItemIdValue("Q" + (200000 + j),
+							SITE_IRI);
+				}
+			});
+		}
+		int sizeBefore = EntityIdValueCache.size();
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		for (int j = 0; j < count; j++) {
+			assertEquals(results[0][j], results[1][j]);
+			assertSame(results[0][j], factory.getItemIdValue(
+					"Q" + (200000 + j), SITE_IRI));
+		}
+		assertEquals(sizeBefore + count, EntityIdValueCache.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void negativeSizeRejected() {
+		EntityIdValueCache.setMaximumSize(-1);
+	}
+}
@@ -71,6 +71,21 @@ public class ItemIdValueImplTest {
 		assertEquals(item1.getId(), "Q42");
 	}
 
+	@Test
+	public void numericIdIsCorrect() {
+		assertEquals(42, item1.getNumericId());
+		assertEquals(57, item3.getNumericId());
+	}
+
+	@Test
+	public void idHashCodeMatchesStringId() {
+		for (String id : new String[] { "Q0", "Q7", "Q42", "Q1000", "Q2147483647" }) {
+			ItemIdValueImpl item = new ItemIdValueImpl(id, "http://www.wikidata.org/entity/");
+			assertEquals(id, item.getId());
+			assertEquals(id.hashCode(), item.getIdHashCode());
+		}
+	}
+
 	@Test
 	public void equalityBasedOnContent() {
 		assertEquals(item1, item1);
@@ -101,6 +116,16 @@ public class ItemIdValueImplTest {
 		new ItemIdValueImpl("Q", "http://www.wikidata.org/entity/");
 	}
 
+	@Test(expected = IllegalArgumentException.class)
+	public void idValidatedForLeadingZeros() {
+		new ItemIdValueImpl("Q042", "http://www.wikidata.org/entity/");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void idValidatedForRange() {
+		new ItemIdValueImpl("Q2147483648", "http://www.wikidata.org/entity/");
+	}
+
 	@Test(expected = RuntimeException.class)
 	public void idNotNull() {
 		new ItemIdValueImpl((String)null, "http://www.wikidata.org/entity/");
@@ -0,0 +1,97 @@
+package org.wikidata.wdtk.datamodel.implementation;
+
+/*
+ * #%L
+ * Wikidata Toolkit Data Model
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class SortedArrayMapTest {
+
+	@Test
+	public void smallMap() {
+		Map<String, Integer> contents = new HashMap<>();
+		contents.put("en", 1);
+		contents.put("de", 2);
+		contents.put("fr", 3);
+		Map<String, Integer> map = SortedArrayMap.copyOf(contents);
+
+		assertEquals(3, map.size());
+		assertEquals(Integer.valueOf(2), map.get("de"));
+		assertTrue(map.containsKey("fr"));
+		assertFalse(map.containsKey("it"));
+		assertNull(map.get("it"));
+		assertNull(map.get(42));
+		assertEquals("[de, en, fr]", new ArrayList<>(map.keySet()).toString());
+		assertEquals(contents, map);
+		assertEquals(map, contents);
+		assertEquals(contents.hashCode(), map.hashCode());
+	}
+
+	@Test
+	public void largeMap() {
+		Map<String, Integer> contents = new HashMap<>();
+		for (int i = 0; i < 100; i++) {
+			contents.put("P" + i, i);
+		}
+		Map<String, Integer> map = SortedArrayMap.copyOf(contents);
+
+		assertEquals(100, map.size());
+		for (int i = 0; i < 100; i++) {
+			assertEquals(Integer.valueOf(i), map.get("P" + i));
+		}
+		assertFalse(map.containsKey("P100"));
+		assertFalse(map.containsKey("Q1"));
+		assertEquals(contents, map);
+	}
+
+	@Test
+	public void emptyAndNullMaps() {
+		assertSame(Collections.emptyMap(), SortedArrayMap.copyOf(new HashMap<String, String>()));
+		assertSame(Collections.emptyMap(), SortedArrayMap.copyOf(null));
+	}
+
+	@Test
+	public void compactMapsAreNotCopied() {
+		Map<String, String> map = SortedArrayMap.copyOf(Collections.singletonMap("en", "foo"));
+		assertSame(map, SortedArrayMap.copyOf(map));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void immutable() {
+		SortedArrayMap.copyOf(Collections.singletonMap("en", "foo")).put("de", "bar");
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void immutableEntries() {
+		SortedArrayMap.copyOf(Collections.singletonMap("en", "foo")).entrySet()
+				.iterator().next().setValue("bar");
+	}
+}
@@ -0,0 +1,101 @@
+package org.wikidata.wdtk.datamodel.implementation;
+
+/*
+ * #%L
+ * Wikidata Toolkit Data Model
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+
+import org.junit.Test;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.helpers.DatamodelMapper;
+import org.wikidata.wdtk.datamodel.interfaces.MonolingualTextValue;
+import org.wikidata.wdtk.datamodel.interfaces.QuantityValue;
+import org.wikidata.wdtk.datamodel.interfaces.SiteLink;
+import org.wikidata.wdtk.datamodel.interfaces.TimeValue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class StringPoolTest {
+
+	private final ObjectMapper mapper = new DatamodelMapper(Datamodel.SITE_WIKIDATA);
+
+	@Test
+	public void preloadedStrings() {
+		assertSame(StringPool.intern("en"), StringPool.intern(new String("en")));
+		assertSame(StringPool.intern("dewiki"), StringPool.intern(new String("dewiki")));
+		assertSame(StringPool.intern("zh_min_nanwiki"), StringPool.intern(new String("zh_min_nanwiki")));
+		assertSame(TimeValue.CM_GREGORIAN_PRO, StringPool.intern(new String(TimeValue.CM_GREGORIAN_PRO)));
+	}
+
+	@Test
+	public void newStringsAreAdded() {
+		String string = new String("string pool test");
+		assertSame(string, StringPool.intern(string));
+		assertSame(string, StringPool.intern(new String("string pool test")));
+	}
+
+	@Test
+	public void nullIsKept() {
+		assertNull(StringPool.intern(null));
+	}
+
+	@Test
+	public void termsShareLanguageCodes() throws IOException {
+		String json = "{\"language\":\"en\",\"value\":\"foo\"}";
+		TermImpl term1 = mapper.readValue(json, TermImpl.class);
+		TermImpl term2 = mapper.readValue(json, TermImpl.class);
+		assertSame(term1.getLanguageCode(), term2.getLanguageCode());
+	}
+
+	@Test
+	public void monolingualTextValuesShareLanguageCodes() throws IOException {
+		String json = "{\"type\":\"monolingualtext\",\"value\":{\"language\":\"sv-SE\",\"text\":\"foo\"}}";
+		MonolingualTextValue value1 = (MonolingualTextValue) mapper.readValue(json, ValueImpl.class);
+		MonolingualTextValue value2 = (MonolingualTextValue) mapper.readValue(json, ValueImpl.class);
+		assertEquals("sv-SE", value1.getLanguageCode());
+		assertSame(value1.getLanguageCode(), value2.getLanguageCode());
+	}
+
+	@Test
+	public void siteLinksShareSiteKeys() throws IOException {
+		String json = "{\"site\":\"enwiki\",\"title\":\"foo\",\"badges\":[]}";
+		SiteLink siteLink1 = mapper.readValue(json, SiteLinkImpl.class);
+		SiteLink siteLink2 = mapper.readValue(json, SiteLinkImpl.class);
+		assertSame(siteLink1.getSiteKey(), siteLink2.getSiteKey());
+	}
+
+	@Test
+	public void timeValuesShareCalendarModels() throws IOException {
+		String json = "{\"type\":\"time\",\"value\":{\"time\":\"+2015-01-01T00:00:00Z\",\"timezone\":0,\"before\":0,\"after\":0,\"precision\":11,\"calendarmodel\":\"http://www.wikidata.org/entity/Q1985727\"}}";
+		TimeValue value = (TimeValue) mapper.readValue(json, ValueImpl.class);
+		assertSame(TimeValue.CM_GREGORIAN_PRO, value.getPreferredCalendarModel());
+	}
+
+	@Test
+	public void quantityUnitsShareSiteIris() throws IOException {
+		String json = "{\"type\":\"quantity\",\"value\":{\"amount\":\"+1\",\"unit\":\"http://www.wikidata.org/entity/Q11573\"}}";
+		QuantityValue value = (QuantityValue) mapper.readValue(json, ValueImpl.class);
+		assertSame(Datamodel.SITE_WIKIDATA, value.getUnitItemId().getSiteIri());
+	}
+}
@@ -0,0 +1,268 @@
+package org.wikidata.wdtk.datamodel.interfaces;
+
+/*
+ * #%L
+ * Wikidata Toolkit Data Model
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.helpers.ItemDocumentBuilder;
+import org.wikidata.wdtk.datamodel.interfaces.AsyncEntityDocumentProcessorBroker.OverflowPolicy;
+import org.wikidata.wdtk.datamodel.interfaces.AsyncEntityDocumentProcessorBroker.SubscriberStatus;
+
+public class AsyncEntityDocumentProcessorBrokerTest {
+
+	/**
+	 * Test processor that records the ids of all items, optionally waiting
+	 * for a latch before processing the first one.
+	 */
+	static class RecordingProcessor implements EntityDocumentProcessor {
+
+		final List<String> ids = Collections
+				.synchronizedList(new ArrayList<>());
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release;
+
+		RecordingProcessor(CountDownLatch release) {
+			this.release = release;
+		}
+
+		@Override
+		public void processItemDocument(ItemDocument itemDocument) {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			ids.add(itemDocument.getEntityId().getId());
+		}
+	}
+
+	static ItemDocument makeItem(int number) {
+		return ItemDocumentBuilder.forItemId(
+				Datamodel.makeWikidataItemIdValue("Q" + number)).build();
+	}
+
+	static List<String> publishItems(EntityDocumentProcessor processor,
+			int count) {
+		List<String> ids = new ArrayList<>();
+		for (int i = 1; i <= count; i++) {
+			ItemDocument item = makeItem(i);
+			processor.processItemDocument(item);
+			ids.add(item.getEntityId().getId());
+		}
+		return ids;
+	}
+
+	@Test
+	public void testAllDocumentsDeliveredInOrder() {
+		AsyncEntityDocumentProcessorBroker broker = new AsyncEntityDocumentProcessorBroker();
+		RecordingProcessor first = new RecordingProcessor(new CountDownLatch(0));
+		RecordingProcessor second = new RecordingProcessor(new CountDownLatch(0));
+		broker.registerEntityDocumentProcessor(first, 3, OverflowPolicy.BLOCK);
+		broker.registerEntityDocumentProcessor(second);
+		broker.registerEntityDocumentProcessor(second);
+
+		broker.open();
+		List<String> ids = publishItems(broker, 500);
+		broker.close();
+
+		assertEquals(ids, first.ids);
+		assertEquals(ids, second.ids);
+		List<SubscriberStatus> status = broker.getSubscriberStatus();
+		assertEquals(2, status.size());
+		assertEquals(500, status.get(0).getProcessedCount());
+		assertEquals(0, status.get(0).getDroppedCount());
+		assertEquals(0, status.get(0).getQueueDepth());
+		assertTrue(status.get(0).getMaxQueueDepth() <= 3);
+		assertEquals(0, status.get(1).getLag());
+	}
+
+	@Test
+	public void testSlowListenerDropsNewest() throws InterruptedException {
+		AsyncEntityDocumentProcessorBroker broker = new AsyncEntityDocumentProcessorBroker();
+		CountDownLatch release = new CountDownLatch(1);
+		RecordingProcessor slow = new RecordingProcessor(release);
+		RecordingProcessor fast = new RecordingProcessor(new CountDownLatch(0));
+		broker.registerEntityDocumentProcessor(slow, 10,
+				OverflowPolicy.DROP_NEWEST);
+		broker.registerEntityDocumentProcessor(fast);
+
+		broker.processItemDocument(makeItem(0));
+		slow.started.await();
+		publishItems(broker, 100);
+
+		SubscriberStatus status = broker.getSubscriberStatus().get(0);
+		assertEquals(11, status.getQueueDepth());
+		assertEquals(90, status.getDroppedCount());
+		assertEquals(101, status.getPublishedCount());
+
+		release.countDown();
+		broker.close();
+
+		assertEquals(101, fast.ids.size());
+		assertEquals(11, slow.ids.size());
+		assertEquals("Q10", slow.ids.get(10));
+	}
+
+	@Test
+	public void testSlowListenerDropsOldest() throws InterruptedException {
+		AsyncEntityDocumentProcessorBroker broker = new AsyncEntityDocumentProcessorBroker();
+		CountDownLatch release = new CountDownLatch(1);
+		RecordingProcessor slow = new RecordingProcessor(release);
+		broker.registerEntityDocumentProcessor(slow, 10,
+				OverflowPolicy.DROP_OLDEST);
+
+		broker.processItemDocument(makeItem(0));
+		slow.started.await();
+		publishItems(broker, 100);
+		Thread.sleep(5);
+		assertTrue(broker.getSubscriberStatus().get(0).getLag() > 0);
+
+		release.countDown();
+		broker.close();
+
+		assertEquals(11, slow.ids.size());
+		assertEquals("Q0", slow.ids.get(0));
+		assertEquals("Q91", slow.ids.get(1));
+		assertEquals("Q100", slow.ids.get(10));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testFailingListener() {
+		AsyncEntityDocumentProcessorBroker broker = new AsyncEntityDocumentProcessorBroker();
+		broker.registerEntityDocumentProcessor(new EntityDocumentProcessor() {
+			@Override
+			public void processItemDocument(ItemDocument itemDocument) {
+				throw new IllegalStateException("failed");
+			}
+		});
+		broker.processItemDocument(makeItem(1));
+		broker.close();
+	}
+
+	@Test
+	public void testFailingListenerDoesNotAffectOthers()
+			throws InterruptedException {
+		AsyncEntityDocumentProcessorBroker broker = new AsyncEntityDocumentProcessorBroker();
+		broker.registerEntityDocumentProcessor(new EntityDocumentProcessor() {
+			@Override
+			public void processItemDocument(ItemDocument itemDocument) {
+				throw new IllegalStateException("failed");
+			}
+		});
+		RecordingProcessor recorder = new RecordingProcessor(
+				new CountDownLatch(0));
+		broker.registerEntityDocumentProcessor(recorder);
+
+		List<String> ids = new ArrayList<>();
+		boolean failed = false;
+		for (int i = 1; !failed && i <= 1000; i++) {
+			ItemDocument item = makeItem(i);
+			ids.add(item.getEntityId().getId());
+			try {
+				broker.processItemDocument(item);
+			} catch (IllegalStateException e) {
+				failed = true;
+			}
+			Thread.sleep(1);
+		}
+		broker.close();
+
+		assertTrue(failed);
+		assertEquals(ids, recorder.ids);
+	}
+
+	/**
+	 * Error thrown by a test listener.
+	 */
+	static class ListenerError extends Error {
+		private static final long serialVersionUID = 1L;
+	}
+
+	@Test(timeout = 10000, expected = ListenerError.class)
+	public void testListenerErrorReleasesBlockedPublisher() {
+		AsyncEntityDocumentProcessorBroker broker = new AsyncEntityDocumentProcessorBroker();
+		broker.registerEntityDocumentProcessor(new EntityDocumentProcessor() {
+			@Override
+			public void processItemDocument(ItemDocument itemDocument) {
+				throw new ListenerError();
+			}
+		}, 1, OverflowPolicy.BLOCK);
+		try {
+			publishItems(broker, 100);
+		} finally {
+			broker.close();
+		}
+	}
+
+	@Test
+	public void testDumpProcessorsOpenedAndClosedOnListenerThread() {
+		List<String> events = Collections.synchronizedList(new ArrayList<>());
+		EntityDocumentDumpProcessor dumpProcessor = new EntityDocumentDumpProcessor() {
+			@Override
+			public void open() {
+				events.add("open " + Thread.currentThread().getName());
+			}
+
+			@Override
+			public void processItemDocument(ItemDocument itemDocument) {
+				events.add(itemDocument.getEntityId().getId());
+			}
+
+			@Override
+			public void close() {
+				events.add("close " + Thread.currentThread().getName());
+			}
+		};
+		AsyncEntityDocumentProcessorBroker broker = new AsyncEntityDocumentProcessorBroker();
+		broker.registerEntityDocumentProcessor(dumpProcessor);
+
+		broker.open();
+		publishItems(broker, 2);
+		broker.close();
+
+		assertEquals(4, events.size());
+		assertTrue(events.get(0).startsWith("open wdtk-broker-0"));
+		assertEquals("Q1", events.get(1));
+		assertEquals("Q2", events.get(2));
+		assertTrue(events.get(3).startsWith("close wdtk-broker-0"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRegisterWhileOpen() {
+		AsyncEntityDocumentProcessorBroker broker = new AsyncEntityDocumentProcessorBroker();
+		broker.open();
+		try {
+			broker.registerEntityDocumentProcessor(new RecordingProcessor(
+					new CountDownLatch(0)));
+		} finally {
+			broker.close();
+		}
+	}
+}
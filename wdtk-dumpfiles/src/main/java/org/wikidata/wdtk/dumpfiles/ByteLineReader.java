@@ -0,0 +1,310 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits a byte stream into lines without decoding it into characters. Lines
+ * are returned as slices of an internal buffer that is reused for all lines,
+ * so that no objects need to be allocated per line. The buffer grows as
+ * needed to hold the longest line that was found.
+ * <p>
+ * Lines are terminated by '\n'. The terminator and a preceding '\r' are not
+ * part of the line. The slice of the current line is only valid until the
+ * next call of {@link #nextLine()}.
+ * <p>
+ * This is mainly intended for reading JSON dumps, which contain one entity
+ * per line, where lines can be passed to a parser as byte arrays directly.
+ * Data can be read from an input stream or from a channel, such as the one
+ * returned by {@link MwDumpFile#getDumpFileChannel()}.
+ */
+public class ByteLineReader implements Closeable {
+
+	/**
+	 * Initial size of the buffer in bytes.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The stream to read from, or null if a channel is used.
+	 */
+	private final InputStream inputStream;
+
+	/**
+	 * The channel to read from, or null if a stream is used.
+	 */
+	private final ReadableByteChannel channel;
+
+	private byte[] buffer;
+
+	/**
+	 * View of {@link #buffer} for reading from {@link #channel}, or null if
+	 * it has not been created for the current buffer yet.
+	 */
+	private ByteBuffer byteBuffer;
+
+	/**
+	 * Number of valid bytes in the buffer.
+	 */
+	private int limit = 0;
+
+	/**
+	 * Position in the buffer where the next line starts.
+	 */
+	private int nextLineStart = 0;
+
+	private int lineOffset = 0;
+
+	private int lineLength = 0;
+
+	/**
+	 * Position in the stream that corresponds to the start of the buffer.
+	 */
+	private long bufferPosition = 0;
+
+	private boolean endOfStream = false;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param inputStream
+	 *            the stream to read from
+	 */
+	public ByteLineReader(InputStream inputStream) {
+		this(inputStream, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param inputStream
+	 *            the stream to read from
+	 * @param bufferSize
+	 *            the initial size of the buffer in bytes
+	 */
+	public ByteLineReader(InputStream inputStream, int bufferSize) {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException(
+					"The buffer size must be positive.");
+		}
+		this.inputStream = inputStream;
+		this.channel = null;
+		this.buffer = new byte[bufferSize];
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param channel
+	 *            the channel to read from
+	 */
+	public ByteLineReader(ReadableByteChannel channel) {
+		this(channel, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param channel
+	 *            the channel to read from
+	 * @param bufferSize
+	 *            the initial size of the buffer in bytes
+	 */
+	public ByteLineReader(ReadableByteChannel channel, int bufferSize) {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException(
+					"The buffer size must be positive.");
+		}
+		this.inputStream = null;
+		this.channel = channel;
+		this.buffer = new byte[bufferSize];
+	}
+
+	/**
+	 * Advances to the next line of the stream.
+	 *
+	 * @return true if there was another line, false if the end of the stream
+	 *         was reached
+	 * @throws IOException
+	 *             if there was a problem reading the stream
+	 */
+	public boolean nextLine() throws IOException {
+		int scanPosition = this.nextLineStart;
+		while (true) {
+			for (int i = scanPosition; i < this.limit; i++) {
+				if (this.buffer[i] == '\n') {
+					setLine(this.nextLineStart, i);
+					this.nextLineStart = i + 1;
+					return true;
+				}
+			}
+
+			if (this.endOfStream) {
+				if (this.nextLineStart < this.limit) {
+					setLine(this.nextLineStart, this.limit);
+					this.nextLineStart = this.limit;
+					return true;
+				} else {
+					this.lineLength = 0;
+					return false;
+				}
+			}
+
+			// the buffer may be compacted, so remember the relative position
+			int scannedLength = this.limit - this.nextLineStart;
+			fillBuffer();
+			scanPosition = this.nextLineStart + scannedLength;
+		}
+	}
+
+	/**
+	 * Returns the buffer that holds the current line. The buffer may change
+	 * with every call of {@link #nextLine()}.
+	 *
+	 * @return the buffer
+	 */
+	public byte[] getBuffer() {
+		return this.buffer;
+	}
+
+	/**
+	 * Returns the position of the first byte of the current line in
+	 * {@link #getBuffer()}.
+	 *
+	 * @return offset of the current line
+	 */
+	public int getLineOffset() {
+		return this.lineOffset;
+	}
+
+	/**
+	 * Returns the length of the current line in bytes, without the line
+	 * terminator.
+	 *
+	 * @return length of the current line
+	 */
+	public int getLineLength() {
+		return this.lineLength;
+	}
+
+	/**
+	 * Returns the position of the first byte of the current line in the
+	 * stream, counted in bytes from the point where this reader started
+	 * reading.
+	 *
+	 * @return stream position of the current line
+	 */
+	public long getLinePosition() {
+		return this.bufferPosition + this.lineOffset;
+	}
+
+	/**
+	 * Returns the position in the stream right after the current line and its
+	 * terminator, i.e., the position where the next line starts.
+	 *
+	 * @return stream position after the current line
+	 */
+	public long getNextLinePosition() {
+		return this.bufferPosition + this.nextLineStart;
+	}
+
+	/**
+	 * Returns a string of at most the given number of characters for the
+	 * beginning of the current line. This is intended for log messages.
+	 *
+	 * @param maxLength
+	 *            the maximal number of bytes to decode
+	 * @return the beginning of the line
+	 */
+	public String getLinePrefix(int maxLength) {
+		return new String(this.buffer, this.lineOffset, Math.min(maxLength,
+				this.lineLength), StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.channel != null) {
+			this.channel.close();
+		} else {
+			this.inputStream.close();
+		}
+	}
+
+	/**
+	 * Sets the current line to the given range of the buffer, omitting a
+	 * trailing '\r'.
+	 */
+	private void setLine(int start, int end) {
+		if (end > start && this.buffer[end - 1] == '\r') {
+			end--;
+		}
+		this.lineOffset = start;
+		this.lineLength = end - start;
+	}
+
+	/**
+	 * Reads more data into the buffer. Data that was already returned is
+	 * discarded first if the buffer is full. If there is no such data, the
+	 * buffer is enlarged.
+	 *
+	 * @throws IOException
+	 *             if there was a problem reading the stream
+	 */
+	private void fillBuffer() throws IOException {
+		if (this.limit == this.buffer.length) {
+			if (this.nextLineStart > 0) {
+				System.arraycopy(this.buffer, this.nextLineStart, this.buffer,
+						0, this.limit - this.nextLineStart);
+				this.bufferPosition += this.nextLineStart;
+				this.limit -= this.nextLineStart;
+				this.nextLineStart = 0;
+			} else {
+				this.buffer = Arrays.copyOf(this.buffer,
+						2 * this.buffer.length);
+				this.byteBuffer = null;
+			}
+		}
+
+		int count;
+		if (this.channel != null) {
+			if (this.byteBuffer == null) {
+				this.byteBuffer = ByteBuffer.wrap(this.buffer);
+			}
+			this.byteBuffer.limit(this.buffer.length).position(this.limit);
+			count = this.channel.read(this.byteBuffer);
+		} else {
+			count = this.inputStream.read(this.buffer, this.limit,
+					this.buffer.length - this.limit);
+		}
+		if (count < 0) {
+			this.endOfStream = true;
+		} else {
+			this.limit += count;
+		}
+	}
+}
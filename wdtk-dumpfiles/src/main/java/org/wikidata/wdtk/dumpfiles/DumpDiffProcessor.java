@@ -0,0 +1,62 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocument;
+
+/**
+ * Interface for classes that are notified of the differences between two
+ * dumps, as found by {@link DumpDiffer}. Entities that are the same in both
+ * dumps are not reported.
+ */
+public interface DumpDiffProcessor {
+
+	/**
+	 * Processes an entity that is only contained in the newer dump.
+	 *
+	 * @param newDocument
+	 *            the document of the entity in the newer dump
+	 */
+	default void entityAdded(EntityDocument newDocument) {
+	}
+
+	/**
+	 * Processes an entity that is only contained in the older dump.
+	 *
+	 * @param oldDocument
+	 *            the document of the entity in the older dump
+	 */
+	default void entityRemoved(EntityDocument oldDocument) {
+	}
+
+	/**
+	 * Processes an entity whose data differs between the two dumps.
+	 *
+	 * @param oldDocument
+	 *            the document of the entity in the older dump
+	 * @param newDocument
+	 *            the document of the entity in the newer dump
+	 */
+	default void entityChanged(EntityDocument oldDocument,
+			EntityDocument newDocument) {
+	}
+}
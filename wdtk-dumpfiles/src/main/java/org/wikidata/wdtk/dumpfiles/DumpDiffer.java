@@ -0,0 +1,417 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.helpers.DatamodelMapper;
+import org.wikidata.wdtk.datamodel.implementation.EntityDocumentImpl;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocument;
+import org.wikidata.wdtk.dumpfiles.DumpSorter.EntityLine;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Computes the differences between two JSON dumps on the level of entities.
+ * Both dumps must be sorted by entity id, in the order of
+ * {@link DumpSorter#compareEntityIds(String, String)}; dumps can be brought
+ * into this order with {@link DumpSorter}. The dumps are read side by side,
+ * one line at a time, so that the memory that is used does not depend on
+ * the size of the dumps.
+ * <p>
+ * Entities are only deserialized if they are reported to the
+ * {@link DumpDiffProcessor}, or if cheaper checks could not decide whether
+ * they changed. An entity that is contained in both dumps is unchanged if
+ * its "lastrevid" is the same in both dumps. Otherwise, a digest of its
+ * JSON is computed in both dumps, leaving out the fields "lastrevid" and
+ * "modified". If the digests are different, both versions are deserialized
+ * and compared, so that differences in the formatting of the JSON alone are
+ * not reported as changes.
+ */
+public class DumpDiffer {
+
+	static final Logger logger = LoggerFactory.getLogger(DumpDiffer.class);
+
+	/**
+	 * Algorithm of the digests that are used to compare the JSON of
+	 * entities.
+	 */
+	static final String DIGEST_ALGORITHM = "SHA-256";
+
+	private final ObjectReader documentReader;
+
+	long addedCount = 0;
+	long removedCount = 0;
+	long changedCount = 0;
+	long unchangedCount = 0;
+	long digestComparisons = 0;
+	long documentComparisons = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param siteIri
+	 *            the site IRI to use for entity ids
+	 */
+	public DumpDiffer(String siteIri) {
+		this.documentReader = new DatamodelMapper(siteIri)
+				.readerFor(EntityDocumentImpl.class)
+				.with(DeserializationFeature.ACCEPT_EMPTY_ARRAY_AS_NULL_OBJECT);
+	}
+
+	/**
+	 * Constructor for dumps of Wikidata.
+	 */
+	public DumpDiffer() {
+		this(Datamodel.SITE_WIKIDATA);
+	}
+
+	/**
+	 * Compares the given dumps and reports all entities that were added,
+	 * removed, or changed in the newer dump to the given processor. The
+	 * counters of this object are reset before.
+	 *
+	 * @param oldDump
+	 *            the older dump
+	 * @param newDump
+	 *            the newer dump
+	 * @param diffProcessor
+	 *            the processor to report differences to
+	 * @throws IOException
+	 *             if one of the dumps could not be read
+	 * @throws IllegalArgumentException
+	 *             if one of the dumps is not sorted by entity id
+	 */
+	public void diffDumps(MwDumpFile oldDump, MwDumpFile newDump,
+			DumpDiffProcessor diffProcessor) throws IOException {
+		logger.info("Comparing " + oldDump + " to " + newDump);
+		this.addedCount = 0;
+		this.removedCount = 0;
+		this.changedCount = 0;
+		this.unchangedCount = 0;
+		this.digestComparisons = 0;
+		this.documentComparisons = 0;
+
+		MessageDigest digest = createDigest();
+		try (InputStream oldStream = oldDump.getDumpFileStream();
+				InputStream newStream = newDump.getDumpFileStream();
+				EntityLineReader oldLines = new EntityLineReader(oldStream,
+						oldDump);
+				EntityLineReader newLines = new EntityLineReader(newStream,
+						newDump)) {
+			boolean hasOld = oldLines.next();
+			boolean hasNew = newLines.next();
+			while (hasOld || hasNew) {
+				int order;
+				if (!hasOld) {
+					order = 1;
+				} else if (!hasNew) {
+					order = -1;
+				} else {
+					order = DumpSorter.compareEntityIds(oldLines.entityId,
+							newLines.entityId);
+				}
+
+				if (order < 0) {
+					EntityDocument oldDocument = oldLines.readDocument();
+					if (oldDocument != null) {
+						this.removedCount++;
+						diffProcessor.entityRemoved(oldDocument);
+					}
+					hasOld = oldLines.next();
+				} else if (order > 0) {
+					EntityDocument newDocument = newLines.readDocument();
+					if (newDocument != null) {
+						this.addedCount++;
+						diffProcessor.entityAdded(newDocument);
+					}
+					hasNew = newLines.next();
+				} else {
+					compareEntity(oldLines, newLines, digest, diffProcessor);
+					hasOld = oldLines.next();
+					hasNew = newLines.next();
+				}
+			}
+		}
+
+		logger.info("Found " + this.addedCount + " added, "
+				+ this.removedCount + " removed, and " + this.changedCount
+				+ " changed entities; " + this.unchangedCount
+				+ " entities are unchanged. Compared "
+				+ this.digestComparisons + " digests and "
+				+ this.documentComparisons + " documents.");
+	}
+
+	/**
+	 * Returns the number of entities that were only found in the newer dump
+	 * by the last comparison.
+	 *
+	 * @return number of entities
+	 */
+	public long getAddedCount() {
+		return this.addedCount;
+	}
+
+	/**
+	 * Returns the number of entities that were only found in the older dump
+	 * by the last comparison.
+	 *
+	 * @return number of entities
+	 */
+	public long getRemovedCount() {
+		return this.removedCount;
+	}
+
+	/**
+	 * Returns the number of entities that were found to be changed by the
+	 * last comparison.
+	 *
+	 * @return number of entities
+	 */
+	public long getChangedCount() {
+		return this.changedCount;
+	}
+
+	/**
+	 * Returns the number of entities that were found in both dumps with the
+	 * same data by the last comparison.
+	 *
+	 * @return number of entities
+	 */
+	public long getUnchangedCount() {
+		return this.unchangedCount;
+	}
+
+	/**
+	 * Compares the two versions of an entity at the current lines of the
+	 * readers, and reports it if it changed.
+	 */
+	void compareEntity(EntityLineReader oldLines, EntityLineReader newLines,
+			MessageDigest digest, DumpDiffProcessor diffProcessor) {
+		if (oldLines.revisionId >= 0
+				&& oldLines.revisionId == newLines.revisionId) {
+			this.unchangedCount++;
+			return;
+		}
+
+		this.digestComparisons++;
+		if (Arrays.equals(oldLines.computeDigest(digest),
+				newLines.computeDigest(digest))) {
+			this.unchangedCount++;
+			return;
+		}
+
+		this.documentComparisons++;
+		EntityDocument oldDocument = oldLines.readDocument();
+		EntityDocument newDocument = newLines.readDocument();
+		if (oldDocument == null || newDocument == null) {
+			// errors have been logged; report what could be read
+			if (newDocument != null) {
+				this.addedCount++;
+				diffProcessor.entityAdded(newDocument);
+			} else if (oldDocument != null) {
+				this.removedCount++;
+				diffProcessor.entityRemoved(oldDocument);
+			}
+			return;
+		}
+
+		if (oldDocument.withRevisionId(newDocument.getRevisionId()).equals(
+				newDocument)) {
+			this.unchangedCount++;
+		} else {
+			this.changedCount++;
+			diffProcessor.entityChanged(oldDocument, newDocument);
+		}
+	}
+
+	/**
+	 * Creates the digest that is used to compare the JSON of entities.
+	 */
+	static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e.toString(), e);
+		}
+	}
+
+	/**
+	 * Reader for the entity lines of a JSON dump, which reads the id and the
+	 * revision id of each entity without deserializing it, and checks that
+	 * the entities are sorted by id.
+	 */
+	class EntityLineReader implements AutoCloseable {
+
+		final ByteLineReader lineReader;
+		final MwDumpFile dumpFile;
+
+		String entityId;
+		long revisionId;
+		byte[] buffer;
+		int offset;
+		int length;
+
+		/**
+		 * Ranges of the line that are left out of digests, as pairs of start
+		 * and end positions relative to the offset of the line.
+		 */
+		final int[] excludedRanges = new int[4];
+		int excludedRangeCount;
+
+		EntityLineReader(InputStream inputStream, MwDumpFile dumpFile) {
+			this.lineReader = new ByteLineReader(inputStream);
+			this.dumpFile = dumpFile;
+		}
+
+		/**
+		 * Moves to the next entity of the dump.
+		 *
+		 * @return false if the end of the dump has been reached
+		 * @throws IOException
+		 *             if the dump could not be read
+		 * @throws IllegalArgumentException
+		 *             if the entity has a smaller id than the previous one
+		 */
+		boolean next() throws IOException {
+			String previousId = this.entityId;
+			while (this.lineReader.nextLine()) {
+				EntityLine line = DumpSharder.readEntityLine(this.lineReader);
+				if (line == null) {
+					continue;
+				}
+				this.entityId = line.entityId;
+				this.buffer = line.json;
+				this.offset = 0;
+				this.length = line.json.length;
+
+				readHeader();
+				if (this.entityId == null) {
+					logger.warn("Could not find id of entity; skipping it: "
+							+ this.lineReader.getLinePrefix(50));
+					continue;
+				}
+				if (previousId != null
+						&& DumpSorter.compareEntityIds(previousId,
+								this.entityId) >= 0) {
+					throw new IllegalArgumentException("Dump " + this.dumpFile
+							+ " is not sorted by entity id: " + this.entityId
+							+ " follows " + previousId);
+				}
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Reads the top-level field "lastrevid" of the current line, and
+		 * finds the positions of the fields that are left out of digests.
+		 * The values of other fields are skipped without parsing them into
+		 * objects.
+		 */
+		void readHeader() {
+			this.revisionId = -1;
+			this.excludedRangeCount = 0;
+			try (JsonParser parser = DumpDiffer.this.documentReader
+					.getFactory().createParser(this.buffer, this.offset,
+							this.length)) {
+				if (parser.nextToken() != JsonToken.START_OBJECT) {
+					return;
+				}
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String fieldName = parser.getCurrentName();
+					long fieldStart = parser.getTokenLocation().getByteOffset();
+					JsonToken value = parser.nextToken();
+					if ("lastrevid".equals(fieldName)
+							|| "modified".equals(fieldName)) {
+						if (value == JsonToken.VALUE_NUMBER_INT) {
+							this.revisionId = parser.getLongValue();
+						} else {
+							parser.finishToken();
+						}
+						if (this.excludedRangeCount < this.excludedRanges.length) {
+							this.excludedRanges[this.excludedRangeCount++] = (int) fieldStart;
+							this.excludedRanges[this.excludedRangeCount++] = (int) parser
+									.getCurrentLocation().getByteOffset();
+						}
+					} else {
+						parser.skipChildren();
+					}
+				}
+			} catch (IOException e) {
+				// broken JSON; reported when deserializing the entity
+			}
+		}
+
+		/**
+		 * Computes the digest of the current line, leaving out the excluded
+		 * ranges.
+		 */
+		byte[] computeDigest(MessageDigest digest) {
+			int position = 0;
+			for (int i = 0; i < this.excludedRangeCount; i += 2) {
+				digest.update(this.buffer, this.offset + position,
+						this.excludedRanges[i] - position);
+				position = this.excludedRanges[i + 1];
+			}
+			digest.update(this.buffer, this.offset + position, this.length
+					- position);
+			return digest.digest();
+		}
+
+		/**
+		 * Deserializes the entity of the current line.
+		 *
+		 * @return the document, or null if the JSON could not be
+		 *         deserialized
+		 */
+		EntityDocument readDocument() {
+			try {
+				return DumpDiffer.this.documentReader.readValue(this.buffer,
+						this.offset, this.length);
+			} catch (JsonProcessingException e) {
+				logger.error("Error when reading JSON for entity "
+						+ this.entityId + " in " + this.dumpFile + ": "
+						+ e.getMessage());
+				return null;
+			} catch (IOException e) {
+				throw new RuntimeException(e.toString(), e);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.lineReader.close();
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Progress of processing a JSON dump, as persisted by
+ * {@link DumpProcessingController} when checkpointing is enabled. A
+ * checkpoint records the position in the uncompressed dump up to which all
+ * entity documents have been delivered to the processors, and the id of the
+ * last delivered entity.
+ *
+ * @see DumpProcessingController#setCheckpointFile(String)
+ * @see SnapshotHook
+ */
+public class DumpProcessingCheckpoint {
+
+	static final String KEY_PROJECT = "project";
+	static final String KEY_TYPE = "type";
+	static final String KEY_DATE = "date";
+	static final String KEY_POSITION = "position";
+	static final String KEY_LAST_ENTITY_ID = "lastEntityId";
+	static final String KEY_DOCUMENT_COUNT = "documentCount";
+
+	final String projectName;
+	final DumpContentType dumpContentType;
+	final String dateStamp;
+	final long position;
+	final String lastEntityId;
+	final long documentCount;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param dumpFile
+	 *            the dump that is processed
+	 * @param position
+	 *            the position in the uncompressed dump where processing
+	 *            continues
+	 * @param lastEntityId
+	 *            the id of the last entity that was delivered, or null if
+	 *            there was none
+	 * @param documentCount
+	 *            the number of documents delivered so far
+	 */
+	DumpProcessingCheckpoint(MwDumpFile dumpFile, long position,
+			String lastEntityId, long documentCount) {
+		this(dumpFile.getProjectName(), dumpFile.getDumpContentType(),
+				dumpFile.getDateStamp(), position, lastEntityId, documentCount);
+	}
+
+	private DumpProcessingCheckpoint(String projectName,
+			DumpContentType dumpContentType, String dateStamp, long position,
+			String lastEntityId, long documentCount) {
+		this.projectName = projectName;
+		this.dumpContentType = dumpContentType;
+		this.dateStamp = dateStamp;
+		this.position = position;
+		this.lastEntityId = lastEntityId;
+		this.documentCount = documentCount;
+	}
+
+	/**
+	 * Returns the position in the uncompressed dump where processing
+	 * continues. All documents before this position have been delivered.
+	 *
+	 * @return position in bytes
+	 */
+	public long getPosition() {
+		return this.position;
+	}
+
+	/**
+	 * Returns the id of the last entity that was delivered before the
+	 * checkpoint.
+	 *
+	 * @return entity id string, or null if no entity was delivered yet
+	 */
+	public String getLastEntityId() {
+		return this.lastEntityId;
+	}
+
+	/**
+	 * Returns the number of documents that were delivered before the
+	 * checkpoint.
+	 *
+	 * @return number of documents
+	 */
+	public long getDocumentCount() {
+		return this.documentCount;
+	}
+
+	/**
+	 * Checks if this checkpoint was created for the given dump. Dumps are
+	 * identified by their project name, content type, and date stamp.
+	 *
+	 * @param dumpFile
+	 *            the dump to compare with
+	 * @return true if the checkpoint belongs to the dump
+	 */
+	public boolean isForDumpFile(MwDumpFile dumpFile) {
+		return this.projectName.equals(dumpFile.getProjectName())
+				&& this.dumpContentType == dumpFile.getDumpContentType()
+				&& this.dateStamp.equals(dumpFile.getDateStamp());
+	}
+
+	@Override
+	public String toString() {
+		return "position " + this.position + " after " + this.documentCount
+				+ " documents (last entity: " + this.lastEntityId + ")";
+	}
+
+	/**
+	 * Writes the checkpoint to the given file. The data is first written to
+	 * a temporary file, which then replaces the given file, so that the file
+	 * always contains a complete checkpoint even if the program is terminated
+	 * while writing.
+	 *
+	 * @param file
+	 *            the file to write to
+	 * @throws IOException
+	 *             if the file could not be written
+	 */
+	void write(Path file) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(KEY_PROJECT, this.projectName);
+		properties.setProperty(KEY_TYPE, this.dumpContentType.toString());
+		properties.setProperty(KEY_DATE, this.dateStamp);
+		properties.setProperty(KEY_POSITION, Long.toString(this.position));
+		if (this.lastEntityId != null) {
+			properties.setProperty(KEY_LAST_ENTITY_ID, this.lastEntityId);
+		}
+		properties.setProperty(KEY_DOCUMENT_COUNT,
+				Long.toString(this.documentCount));
+
+		Path tempFile = file.resolveSibling(file.getFileName() + ".new");
+		try (OutputStream out = Files.newOutputStream(tempFile)) {
+			properties.store(out, "Wikidata Toolkit dump processing checkpoint");
+		}
+		Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads a checkpoint from the given file.
+	 *
+	 * @param file
+	 *            the file to read
+	 * @return the checkpoint, or null if the file does not exist
+	 * @throws IOException
+	 *             if the file could not be read or did not contain a valid
+	 *             checkpoint
+	 */
+	static DumpProcessingCheckpoint read(Path file) throws IOException {
+		if (!Files.exists(file)) {
+			return null;
+		}
+		Properties properties = new Properties();
+		try (InputStream in = Files.newInputStream(file)) {
+			properties.load(in);
+		}
+		try {
+			if (properties.getProperty(KEY_PROJECT) == null
+					|| properties.getProperty(KEY_DATE) == null) {
+				throw new IllegalArgumentException("Missing properties");
+			}
+			return new DumpProcessingCheckpoint(
+					properties.getProperty(KEY_PROJECT),
+					DumpContentType.valueOf(properties.getProperty(KEY_TYPE)),
+					properties.getProperty(KEY_DATE),
+					Long.parseLong(properties.getProperty(KEY_POSITION)),
+					properties.getProperty(KEY_LAST_ENTITY_ID),
+					Long.parseLong(properties.getProperty(KEY_DOCUMENT_COUNT)));
+		} catch (IllegalArgumentException | NullPointerException e) {
+			throw new IOException("Invalid checkpoint file " + file + ": "
+					+ e.toString(), e);
+		}
+	}
+}
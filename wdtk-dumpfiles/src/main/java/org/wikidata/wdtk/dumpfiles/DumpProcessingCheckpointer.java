@@ -0,0 +1,151 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocument;
+
+/**
+ * Keeps track of the progress of processing one JSON dump and periodically
+ * persists it as a {@link DumpProcessingCheckpoint}. The
+ * {@link JsonDumpFileProcessor} reports progress whenever documents have
+ * been delivered.
+ */
+class DumpProcessingCheckpointer {
+
+	static final Logger logger = LoggerFactory
+			.getLogger(DumpProcessingCheckpointer.class);
+
+	final Path checkpointFile;
+	final long interval;
+	final List<SnapshotHook> snapshotHooks;
+	final MwDumpFile dumpFile;
+
+	/**
+	 * Offset that is added to positions in the processed stream to get
+	 * positions in the dump. This is non-zero when processing was resumed.
+	 */
+	final long positionOffset;
+
+	long documentCount;
+	String lastEntityId;
+	long lastCheckpointTime;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param checkpointFile
+	 *            the file that checkpoints are written to
+	 * @param interval
+	 *            the minimal time between two checkpoints in milliseconds
+	 * @param snapshotHooks
+	 *            the processors to inform about checkpoints
+	 * @param dumpFile
+	 *            the dump that is processed
+	 * @param resumedCheckpoint
+	 *            the checkpoint that processing was resumed from, or null if
+	 *            the dump is processed from the start
+	 * @param streamStart
+	 *            the position in the dump that corresponds to the start of
+	 *            the processed stream
+	 */
+	DumpProcessingCheckpointer(Path checkpointFile, long interval,
+			List<SnapshotHook> snapshotHooks, MwDumpFile dumpFile,
+			DumpProcessingCheckpoint resumedCheckpoint, long streamStart) {
+		this.checkpointFile = checkpointFile;
+		this.interval = interval;
+		this.snapshotHooks = snapshotHooks;
+		this.dumpFile = dumpFile;
+		this.positionOffset = streamStart;
+		if (resumedCheckpoint != null) {
+			this.documentCount = resumedCheckpoint.documentCount;
+			this.lastEntityId = resumedCheckpoint.lastEntityId;
+		}
+		this.lastCheckpointTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Records that documents have been delivered to the processors, and
+	 * writes a checkpoint if the checkpoint interval has passed.
+	 *
+	 * @param nextPosition
+	 *            the position in the processed stream where the next
+	 *            unprocessed line starts
+	 * @param lastDocument
+	 *            the last document that was delivered, or null if no
+	 *            document was delivered
+	 * @param count
+	 *            the number of documents that were delivered
+	 */
+	void documentsDelivered(long nextPosition, EntityDocument lastDocument,
+			int count) {
+		this.documentCount += count;
+		if (lastDocument != null) {
+			this.lastEntityId = lastDocument.getEntityId().getId();
+		}
+		long now = System.currentTimeMillis();
+		if (now - this.lastCheckpointTime >= this.interval) {
+			this.lastCheckpointTime = now;
+			writeCheckpoint(new DumpProcessingCheckpoint(this.dumpFile,
+					this.positionOffset + nextPosition, this.lastEntityId,
+					this.documentCount));
+		}
+	}
+
+	/**
+	 * Removes the checkpoint file after the dump has been processed
+	 * completely.
+	 */
+	void finish() {
+		try {
+			Files.deleteIfExists(this.checkpointFile);
+		} catch (IOException e) {
+			logger.warn("Could not delete checkpoint file "
+					+ this.checkpointFile + ": " + e.toString());
+		}
+	}
+
+	/**
+	 * Calls the snapshot hooks and persists the given checkpoint. Errors are
+	 * logged, and the checkpoint is not persisted if any hook failed.
+	 *
+	 * @param checkpoint
+	 *            the checkpoint to write
+	 */
+	void writeCheckpoint(DumpProcessingCheckpoint checkpoint) {
+		try {
+			for (SnapshotHook snapshotHook : this.snapshotHooks) {
+				snapshotHook.saveSnapshot(checkpoint);
+			}
+			checkpoint.write(this.checkpointFile);
+			logger.info("Saved checkpoint at " + checkpoint + ".");
+		} catch (IOException e) {
+			logger.error("Could not save checkpoint at " + checkpoint + ": "
+					+ e.toString());
+		}
+	}
+}
@@ -20,15 +20,25 @@ package org.wikidata.wdtk.dumpfiles;
  * #L%
  */
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,7 +46,7 @@ import org.wikidata.wdtk.datamodel.helpers.Datamodel;
 import org.wikidata.wdtk.datamodel.interfaces.DocumentDataFilter;
 import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
 import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessorBroker;
-import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessorFilter;
+import org.wikidata.wdtk.datamodel.interfaces.MergeableEntityDocumentProcessor;
 import org.wikidata.wdtk.datamodel.interfaces.PropertyIdValue;
 import org.wikidata.wdtk.datamodel.interfaces.Sites;
 import org.wikidata.wdtk.dumpfiles.wmf.WmfDumpFileManager;
@@ -94,6 +104,32 @@ public class DumpProcessingController {
 	static final Logger logger = LoggerFactory
 			.getLogger(DumpProcessingController.class);
 
+	/**
+	 * Default minimal time between two checkpoints in milliseconds.
+	 */
+	public static final long DEFAULT_CHECKPOINT_INTERVAL = 10 * 60 * 1000;
+
+	/**
+	 * Maximal number of revisions that are buffered for each revision dump
+	 * that is read ahead when processing several revision dumps
+	 * concurrently.
+	 */
+	static final int REVISION_DUMP_QUEUE_CAPACITY = 10000;
+
+	/**
+	 * Default maximal size in bytes of the revision texts that are buffered
+	 * for each revision dump that is read ahead when processing several
+	 * revision dumps concurrently.
+	 */
+	public static final long DEFAULT_REVISION_DUMP_QUEUE_SIZE = 64 << 20;
+
+	/**
+	 * First line of JSON dumps, which is put in front of the data when
+	 * resuming processing in the middle of a dump.
+	 */
+	static final byte[] JSON_DUMP_START = "[\n"
+			.getBytes(StandardCharsets.UTF_8);
+
 	/**
 	 * Helper value class to store the registration settings of one listener.
 	 *
@@ -182,6 +218,42 @@ public class DumpProcessingController {
 
 	final DocumentDataFilter filter = new DocumentDataFilter();
 
+	/**
+	 * Number of threads used to parse JSON dumps.
+	 */
+	int parallelism = 1;
+
+	/**
+	 * Number of revision dumps that are read concurrently by
+	 * {@link #processAllRecentRevisionDumps()}.
+	 */
+	int concurrentRevisionDumps = 1;
+
+	long revisionDumpQueueSize = DEFAULT_REVISION_DUMP_QUEUE_SIZE;
+
+	/**
+	 * Should documents from JSON dumps be delivered in the order of the dump
+	 * when parsing with several threads?
+	 */
+	boolean preserveDocumentOrder = true;
+
+	/**
+	 * File that checkpoints of JSON dump processing are written to, or null
+	 * if checkpointing is disabled.
+	 */
+	Path checkpointFile = null;
+
+	/**
+	 * Minimal time between two checkpoints in milliseconds.
+	 */
+	long checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+	/**
+	 * Predicate that decides which entities are deserialized, or null if all
+	 * entities are deserialized.
+	 */
+	EntityPrefilter entityPrefilter = null;
+
 	/**
 	 * Creates a new DumpFileProcessingController for the project of the given
 	 * name. By default, the dump file directory will be assumed to be in the
@@ -274,6 +346,149 @@ public class DumpProcessingController {
 		this.filter.setLanguageFilter(languageFilter);
 	}
 
+	/**
+	 * Sets a prefilter that decides which entities are deserialized and
+	 * passed to the registered {@link EntityDocumentProcessor} objects. The
+	 * prefilter only sees the type and id of each entity, which can be
+	 * determined much faster than deserializing the entity. This makes it
+	 * cheap to skip most of a dump when only few entities are needed. Unlike
+	 * the other filters of this class, the prefilter removes whole entities.
+	 * It has no effect on registered {@link MwRevisionProcessor} objects.
+	 *
+	 * @see EntityPrefilter
+	 * @param entityPrefilter
+	 *            the prefilter, or null to process all entities
+	 */
+	public void setEntityPrefilter(EntityPrefilter entityPrefilter) {
+		this.entityPrefilter = entityPrefilter;
+	}
+
+	/**
+	 * Sets the number of threads that are used to parse JSON dumps. With a
+	 * value greater than one, a reader thread splits the dump into batches
+	 * that are parsed by the given number of worker threads. Registered
+	 * {@link EntityDocumentProcessor} objects are still called from one thread
+	 * only, so they need not be thread-safe. The default is 1, which processes
+	 * the dump on the calling thread.
+	 * <p>
+	 * Registered processors that implement
+	 * {@link MergeableEntityDocumentProcessor} are not called from the
+	 * calling thread but forked for each worker thread, which delivers the
+	 * documents that it parses to its own forks. Once the dump has been
+	 * processed, the forks are merged into the registered processors, so
+	 * that aggregating processors benefit from the parallelism, too. This is
+	 * only done for JSON dumps without checkpointing (see
+	 * {@link #setCheckpointFile(String)}).
+	 * <p>
+	 * For dumps that contain revisions, the XML is still parsed by the calling
+	 * thread, but the JSON of the revisions is deserialized by the given
+	 * number of worker threads. Entity documents are delivered in the same
+	 * order as without worker threads. Registered {@link MwRevisionProcessor}
+	 * objects are not affected by this setting.
+	 *
+	 * @param parallelism
+	 *            the number of parsing threads to use
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Sets the number of revision dumps that are decompressed and parsed
+	 * concurrently by {@link #processAllRecentRevisionDumps()}. This is
+	 * useful when many daily dumps need to be processed. The revisions are
+	 * still delivered one dump after the other, in the same order and with
+	 * the same filtering of duplicate and non-current revisions as when
+	 * reading the dumps one by one; dumps that are read ahead only buffer a
+	 * limited number of revisions until it is their turn (see
+	 * {@link #setRevisionDumpQueueSize(long)}). Registered processors are
+	 * called from the calling thread only. The default is 1, which reads one
+	 * dump after the other on the calling thread.
+	 *
+	 * @param concurrentRevisionDumps
+	 *            the number of revision dumps to read concurrently
+	 */
+	public void setConcurrentRevisionDumps(int concurrentRevisionDumps) {
+		this.concurrentRevisionDumps = concurrentRevisionDumps;
+	}
+
+	/**
+	 * Sets the maximal size in bytes of the revision texts that are buffered
+	 * for each revision dump that is read ahead when several revision dumps
+	 * are read concurrently (see {@link #setConcurrentRevisionDumps(int)}).
+	 * Texts are counted with two bytes per character. In the worst case,
+	 * the buffered revisions use about the number of concurrent dumps times
+	 * the sum of this size and the size of the largest revision, since a
+	 * single larger revision is always buffered. At most 10000 revisions are
+	 * buffered per dump in any case. The default is
+	 * {@link #DEFAULT_REVISION_DUMP_QUEUE_SIZE}.
+	 *
+	 * @param revisionDumpQueueSize
+	 *            the maximal size in bytes
+	 */
+	public void setRevisionDumpQueueSize(long revisionDumpQueueSize) {
+		this.revisionDumpQueueSize = revisionDumpQueueSize;
+	}
+
+	/**
+	 * Sets whether entity documents should be delivered in the order in which
+	 * they occur in the dump when JSON dumps are parsed with several threads
+	 * (see {@link #setParallelism(int)}). If false, documents are delivered as
+	 * soon as they have been parsed, which can keep worker threads busier.
+	 * The default is true.
+	 *
+	 * @param preserveDocumentOrder
+	 *            true if the order of documents in the dump should be kept
+	 */
+	public void setPreserveDocumentOrder(boolean preserveDocumentOrder) {
+		this.preserveDocumentOrder = preserveDocumentOrder;
+	}
+
+	/**
+	 * Enables checkpointing for the processing of JSON dumps. While a dump is
+	 * processed, the position up to which all documents have been delivered
+	 * is periodically written to the given file (see
+	 * {@link #setCheckpointInterval(long)}). Registered
+	 * {@link EntityDocumentProcessor} objects that implement
+	 * {@link SnapshotHook} are asked to save their state at each checkpoint.
+	 * <p>
+	 * If the file contains a checkpoint for the dump when
+	 * {@link #processDump(MwDumpFile)} is called, the snapshot hooks are asked
+	 * to restore their state, and processing resumes after the last
+	 * checkpoint instead of at the start of the dump. The file is deleted once
+	 * the dump has been processed completely. Resuming is fast for dumps of
+	 * type {@link GzipCheckpointDumpFile} and {@link MappedDumpFile}; other
+	 * dumps are decompressed up to the checkpoint again, but without parsing
+	 * their content.
+	 * <p>
+	 * When checkpointing is enabled, documents are always delivered in the
+	 * order of the dump (see {@link #setPreserveDocumentOrder(boolean)}). The
+	 * setting has no effect on dumps that contain revisions.
+	 *
+	 * @param checkpointFile
+	 *            path of the checkpoint file, or null to disable
+	 *            checkpointing
+	 */
+	public void setCheckpointFile(String checkpointFile) {
+		if (checkpointFile == null) {
+			this.checkpointFile = null;
+		} else {
+			this.checkpointFile = Paths.get(checkpointFile);
+		}
+	}
+
+	/**
+	 * Sets the minimal time between two checkpoints when checkpointing is
+	 * enabled with {@link #setCheckpointFile(String)}. The default is
+	 * {@link #DEFAULT_CHECKPOINT_INTERVAL}.
+	 *
+	 * @param checkpointInterval
+	 *            time in milliseconds
+	 */
+	public void setCheckpointInterval(long checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+	}
+
 	/**
 	 * Registers an MwRevisionProcessor, which will henceforth be notified of
 	 * all revisions that are encountered in the dump.
@@ -380,14 +595,68 @@ public class DumpProcessingController {
 			return;
 		}
 
+		List<MwDumpFile> dumpFiles = wmfDumpFileManager
+				.findAllRelevantRevisionDumps(this.preferCurrent);
+		if (this.concurrentRevisionDumps > 1 && dumpFiles.size() > 1) {
+			processRevisionDumpsConcurrently(dumpFiles);
+			return;
+		}
+
 		MwDumpFileProcessor dumpFileProcessor = getRevisionDumpFileProcessor();
 
-		for (MwDumpFile dumpFile : wmfDumpFileManager
-				.findAllRelevantRevisionDumps(this.preferCurrent)) {
+		for (MwDumpFile dumpFile : dumpFiles) {
 			processDumpFile(dumpFile, dumpFileProcessor);
 		}
 	}
 
+	/**
+	 * Processes the given revision dumps in order, while reading up to
+	 * {@link #concurrentRevisionDumps} of them concurrently. Each dump is read
+	 * by a worker thread into a {@link QueuedRevisionProcessor}, and the
+	 * queued revisions are passed on to the registered processors on the
+	 * calling thread, one dump after the other. Hence the processors see the
+	 * same revisions in the same order as with sequential processing.
+	 *
+	 * @param dumpFiles
+	 *            the dumps to process, most recent dump first
+	 */
+	void processRevisionDumpsConcurrently(List<MwDumpFile> dumpFiles) {
+		MwRevisionProcessor mwRevisionProcessor = getMasterMwRevisionProcessor();
+		ExecutorService readers = Executors.newFixedThreadPool(
+				this.concurrentRevisionDumps, new DaemonThreadFactory(
+						"wdtk-revision-dump-reader-"));
+		try {
+			List<QueuedRevisionProcessor> queues = new ArrayList<>();
+			for (MwDumpFile dumpFile : dumpFiles) {
+				QueuedRevisionProcessor queue = new QueuedRevisionProcessor(
+						REVISION_DUMP_QUEUE_CAPACITY,
+						this.revisionDumpQueueSize);
+				queues.add(queue);
+				// the pool starts the dumps in order, so that the dump that
+				// is replayed is always being read
+				readers.execute(() -> {
+					RuntimeException failure = null;
+					try {
+						processDumpFile(dumpFile,
+								new MwRevisionDumpFileProcessor(queue));
+					} catch (RuntimeException e) {
+						failure = e;
+					}
+					// after an interruption, nobody replays the queue anymore
+					if (!Thread.currentThread().isInterrupted()) {
+						queue.endOfDump(failure);
+					}
+				});
+			}
+
+			for (QueuedRevisionProcessor queue : queues) {
+				queue.replay(mwRevisionProcessor);
+			}
+		} finally {
+			readers.shutdownNow();
+		}
+	}
+
 	/**
 	 * Processes the most recent main (complete) dump that is available.
 	 * Convenience method: same as retrieving a dump with
@@ -447,8 +716,12 @@ public class DumpProcessingController {
 			dumpFileProcessor = getRevisionDumpFileProcessor();
 			break;
 		case JSON:
-			dumpFileProcessor = getJsonDumpFileProcessor();
-			break;
+			if (this.checkpointFile != null) {
+				processJsonDumpWithCheckpoints(dumpFile);
+			} else {
+				processJsonDump(dumpFile);
+			}
+			return;
 		case SITES:
 		default:
 			logger.error("Dumps of type " + dumpFile.getDumpContentType()
@@ -494,8 +767,42 @@ public class DumpProcessingController {
 	 */
 	void processDumpFile(MwDumpFile dumpFile,
 			MwDumpFileProcessor dumpFileProcessor) {
-		try (InputStream inputStream = dumpFile.getDumpFileStream()) {
-			dumpFileProcessor.processDumpFileContents(inputStream, dumpFile);
+		processDumpFile(dumpFile, dumpFileProcessor, 0);
+	}
+
+	/**
+	 * Processes one dump file with the given dump file processor, starting
+	 * at the given position, and handling exceptions appropriately.
+	 *
+	 * @param dumpFile
+	 *            the dump file to process
+	 * @param dumpFileProcessor
+	 *            the dump file processor to use
+	 * @param position
+	 *            the position in the uncompressed JSON dump where processing
+	 *            should start, or 0 to process the whole dump
+	 * @return true if the dump was processed without errors
+	 */
+	boolean processDumpFile(MwDumpFile dumpFile,
+			MwDumpFileProcessor dumpFileProcessor, long position) {
+		try {
+			if (position == 0
+					&& dumpFileProcessor instanceof JsonDumpFileProcessor) {
+				// JSON dumps are read into the line buffer directly
+				try (ReadableByteChannel channel = dumpFile
+						.getDumpFileChannel()) {
+					((JsonDumpFileProcessor) dumpFileProcessor)
+							.processDumpFileContents(channel, dumpFile);
+				}
+			} else {
+				try (InputStream inputStream = position == 0 ? dumpFile
+						.getDumpFileStream() : openJsonDumpFileStream(
+						dumpFile, position)) {
+					dumpFileProcessor.processDumpFileContents(inputStream,
+							dumpFile);
+				}
+			}
+			return true;
 		} catch (FileAlreadyExistsException e) {
 			logger.error("Dump file "
 					+ dumpFile.toString()
@@ -506,6 +813,147 @@ public class DumpProcessingController {
 			logger.error("Dump file " + dumpFile.toString()
 					+ " could not be processed: " + e.toString());
 		}
+		return false;
+	}
+
+	/**
+	 * Processes a JSON dump without checkpointing. If several threads are
+	 * used, registered {@link MergeableEntityDocumentProcessor} objects are
+	 * forked for the worker threads, and the forks are merged afterwards.
+	 * This also happens if processing was aborted with an exception, so that
+	 * the processors hold the results of all documents that were processed.
+	 *
+	 * @param dumpFile
+	 *            the dump to process
+	 */
+	void processJsonDump(MwDumpFile dumpFile) {
+		MergeableProcessorForks forks = null;
+		if (this.parallelism > 1) {
+			List<MergeableEntityDocumentProcessor<?>> mergeableProcessors = getMergeableProcessors();
+			if (!mergeableProcessors.isEmpty()) {
+				forks = new MergeableProcessorForks(mergeableProcessors);
+			}
+		}
+
+		try {
+			processDumpFile(dumpFile, getJsonDumpFileProcessor(forks));
+		} finally {
+			if (forks != null) {
+				forks.mergeForks();
+			}
+		}
+	}
+
+	/**
+	 * Processes a JSON dump with checkpointing, resuming from the last
+	 * checkpoint if there is one for this dump.
+	 *
+	 * @param dumpFile
+	 *            the dump file to process
+	 * @see #setCheckpointFile(String)
+	 */
+	void processJsonDumpWithCheckpoints(MwDumpFile dumpFile) {
+		List<SnapshotHook> snapshotHooks = getSnapshotHooks();
+
+		DumpProcessingCheckpoint checkpoint;
+		try {
+			checkpoint = DumpProcessingCheckpoint.read(this.checkpointFile);
+		} catch (IOException e) {
+			logger.error("Could not read checkpoint file "
+					+ this.checkpointFile + ": " + e.toString());
+			return;
+		}
+		if (checkpoint != null && !checkpoint.isForDumpFile(dumpFile)) {
+			logger.warn("Ignoring checkpoint file " + this.checkpointFile
+					+ " since it was created for a different dump.");
+			checkpoint = null;
+		}
+
+		long position = 0;
+		long streamStart = 0;
+		if (checkpoint != null) {
+			try {
+				for (SnapshotHook snapshotHook : snapshotHooks) {
+					snapshotHook.restoreSnapshot(checkpoint);
+				}
+			} catch (IOException e) {
+				logger.error("Could not restore processor state for checkpoint at "
+						+ checkpoint + ": " + e.toString());
+				return;
+			}
+			logger.info("Resuming processing of dump file "
+					+ dumpFile.toString() + " from checkpoint at "
+					+ checkpoint + ".");
+			position = checkpoint.getPosition();
+			streamStart = position - JSON_DUMP_START.length;
+		}
+
+		JsonDumpFileProcessor dumpFileProcessor = new JsonDumpFileProcessor(
+				getMasterEntityDocumentProcessor(), Datamodel.SITE_WIKIDATA,
+				this.parallelism, true);
+		dumpFileProcessor.setPrefilter(this.entityPrefilter);
+		dumpFileProcessor.setDocumentDataFilter(this.filter);
+		dumpFileProcessor.checkpointer = new DumpProcessingCheckpointer(
+				this.checkpointFile, this.checkpointInterval, snapshotHooks,
+				dumpFile, checkpoint, streamStart);
+
+		if (processDumpFile(dumpFile, dumpFileProcessor, position)) {
+			dumpFileProcessor.checkpointer.finish();
+		}
+	}
+
+	/**
+	 * Opens a stream for the given JSON dump that starts at the given
+	 * position. The first line of JSON dumps is put in front of the data, so
+	 * that the result can be processed like a complete dump.
+	 *
+	 * @param dumpFile
+	 *            the dump file to read
+	 * @param position
+	 *            the position of a line start in the uncompressed dump
+	 * @return the stream
+	 * @throws IOException
+	 *             if the dump could not be read up to the position
+	 */
+	InputStream openJsonDumpFileStream(MwDumpFile dumpFile, long position)
+			throws IOException {
+		InputStream inputStream;
+		long skip = position;
+		if (dumpFile instanceof GzipCheckpointDumpFile) {
+			GzipCheckpointDumpFile checkpointDumpFile = (GzipCheckpointDumpFile) dumpFile;
+			GzipCheckpointIndex index = checkpointDumpFile
+					.getCheckpointIndex();
+			int start = index.findCheckpoint(position);
+			inputStream = checkpointDumpFile.getDumpFileStream(start, index
+					.getCheckpoints().size());
+			skip -= index.getCheckpoints().get(start).getUncompressedOffset();
+		} else if (dumpFile instanceof MappedDumpFile) {
+			inputStream = ((MappedDumpFile) dumpFile).getDumpFileStream(
+					position, -1);
+			skip = 0;
+		} else {
+			inputStream = dumpFile.getDumpFileStream();
+		}
+
+		try {
+			while (skip > 0) {
+				long skipped = inputStream.skip(skip);
+				if (skipped <= 0) {
+					if (inputStream.read() < 0) {
+						throw new EOFException(
+								"Dump ended before the checkpoint position");
+					}
+					skipped = 1;
+				}
+				skip -= skipped;
+			}
+		} catch (IOException e) {
+			inputStream.close();
+			throw e;
+		}
+
+		return new SequenceInputStream(new ByteArrayInputStream(
+				JSON_DUMP_START), inputStream);
 	}
 
 	/**
@@ -545,11 +993,26 @@ public class DumpProcessingController {
 	 * Return the main dump file processor that should be used to process the
 	 * content of JSON dumps.
 	 *
+	 * @param forks
+	 *            the forks of mergeable processors to use on the worker
+	 *            threads, or null if all processors are called from the
+	 *            calling thread
 	 * @return the main MwDumpFileProcessor for JSON
 	 */
-	MwDumpFileProcessor getJsonDumpFileProcessor() {
-		return new JsonDumpFileProcessor(getMasterEntityDocumentProcessor(),
-				Datamodel.SITE_WIKIDATA);
+	MwDumpFileProcessor getJsonDumpFileProcessor(MergeableProcessorForks forks) {
+		EntityDocumentProcessor masterProcessor;
+		if (forks == null) {
+			masterProcessor = getMasterEntityDocumentProcessor();
+		} else {
+			masterProcessor = getMasterEntityDocumentProcessor(forks.processors);
+		}
+		JsonDumpFileProcessor result = new JsonDumpFileProcessor(
+				masterProcessor, Datamodel.SITE_WIKIDATA, this.parallelism,
+				this.preserveDocumentOrder);
+		result.setPrefilter(this.entityPrefilter);
+		result.setDocumentDataFilter(this.filter);
+		result.setWorkerProcessors(forks);
+		return result;
 	}
 
 	/**
@@ -584,19 +1047,75 @@ public class DumpProcessingController {
 		processors.get(listenerRegistration).add(processor);
 	}
 
+	/**
+	 * Returns all registered {@link EntityDocumentProcessor} objects that
+	 * implement {@link SnapshotHook}.
+	 *
+	 * @return list of snapshot hooks
+	 */
+	private List<SnapshotHook> getSnapshotHooks() {
+		List<SnapshotHook> result = new ArrayList<>();
+		for (List<EntityDocumentProcessor> processors : this.entityDocumentProcessors
+				.values()) {
+			for (EntityDocumentProcessor edp : processors) {
+				if (edp instanceof SnapshotHook && !result.contains(edp)) {
+					result.add((SnapshotHook) edp);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns all registered {@link EntityDocumentProcessor} objects that
+	 * implement {@link MergeableEntityDocumentProcessor}.
+	 *
+	 * @return list of mergeable processors
+	 */
+	private List<MergeableEntityDocumentProcessor<?>> getMergeableProcessors() {
+		List<MergeableEntityDocumentProcessor<?>> result = new ArrayList<>();
+		for (List<EntityDocumentProcessor> processors : this.entityDocumentProcessors
+				.values()) {
+			for (EntityDocumentProcessor edp : processors) {
+				if (edp instanceof MergeableEntityDocumentProcessor
+						&& !result.contains(edp)) {
+					result.add((MergeableEntityDocumentProcessor<?>) edp);
+				}
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Returns an {@link EntityDocumentProcessor} object that calls all
-	 * registered processors and that takes filters into account if needed.
+	 * registered processors. Filters are not applied by this processor, but
+	 * when parsing the documents.
 	 *
 	 * @return the master processor
 	 */
 	private EntityDocumentProcessor getMasterEntityDocumentProcessor() {
+		return getMasterEntityDocumentProcessor(Collections.emptyList());
+	}
+
+	/**
+	 * Returns an {@link EntityDocumentProcessor} object that calls all
+	 * registered processors except for the given ones.
+	 *
+	 * @param excludedProcessors
+	 *            the processors that should not be called
+	 * @return the master processor, or null if there are no other processors
+	 */
+	private EntityDocumentProcessor getMasterEntityDocumentProcessor(
+			List<?> excludedProcessors) {
 		EntityDocumentProcessor result = null;
 		EntityDocumentProcessorBroker broker = null;
 
 		for (Map.Entry<ListenerRegistration, List<EntityDocumentProcessor>> entry : this.entityDocumentProcessors
 				.entrySet()) {
 			for (EntityDocumentProcessor edp : entry.getValue()) {
+				if (excludedProcessors.contains(edp)) {
+					continue;
+				}
 				if (result == null) {
 					result = edp;
 				} else {
@@ -610,27 +1129,7 @@ public class DumpProcessingController {
 			}
 		}
 
-		return filterEntityDocumentProcessor(result);
-	}
-
-	/**
-	 * Wraps the given processor into a {@link EntityDocumentProcessorFilter} if
-	 * global filters are configured; otherwise just returns the processor
-	 * unchanged.
-	 *
-	 * @param processor
-	 *            the processor to wrap
-	 */
-	private EntityDocumentProcessor filterEntityDocumentProcessor(
-			EntityDocumentProcessor processor) {
-		if (this.filter.getPropertyFilter() == null
-				&& this.filter.getSiteLinkFilter() == null
-				&& this.filter.getLanguageFilter() == null) {
-			return processor;
-		} else {
-			return new EntityDocumentProcessorFilter(
-					processor, this.filter);
-		}
+		return result;
 	}
 
 	/**
@@ -663,10 +1162,13 @@ public class DumpProcessingController {
 				resultEdp = edpb;
 			}
 
-			result.registerMwRevisionProcessor(new WikibaseRevisionProcessor(
-					filterEntityDocumentProcessor(resultEdp),
-					Datamodel.SITE_WIKIDATA), edpEntry.getKey().model, edpEntry
-					.getKey().onlyCurrentRevisions);
+			WikibaseRevisionProcessor wikibaseRevisionProcessor = new WikibaseRevisionProcessor(
+					resultEdp, Datamodel.SITE_WIKIDATA, this.filter);
+			wikibaseRevisionProcessor.setPrefilter(this.entityPrefilter);
+			wikibaseRevisionProcessor.setParallelism(this.parallelism);
+			result.registerMwRevisionProcessor(wikibaseRevisionProcessor,
+					edpEntry.getKey().model,
+					edpEntry.getKey().onlyCurrentRevisions);
 		}
 
 		return result;
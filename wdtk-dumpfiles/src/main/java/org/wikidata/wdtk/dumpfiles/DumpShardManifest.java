@@ -0,0 +1,347 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Description of a JSON dump that was split into shards by
+ * {@link DumpSharder}. The manifest records how entities were assigned to
+ * shards, and the name, number of entities, and size of each shard file.
+ * Manifests are stored as property files with the suffix
+ * {@link #MANIFEST_FILE_SUFFIX}, next to the shard files.
+ * <p>
+ * A manifest can be processed like a dump using {@link MwLocalDumpFile},
+ * which reads all shards or a chosen subset of them, see
+ * {@link MwLocalDumpFile#selectShards(int...)}.
+ */
+public class DumpShardManifest {
+
+	/**
+	 * Suffix of the names of manifest files.
+	 */
+	public static final String MANIFEST_FILE_SUFFIX = ".shards";
+
+	/**
+	 * Ways of assigning entities to shards.
+	 */
+	public enum Partitioning {
+		/**
+		 * Entities are assigned by the hash code of their id, which spreads
+		 * them evenly over all shards.
+		 */
+		HASH,
+		/**
+		 * Entities are assigned by the number in their id, so that each
+		 * shard contains one range of ids. Entities with ids that have no
+		 * number are assigned by hash code.
+		 */
+		ID_RANGE
+	}
+
+	static final String KEY_PROJECT = "project";
+	static final String KEY_DATE = "date";
+	static final String KEY_PARTITIONING = "partitioning";
+	static final String KEY_MAX_ID = "maxNumericId";
+	static final String KEY_SHARDS = "shards";
+	static final String KEY_SHARD_PREFIX = "shard.";
+	static final String KEY_FILE = ".file";
+	static final String KEY_ENTITIES = ".entities";
+	static final String KEY_BYTES = ".bytes";
+	static final String KEY_UNCOMPRESSED_BYTES = ".uncompressedBytes";
+
+	/**
+	 * Information about one shard file.
+	 */
+	public static class Shard {
+
+		final String fileName;
+		long entityCount = 0;
+		long size = 0;
+		long uncompressedSize = 0;
+
+		Shard(String fileName) {
+			this.fileName = fileName;
+		}
+
+		/**
+		 * Returns the name of the shard file, which is in the same directory
+		 * as the manifest.
+		 *
+		 * @return file name
+		 */
+		public String getFileName() {
+			return this.fileName;
+		}
+
+		/**
+		 * Returns the number of entities in the shard.
+		 *
+		 * @return number of entities
+		 */
+		public long getEntityCount() {
+			return this.entityCount;
+		}
+
+		/**
+		 * Returns the size of the compressed shard file.
+		 *
+		 * @return size in bytes
+		 */
+		public long getSize() {
+			return this.size;
+		}
+
+		/**
+		 * Returns the size of the uncompressed content of the shard file.
+		 *
+		 * @return size in bytes
+		 */
+		public long getUncompressedSize() {
+			return this.uncompressedSize;
+		}
+	}
+
+	final String projectName;
+	final String dateStamp;
+	final Partitioning partitioning;
+	final long maxNumericId;
+	final List<Shard> shards;
+
+	/**
+	 * Number of consecutive ids per shard for {@link Partitioning#ID_RANGE}.
+	 */
+	final long rangeSize;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param projectName
+	 *            project name of the dump
+	 * @param dateStamp
+	 *            date stamp of the dump
+	 * @param partitioning
+	 *            the way in which entities are assigned to shards
+	 * @param maxNumericId
+	 *            the largest id number that is expected for
+	 *            {@link Partitioning#ID_RANGE}; larger ids are assigned to
+	 *            the last shard
+	 * @param shards
+	 *            the shards
+	 */
+	DumpShardManifest(String projectName, String dateStamp,
+			Partitioning partitioning, long maxNumericId, List<Shard> shards) {
+		this.projectName = projectName;
+		this.dateStamp = dateStamp;
+		this.partitioning = partitioning;
+		this.maxNumericId = maxNumericId;
+		this.shards = shards;
+		this.rangeSize = maxNumericId / shards.size() + 1;
+	}
+
+	/**
+	 * Returns the project name of the dump that was split.
+	 *
+	 * @return project name
+	 */
+	public String getProjectName() {
+		return this.projectName;
+	}
+
+	/**
+	 * Returns the date stamp of the dump that was split.
+	 *
+	 * @return date stamp
+	 */
+	public String getDateStamp() {
+		return this.dateStamp;
+	}
+
+	/**
+	 * Returns the way in which entities were assigned to shards.
+	 *
+	 * @return partitioning
+	 */
+	public Partitioning getPartitioning() {
+		return this.partitioning;
+	}
+
+	/**
+	 * Returns the shards in the order of their indexes.
+	 *
+	 * @return unmodifiable list of shards
+	 */
+	public List<Shard> getShards() {
+		return Collections.unmodifiableList(this.shards);
+	}
+
+	/**
+	 * Returns the total number of entities in all shards.
+	 *
+	 * @return number of entities
+	 */
+	public long getEntityCount() {
+		long result = 0;
+		for (Shard shard : this.shards) {
+			result += shard.entityCount;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the index of the shard that contains the entity with the given
+	 * id.
+	 *
+	 * @param entityId
+	 *            the id of the entity, e.g., "Q42"
+	 * @return index of the shard
+	 */
+	public int getShardIndex(String entityId) {
+		if (this.partitioning == Partitioning.ID_RANGE) {
+			long number = getIdNumber(entityId);
+			if (number >= 0) {
+				return (int) Math.min(this.shards.size() - 1, number
+						/ this.rangeSize);
+			}
+		}
+		return Math.floorMod(entityId.hashCode(), this.shards.size());
+	}
+
+	/**
+	 * Writes the manifest to the given file. The data is first written to a
+	 * temporary file, which then replaces the given file.
+	 *
+	 * @param file
+	 *            the file to write to
+	 * @throws IOException
+	 *             if the file could not be written
+	 */
+	void write(Path file) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(KEY_PROJECT, this.projectName);
+		properties.setProperty(KEY_DATE, this.dateStamp);
+		properties.setProperty(KEY_PARTITIONING, this.partitioning.toString());
+		properties.setProperty(KEY_MAX_ID, Long.toString(this.maxNumericId));
+		properties.setProperty(KEY_SHARDS, Integer.toString(this.shards.size()));
+		for (int i = 0; i < this.shards.size(); i++) {
+			Shard shard = this.shards.get(i);
+			String prefix = KEY_SHARD_PREFIX + i;
+			properties.setProperty(prefix + KEY_FILE, shard.fileName);
+			properties.setProperty(prefix + KEY_ENTITIES,
+					Long.toString(shard.entityCount));
+			properties.setProperty(prefix + KEY_BYTES,
+					Long.toString(shard.size));
+			properties.setProperty(prefix + KEY_UNCOMPRESSED_BYTES,
+					Long.toString(shard.uncompressedSize));
+		}
+
+		Path tempFile = file.resolveSibling(file.getFileName() + ".new");
+		try (OutputStream out = Files.newOutputStream(tempFile)) {
+			properties.store(out, "Wikidata Toolkit dump shards");
+		}
+		Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads a manifest from the given stream.
+	 *
+	 * @param inputStream
+	 *            the stream to read from; it is closed afterwards
+	 * @return the manifest
+	 * @throws IOException
+	 *             if the stream could not be read or did not contain a valid
+	 *             manifest
+	 */
+	public static DumpShardManifest read(InputStream inputStream)
+			throws IOException {
+		Properties properties = new Properties();
+		try (InputStream in = inputStream) {
+			properties.load(in);
+		}
+		try {
+			int shardCount = Integer.parseInt(properties
+					.getProperty(KEY_SHARDS));
+			List<Shard> shards = new ArrayList<>(shardCount);
+			for (int i = 0; i < shardCount; i++) {
+				String prefix = KEY_SHARD_PREFIX + i;
+				String fileName = properties.getProperty(prefix + KEY_FILE);
+				if (fileName == null) {
+					throw new IllegalArgumentException("Missing file of shard "
+							+ i);
+				}
+				Shard shard = new Shard(fileName);
+				shard.entityCount = Long.parseLong(properties
+						.getProperty(prefix + KEY_ENTITIES));
+				shard.size = Long.parseLong(properties.getProperty(prefix
+						+ KEY_BYTES));
+				shard.uncompressedSize = Long.parseLong(properties
+						.getProperty(prefix + KEY_UNCOMPRESSED_BYTES));
+				shards.add(shard);
+			}
+			return new DumpShardManifest(properties.getProperty(KEY_PROJECT),
+					properties.getProperty(KEY_DATE),
+					Partitioning.valueOf(properties
+							.getProperty(KEY_PARTITIONING)),
+					Long.parseLong(properties.getProperty(KEY_MAX_ID)), shards);
+		} catch (IllegalArgumentException | NullPointerException e) {
+			throw new IOException("Invalid dump shard manifest: "
+					+ e.toString(), e);
+		}
+	}
+
+	/**
+	 * Returns the number that follows the letters at the start of the given
+	 * id.
+	 *
+	 * @param entityId
+	 *            an id such as "Q42"
+	 * @return the number, or -1 if the id does not have this form
+	 */
+	static long getIdNumber(String entityId) {
+		int i = 0;
+		while (i < entityId.length() && entityId.charAt(i) >= 'A'
+				&& entityId.charAt(i) <= 'Z') {
+			i++;
+		}
+		if (i == 0 || i == entityId.length() || entityId.length() - i > 18) {
+			return -1;
+		}
+		long number = 0;
+		for (; i < entityId.length(); i++) {
+			char c = entityId.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			number = 10 * number + (c - '0');
+		}
+		return number;
+	}
+}
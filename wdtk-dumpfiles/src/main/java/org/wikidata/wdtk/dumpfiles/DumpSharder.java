@@ -0,0 +1,274 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wikidata.wdtk.dumpfiles.DumpShardManifest.Partitioning;
+import org.wikidata.wdtk.dumpfiles.DumpShardManifest.Shard;
+import org.wikidata.wdtk.dumpfiles.DumpSorter.EntityLine;
+import org.wikidata.wdtk.util.DirectoryManager;
+import org.wikidata.wdtk.util.DirectoryManagerFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Splits a JSON dump into several gzip-compressed shard files, so that the
+ * shards can be processed independently, e.g., on several machines. The
+ * dump is read once, and each entity is written unchanged to one shard, as a
+ * single line of JSON. Entities are assigned to shards by the hash code of
+ * their id or by id ranges.
+ * <p>
+ * A manifest with the number of entities and the sizes of all shards is
+ * written next to the shards. The manifest can be processed like a dump
+ * using {@link MwLocalDumpFile}, either completely or for a subset of the
+ * shards.
+ *
+ * @see DumpShardManifest
+ */
+public class DumpSharder {
+
+	static final Logger logger = LoggerFactory.getLogger(DumpSharder.class);
+
+	/**
+	 * Infix between the base name and the index in the names of shard files.
+	 */
+	static final String SHARD_FILE_INFIX = "-shard-";
+
+	/**
+	 * Suffix of the names of shard files.
+	 */
+	static final String SHARD_FILE_SUFFIX = ".json.gz";
+
+	static final JsonFactory jsonFactory = new JsonFactory();
+
+	final int shardCount;
+	Partitioning partitioning = Partitioning.HASH;
+	long maxNumericId = 0;
+
+	/**
+	 * Constructor. By default, entities are assigned to shards by the hash
+	 * code of their id.
+	 *
+	 * @param shardCount
+	 *            the number of shards to create
+	 */
+	public DumpSharder(int shardCount) {
+		if (shardCount <= 0) {
+			throw new IllegalArgumentException(
+					"The number of shards must be positive.");
+		}
+		this.shardCount = shardCount;
+	}
+
+	/**
+	 * Assigns entities to shards by ranges of ids instead of hash codes. The
+	 * numbers from 0 to the given maximum are divided into ranges of equal
+	 * size, one for each shard. Entities with larger numbers are assigned to
+	 * the last shard. Entity types with different id letters share the same
+	 * ranges.
+	 *
+	 * @param maxNumericId
+	 *            the largest id number that is expected, e.g., 1000000 for
+	 *            ids up to "Q1000000"
+	 */
+	public void setIdRangePartitioning(long maxNumericId) {
+		if (maxNumericId < 0) {
+			throw new IllegalArgumentException(
+					"The maximal id number must not be negative.");
+		}
+		this.partitioning = Partitioning.ID_RANGE;
+		this.maxNumericId = maxNumericId;
+	}
+
+	/**
+	 * Splits the given JSON dump into shards. The shard files and the
+	 * manifest are created in the given directory. Their names start with
+	 * the given base name; the manifest is called "&lt;baseName&gt;"
+	 * followed by {@link DumpShardManifest#MANIFEST_FILE_SUFFIX}. Existing
+	 * files are overwritten.
+	 *
+	 * @param dumpFile
+	 *            the JSON dump to split
+	 * @param directory
+	 *            the directory to write to
+	 * @param baseName
+	 *            the prefix of all file names
+	 * @return the manifest of the shards
+	 * @throws IOException
+	 *             if the dump could not be read or the shards could not be
+	 *             written
+	 */
+	public DumpShardManifest shardDump(MwDumpFile dumpFile, Path directory,
+			String baseName) throws IOException {
+		if (dumpFile.getDumpContentType() != DumpContentType.JSON) {
+			throw new IllegalArgumentException("Only JSON dumps can be sharded.");
+		}
+		logger.info("Splitting " + dumpFile + " into " + this.shardCount
+				+ " shards in " + directory);
+
+		DirectoryManager directoryManager = DirectoryManagerFactory
+				.createDirectoryManager(directory, false);
+		List<Shard> shards = new ArrayList<>(this.shardCount);
+		for (int i = 0; i < this.shardCount; i++) {
+			shards.add(new Shard(baseName + SHARD_FILE_INFIX + i
+					+ SHARD_FILE_SUFFIX));
+		}
+		DumpShardManifest manifest = new DumpShardManifest(
+				dumpFile.getProjectName(), dumpFile.getDateStamp(),
+				this.partitioning, this.maxNumericId, shards);
+
+		CountingOutputStream[] compressedStreams = new CountingOutputStream[this.shardCount];
+		OutputStream[] outputStreams = new OutputStream[this.shardCount];
+		try (ReadableByteChannel channel = dumpFile.getDumpFileChannel();
+				ByteLineReader lineReader = new ByteLineReader(channel)) {
+			for (int i = 0; i < this.shardCount; i++) {
+				compressedStreams[i] = new CountingOutputStream(
+						directoryManager.getOutputStreamForFile(shards.get(i)
+								.getFileName()));
+				outputStreams[i] = new GZIPOutputStream(compressedStreams[i],
+						ByteLineReader.DEFAULT_BUFFER_SIZE);
+			}
+
+			while (lineReader.nextLine()) {
+				EntityLine line = readEntityLine(lineReader);
+				if (line == null) {
+					continue;
+				}
+
+				int index = 0;
+				if (line.entityId != null) {
+					index = manifest.getShardIndex(line.entityId);
+				} else {
+					logger.warn("Could not find id of entity; adding it to shard 0: "
+							+ lineReader.getLinePrefix(50));
+				}
+				outputStreams[index].write(line.json);
+				outputStreams[index].write('\n');
+				Shard shard = shards.get(index);
+				shard.entityCount++;
+				shard.uncompressedSize += line.json.length + 1;
+			}
+		} finally {
+			for (OutputStream outputStream : outputStreams) {
+				if (outputStream != null) {
+					outputStream.close();
+				}
+			}
+		}
+
+		for (int i = 0; i < this.shardCount; i++) {
+			shards.get(i).size = compressedStreams[i].count;
+		}
+		manifest.write(directory.resolve(baseName
+				+ DumpShardManifest.MANIFEST_FILE_SUFFIX));
+
+		logger.info("Split " + manifest.getEntityCount() + " entities of "
+				+ dumpFile + " into " + this.shardCount + " shards.");
+		return manifest;
+	}
+
+	/**
+	 * Reads the entity on the current line of the given reader of a JSON
+	 * dump with one entity per line. The comma that separates the entity
+	 * from the next one is not part of the returned JSON.
+	 *
+	 * @return the entity line, whose id is null if it could not be found,
+	 *         or null if the line holds the opening or closing bracket of
+	 *         the JSON array
+	 */
+	static EntityLine readEntityLine(ByteLineReader lineReader) {
+		byte[] buffer = lineReader.getBuffer();
+		int offset = lineReader.getLineOffset();
+		int length = lineReader.getLineLength();
+		if (length > 0 && buffer[offset + length - 1] == ',') {
+			length--;
+		}
+		if (length <= 1) {
+			return null;
+		}
+		return new EntityLine(readEntityId(buffer, offset, length),
+				Arrays.copyOfRange(buffer, offset, offset + length));
+	}
+
+	/**
+	 * Reads the top-level "id" field of the entity with the given JSON
+	 * serialization. The values of other fields are skipped without being
+	 * parsed into objects.
+	 *
+	 * @return the id, or null if it could not be found
+	 */
+	static String readEntityId(byte[] buffer, int offset, int length) {
+		try (JsonParser parser = jsonFactory.createParser(buffer, offset,
+				length)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return null;
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String fieldName = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
+				if (value == JsonToken.VALUE_STRING && "id".equals(fieldName)) {
+					return parser.getText();
+				}
+				parser.skipChildren();
+			}
+		} catch (IOException e) {
+			// broken JSON; the entity is assigned to the first shard
+		}
+		return null;
+	}
+
+	/**
+	 * Output stream that counts the bytes written to it.
+	 */
+	static class CountingOutputStream extends FilterOutputStream {
+
+		long count = 0;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			this.out.write(b);
+			this.count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			this.out.write(b, off, len);
+			this.count += len;
+		}
+	}
+}
@@ -0,0 +1,422 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wikidata.wdtk.util.DirectoryManager;
+import org.wikidata.wdtk.util.DirectoryManagerFactory;
+
+/**
+ * Sorts the entities of a JSON dump by their ids, as needed by
+ * {@link DumpDiffer}. The order is the one of
+ * {@link #compareEntityIds(String, String)}, so that "Q2" comes before
+ * "Q10". Dumps of any size can be sorted with a bounded amount of memory:
+ * entities are collected in memory up to a given size, and each such run
+ * is sorted and written to a temporary file in the target directory. The
+ * runs are then merged into the sorted dump, and deleted. Only a limited
+ * number of runs is merged at once (see {@link #setMergeFanIn(int)}), so that the
+ * number of open files and the memory for their buffers stay bounded;
+ * dumps with more runs are merged in several passes, with intermediate runs
+ * written to temporary files.
+ * <p>
+ * The sorted dump is a gzip-compressed JSON dump in the usual format, with
+ * one entity per line. The JSON of the entities is not changed. Entities
+ * without an id are skipped.
+ */
+public class DumpSorter {
+
+	static final Logger logger = LoggerFactory.getLogger(DumpSorter.class);
+
+	/**
+	 * Default number of bytes of entity JSON that is sorted in memory.
+	 */
+	public static final long DEFAULT_RUN_SIZE = 64 << 20;
+
+	/**
+	 * Default maximal number of runs that are merged at once.
+	 */
+	public static final int DEFAULT_MERGE_FAN_IN = 100;
+
+	/**
+	 * Infix between the name of the sorted dump and the index in the names
+	 * of temporary run files.
+	 */
+	static final String RUN_FILE_INFIX = ".run-";
+
+	static final byte[] DUMP_START = "[\n".getBytes(StandardCharsets.UTF_8);
+	static final byte[] LINE_SEPARATOR = ",\n"
+			.getBytes(StandardCharsets.UTF_8);
+	static final byte[] DUMP_END = "\n]\n".getBytes(StandardCharsets.UTF_8);
+
+	long runSize = DEFAULT_RUN_SIZE;
+
+	int mergeFanIn = DEFAULT_MERGE_FAN_IN;
+
+	/**
+	 * Entity line together with its id.
+	 */
+	static class EntityLine {
+		final String entityId;
+		final byte[] json;
+
+		EntityLine(String entityId, byte[] json) {
+			this.entityId = entityId;
+			this.json = json;
+		}
+	}
+
+	/**
+	 * Order of entity lines by their ids.
+	 */
+	static final Comparator<EntityLine> LINE_ORDER = (line1, line2) -> compareEntityIds(
+			line1.entityId, line2.entityId);
+
+	/**
+	 * Sets the number of bytes of entity JSON that is sorted in memory
+	 * before it is written to a temporary file. The memory that is used
+	 * while sorting is somewhat larger than this. The default is
+	 * {@link #DEFAULT_RUN_SIZE}.
+	 *
+	 * @param runSize
+	 *            number of bytes
+	 */
+	public void setRunSize(long runSize) {
+		if (runSize <= 0) {
+			throw new IllegalArgumentException("The run size must be positive.");
+		}
+		this.runSize = runSize;
+	}
+
+	/**
+	 * Sets the maximal number of runs that are merged at once. Each run that
+	 * is merged uses an open file and a read buffer. The default is
+	 * {@link #DEFAULT_MERGE_FAN_IN}.
+	 *
+	 * @param mergeFanIn
+	 *            number of runs, at least 2
+	 */
+	public void setMergeFanIn(int mergeFanIn) {
+		if (mergeFanIn < 2) {
+			throw new IllegalArgumentException(
+					"At least two runs must be merged at once.");
+		}
+		this.mergeFanIn = mergeFanIn;
+	}
+
+	/**
+	 * Writes the entities of the given JSON dump to a new dump, sorted by
+	 * their ids. An existing file of the same name is overwritten.
+	 *
+	 * @param dumpFile
+	 *            the JSON dump to sort
+	 * @param directory
+	 *            the directory for the sorted dump and temporary files
+	 * @param fileName
+	 *            the name of the sorted dump, which should end with
+	 *            ".json.gz"
+	 * @return the sorted dump
+	 * @throws IOException
+	 *             if the dump could not be read or the sorted dump could
+	 *             not be written
+	 */
+	public MwLocalDumpFile sortDump(MwDumpFile dumpFile, Path directory,
+			String fileName) throws IOException {
+		if (dumpFile.getDumpContentType() != DumpContentType.JSON) {
+			throw new IllegalArgumentException("Only JSON dumps can be sorted.");
+		}
+		logger.info("Sorting " + dumpFile + " into " + fileName);
+
+		DirectoryManager directoryManager = DirectoryManagerFactory
+				.createDirectoryManager(directory, false);
+		List<String> runFiles = new ArrayList<>();
+		List<EntityLine> lines = new ArrayList<>();
+		long entityCount = 0;
+		try {
+			long size = 0;
+			try (ReadableByteChannel channel = dumpFile.getDumpFileChannel();
+					ByteLineReader lineReader = new ByteLineReader(channel)) {
+				while (lineReader.nextLine()) {
+					EntityLine line = DumpSharder.readEntityLine(lineReader);
+					if (line == null) {
+						continue;
+					}
+					if (line.entityId == null) {
+						logger.warn("Could not find id of entity; skipping it: "
+								+ lineReader.getLinePrefix(50));
+						continue;
+					}
+					lines.add(line);
+					entityCount++;
+					size += line.json.length;
+					if (size >= this.runSize) {
+						String runFile = fileName + RUN_FILE_INFIX
+								+ runFiles.size();
+						runFiles.add(runFile);
+						writeRun(lines, directoryManager, runFile);
+						lines.clear();
+						size = 0;
+					}
+				}
+			}
+
+			if (runFiles.isEmpty()) {
+				lines.sort(LINE_ORDER);
+				try (OutputStream out = openOutputStream(directoryManager,
+						fileName)) {
+					out.write(DUMP_START);
+					for (int i = 0; i < lines.size(); i++) {
+						if (i > 0) {
+							out.write(LINE_SEPARATOR);
+						}
+						out.write(lines.get(i).json);
+					}
+					out.write(DUMP_END);
+				}
+			} else {
+				if (!lines.isEmpty()) {
+					String runFile = fileName + RUN_FILE_INFIX + runFiles.size();
+					runFiles.add(runFile);
+					writeRun(lines, directoryManager, runFile);
+					lines.clear();
+				}
+				mergeRuns(runFiles, directory, directoryManager, fileName);
+			}
+		} finally {
+			for (String runFile : runFiles) {
+				Files.deleteIfExists(directory.resolve(runFile));
+			}
+		}
+
+		logger.info("Sorted " + entityCount + " entities of " + dumpFile
+				+ " using " + Math.max(1, runFiles.size()) + " runs.");
+		return new MwLocalDumpFile(directory.resolve(fileName).toString(),
+				DumpContentType.JSON, dumpFile.getDateStamp(),
+				dumpFile.getProjectName());
+	}
+
+	/**
+	 * Sorts the given lines and writes them to a run file, one per line.
+	 */
+	void writeRun(List<EntityLine> lines, DirectoryManager directoryManager,
+			String runFile) throws IOException {
+		lines.sort(LINE_ORDER);
+		try (OutputStream out = openOutputStream(directoryManager, runFile)) {
+			for (EntityLine line : lines) {
+				out.write(line.json);
+				out.write('\n');
+			}
+		}
+	}
+
+	/**
+	 * Merges the given sorted run files into the sorted dump. If there are
+	 * more runs than can be merged at once, groups of runs are first merged
+	 * into intermediate runs until few enough runs are left. The names of
+	 * intermediate runs are added to the given list, and merged runs are
+	 * deleted.
+	 */
+	void mergeRuns(List<String> runFiles, Path directory,
+			DirectoryManager directoryManager, String fileName)
+			throws IOException {
+		List<String> pendingRuns = new ArrayList<>(runFiles);
+		while (pendingRuns.size() > this.mergeFanIn) {
+			List<String> mergedRuns = new ArrayList<>();
+			for (int i = 0; i < pendingRuns.size(); i += this.mergeFanIn) {
+				List<String> group = pendingRuns.subList(i,
+						Math.min(i + this.mergeFanIn, pendingRuns.size()));
+				if (group.size() == 1) {
+					mergedRuns.add(group.get(0));
+					continue;
+				}
+				String runFile = fileName + RUN_FILE_INFIX + runFiles.size();
+				runFiles.add(runFile);
+				try (OutputStream out = openOutputStream(directoryManager,
+						runFile)) {
+					mergeRunFiles(group, directory, out, false);
+				}
+				for (String mergedRun : group) {
+					Files.deleteIfExists(directory.resolve(mergedRun));
+				}
+				mergedRuns.add(runFile);
+			}
+			pendingRuns = mergedRuns;
+		}
+
+		try (OutputStream out = openOutputStream(directoryManager, fileName)) {
+			out.write(DUMP_START);
+			mergeRunFiles(pendingRuns, directory, out, true);
+			out.write(DUMP_END);
+		}
+	}
+
+	/**
+	 * Merges the lines of the given sorted run files and writes them to the
+	 * given stream, either in the format of run files, with a line break
+	 * after each line, or in the format of the JSON array of a dump, with
+	 * {@link #LINE_SEPARATOR} between lines.
+	 */
+	void mergeRunFiles(List<String> runFiles, Path directory,
+			OutputStream out, boolean dumpFormat) throws IOException {
+		PriorityQueue<RunReader> queue = new PriorityQueue<>(
+				Comparator.comparing((RunReader reader) -> reader.line,
+						LINE_ORDER));
+		List<RunReader> readers = new ArrayList<>(runFiles.size());
+		try {
+			for (String runFile : runFiles) {
+				RunReader reader = new RunReader(new GZIPInputStream(
+						Files.newInputStream(directory.resolve(runFile)),
+						ByteLineReader.DEFAULT_BUFFER_SIZE));
+				readers.add(reader);
+				if (reader.next()) {
+					queue.add(reader);
+				}
+			}
+
+			boolean first = true;
+			while (!queue.isEmpty()) {
+				RunReader reader = queue.poll();
+				if (dumpFormat && !first) {
+					out.write(LINE_SEPARATOR);
+				}
+				first = false;
+				out.write(reader.line.json);
+				if (!dumpFormat) {
+					out.write('\n');
+				}
+				if (reader.next()) {
+					queue.add(reader);
+				}
+			}
+		} finally {
+			for (RunReader reader : readers) {
+				reader.lineReader.close();
+			}
+		}
+	}
+
+	/**
+	 * Opens a gzip-compressed output stream for the given file.
+	 */
+	OutputStream openOutputStream(DirectoryManager directoryManager,
+			String fileName) throws IOException {
+		return new GZIPOutputStream(
+				directoryManager.getOutputStreamForFile(fileName),
+				ByteLineReader.DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Reader for the lines of a run file.
+	 */
+	static class RunReader {
+		final ByteLineReader lineReader;
+		EntityLine line;
+
+		RunReader(InputStream inputStream) {
+			this.lineReader = new ByteLineReader(inputStream);
+		}
+
+		/**
+		 * Reads the next line of the run.
+		 *
+		 * @return false if the end of the run has been reached
+		 */
+		boolean next() throws IOException {
+			if (!this.lineReader.nextLine()) {
+				return false;
+			}
+			byte[] buffer = this.lineReader.getBuffer();
+			int offset = this.lineReader.getLineOffset();
+			int length = this.lineReader.getLineLength();
+			this.line = new EntityLine(DumpSharder.readEntityId(buffer,
+					offset, length), Arrays.copyOfRange(buffer, offset, offset
+					+ length));
+			return true;
+		}
+	}
+
+	/**
+	 * Compares two entity ids. Ids are ordered by their letters first, and
+	 * then by their numbers, so that "P31" comes before "Q2", which comes
+	 * before "Q10". Ids that do not consist of letters and a number are
+	 * ordered after all other ids with the same letters, alphabetically.
+	 *
+	 * @param entityId1
+	 *            the first id
+	 * @param entityId2
+	 *            the second id
+	 * @return a negative number, zero, or a positive number if the first id
+	 *         is smaller, equal, or larger than the second
+	 */
+	public static int compareEntityIds(String entityId1, String entityId2) {
+		int letters1 = countLetters(entityId1);
+		int letters2 = countLetters(entityId2);
+		for (int i = 0; i < letters1 && i < letters2; i++) {
+			int result = entityId1.charAt(i) - entityId2.charAt(i);
+			if (result != 0) {
+				return result;
+			}
+		}
+		if (letters1 != letters2) {
+			return letters1 - letters2;
+		}
+
+		long number1 = DumpShardManifest.getIdNumber(entityId1);
+		long number2 = DumpShardManifest.getIdNumber(entityId2);
+		if (number1 >= 0 && number2 >= 0) {
+			return Long.compare(number1, number2);
+		} else if (number1 >= 0) {
+			return -1;
+		} else if (number2 >= 0) {
+			return 1;
+		} else {
+			return entityId1.compareTo(entityId2);
+		}
+	}
+
+	/**
+	 * Returns the number of upper-case letters at the start of the given id.
+	 */
+	private static int countLetters(String entityId) {
+		int i = 0;
+		while (i < entityId.length() && entityId.charAt(i) >= 'A'
+				&& entityId.charAt(i) <= 'Z') {
+			i++;
+		}
+		return i;
+	}
+}
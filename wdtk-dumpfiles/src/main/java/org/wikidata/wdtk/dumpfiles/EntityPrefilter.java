@@ -0,0 +1,148 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.wikidata.wdtk.datamodel.implementation.EntityIdValueImpl;
+
+/**
+ * Predicate that decides whether an entity should be processed, based only
+ * on its type and id. Prefilters are applied before the JSON of an entity is
+ * deserialized, so that entities that are not needed can be skipped at
+ * little cost. In JSON dumps, only the "type" and "id" fields of each line
+ * are read to this end. In dumps with revisions, the content model and title
+ * of each revision are used.
+ * <p>
+ * Entity types are given by their JSON names, such as
+ * {@link EntityIdValueImpl#JSON_ENTITY_TYPE_ITEM} or
+ * {@link EntityIdValueImpl#JSON_ENTITY_TYPE_PROPERTY}. Either value may be
+ * null if it could not be determined before deserialization. Entities for
+ * which the type and id could not be read at all are not passed to the
+ * prefilter; they are deserialized as usual.
+ *
+ * @see DumpProcessingController#setEntityPrefilter(EntityPrefilter)
+ */
+@FunctionalInterface
+public interface EntityPrefilter {
+
+	/**
+	 * Decides whether the entity of the given type and id should be
+	 * processed.
+	 *
+	 * @param entityType
+	 *            the JSON name of the entity type, or null if unknown
+	 * @param entityId
+	 *            the id of the entity, or null if unknown
+	 * @return true if the entity should be deserialized and processed
+	 */
+	boolean accept(String entityType, String entityId);
+
+	/**
+	 * Returns a prefilter that accepts only entities with the given ids.
+	 *
+	 * @param entityIds
+	 *            the ids of the entities to process, e.g., "Q42"
+	 * @return the prefilter
+	 */
+	static EntityPrefilter forIds(Collection<String> entityIds) {
+		Set<String> ids = new HashSet<>(entityIds);
+		return (entityType, entityId) -> entityId != null
+				&& ids.contains(entityId);
+	}
+
+	/**
+	 * Returns a prefilter that accepts only entities of the given types.
+	 *
+	 * @param entityTypes
+	 *            the JSON names of the entity types to process, e.g., "item"
+	 * @return the prefilter
+	 */
+	static EntityPrefilter forTypes(Collection<String> entityTypes) {
+		Set<String> types = new HashSet<>(entityTypes);
+		return (entityType, entityId) -> entityType != null
+				&& types.contains(entityType);
+	}
+
+	/**
+	 * Returns a prefilter that accepts only entities with ids in the given
+	 * range. Both ids must have the same prefix letters followed by a number,
+	 * e.g., "Q1" and "Q1000". The range includes both ids. Ids are compared
+	 * by their numbers, so "Q99" is in the range from "Q1" to "Q1000".
+	 *
+	 * @param firstId
+	 *            the smallest id to process
+	 * @param lastId
+	 *            the largest id to process
+	 * @return the prefilter
+	 * @throws IllegalArgumentException
+	 *             if the ids do not have the expected form or their prefixes
+	 *             differ
+	 */
+	static EntityPrefilter forIdRange(String firstId, String lastId) {
+		String prefix = getIdPrefix(firstId);
+		if (!prefix.equals(getIdPrefix(lastId))) {
+			throw new IllegalArgumentException("Ids " + firstId + " and "
+					+ lastId + " do not have the same prefix");
+		}
+		long min = Long.parseLong(firstId.substring(prefix.length()));
+		long max = Long.parseLong(lastId.substring(prefix.length()));
+		return (entityType, entityId) -> {
+			if (entityId == null || !entityId.startsWith(prefix)
+					|| entityId.length() == prefix.length()
+					|| entityId.length() > prefix.length() + 18) {
+				return false;
+			}
+			long number = 0;
+			for (int i = prefix.length(); i < entityId.length(); i++) {
+				char c = entityId.charAt(i);
+				if (c < '0' || c > '9') {
+					return false;
+				}
+				number = 10 * number + (c - '0');
+			}
+			return number >= min && number <= max;
+		};
+	}
+
+	/**
+	 * Returns the letters in front of the number of the given entity id.
+	 *
+	 * @param entityId
+	 *            an id such as "Q42"
+	 * @return the prefix, such as "Q"
+	 * @throws IllegalArgumentException
+	 *             if the id does not consist of letters followed by digits
+	 */
+	private static String getIdPrefix(String entityId) {
+		if (entityId == null || !entityId.matches("[A-Z]+[0-9]{1,18}")) {
+			throw new IllegalArgumentException("Invalid entity id: "
+					+ entityId);
+		}
+		int i = 0;
+		while (entityId.charAt(i) > '9') {
+			i++;
+		}
+		return entityId.substring(0, i);
+	}
+}
@@ -0,0 +1,907 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessorBroker;
+import org.wikidata.wdtk.dumpfiles.DumpSorter.EntityLine;
+import org.wikidata.wdtk.dumpfiles.wmf.WmfDumpFileManager;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Local copy of all entities of a project that is kept up to date with the
+ * daily dumps, so that the full JSON dump does not need to be processed
+ * again whenever newer data is needed. The replica is seeded once from a
+ * JSON dump with {@link #seed(MwDumpFile)}, and brought forward with
+ * {@link #update(WmfDumpFileManager)}, which applies all daily dumps that
+ * are newer than the replica in chronological order.
+ * <p>
+ * The replica is stored in its own directory. The entities of the seed dump
+ * are kept in a base file that is sorted by entity id (see
+ * {@link DumpSorter}). The most current revision of each entity that was
+ * changed on one day is written to a sorted delta file of the same format,
+ * so that applying a daily dump only costs time in proportion to the size
+ * of that dump. Base and deltas are merged when the replica is read with
+ * {@link #getDumpFile()}, which returns a JSON dump that can be processed
+ * with {@link DumpProcessingController}, {@link DumpDiffer}, or
+ * {@link DumpSharder}. When the same entity occurs in several files, the
+ * version with the largest revision id is used. {@link #compact()} merges
+ * all deltas into a new base.
+ * <p>
+ * The files of the replica, the date of the last applied dump, and the
+ * largest revision id that was applied are recorded in the property file
+ * {@link #PROPERTIES_FILE_NAME}. This file is only replaced after all files
+ * that it refers to have been written, so that an interrupted update can
+ * simply be repeated.
+ * <p>
+ * When a daily dump turns an entity into a redirect, a tombstone with the
+ * revision id of the redirect is written to the delta file. Tombstones are
+ * merged like entities, and an entity whose most recent version is a
+ * tombstone is left out of {@link #getDumpFile()} and of compacted bases.
+ * Change processors are not notified of redirects. Daily dumps do not
+ * record deleted pages, so entities that were deleted after the seed dump
+ * remain in the replica until it is seeded again.
+ */
+public class EntityReplica {
+
+	static final Logger logger = LoggerFactory.getLogger(EntityReplica.class);
+
+	/**
+	 * Name of the file that describes the state of the replica.
+	 */
+	public static final String PROPERTIES_FILE_NAME = "replica.properties";
+
+	static final String BASE_FILE_PREFIX = "base-";
+	static final String DELTA_FILE_PREFIX = "delta-";
+	static final String UNSORTED_FILE_INFIX = ".unsorted";
+	static final String FILE_SUFFIX = ".json.gz";
+
+	static final String KEY_PROJECT = "project";
+	static final String KEY_DATE = "date";
+	static final String KEY_REVISION = "lastRevisionId";
+	static final String KEY_BASE = "base";
+	static final String KEY_DELTAS = "deltas";
+
+	/**
+	 * Start of the JSON of tombstones, which record that an entity has been
+	 * turned into a redirect. Tombstones have the form
+	 * <code>{"redirect":"Q2","id":"Q1","lastrevid":123}</code>.
+	 */
+	static final byte[] TOMBSTONE_START = "{\"redirect\":"
+			.getBytes(StandardCharsets.UTF_8);
+
+	static final byte[] NO_BYTES = new byte[0];
+
+	final Path directory;
+	final String siteIri;
+	final EntityDocumentProcessorBroker changeProcessors = new EntityDocumentProcessorBroker();
+	boolean hasChangeProcessors = false;
+
+	String projectName;
+	String dateStamp;
+	long lastRevisionId;
+	String baseFileName;
+	final List<String> deltaFileNames = new ArrayList<>();
+
+	/**
+	 * Constructor. The state of an existing replica in the given directory
+	 * is loaded; otherwise, the replica needs to be seeded before it can be
+	 * used.
+	 *
+	 * @param directory
+	 *            the directory of the replica, which is created if needed
+	 * @param siteIri
+	 *            the IRI of the site that the data comes from, as used in
+	 *            entity ids of the documents that change processors receive
+	 * @throws IOException
+	 *             if the state of an existing replica could not be read
+	 */
+	public EntityReplica(Path directory, String siteIri) throws IOException {
+		this.directory = directory;
+		this.siteIri = siteIri;
+		Files.createDirectories(directory);
+		Path propertiesFile = directory.resolve(PROPERTIES_FILE_NAME);
+		if (Files.exists(propertiesFile)) {
+			readProperties(propertiesFile);
+		}
+	}
+
+	/**
+	 * Constructor for a replica of Wikidata.
+	 *
+	 * @param directory
+	 *            the directory of the replica, which is created if needed
+	 * @throws IOException
+	 *             if the state of an existing replica could not be read
+	 */
+	public EntityReplica(Path directory) throws IOException {
+		this(directory, Datamodel.SITE_WIKIDATA);
+	}
+
+	/**
+	 * Registers a processor that is notified of changes while daily dumps
+	 * are applied. It receives the new version of each entity that is
+	 * changed, once per applied dump.
+	 *
+	 * @param entityDocumentProcessor
+	 *            the processor to register
+	 */
+	public void registerEntityDocumentProcessor(
+			EntityDocumentProcessor entityDocumentProcessor) {
+		this.changeProcessors
+				.registerEntityDocumentProcessor(entityDocumentProcessor);
+		this.hasChangeProcessors = true;
+	}
+
+	/**
+	 * Returns true if the replica has been seeded.
+	 *
+	 * @return true if the replica contains data
+	 */
+	public boolean isSeeded() {
+		return this.baseFileName != null;
+	}
+
+	/**
+	 * Returns the date stamp of the most recent dump that was applied to the
+	 * replica, or of the seed dump if no daily dump was applied yet.
+	 *
+	 * @return date stamp, or null if the replica has not been seeded
+	 */
+	public String getDateStamp() {
+		return this.dateStamp;
+	}
+
+	/**
+	 * Returns the largest revision id that was applied from a daily dump.
+	 * Revisions with smaller or equal ids are skipped by later updates.
+	 *
+	 * @return revision id, or 0 if no daily dump was applied yet
+	 */
+	public long getLastRevisionId() {
+		return this.lastRevisionId;
+	}
+
+	/**
+	 * Returns the number of delta files that have been applied since the
+	 * replica was seeded or compacted.
+	 *
+	 * @return number of delta files
+	 */
+	public int getDeltaCount() {
+		return this.deltaFileNames.size();
+	}
+
+	/**
+	 * Seeds the replica with the entities of the given JSON dump. Any
+	 * previous data of the replica is deleted.
+	 *
+	 * @param jsonDump
+	 *            the JSON dump to seed the replica with
+	 * @throws IOException
+	 *             if the dump could not be read or the replica could not be
+	 *             written
+	 */
+	public void seed(MwDumpFile jsonDump) throws IOException {
+		if (jsonDump.getDumpContentType() != DumpContentType.JSON) {
+			throw new IllegalArgumentException(
+					"A replica can only be seeded from a JSON dump.");
+		}
+		logger.info("Seeding entity replica in " + this.directory + " from "
+				+ jsonDump);
+
+		String fileName = BASE_FILE_PREFIX + jsonDump.getDateStamp()
+				+ FILE_SUFFIX;
+		List<String> obsoleteFiles = getFileNames();
+		new DumpSorter().sortDump(jsonDump, this.directory, fileName);
+
+		this.projectName = jsonDump.getProjectName();
+		this.dateStamp = jsonDump.getDateStamp();
+		this.lastRevisionId = 0;
+		this.baseFileName = fileName;
+		this.deltaFileNames.clear();
+		writeProperties();
+		deleteFiles(obsoleteFiles);
+	}
+
+	/**
+	 * Applies all daily dumps of the given dump file manager that are more
+	 * recent than the replica, in chronological order. The update stops at
+	 * the first dump that is not available yet.
+	 *
+	 * @param wmfDumpFileManager
+	 *            the dump file manager to find daily dumps with
+	 * @return the number of dumps that were applied
+	 * @throws IOException
+	 *             if a dump could not be read or the replica could not be
+	 *             written
+	 */
+	public int update(WmfDumpFileManager wmfDumpFileManager)
+			throws IOException {
+		checkSeeded();
+		List<MwDumpFile> dailyDumps = new ArrayList<>(
+				wmfDumpFileManager.findAllDumps(DumpContentType.DAILY));
+		dailyDumps.sort(new MwDumpFile.DateComparator());
+
+		int count = 0;
+		for (MwDumpFile dailyDump : dailyDumps) {
+			if (dailyDump.getDateStamp().compareTo(this.dateStamp) <= 0) {
+				continue;
+			}
+			if (!dailyDump.isAvailable()) {
+				logger.info("Daily dump " + dailyDump
+						+ " is not available yet; stopping update.");
+				break;
+			}
+			applyDailyDump(dailyDump);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Applies the changes of one daily dump to the replica. Only the most
+	 * current revision of each entity in the dump is used, and revisions
+	 * with ids that are not larger than {@link #getLastRevisionId()} are
+	 * skipped. Registered change processors are notified of each applied
+	 * revision. Dumps that are not more recent than the replica are
+	 * ignored.
+	 *
+	 * @param dailyDump
+	 *            the daily dump to apply
+	 * @return true if the dump was applied
+	 * @throws IOException
+	 *             if the dump could not be read or the replica could not be
+	 *             written
+	 */
+	public boolean applyDailyDump(MwDumpFile dailyDump) throws IOException {
+		checkSeeded();
+		if (dailyDump.getDumpContentType() != DumpContentType.DAILY) {
+			throw new IllegalArgumentException(
+					"Only daily dumps can be applied to a replica.");
+		}
+		if (dailyDump.getDateStamp().compareTo(this.dateStamp) <= 0) {
+			logger.info("Skipping " + dailyDump + ", which is not more recent"
+					+ " than the replica (" + this.dateStamp + ").");
+			return false;
+		}
+		logger.info("Applying " + dailyDump + " to entity replica in "
+				+ this.directory);
+
+		String fileName = DELTA_FILE_PREFIX + dailyDump.getDateStamp()
+				+ FILE_SUFFIX;
+		String unsortedFileName = DELTA_FILE_PREFIX
+				+ dailyDump.getDateStamp() + UNSORTED_FILE_INFIX + FILE_SUFFIX;
+		Path unsortedFile = this.directory.resolve(unsortedFileName);
+		DeltaWriter deltaWriter;
+		try {
+			dailyDump.prepareDumpFile();
+			WikibaseRevisionProcessor changeProcessor = null;
+			if (this.hasChangeProcessors) {
+				changeProcessor = new WikibaseRevisionProcessor(
+						this.changeProcessors, this.siteIri);
+			}
+			try (OutputStream out = new GZIPOutputStream(
+					Files.newOutputStream(unsortedFile),
+					ByteLineReader.DEFAULT_BUFFER_SIZE)) {
+				deltaWriter = new DeltaWriter(out, this.lastRevisionId,
+						changeProcessor);
+				MwRevisionProcessorBroker broker = new MwRevisionProcessorBroker();
+				broker.registerMwRevisionProcessor(deltaWriter,
+						MwRevision.MODEL_WIKIBASE_ITEM, true);
+				broker.registerMwRevisionProcessor(deltaWriter,
+						MwRevision.MODEL_WIKIBASE_PROPERTY, true);
+				broker.registerMwRevisionProcessor(deltaWriter,
+						MwRevision.MODEL_WIKIBASE_LEXEME, true);
+				try (InputStream in = dailyDump.getDumpFileStream()) {
+					new MwRevisionDumpFileProcessor(broker)
+							.processDumpFileContents(in, dailyDump);
+				}
+				deltaWriter.finish();
+			}
+			if (changeProcessor != null) {
+				changeProcessor.finishRevisionProcessing();
+			}
+
+			new DumpSorter().sortDump(new MwLocalDumpFile(
+					unsortedFile.toString(), DumpContentType.JSON,
+					dailyDump.getDateStamp(), this.projectName),
+					this.directory, fileName);
+		} finally {
+			Files.deleteIfExists(unsortedFile);
+		}
+
+		this.dateStamp = dailyDump.getDateStamp();
+		this.lastRevisionId = Math.max(this.lastRevisionId,
+				deltaWriter.maxRevisionId);
+		if (!this.deltaFileNames.contains(fileName)) {
+			this.deltaFileNames.add(fileName);
+		}
+		writeProperties();
+
+		logger.info("Applied " + deltaWriter.entityCount + " changed entities"
+				+ " and " + deltaWriter.redirectCount + " redirects of "
+				+ dailyDump + " (" + deltaWriter.skippedCount
+				+ " revisions skipped).");
+		return true;
+	}
+
+	/**
+	 * Merges all delta files into a new base file, and deletes the old
+	 * files. This makes reading the replica faster after many daily dumps
+	 * have been applied.
+	 *
+	 * @throws IOException
+	 *             if the replica could not be read or written
+	 */
+	public void compact() throws IOException {
+		checkSeeded();
+		if (this.deltaFileNames.isEmpty()) {
+			return;
+		}
+		logger.info("Compacting entity replica in " + this.directory
+				+ " with " + this.deltaFileNames.size() + " deltas.");
+
+		String fileName = BASE_FILE_PREFIX + this.dateStamp + FILE_SUFFIX;
+		List<String> obsoleteFiles = getFileNames();
+		Path tempFile = this.directory.resolve(fileName + ".new");
+		try (InputStream in = getDumpFile().getDumpFileStream();
+				OutputStream out = new GZIPOutputStream(
+						Files.newOutputStream(tempFile),
+						ByteLineReader.DEFAULT_BUFFER_SIZE)) {
+			in.transferTo(out);
+		}
+		Files.move(tempFile, this.directory.resolve(fileName),
+				StandardCopyOption.REPLACE_EXISTING);
+
+		this.baseFileName = fileName;
+		this.deltaFileNames.clear();
+		writeProperties();
+		obsoleteFiles.remove(fileName);
+		deleteFiles(obsoleteFiles);
+	}
+
+	/**
+	 * Returns a JSON dump with the current content of the replica, sorted by
+	 * entity id. The dump refers to the files of the replica at the time of
+	 * this call, and should not be used after the replica was seeded again
+	 * or compacted.
+	 *
+	 * @return the content of the replica as a dump
+	 */
+	public MwDumpFile getDumpFile() {
+		checkSeeded();
+		List<Path> files = new ArrayList<>();
+		for (String fileName : getFileNames()) {
+			files.add(this.directory.resolve(fileName));
+		}
+		return new ReplicaDumpFile(files, this.projectName, this.dateStamp);
+	}
+
+	void checkSeeded() {
+		if (!isSeeded()) {
+			throw new IllegalStateException("The entity replica in "
+					+ this.directory + " has not been seeded yet.");
+		}
+	}
+
+	/**
+	 * Returns the names of all data files of the replica, oldest first.
+	 */
+	List<String> getFileNames() {
+		List<String> result = new ArrayList<>();
+		if (this.baseFileName != null) {
+			result.add(this.baseFileName);
+		}
+		result.addAll(this.deltaFileNames);
+		return result;
+	}
+
+	void deleteFiles(List<String> fileNames) throws IOException {
+		for (String fileName : fileNames) {
+			Files.deleteIfExists(this.directory.resolve(fileName));
+		}
+	}
+
+	/**
+	 * Writes the state of the replica to its property file. The data is
+	 * first written to a temporary file, which then replaces the old file.
+	 */
+	void writeProperties() throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(KEY_PROJECT, this.projectName);
+		properties.setProperty(KEY_DATE, this.dateStamp);
+		properties.setProperty(KEY_REVISION,
+				Long.toString(this.lastRevisionId));
+		properties.setProperty(KEY_BASE, this.baseFileName);
+		properties.setProperty(KEY_DELTAS,
+				String.join(",", this.deltaFileNames));
+
+		Path file = this.directory.resolve(PROPERTIES_FILE_NAME);
+		Path tempFile = file.resolveSibling(file.getFileName() + ".new");
+		try (OutputStream out = Files.newOutputStream(tempFile)) {
+			properties.store(out, "Wikidata Toolkit entity replica");
+		}
+		Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	void readProperties(Path file) throws IOException {
+		Properties properties = new Properties();
+		try (InputStream in = Files.newInputStream(file)) {
+			properties.load(in);
+		}
+		try {
+			this.projectName = properties.getProperty(KEY_PROJECT);
+			this.dateStamp = properties.getProperty(KEY_DATE);
+			this.lastRevisionId = Long.parseLong(properties
+					.getProperty(KEY_REVISION));
+			this.baseFileName = properties.getProperty(KEY_BASE);
+			String deltas = properties.getProperty(KEY_DELTAS, "");
+			if (!deltas.isEmpty()) {
+				this.deltaFileNames.addAll(Arrays.asList(deltas.split(",")));
+			}
+			if (this.projectName == null || this.dateStamp == null
+					|| this.baseFileName == null) {
+				throw new IllegalArgumentException("Missing properties");
+			}
+		} catch (IllegalArgumentException | NullPointerException e) {
+			throw new IOException("Invalid entity replica properties: "
+					+ e.toString(), e);
+		}
+	}
+
+	/**
+	 * Reads the top-level "lastrevid" field of the entity with the given
+	 * JSON serialization.
+	 *
+	 * @return the revision id, or -1 if it could not be found
+	 */
+	static long readRevisionId(byte[] json) {
+		try (JsonParser parser = DumpSharder.jsonFactory.createParser(json)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return -1;
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String fieldName = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
+				if (value == JsonToken.VALUE_NUMBER_INT
+						&& "lastrevid".equals(fieldName)) {
+					return parser.getLongValue();
+				}
+				parser.skipChildren();
+			}
+		} catch (IOException e) {
+			// broken JSON; treated as the oldest version
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns true if the given JSON is a tombstone of an entity that has
+	 * been turned into a redirect.
+	 */
+	static boolean isTombstone(byte[] json) {
+		if (json.length < TOMBSTONE_START.length) {
+			return false;
+		}
+		for (int i = 0; i < TOMBSTONE_START.length; i++) {
+			if (json[i] != TOMBSTONE_START[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Creates the tombstone for the given content of a redirect revision,
+	 * which has the form <code>{"entity":"Q1","redirect":"Q2"}</code>.
+	 *
+	 * @return the JSON of the tombstone, or null if the text is not a
+	 *         redirect
+	 */
+	static byte[] createTombstone(String text, long revisionId) {
+		String entityId = null;
+		String targetId = null;
+		try (JsonParser parser = DumpSharder.jsonFactory.createParser(text)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return null;
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String fieldName = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
+				if (value == JsonToken.VALUE_STRING
+						&& "entity".equals(fieldName)) {
+					entityId = parser.getText();
+				} else if (value == JsonToken.VALUE_STRING
+						&& "redirect".equals(fieldName)) {
+					targetId = parser.getText();
+				} else {
+					parser.skipChildren();
+				}
+			}
+		} catch (IOException e) {
+			return null;
+		}
+		if (entityId == null || targetId == null) {
+			return null;
+		}
+		// ids of entities do not need escaping in JSON
+		return ("{\"redirect\":\"" + targetId + "\",\"id\":\"" + entityId
+				+ "\",\"lastrevid\":" + revisionId + "}")
+				.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Revision processor that writes the JSON of new revisions to an
+	 * unsorted delta file, one entity per line. The revision id is added to
+	 * the JSON as the field "lastrevid", which is not part of the content of
+	 * revisions in XML dumps. Redirects are written as tombstones (see
+	 * {@link EntityReplica#createTombstone(String, long)}).
+	 */
+	static class DeltaWriter implements MwRevisionProcessor {
+
+		final OutputStream out;
+		final long minRevisionId;
+		final MwRevisionProcessor changeProcessor;
+
+		long maxRevisionId = 0;
+		long entityCount = 0;
+		long redirectCount = 0;
+		long skippedCount = 0;
+
+		DeltaWriter(OutputStream out, long lastRevisionId,
+				MwRevisionProcessor changeProcessor) throws IOException {
+			this.out = out;
+			this.minRevisionId = lastRevisionId + 1;
+			this.changeProcessor = changeProcessor;
+			this.out.write(DumpSorter.DUMP_START);
+		}
+
+		@Override
+		public void startRevisionProcessing(String siteName, String baseUrl,
+				Map<Integer, String> namespaces) {
+			// nothing to do
+		}
+
+		@Override
+		public void processRevision(MwRevision mwRevision) {
+			String text = mwRevision.getText();
+			int start = text == null ? -1 : text.indexOf('{');
+			if (mwRevision.getRevisionId() < this.minRevisionId || start < 0) {
+				this.skippedCount++;
+				return;
+			}
+			byte[] json = (text.substring(0, start + 1) + "\"lastrevid\":"
+					+ mwRevision.getRevisionId()
+					+ (text.startsWith("}", start + 1) ? "" : ",") + text
+					.substring(start + 1)).replace('\n', ' ').getBytes(
+					StandardCharsets.UTF_8);
+			if (DumpSharder.readEntityId(json, 0, json.length) == null) {
+				byte[] tombstone = createTombstone(text,
+						mwRevision.getRevisionId());
+				if (tombstone == null) {
+					// other content without an entity
+					this.skippedCount++;
+					return;
+				}
+				write(tombstone, mwRevision.getRevisionId());
+				this.redirectCount++;
+				return;
+			}
+
+			write(json, mwRevision.getRevisionId());
+			this.entityCount++;
+			if (this.changeProcessor != null) {
+				this.changeProcessor.processRevision(mwRevision);
+			}
+		}
+
+		void write(byte[] json, long revisionId) {
+			try {
+				if (this.entityCount + this.redirectCount > 0) {
+					this.out.write(DumpSorter.LINE_SEPARATOR);
+				}
+				this.out.write(json);
+			} catch (IOException e) {
+				throw new RuntimeException(e.toString(), e);
+			}
+			this.maxRevisionId = Math.max(this.maxRevisionId, revisionId);
+		}
+
+		@Override
+		public void finishRevisionProcessing() {
+			// called once for each model; see finish()
+		}
+
+		void finish() throws IOException {
+			this.out.write(DumpSorter.DUMP_END);
+		}
+	}
+
+	/**
+	 * JSON dump that merges the sorted files of a replica.
+	 */
+	static class ReplicaDumpFile implements MwDumpFile {
+
+		final List<Path> files;
+		final String projectName;
+		final String dateStamp;
+
+		ReplicaDumpFile(List<Path> files, String projectName, String dateStamp) {
+			this.files = files;
+			this.projectName = projectName;
+			this.dateStamp = dateStamp;
+		}
+
+		@Override
+		public boolean isAvailable() {
+			for (Path file : this.files) {
+				if (!Files.exists(file)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public String getProjectName() {
+			return this.projectName;
+		}
+
+		@Override
+		public String getDateStamp() {
+			return this.dateStamp;
+		}
+
+		@Override
+		public DumpContentType getDumpContentType() {
+			return DumpContentType.JSON;
+		}
+
+		@Override
+		public InputStream getDumpFileStream() throws IOException {
+			return new MergingInputStream(this.files);
+		}
+
+		@Override
+		public BufferedReader getDumpFileReader() throws IOException {
+			return new BufferedReader(new InputStreamReader(
+					getDumpFileStream(), StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public void prepareDumpFile() {
+			// nothing to do
+		}
+
+		@Override
+		public String toString() {
+			return "replica " + this.files + " (" + this.projectName
+					+ "/json/" + this.dateStamp + ")";
+		}
+	}
+
+	/**
+	 * Reader for the entities of one sorted file of a replica.
+	 */
+	static class FileReader {
+		final ByteLineReader lineReader;
+		final int index;
+		String entityId;
+		byte[] json;
+
+		FileReader(InputStream inputStream, int index) {
+			this.lineReader = new ByteLineReader(inputStream);
+			this.index = index;
+		}
+
+		/**
+		 * Reads the next entity of the file.
+		 *
+		 * @return false if the end of the file has been reached
+		 */
+		boolean next() throws IOException {
+			while (this.lineReader.nextLine()) {
+				EntityLine line = DumpSharder.readEntityLine(this.lineReader);
+				if (line == null || line.entityId == null) {
+					continue;
+				}
+				this.entityId = line.entityId;
+				this.json = line.json;
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Input stream of a JSON dump that merges several files that are sorted
+	 * by entity id. Of several entities with the same id, the one with the
+	 * largest revision id is used, or the one of the most recent file if
+	 * the revision ids are equal. Entities for which this is a tombstone are
+	 * left out.
+	 */
+	static class MergingInputStream extends InputStream {
+
+		final List<FileReader> readers = new ArrayList<>();
+		final PriorityQueue<FileReader> queue = new PriorityQueue<>((reader1,
+				reader2) -> {
+			int result = DumpSorter.compareEntityIds(reader1.entityId,
+					reader2.entityId);
+			return result != 0 ? result : reader2.index - reader1.index;
+		});
+		final List<FileReader> candidates = new ArrayList<>();
+
+		byte[] chunk = DumpSorter.DUMP_START;
+		int position = 0;
+		boolean first = true;
+		boolean finished = false;
+
+		MergingInputStream(List<Path> files) throws IOException {
+			try {
+				for (int i = 0; i < files.size(); i++) {
+					FileReader reader = new FileReader(new GZIPInputStream(
+							Files.newInputStream(files.get(i)),
+							ByteLineReader.DEFAULT_BUFFER_SIZE), i);
+					this.readers.add(reader);
+					if (reader.next()) {
+						this.queue.add(reader);
+					}
+				}
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!fillChunk()) {
+				return -1;
+			}
+			return this.chunk[this.position++] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!fillChunk()) {
+				return -1;
+			}
+			int count = Math.min(len, this.chunk.length - this.position);
+			System.arraycopy(this.chunk, this.position, b, off, count);
+			this.position += count;
+			return count;
+		}
+
+		/**
+		 * Makes sure that there are unread bytes in the current chunk.
+		 *
+		 * @return false if the end of the stream has been reached
+		 */
+		boolean fillChunk() throws IOException {
+			while (this.position >= this.chunk.length) {
+				if (this.finished) {
+					return false;
+				}
+				this.position = 0;
+				if (this.queue.isEmpty()) {
+					this.chunk = DumpSorter.DUMP_END;
+					this.finished = true;
+				} else {
+					byte[] json = nextEntity();
+					if (isTombstone(json)) {
+						this.chunk = NO_BYTES;
+					} else if (this.first) {
+						this.chunk = json;
+						this.first = false;
+					} else {
+						this.chunk = new byte[DumpSorter.LINE_SEPARATOR.length
+								+ json.length];
+						System.arraycopy(DumpSorter.LINE_SEPARATOR, 0,
+								this.chunk, 0, DumpSorter.LINE_SEPARATOR.length);
+						System.arraycopy(json, 0, this.chunk,
+								DumpSorter.LINE_SEPARATOR.length, json.length);
+					}
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Returns the JSON of the next entity, and advances all readers
+		 * that are positioned at this entity.
+		 */
+		byte[] nextEntity() throws IOException {
+			FileReader reader = this.queue.poll();
+			this.candidates.add(reader);
+			while (!this.queue.isEmpty()
+					&& this.queue.peek().entityId.equals(reader.entityId)) {
+				this.candidates.add(this.queue.poll());
+			}
+
+			// candidates are ordered from the most recent file to the oldest
+			byte[] result = reader.json;
+			if (this.candidates.size() > 1) {
+				long maxRevisionId = readRevisionId(result);
+				for (int i = 1; i < this.candidates.size(); i++) {
+					byte[] json = this.candidates.get(i).json;
+					long revisionId = readRevisionId(json);
+					if (revisionId > maxRevisionId) {
+						maxRevisionId = revisionId;
+						result = json;
+					}
+				}
+			}
+
+			for (FileReader candidate : this.candidates) {
+				if (candidate.next()) {
+					this.queue.add(candidate);
+				}
+			}
+			this.candidates.clear();
+			return result;
+		}
+
+		@Override
+		public void close() throws IOException {
+			IOException exception = null;
+			for (FileReader reader : this.readers) {
+				try {
+					reader.lineReader.close();
+				} catch (IOException e) {
+					exception = e;
+				}
+			}
+			this.readers.clear();
+			this.queue.clear();
+			if (exception != null) {
+				throw exception;
+			}
+		}
+	}
+}
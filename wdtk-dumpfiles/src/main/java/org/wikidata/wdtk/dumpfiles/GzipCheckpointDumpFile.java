@@ -0,0 +1,350 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.wikidata.wdtk.dumpfiles.GzipCheckpointIndex.Checkpoint;
+import org.wikidata.wdtk.util.CompressionType;
+import org.wikidata.wdtk.util.DirectoryManager;
+import org.wikidata.wdtk.util.DirectoryManagerFactory;
+
+/**
+ * Local gzip-compressed dump file that can be read starting from checkpoints
+ * of a {@link GzipCheckpointIndex}, rather than only from the beginning. The
+ * index is stored in a sidecar file next to the dump, with the name of the
+ * dump file followed by {@link #INDEX_FILE_SUFFIX}. It is created on first
+ * use, which requires the whole dump to be decompressed once, and reused as
+ * long as the size of the dump file does not change.
+ * <p>
+ * For JSON dumps, checkpoints are at the starts of entities. This can be used
+ * to resume processing after a failure, or to split the dump into slices
+ * that are processed by several threads or processes, see
+ * {@link #split(int)}.
+ */
+public class GzipCheckpointDumpFile extends MwLocalDumpFile {
+
+	/**
+	 * Suffix that is appended to the dump file name to get the name of the
+	 * index file.
+	 */
+	public static final String INDEX_FILE_SUFFIX = ".checkpoints";
+
+	/**
+	 * Minimal distance of checkpoints when creating a new index.
+	 */
+	final long spacing;
+
+	/**
+	 * The index, or null if it was not loaded yet.
+	 */
+	GzipCheckpointIndex checkpointIndex = null;
+
+	/**
+	 * Constructor. The meta-data of the dump file is guessed from its name,
+	 * and new indexes are created with
+	 * {@link GzipCheckpointIndexBuilder#DEFAULT_SPACING}.
+	 *
+	 * @param filePath
+	 *            path to the dump file in the file system
+	 */
+	public GzipCheckpointDumpFile(String filePath) {
+		this(filePath, GzipCheckpointIndexBuilder.DEFAULT_SPACING);
+	}
+
+	/**
+	 * Constructor. The meta-data of the dump file is guessed from its name.
+	 *
+	 * @param filePath
+	 *            path to the dump file in the file system
+	 * @param spacing
+	 *            the minimal distance of checkpoints in uncompressed bytes,
+	 *            used if a new index needs to be created
+	 */
+	public GzipCheckpointDumpFile(String filePath, long spacing) {
+		super(filePath);
+		this.spacing = spacing;
+	}
+
+	/**
+	 * Returns the checkpoint index of this dump. The index is read from the
+	 * index file if it exists and matches the dump. Otherwise, a new index is
+	 * created and written to the index file. If the index file cannot be
+	 * written, the index is only kept in memory.
+	 *
+	 * @return the index
+	 * @throws IOException
+	 *             if the dump could not be read
+	 */
+	public synchronized GzipCheckpointIndex getCheckpointIndex()
+			throws IOException {
+		if (this.checkpointIndex != null) {
+			return this.checkpointIndex;
+		}
+		checkAvailable();
+
+		String indexFileName = getIndexFileName();
+		long dumpFileSize = Files.size(this.dumpFilePath);
+		if (this.directoryManager.hasFile(indexFileName)) {
+			try {
+				GzipCheckpointIndex index = GzipCheckpointIndex
+						.read(this.directoryManager.getInputStreamForFile(
+								indexFileName, CompressionType.NONE));
+				if (index.getCompressedSize() == dumpFileSize) {
+					this.checkpointIndex = index;
+					return index;
+				}
+				logger.info("Checkpoint index " + indexFileName
+						+ " does not match the dump file. Recreating it.");
+			} catch (IOException e) {
+				logger.warn("Could not read checkpoint index " + indexFileName
+						+ ": " + e.toString() + ". Recreating it.");
+			}
+		}
+
+		logger.info("Creating checkpoint index for " + this.dumpFileName
+				+ ". This requires reading the whole file.");
+		try (InputStream inputStream = Files.newInputStream(this.dumpFilePath)) {
+			this.checkpointIndex = new GzipCheckpointIndexBuilder(this.spacing)
+					.buildIndex(inputStream);
+		}
+
+		try {
+			DirectoryManager writableDirectoryManager = DirectoryManagerFactory
+					.createDirectoryManager(this.dumpFilePath.getParent(),
+							false);
+			try (OutputStream out = writableDirectoryManager
+					.getOutputStreamForFile(indexFileName)) {
+				this.checkpointIndex.write(out);
+			}
+		} catch (IOException e) {
+			logger.warn("Could not write checkpoint index " + indexFileName
+					+ ": " + e.toString());
+		}
+		return this.checkpointIndex;
+	}
+
+	/**
+	 * Returns a channel over {@link #getDumpFileStream()}, so that
+	 * {@link DumpProcessingController} reads the dump through the streams of
+	 * this class.
+	 */
+	@Override
+	public ReadableByteChannel getDumpFileChannel() throws IOException {
+		return Channels.newChannel(getDumpFileStream());
+	}
+
+	/**
+	 * Returns an input stream for the uncompressed content of the dump
+	 * between two checkpoints of {@link #getCheckpointIndex()}.
+	 * <p>
+	 * It is important to close the stream after use.
+	 *
+	 * @param fromCheckpoint
+	 *            index of the checkpoint where the stream starts
+	 * @param toCheckpoint
+	 *            index of the checkpoint where the stream ends, or the
+	 *            number of checkpoints to read to the end of the dump
+	 * @return an input stream to read the dump file
+	 * @throws IOException
+	 *             if the dump file contents could not be accessed
+	 */
+	public InputStream getDumpFileStream(int fromCheckpoint, int toCheckpoint)
+			throws IOException {
+		GzipCheckpointIndex index = getCheckpointIndex();
+		List<Checkpoint> checkpoints = index.getCheckpoints();
+		if (fromCheckpoint < 0 || fromCheckpoint >= checkpoints.size()
+				|| toCheckpoint > checkpoints.size()
+				|| fromCheckpoint > toCheckpoint) {
+			throw new IllegalArgumentException("Invalid checkpoint range "
+					+ fromCheckpoint + "-" + toCheckpoint + " for "
+					+ checkpoints.size() + " checkpoints.");
+		}
+
+		Checkpoint start = checkpoints.get(fromCheckpoint);
+		long length = -1;
+		if (toCheckpoint < checkpoints.size()) {
+			length = checkpoints.get(toCheckpoint).uncompressedOffset
+					- start.uncompressedOffset;
+		}
+
+		SeekableByteChannel channel = Files.newByteChannel(this.dumpFilePath);
+		try {
+			channel.position(start.compressedBitOffset >>> 3);
+			return new GzipCheckpointInputStream(new BufferedInputStream(
+					Channels.newInputStream(channel),
+					GzipCheckpointInputStream.BUFFER_SIZE), start, length);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a view of the part of this dump between two checkpoints. The
+	 * content of the view can be processed like a complete JSON dump, e.g.,
+	 * using {@link DumpProcessingController#processDump(MwDumpFile)}: if the
+	 * view does not start at the beginning of the dump, its content is
+	 * preceded by an additional line "[", which is otherwise the first line
+	 * of a JSON dump.
+	 *
+	 * @param fromCheckpoint
+	 *            index of the checkpoint where the view starts
+	 * @param toCheckpoint
+	 *            index of the checkpoint where the view ends, or the number
+	 *            of checkpoints for a view that ends with the dump
+	 * @return the view
+	 */
+	public MwDumpFile getSlice(int fromCheckpoint, int toCheckpoint) {
+		return new DumpFileSlice(fromCheckpoint, toCheckpoint);
+	}
+
+	/**
+	 * Splits the dump into the given number of slices of similar size, as
+	 * far as this is possible with the checkpoints of the index. Fewer slices
+	 * are returned if there are not enough checkpoints.
+	 *
+	 * @param count
+	 *            the number of slices
+	 * @return list of slices in the order of the dump
+	 * @throws IOException
+	 *             if the checkpoint index could not be created
+	 * @see #getSlice(int, int)
+	 */
+	public List<MwDumpFile> split(int count) throws IOException {
+		if (count <= 0) {
+			throw new IllegalArgumentException(
+					"The number of slices must be positive.");
+		}
+		GzipCheckpointIndex index = getCheckpointIndex();
+		int checkpointCount = index.getCheckpoints().size();
+		long sliceSize = index.getUncompressedSize() / count + 1;
+
+		List<MwDumpFile> result = new ArrayList<>();
+		int start = 0;
+		for (int i = 1; i < count && start < checkpointCount; i++) {
+			int end = index.findCheckpoint(i * sliceSize);
+			if (end > start) {
+				result.add(getSlice(start, end));
+				start = end;
+			}
+		}
+		result.add(getSlice(start, checkpointCount));
+		return result;
+	}
+
+	/**
+	 * Returns the name of the index file of this dump.
+	 *
+	 * @return file name
+	 */
+	String getIndexFileName() {
+		return this.dumpFileName + INDEX_FILE_SUFFIX;
+	}
+
+	/**
+	 * Throws an exception if the dump file is not available.
+	 */
+	private void checkAvailable() throws IOException {
+		if (!isAvailable()) {
+			throw new IOException("Local dump file \""
+					+ this.dumpFilePath.toString()
+					+ "\" is not available for reading.");
+		}
+	}
+
+	/**
+	 * Part of the dump between two checkpoints.
+	 */
+	private class DumpFileSlice implements MwDumpFile {
+
+		final int fromCheckpoint;
+		final int toCheckpoint;
+
+		DumpFileSlice(int fromCheckpoint, int toCheckpoint) {
+			this.fromCheckpoint = fromCheckpoint;
+			this.toCheckpoint = toCheckpoint;
+		}
+
+		@Override
+		public boolean isAvailable() {
+			return GzipCheckpointDumpFile.this.isAvailable();
+		}
+
+		@Override
+		public String getProjectName() {
+			return GzipCheckpointDumpFile.this.getProjectName();
+		}
+
+		@Override
+		public String getDateStamp() {
+			return GzipCheckpointDumpFile.this.getDateStamp();
+		}
+
+		@Override
+		public DumpContentType getDumpContentType() {
+			return GzipCheckpointDumpFile.this.getDumpContentType();
+		}
+
+		@Override
+		public InputStream getDumpFileStream() throws IOException {
+			InputStream inputStream = GzipCheckpointDumpFile.this
+					.getDumpFileStream(this.fromCheckpoint, this.toCheckpoint);
+			if (getCheckpointIndex().getCheckpoints().get(this.fromCheckpoint)
+					.getUncompressedOffset() == 0) {
+				return inputStream;
+			}
+			return new SequenceInputStream(new ByteArrayInputStream(
+					"[\n".getBytes(StandardCharsets.UTF_8)), inputStream);
+		}
+
+		@Override
+		public BufferedReader getDumpFileReader() throws IOException {
+			return new BufferedReader(new InputStreamReader(
+					getDumpFileStream(), StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public void prepareDumpFile() {
+			// nothing to do
+		}
+
+		@Override
+		public String toString() {
+			return GzipCheckpointDumpFile.this.toString() + " [checkpoints "
+					+ this.fromCheckpoint + "-" + this.toCheckpoint + "]";
+		}
+	}
+}
@@ -0,0 +1,344 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Index of positions in a gzip-compressed file at which decompression can be
+ * started without reading the file from the beginning. Such checkpoints are
+ * created by {@link GzipCheckpointIndexBuilder} at the boundaries of deflate
+ * blocks. Each checkpoint stores the position of the block in the compressed
+ * file and the last 32KB of uncompressed data before the block, which are
+ * needed to resolve back references into earlier data. Moreover, checkpoints
+ * are aligned to line starts: the uncompressed offset of a checkpoint is the
+ * start of the first line that begins at or after its block.
+ * <p>
+ * For JSON dumps, this means that every checkpoint marks the start of an
+ * entity, so that processing can be resumed or split at checkpoints.
+ *
+ * @see GzipCheckpointDumpFile
+ */
+public class GzipCheckpointIndex {
+
+	/**
+	 * Marker at the start of serialized indexes.
+	 */
+	static final int MAGIC = 0x57444749;
+
+	/**
+	 * Version of the serialization format.
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * Flag for the presence of the extra field in gzip member headers.
+	 */
+	static final int FEXTRA = 4;
+	/**
+	 * Flag for the presence of the file name in gzip member headers.
+	 */
+	static final int FNAME = 8;
+	/**
+	 * Flag for the presence of a comment in gzip member headers.
+	 */
+	static final int FCOMMENT = 16;
+	/**
+	 * Flag for the presence of a header checksum in gzip member headers.
+	 */
+	static final int FHCRC = 2;
+
+	/**
+	 * Position in a gzip file at which decompression can start.
+	 */
+	public static class Checkpoint {
+
+		final long compressedBitOffset;
+		final long blockOffset;
+		final long uncompressedOffset;
+		final byte[] window;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param compressedBitOffset
+		 *            position of the deflate block in the compressed file,
+		 *            counted in bits
+		 * @param blockOffset
+		 *            position of the first byte produced by the block in the
+		 *            uncompressed data
+		 * @param uncompressedOffset
+		 *            position of the first line start at or after the block
+		 *            in the uncompressed data
+		 * @param window
+		 *            uncompressed data of the current gzip member that
+		 *            precedes the block, at most 32KB
+		 */
+		Checkpoint(long compressedBitOffset, long blockOffset,
+				long uncompressedOffset, byte[] window) {
+			this.compressedBitOffset = compressedBitOffset;
+			this.blockOffset = blockOffset;
+			this.uncompressedOffset = uncompressedOffset;
+			this.window = window;
+		}
+
+		/**
+		 * Returns the position in the compressed file where decompression
+		 * starts for this checkpoint. Deflate blocks are not aligned to bytes,
+		 * so this position is counted in bits.
+		 *
+		 * @return offset in bits
+		 */
+		public long getCompressedBitOffset() {
+			return this.compressedBitOffset;
+		}
+
+		/**
+		 * Returns the position in the uncompressed data at which a stream
+		 * opened at this checkpoint starts. This is always the start of a
+		 * line.
+		 *
+		 * @return offset in bytes
+		 */
+		public long getUncompressedOffset() {
+			return this.uncompressedOffset;
+		}
+	}
+
+	final long spacing;
+	final long compressedSize;
+	final long uncompressedSize;
+	final List<Checkpoint> checkpoints;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param spacing
+	 *            the minimal distance of checkpoints in uncompressed bytes
+	 * @param compressedSize
+	 *            size of the indexed file in bytes
+	 * @param uncompressedSize
+	 *            size of the uncompressed content of the file in bytes
+	 * @param checkpoints
+	 *            list of checkpoints, ordered by their offsets
+	 */
+	GzipCheckpointIndex(long spacing, long compressedSize,
+			long uncompressedSize, List<Checkpoint> checkpoints) {
+		this.spacing = spacing;
+		this.compressedSize = compressedSize;
+		this.uncompressedSize = uncompressedSize;
+		this.checkpoints = Collections.unmodifiableList(checkpoints);
+	}
+
+	/**
+	 * Returns the minimal distance of checkpoints in uncompressed bytes that
+	 * was used to create this index.
+	 *
+	 * @return spacing in bytes
+	 */
+	public long getSpacing() {
+		return this.spacing;
+	}
+
+	/**
+	 * Returns the size of the indexed (compressed) file.
+	 *
+	 * @return size in bytes
+	 */
+	public long getCompressedSize() {
+		return this.compressedSize;
+	}
+
+	/**
+	 * Returns the size of the uncompressed content of the indexed file.
+	 *
+	 * @return size in bytes
+	 */
+	public long getUncompressedSize() {
+		return this.uncompressedSize;
+	}
+
+	/**
+	 * Returns the checkpoints of this index, ordered by their offsets. The
+	 * first checkpoint is always at the beginning of the data.
+	 *
+	 * @return unmodifiable list of checkpoints
+	 */
+	public List<Checkpoint> getCheckpoints() {
+		return this.checkpoints;
+	}
+
+	/**
+	 * Finds the last checkpoint that starts at or before the given position
+	 * in the uncompressed data.
+	 *
+	 * @param uncompressedOffset
+	 *            position in the uncompressed data
+	 * @return index of the checkpoint in {@link #getCheckpoints()}
+	 */
+	public int findCheckpoint(long uncompressedOffset) {
+		int low = 0;
+		int high = this.checkpoints.size() - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (this.checkpoints.get(middle).uncompressedOffset <= uncompressedOffset) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Writes this index to the given stream. The stream is closed afterwards.
+	 *
+	 * @param outputStream
+	 *            the stream to write to
+	 * @throws IOException
+	 *             if there was a problem writing the index
+	 */
+	public void write(OutputStream outputStream) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(
+				outputStream))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(this.spacing);
+			out.writeLong(this.compressedSize);
+			out.writeLong(this.uncompressedSize);
+			out.writeInt(this.checkpoints.size());
+			for (Checkpoint checkpoint : this.checkpoints) {
+				out.writeLong(checkpoint.compressedBitOffset);
+				out.writeLong(checkpoint.blockOffset);
+				out.writeLong(checkpoint.uncompressedOffset);
+				out.writeInt(checkpoint.window.length);
+				out.write(checkpoint.window);
+			}
+		}
+	}
+
+	/**
+	 * Reads an index from the given stream, as written by
+	 * {@link #write(OutputStream)}. The stream is closed afterwards.
+	 *
+	 * @param inputStream
+	 *            the stream to read from
+	 * @return the index
+	 * @throws IOException
+	 *             if the index could not be read
+	 */
+	public static GzipCheckpointIndex read(InputStream inputStream)
+			throws IOException {
+		try (DataInputStream in = new DataInputStream(new GZIPInputStream(
+				inputStream))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Unsupported gzip checkpoint index format");
+			}
+			long spacing = in.readLong();
+			long compressedSize = in.readLong();
+			long uncompressedSize = in.readLong();
+			int count = in.readInt();
+			List<Checkpoint> checkpoints = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				long compressedBitOffset = in.readLong();
+				long blockOffset = in.readLong();
+				long uncompressedOffset = in.readLong();
+				byte[] window = new byte[in.readInt()];
+				in.readFully(window);
+				checkpoints.add(new Checkpoint(compressedBitOffset,
+						blockOffset, uncompressedOffset, window));
+			}
+			return new GzipCheckpointIndex(spacing, compressedSize,
+					uncompressedSize, checkpoints);
+		}
+	}
+
+	/**
+	 * Reads the header of a gzip member from the given stream.
+	 *
+	 * @param in
+	 *            the stream to read from
+	 * @return true if a header was read, false if the stream was at its end
+	 *         or did not continue with a gzip member
+	 * @throws IOException
+	 *             if the header was incomplete or there was a problem
+	 *             reading the stream
+	 */
+	static boolean readGzipHeader(InputStream in) throws IOException {
+		int id1 = in.read();
+		int id2 = in.read();
+		if (id1 != 0x1f || id2 != 0x8b) {
+			return false;
+		}
+		if (readByte(in) != 8) {
+			throw new IOException("Unsupported gzip compression method");
+		}
+		int flags = readByte(in);
+		skipBytes(in, 6); // modification time, extra flags, OS
+		if ((flags & FEXTRA) != 0) {
+			skipBytes(in, readByte(in) | (readByte(in) << 8));
+		}
+		if ((flags & FNAME) != 0) {
+			while (readByte(in) != 0) {
+				// skip file name
+			}
+		}
+		if ((flags & FCOMMENT) != 0) {
+			while (readByte(in) != 0) {
+				// skip comment
+			}
+		}
+		if ((flags & FHCRC) != 0) {
+			skipBytes(in, 2);
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the given number of bytes from the stream and discards them.
+	 */
+	static void skipBytes(InputStream in, int count) throws IOException {
+		for (int i = 0; i < count; i++) {
+			readByte(in);
+		}
+	}
+
+	/**
+	 * Reads one byte, and fails if the end of the stream was reached.
+	 */
+	private static int readByte(InputStream in) throws IOException {
+		int b = in.read();
+		if (b < 0) {
+			throw new EOFException("Unexpected end of gzip data");
+		}
+		return b;
+	}
+}
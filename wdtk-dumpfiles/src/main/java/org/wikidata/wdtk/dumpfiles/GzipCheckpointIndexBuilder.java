@@ -0,0 +1,536 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wikidata.wdtk.dumpfiles.GzipCheckpointIndex.Checkpoint;
+
+/**
+ * Creates a {@link GzipCheckpointIndex} for a gzip-compressed file. The file
+ * is decompressed once by a decoder that keeps track of the boundaries of
+ * deflate blocks, which are not accessible through
+ * {@link java.util.zip.Inflater}. Whenever the given spacing of uncompressed
+ * bytes has passed since the last checkpoint, the next block boundary is
+ * recorded, together with the preceding 32KB of data, and the checkpoint is
+ * moved forward to the next line start.
+ * <p>
+ * Files that consist of several gzip members, as created by parallel
+ * compressors, are supported.
+ */
+public class GzipCheckpointIndexBuilder {
+
+	static final Logger logger = LoggerFactory
+			.getLogger(GzipCheckpointIndexBuilder.class);
+
+	/**
+	 * Default distance of checkpoints in uncompressed bytes.
+	 */
+	public static final long DEFAULT_SPACING = 64L << 20;
+
+	/**
+	 * Size of the deflate window.
+	 */
+	static final int WINDOW_SIZE = 1 << 15;
+
+	/**
+	 * Number of bits that are decoded by table lookup in one step.
+	 */
+	static final int FAST_BITS = 9;
+
+	static final int[] CODE_LENGTH_ORDER = { 16, 17, 18, 0, 8, 7, 9, 6, 10, 5,
+			11, 4, 12, 3, 13, 2, 14, 1, 15 };
+	static final int[] LENGTH_BASE = { 3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17,
+			19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227,
+			258 };
+	static final int[] LENGTH_EXTRA = { 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2,
+			2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0 };
+	static final int[] DISTANCE_BASE = { 1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33,
+			49, 65, 97, 129, 193, 257, 385, 513, 769, 1025, 1537, 2049, 3073,
+			4097, 6145, 8193, 12289, 16385, 24577 };
+	static final int[] DISTANCE_EXTRA = { 0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4,
+			5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13 };
+
+	final long spacing;
+
+	/**
+	 * Constructor. Uses {@link #DEFAULT_SPACING}.
+	 */
+	public GzipCheckpointIndexBuilder() {
+		this(DEFAULT_SPACING);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param spacing
+	 *            the minimal distance of checkpoints in uncompressed bytes;
+	 *            smaller values allow for more precise positioning but lead
+	 *            to larger indexes (about 32KB per checkpoint)
+	 */
+	public GzipCheckpointIndexBuilder(long spacing) {
+		if (spacing <= 0) {
+			throw new IllegalArgumentException(
+					"The checkpoint spacing must be positive.");
+		}
+		this.spacing = spacing;
+	}
+
+	/**
+	 * Reads the given gzip-compressed stream to the end and returns an index
+	 * of its checkpoints. The stream is not closed.
+	 *
+	 * @param inputStream
+	 *            the compressed data
+	 * @return the index
+	 * @throws IOException
+	 *             if the stream could not be read or did not contain valid
+	 *             gzip data
+	 */
+	public GzipCheckpointIndex buildIndex(InputStream inputStream)
+			throws IOException {
+		return new IndexingInflater(inputStream).inflate();
+	}
+
+	/**
+	 * Canonical Huffman code as used in deflate. Codes of up to
+	 * {@link GzipCheckpointIndexBuilder#FAST_BITS} bits are decoded by a
+	 * table lookup, longer codes bit by bit.
+	 */
+	private static class HuffmanCode {
+
+		final int[] counts = new int[16];
+		final int[] symbols;
+		/**
+		 * Lookup table indexed by the next input bits, with entries of the
+		 * form (symbol &lt;&lt; 4) | length, or -1 for longer codes.
+		 */
+		final int[] fastTable = new int[1 << FAST_BITS];
+
+		HuffmanCode(int[] lengths, int offset, int count) throws IOException {
+			for (int i = 0; i < count; i++) {
+				this.counts[lengths[offset + i]]++;
+			}
+			this.counts[0] = 0;
+
+			int left = 1;
+			for (int length = 1; length < 16; length++) {
+				left = (left << 1) - this.counts[length];
+				if (left < 0) {
+					throw new IOException("Invalid deflate data: over-subscribed Huffman code");
+				}
+			}
+
+			int[] offsets = new int[16];
+			for (int length = 1; length < 15; length++) {
+				offsets[length + 1] = offsets[length] + this.counts[length];
+			}
+			this.symbols = new int[count];
+			for (int symbol = 0; symbol < count; symbol++) {
+				int length = lengths[offset + symbol];
+				if (length != 0) {
+					this.symbols[offsets[length]++] = symbol;
+				}
+			}
+
+			Arrays.fill(this.fastTable, -1);
+			int code = 0;
+			int index = 0;
+			for (int length = 1; length <= FAST_BITS; length++) {
+				for (int i = 0; i < this.counts[length]; i++) {
+					int entry = (this.symbols[index + i] << 4) | length;
+					int reversed = Integer.reverse(code) >>> (32 - length);
+					for (int j = reversed; j < this.fastTable.length; j += 1 << length) {
+						this.fastTable[j] = entry;
+					}
+					code++;
+				}
+				index += this.counts[length];
+				code <<= 1;
+			}
+		}
+	}
+
+	/**
+	 * Reads bits from a stream in the order used by deflate. Whole bytes can
+	 * be read through the {@link InputStream} methods when the input is
+	 * aligned to a byte boundary.
+	 */
+	private static class BitInput extends InputStream {
+
+		final InputStream in;
+		final byte[] buffer = new byte[1 << 16];
+		int bufferPosition = 0;
+		int bufferLimit = 0;
+		long bitBuffer = 0;
+		int bitCount = 0;
+		/**
+		 * Number of bytes that have been moved to the bit buffer.
+		 */
+		long bytesRead = 0;
+
+		BitInput(InputStream in) {
+			this.in = in;
+		}
+
+		/**
+		 * Returns the position of the next unread bit in the stream.
+		 */
+		long getBitPosition() {
+			return this.bytesRead * 8 - this.bitCount;
+		}
+
+		/**
+		 * Fills the bit buffer with as many bytes as fit.
+		 */
+		void fill() throws IOException {
+			while (this.bitCount <= 56) {
+				if (this.bufferPosition == this.bufferLimit) {
+					int count = this.in.read(this.buffer);
+					if (count <= 0) {
+						return;
+					}
+					this.bufferPosition = 0;
+					this.bufferLimit = count;
+				}
+				this.bitBuffer |= (long) (this.buffer[this.bufferPosition++] & 0xff) << this.bitCount;
+				this.bitCount += 8;
+				this.bytesRead++;
+			}
+		}
+
+		int readBits(int count) throws IOException {
+			if (this.bitCount < count) {
+				fill();
+				if (this.bitCount < count) {
+					throw new EOFException("Unexpected end of gzip data");
+				}
+			}
+			int result = (int) (this.bitBuffer & ((1L << count) - 1));
+			this.bitBuffer >>>= count;
+			this.bitCount -= count;
+			return result;
+		}
+
+		void alignToByte() {
+			this.bitBuffer >>>= this.bitCount & 7;
+			this.bitCount -= this.bitCount & 7;
+		}
+
+		int decode(HuffmanCode code) throws IOException {
+			if (this.bitCount < 15) {
+				fill();
+			}
+			int entry = code.fastTable[(int) this.bitBuffer
+					& ((1 << FAST_BITS) - 1)];
+			if (entry >= 0 && (entry & 15) <= this.bitCount) {
+				this.bitBuffer >>>= entry & 15;
+				this.bitCount -= entry & 15;
+				return entry >>> 4;
+			}
+
+			int bits = 0;
+			int first = 0;
+			int index = 0;
+			for (int length = 1; length < 16; length++) {
+				bits |= readBits(1);
+				int count = code.counts[length];
+				if (bits - count < first) {
+					return code.symbols[index + (bits - first)];
+				}
+				index += count;
+				first = (first + count) << 1;
+				bits <<= 1;
+			}
+			throw new IOException("Invalid deflate data: unknown Huffman code");
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (this.bitCount < 8) {
+				fill();
+				if (this.bitCount < 8) {
+					return -1;
+				}
+			}
+			return readBits(8);
+		}
+	}
+
+	/**
+	 * Decoder for one gzip stream that records checkpoints while
+	 * decompressing.
+	 */
+	private class IndexingInflater {
+
+		final BitInput input;
+
+		final byte[] window = new byte[WINDOW_SIZE];
+
+		final List<Checkpoint> checkpoints = new ArrayList<>();
+
+		/**
+		 * Number of uncompressed bytes produced so far.
+		 */
+		long outputPosition = 0;
+
+		/**
+		 * Value of {@link #outputPosition} at the start of the current gzip
+		 * member.
+		 */
+		long memberStart = 0;
+
+		int lastByte = '\n';
+
+		long nextCheckpointPosition = 0;
+
+		/**
+		 * Block boundary that waits for the next line start to become a
+		 * checkpoint, or null if there is none.
+		 */
+		Checkpoint pendingCheckpoint = null;
+
+		IndexingInflater(InputStream inputStream) {
+			this.input = new BitInput(inputStream);
+		}
+
+		GzipCheckpointIndex inflate() throws IOException {
+			if (!GzipCheckpointIndex.readGzipHeader(this.input)) {
+				throw new IOException("Not in GZIP format");
+			}
+			do {
+				this.memberStart = this.outputPosition;
+				inflateMember();
+				this.input.alignToByte();
+				this.input.readBits(32); // CRC
+				long size = this.input.readBits(32) & 0xffffffffL;
+				if (size != ((this.outputPosition - this.memberStart) & 0xffffffffL)) {
+					throw new IOException("Corrupt gzip trailer");
+				}
+			} while (GzipCheckpointIndex.readGzipHeader(this.input));
+
+			if (this.pendingCheckpoint != null) {
+				completeCheckpoint();
+			}
+			while (this.input.read() >= 0) {
+				// count trailing bytes that are not part of a gzip member
+			}
+
+			logger.info("Created " + this.checkpoints.size()
+					+ " checkpoints for " + this.outputPosition
+					+ " bytes of uncompressed data.");
+			return new GzipCheckpointIndex(GzipCheckpointIndexBuilder.this.spacing,
+					this.input.bytesRead, this.outputPosition, this.checkpoints);
+		}
+
+		void inflateMember() throws IOException {
+			boolean lastBlock;
+			do {
+				if (this.pendingCheckpoint == null
+						&& this.outputPosition >= this.nextCheckpointPosition) {
+					startCheckpoint();
+				}
+				lastBlock = this.input.readBits(1) == 1;
+				switch (this.input.readBits(2)) {
+				case 0:
+					inflateStoredBlock();
+					break;
+				case 1:
+					inflateCodes(FixedCodes.LITERALS, FixedCodes.DISTANCES);
+					break;
+				case 2:
+					inflateDynamicBlock();
+					break;
+				default:
+					throw new IOException("Invalid deflate data: unknown block type");
+				}
+			} while (!lastBlock);
+		}
+
+		void inflateStoredBlock() throws IOException {
+			this.input.alignToByte();
+			int length = this.input.readBits(16);
+			if (length != (~this.input.readBits(16) & 0xffff)) {
+				throw new IOException("Invalid deflate data: corrupt stored block length");
+			}
+			for (int i = 0; i < length; i++) {
+				output(this.input.readBits(8));
+			}
+		}
+
+		void inflateDynamicBlock() throws IOException {
+			int literalCount = this.input.readBits(5) + 257;
+			int distanceCount = this.input.readBits(5) + 1;
+			int codeLengthCount = this.input.readBits(4) + 4;
+			if (literalCount > 286 || distanceCount > 30) {
+				throw new IOException("Invalid deflate data: too many codes");
+			}
+
+			int[] lengths = new int[literalCount + distanceCount];
+			int[] codeLengths = new int[19];
+			for (int i = 0; i < codeLengthCount; i++) {
+				codeLengths[CODE_LENGTH_ORDER[i]] = this.input.readBits(3);
+			}
+			HuffmanCode codeLengthCode = new HuffmanCode(codeLengths, 0, 19);
+
+			int index = 0;
+			while (index < lengths.length) {
+				int symbol = this.input.decode(codeLengthCode);
+				if (symbol < 16) {
+					lengths[index++] = symbol;
+					continue;
+				}
+				int length = 0;
+				int repeat;
+				if (symbol == 16) {
+					if (index == 0) {
+						throw new IOException("Invalid deflate data: repeated length without predecessor");
+					}
+					length = lengths[index - 1];
+					repeat = 3 + this.input.readBits(2);
+				} else if (symbol == 17) {
+					repeat = 3 + this.input.readBits(3);
+				} else {
+					repeat = 11 + this.input.readBits(7);
+				}
+				if (index + repeat > lengths.length) {
+					throw new IOException("Invalid deflate data: too many code lengths");
+				}
+				Arrays.fill(lengths, index, index + repeat, length);
+				index += repeat;
+			}
+			if (lengths[256] == 0) {
+				throw new IOException("Invalid deflate data: missing end-of-block code");
+			}
+
+			inflateCodes(new HuffmanCode(lengths, 0, literalCount),
+					new HuffmanCode(lengths, literalCount, distanceCount));
+		}
+
+		void inflateCodes(HuffmanCode literals, HuffmanCode distances)
+				throws IOException {
+			while (true) {
+				int symbol = this.input.decode(literals);
+				if (symbol < 256) {
+					output(symbol);
+				} else if (symbol == 256) {
+					return;
+				} else {
+					symbol -= 257;
+					if (symbol >= LENGTH_BASE.length) {
+						throw new IOException("Invalid deflate data: unknown length code");
+					}
+					int length = LENGTH_BASE[symbol]
+							+ this.input.readBits(LENGTH_EXTRA[symbol]);
+					symbol = this.input.decode(distances);
+					if (symbol >= DISTANCE_BASE.length) {
+						throw new IOException("Invalid deflate data: unknown distance code");
+					}
+					int distance = DISTANCE_BASE[symbol]
+							+ this.input.readBits(DISTANCE_EXTRA[symbol]);
+					if (distance > this.outputPosition - this.memberStart) {
+						throw new IOException("Invalid deflate data: distance too far back");
+					}
+					for (int i = 0; i < length; i++) {
+						output(this.window[(int) (this.outputPosition - distance)
+								& (WINDOW_SIZE - 1)] & 0xff);
+					}
+				}
+			}
+		}
+
+		void output(int b) {
+			this.window[(int) this.outputPosition & (WINDOW_SIZE - 1)] = (byte) b;
+			this.outputPosition++;
+			this.lastByte = b;
+			if (b == '\n' && this.pendingCheckpoint != null) {
+				completeCheckpoint();
+			}
+		}
+
+		/**
+		 * Records the current block boundary as a checkpoint that still needs
+		 * to be aligned to a line start.
+		 */
+		void startCheckpoint() {
+			int windowLength = (int) Math.min(WINDOW_SIZE, this.outputPosition
+					- this.memberStart);
+			byte[] windowCopy = new byte[windowLength];
+			for (int i = 0; i < windowLength; i++) {
+				windowCopy[i] = this.window[(int) (this.outputPosition
+						- windowLength + i)
+						& (WINDOW_SIZE - 1)];
+			}
+			this.pendingCheckpoint = new Checkpoint(
+					this.input.getBitPosition(), this.outputPosition,
+					this.outputPosition, windowCopy);
+			if (this.lastByte == '\n') {
+				completeCheckpoint();
+			}
+		}
+
+		/**
+		 * Completes the pending checkpoint at the current position.
+		 */
+		void completeCheckpoint() {
+			Checkpoint checkpoint = new Checkpoint(
+					this.pendingCheckpoint.compressedBitOffset,
+					this.pendingCheckpoint.blockOffset, this.outputPosition,
+					this.pendingCheckpoint.window);
+			this.checkpoints.add(checkpoint);
+			this.pendingCheckpoint = null;
+			this.nextCheckpointPosition = this.outputPosition
+					+ GzipCheckpointIndexBuilder.this.spacing;
+		}
+	}
+
+	/**
+	 * Huffman codes of deflate blocks with fixed codes.
+	 */
+	private static class FixedCodes {
+
+		static final HuffmanCode LITERALS;
+		static final HuffmanCode DISTANCES;
+
+		static {
+			int[] lengths = new int[288];
+			Arrays.fill(lengths, 0, 144, 8);
+			Arrays.fill(lengths, 144, 256, 9);
+			Arrays.fill(lengths, 256, 280, 7);
+			Arrays.fill(lengths, 280, 288, 8);
+			int[] distanceLengths = new int[30];
+			Arrays.fill(distanceLengths, 5);
+			try {
+				LITERALS = new HuffmanCode(lengths, 0, 288);
+				DISTANCES = new HuffmanCode(distanceLengths, 0, 30);
+			} catch (IOException e) {
+				throw new RuntimeException(e.toString(), e);
+			}
+		}
+	}
+}
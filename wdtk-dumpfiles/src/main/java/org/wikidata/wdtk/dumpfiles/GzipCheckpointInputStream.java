@@ -0,0 +1,290 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.wikidata.wdtk.dumpfiles.GzipCheckpointIndex.Checkpoint;
+
+/**
+ * Stream that decompresses gzip data starting from a {@link Checkpoint}. The
+ * underlying stream must be positioned at the byte that contains the first
+ * bit of the checkpoint's deflate block.
+ * <p>
+ * {@link Inflater} can only start decompression at byte boundaries. If the
+ * block starts within a byte, a small synthetic deflate block without any
+ * content is therefore put in front of the remaining bits of that byte. Its
+ * length is chosen so that the real block starts at the right bit.
+ */
+class GzipCheckpointInputStream extends InputStream {
+
+	static final int BUFFER_SIZE = 1 << 16;
+
+	private final PushbackInputStream in;
+
+	private final byte[] inputBuffer = new byte[BUFFER_SIZE];
+
+	/**
+	 * Number of bytes of {@link #inputBuffer} that were passed to the
+	 * inflater.
+	 */
+	private int inputLength = 0;
+
+	private Inflater inflater;
+
+	/**
+	 * Number of bytes that may still be returned, or -1 if the stream should
+	 * be read to its end.
+	 */
+	private long remaining;
+
+	private boolean endOfStream = false;
+
+	private final byte[] singleByte = new byte[1];
+
+	/**
+	 * Constructor.
+	 *
+	 * @param in
+	 *            the compressed data, positioned at the byte that contains
+	 *            the start of the checkpoint
+	 * @param checkpoint
+	 *            the checkpoint to start from
+	 * @param length
+	 *            the number of uncompressed bytes to return, or -1 to read
+	 *            to the end of the data
+	 * @throws IOException
+	 *             if there was a problem reading the data
+	 */
+	GzipCheckpointInputStream(InputStream in, Checkpoint checkpoint,
+			long length) throws IOException {
+		this.in = new PushbackInputStream(in, BUFFER_SIZE);
+		this.inflater = new Inflater(true);
+		if (checkpoint.window.length > 0) {
+			this.inflater.setDictionary(checkpoint.window);
+		}
+
+		int bitOffset = (int) (checkpoint.compressedBitOffset & 7);
+		if (bitOffset != 0) {
+			int firstByte = this.in.read();
+			if (firstByte < 0) {
+				throw new EOFException("Unexpected end of gzip data");
+			}
+			byte[] prefix = createBlockPrefix(bitOffset, firstByte);
+			System.arraycopy(prefix, 0, this.inputBuffer, 0, prefix.length);
+			this.inputLength = prefix.length;
+			this.inflater.setInput(this.inputBuffer, 0, this.inputLength);
+		}
+
+		this.remaining = -1;
+		long skip = checkpoint.uncompressedOffset - checkpoint.blockOffset;
+		byte[] skipBuffer = new byte[(int) Math.min(skip, BUFFER_SIZE)];
+		while (skip > 0) {
+			int count = read(skipBuffer, 0,
+					(int) Math.min(skip, skipBuffer.length));
+			if (count < 0) {
+				throw new EOFException("Unexpected end of gzip data");
+			}
+			skip -= count;
+		}
+		this.remaining = length;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (read(this.singleByte, 0, 1) < 0) {
+			return -1;
+		}
+		return this.singleByte[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (this.endOfStream || this.remaining == 0) {
+			return -1;
+		}
+		if (this.remaining > 0 && len > this.remaining) {
+			len = (int) this.remaining;
+		}
+
+		while (true) {
+			int count;
+			try {
+				count = this.inflater.inflate(b, off, len);
+			} catch (DataFormatException e) {
+				throw new IOException("Invalid deflate data: " + e.getMessage(), e);
+			}
+			if (count > 0) {
+				if (this.remaining > 0) {
+					this.remaining -= count;
+				}
+				return count;
+			}
+
+			if (this.inflater.finished()) {
+				if (!startNextMember()) {
+					this.endOfStream = true;
+					return -1;
+				}
+			} else if (this.inflater.needsInput()) {
+				this.inputLength = this.in.read(this.inputBuffer);
+				if (this.inputLength < 0) {
+					throw new EOFException("Unexpected end of gzip data");
+				}
+				this.inflater.setInput(this.inputBuffer, 0, this.inputLength);
+			} else {
+				throw new IOException("Invalid deflate data: dictionary required");
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.inflater.end();
+		this.in.close();
+	}
+
+	/**
+	 * Skips the trailer of the current gzip member and the header of the
+	 * next one, if any, and prepares the inflater for the next member.
+	 *
+	 * @return true if there was another member
+	 * @throws IOException
+	 *             if there was a problem reading the data
+	 */
+	private boolean startNextMember() throws IOException {
+		int unused = this.inflater.getRemaining();
+		if (unused > 0) {
+			this.in.unread(this.inputBuffer, this.inputLength - unused, unused);
+		}
+		this.inflater.end();
+		GzipCheckpointIndex.skipBytes(this.in, 8); // CRC and size
+		if (!GzipCheckpointIndex.readGzipHeader(this.in)) {
+			return false;
+		}
+		this.inflater = new Inflater(true);
+		return true;
+	}
+
+	/**
+	 * Creates the bytes that precede the remaining bits of the first byte of
+	 * a deflate block that does not start at a byte boundary. This is a
+	 * non-final block with dynamic Huffman codes that only encodes the end of
+	 * the block. The code lengths are chosen so that the length of this block
+	 * in bits is congruent to the given bit offset modulo 8. The block uses
+	 * the code length code symbols 0, 1, 17 and 18 with two bits each, and a
+	 * literal code that only contains the end-of-block symbol. The lengths of
+	 * the 256 unused literals are encoded as k single zeros, j runs of three
+	 * zeros, and two long runs, which makes the block 94 + 2k + 5j bits long.
+	 *
+	 * @param bitOffset
+	 *            the offset of the block start in its first byte, between 1
+	 *            and 7
+	 * @param firstByte
+	 *            the first byte of the block
+	 * @return the data to pass to the inflater before the following bytes
+	 */
+	static byte[] createBlockPrefix(int bitOffset, int firstByte) {
+		int singleZeros = 0;
+		int shortRuns = 0;
+		while ((94 + 2 * singleZeros + 5 * shortRuns) % 8 != bitOffset) {
+			if (singleZeros < 3) {
+				singleZeros++;
+			} else {
+				singleZeros = 0;
+				shortRuns++;
+			}
+		}
+
+		BitOutput out = new BitOutput();
+		out.writeBits(0, 1); // not the last block
+		out.writeBits(2, 2); // dynamic Huffman codes
+		out.writeBits(0, 5); // 257 literal/length codes
+		out.writeBits(0, 5); // 1 distance code
+		out.writeBits(14, 4); // 18 code length codes
+		for (int i = 0; i < 18; i++) {
+			int symbol = GzipCheckpointIndexBuilder.CODE_LENGTH_ORDER[i];
+			boolean used = symbol == 0 || symbol == 1 || symbol == 17
+					|| symbol == 18;
+			out.writeBits(used ? 2 : 0, 3);
+		}
+		// canonical codes: 0 -> 00, 1 -> 01, 17 -> 10, 18 -> 11
+		int zeros = 256 - singleZeros - 3 * shortRuns;
+		for (int i = 0; i < singleZeros; i++) {
+			out.writeCode(0, 2);
+		}
+		for (int i = 0; i < shortRuns; i++) {
+			out.writeCode(2, 2);
+			out.writeBits(0, 3); // 3 zeros
+		}
+		out.writeCode(3, 2);
+		out.writeBits(127, 7); // 138 zeros
+		out.writeCode(3, 2);
+		out.writeBits(zeros - 138 - 11, 7);
+		out.writeCode(1, 2); // end-of-block symbol with length 1
+		out.writeCode(0, 2); // unused distance code
+		out.writeCode(0, 1); // end of block
+
+		out.writeBits(firstByte >>> bitOffset, 8 - bitOffset);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Writes bits in the order used by deflate.
+	 */
+	private static class BitOutput {
+
+		final byte[] data = new byte[16];
+		int bitCount = 0;
+
+		void writeBits(int value, int count) {
+			for (int i = 0; i < count; i++) {
+				if (((value >>> i) & 1) != 0) {
+					this.data[this.bitCount >>> 3] |= 1 << (this.bitCount & 7);
+				}
+				this.bitCount++;
+			}
+		}
+
+		/**
+		 * Writes a Huffman code, which is stored starting with its most
+		 * significant bit.
+		 */
+		void writeCode(int code, int length) {
+			for (int i = length - 1; i >= 0; i--) {
+				writeBits(code >>> i, 1);
+			}
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(this.data, (this.bitCount + 7) >>> 3);
+		}
+	}
+}
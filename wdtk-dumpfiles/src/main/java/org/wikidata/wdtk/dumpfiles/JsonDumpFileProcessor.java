@@ -20,25 +20,55 @@ package org.wikidata.wdtk.dumpfiles;
  * #L%
  */
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wikidata.wdtk.datamodel.helpers.DatamodelMapper;
+import org.wikidata.wdtk.datamodel.helpers.DocumentDataTokenFilter;
 import org.wikidata.wdtk.datamodel.implementation.EntityDocumentImpl;
 import org.wikidata.wdtk.datamodel.interfaces.*;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonParser.Feature;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectReader;
 
 /**
  * Processor for JSON dumpfiles.
+ * <p>
+ * By default, the dump is read and deserialized on the calling thread. If a
+ * parallelism greater than one is given, one reader thread cuts the dump into
+ * batches of lines, which are deserialized by a pool of worker threads. The
+ * resulting documents are still delivered to the
+ * {@link EntityDocumentProcessor} from the calling thread only, so processors
+ * do not need to be thread-safe. Depending on the settings, documents are
+ * delivered in the order of the dump or in the order in which their batches
+ * were completed.
+ * <p>
+ * In parallel mode, documents can also be delivered directly by the worker
+ * threads, each to a processor of its own (see
+ * {@link #setWorkerProcessors(Supplier)}). This is useful for processors
+ * that aggregate data and whose results can be merged afterwards.
  *
  * @author Markus Kroetzsch
  *
@@ -48,16 +78,237 @@ public class JsonDumpFileProcessor implements MwDumpFileProcessor {
 	static final Logger logger = LoggerFactory
 			.getLogger(JsonDumpFileProcessor.class);
 
+	/**
+	 * Default number of lines that the reader thread puts into one batch in
+	 * parallel mode.
+	 */
+	static final int DEFAULT_BATCH_SIZE = 256;
+
+	/**
+	 * Number of bytes after which the reader thread completes a batch in
+	 * parallel mode, even if it has fewer lines than the batch size.
+	 */
+	static final int MAX_BATCH_BYTES = 1 << 20;
+
+	/**
+	 * Number of batches per worker thread that may be in flight (read but not
+	 * delivered yet) in parallel mode. This bounds the memory that is used for
+	 * buffering.
+	 */
+	static final int BATCHES_PER_WORKER = 4;
+
+	/**
+	 * Marker batch used by the reader thread to signal that all batches have
+	 * been delivered.
+	 */
+	private static final LineBatch END_OF_DUMP = new LineBatch(-1, 0);
+
 	private final ObjectReader documentReader;
 
+	/**
+	 * The IRI of the site that the dump belongs to.
+	 */
+	private final String siteIri;
+
 	private final EntityDocumentProcessor entityDocumentProcessor;
 
+	/**
+	 * Number of threads used to deserialize documents; values below 2 disable
+	 * parallel processing.
+	 */
+	private final int parallelism;
+
+	/**
+	 * If true, documents are delivered in the order of the dump even in
+	 * parallel mode.
+	 */
+	private final boolean preserveOrder;
+
+	/**
+	 * Number of lines per batch in parallel mode. This is only changed in
+	 * tests.
+	 */
+	int batchSize = DEFAULT_BATCH_SIZE;
+
+	/**
+	 * Object that is informed about delivered documents to create
+	 * checkpoints, or null if checkpointing is disabled. Positions are only
+	 * reported in increasing order if documents are delivered in the order of
+	 * the dump.
+	 */
+	DumpProcessingCheckpointer checkpointer = null;
+
+	/**
+	 * Predicate that decides which lines are deserialized, or null if all
+	 * lines are deserialized.
+	 */
+	private EntityPrefilter prefilter = null;
+
+	/**
+	 * Filter that is applied to the JSON of each document while it is
+	 * deserialized, or null if documents are not filtered.
+	 */
+	private DocumentDataTokenFilter tokenFilter = null;
+
+	/**
+	 * Processor of the current worker thread in parallel mode, or null if
+	 * documents are only delivered from the calling thread.
+	 */
+	private ThreadLocal<EntityDocumentProcessor> workerProcessors = null;
+
+	/**
+	 * Batch of consecutive lines of the dump, together with the documents that
+	 * have been parsed from them. The bytes of all lines are stored in one
+	 * array, without line terminators.
+	 */
+	private static class LineBatch {
+		final long sequenceNumber;
+		byte[] data;
+		int dataLength = 0;
+		final int[] lineEnds;
+		int lineCount = 0;
+		/**
+		 * Position in the stream after the last line of the batch.
+		 */
+		long endPosition;
+		/**
+		 * Documents to be delivered from the calling thread.
+		 */
+		final List<EntityDocument> documents;
+		/**
+		 * Number of documents that have been parsed from the batch, and the
+		 * last of them.
+		 */
+		int documentCount = 0;
+		EntityDocument lastDocument;
+		RuntimeException failure;
+
+		LineBatch(long sequenceNumber, int maxLines) {
+			this.sequenceNumber = sequenceNumber;
+			this.data = new byte[0];
+			this.lineEnds = new int[maxLines];
+			this.documents = new ArrayList<>(maxLines);
+		}
+
+		boolean isFull() {
+			return this.lineCount == this.lineEnds.length
+					|| this.dataLength >= MAX_BATCH_BYTES;
+		}
+
+		void addLine(byte[] buffer, int offset, int length) {
+			if (this.dataLength + length > this.data.length) {
+				this.data = Arrays.copyOf(this.data, Math.max(
+						this.dataLength + length, 2 * this.data.length));
+			}
+			System.arraycopy(buffer, offset, this.data, this.dataLength,
+					length);
+			this.dataLength += length;
+			this.lineEnds[this.lineCount++] = this.dataLength;
+		}
+	}
+
+	/**
+	 * Constructor for a processor that works on the calling thread only.
+	 *
+	 * @param entityDocumentProcessor
+	 *            the processor that is notified of all documents
+	 * @param siteIri
+	 *            the site IRI to use for entity ids
+	 */
 	public JsonDumpFileProcessor(
 			EntityDocumentProcessor entityDocumentProcessor, String siteIri) {
+		this(entityDocumentProcessor, siteIri, 1, true);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param entityDocumentProcessor
+	 *            the processor that is notified of all documents; this may
+	 *            be null if worker processors are used instead (see
+	 *            {@link #setWorkerProcessors(Supplier)})
+	 * @param siteIri
+	 *            the site IRI to use for entity ids
+	 * @param parallelism
+	 *            number of worker threads used to deserialize documents; if
+	 *            this is 1 or less, the dump is processed on the calling
+	 *            thread only
+	 * @param preserveOrder
+	 *            if true, documents are delivered in the order of the dump;
+	 *            otherwise they are delivered as soon as they are available;
+	 *            this has no effect if parallelism is 1 or less
+	 */
+	public JsonDumpFileProcessor(
+			EntityDocumentProcessor entityDocumentProcessor, String siteIri,
+			int parallelism, boolean preserveOrder) {
 		this.entityDocumentProcessor = entityDocumentProcessor;
 		this.documentReader = new DatamodelMapper(siteIri)
 				.readerFor(EntityDocumentImpl.class)
 				.with(DeserializationFeature.ACCEPT_EMPTY_ARRAY_AS_NULL_OBJECT);
+		this.siteIri = siteIri;
+		this.parallelism = parallelism;
+		this.preserveOrder = preserveOrder;
+	}
+
+	/**
+	 * Sets a prefilter that decides which entities are deserialized. Before a
+	 * line of the dump is deserialized, only the "type" and "id" fields are
+	 * read from it, and the line is skipped if the prefilter rejects them.
+	 * Skipped entities are not delivered to the processor.
+	 *
+	 * @param prefilter
+	 *            the prefilter to use, or null to deserialize all entities
+	 */
+	public void setPrefilter(EntityPrefilter prefilter) {
+		this.prefilter = prefilter;
+	}
+
+	/**
+	 * Sets a filter for the data of the processed documents. Terms, statement
+	 * groups, and site links that are removed by the filter are skipped while
+	 * parsing the JSON, so that no objects are created for them. The
+	 * documents are the same as when using an
+	 * {@link EntityDocumentProcessorFilter} with the given filter, but they
+	 * are created much faster.
+	 *
+	 * @param filter
+	 *            the filter to use, or null to keep all data
+	 */
+	public void setDocumentDataFilter(DocumentDataFilter filter) {
+		if (filter != null && DocumentDataTokenFilter.isActive(filter)) {
+			this.tokenFilter = new DocumentDataTokenFilter(filter, this.siteIri);
+		} else {
+			this.tokenFilter = null;
+		}
+	}
+
+	/**
+	 * Sets a source of processors for the worker threads of parallel mode.
+	 * Each worker thread obtains one processor from the supplier when it
+	 * parses its first batch, and delivers the documents that it parses to
+	 * this processor directly, in addition to delivering them to the
+	 * processor given in the constructor (if any) from the calling thread.
+	 * Worker processors therefore see the documents of the dump in no
+	 * particular order, and each of them sees only a part of the dump.
+	 * <p>
+	 * When {@link #processDumpFileContents(InputStream, MwDumpFile)} returns,
+	 * all worker threads have finished, so that the data of the worker
+	 * processors can be combined on the calling thread, e.g., as described
+	 * for {@link MergeableEntityDocumentProcessor}. This has no effect if
+	 * the parallelism is 1 or less.
+	 *
+	 * @param workerProcessors
+	 *            supplier of the processors, which is called from the worker
+	 *            threads, or null to deliver documents from the calling
+	 *            thread only
+	 */
+	public void setWorkerProcessors(
+			Supplier<EntityDocumentProcessor> workerProcessors) {
+		if (workerProcessors == null) {
+			this.workerProcessors = null;
+		} else {
+			this.workerProcessors = ThreadLocal.withInitial(workerProcessors);
+		}
 	}
 
 	/**
@@ -65,18 +316,48 @@ public class JsonDumpFileProcessor implements MwDumpFileProcessor {
 	 * efficient Jackson {@link MappingIterator}. However, this class cannot
 	 * recover from processing errors. If an error occurs in one entity, the
 	 * (presumably) less efficient processing method
-	 * {@link #processDumpFileContentsRecovery(InputStream)} is used instead.
+	 * {@link #processDumpFileContentsRecovery(ByteLineReader)} is used instead.
 	 *
 	 * @see MwDumpFileProcessor#processDumpFileContents(InputStream, MwDumpFile)
 	 */
 	@Override
 	public void processDumpFileContents(InputStream inputStream,
 			MwDumpFile dumpFile) {
+		processDumpFileContents(new ByteLineReader(inputStream), dumpFile);
+	}
+
+	/**
+	 * Process dump file data from the given channel, as obtained from
+	 * {@link MwDumpFile#getDumpFileChannel()}. Apart from the source of the
+	 * data, this works like
+	 * {@link #processDumpFileContents(InputStream, MwDumpFile)}. The channel
+	 * is not closed by this method.
+	 *
+	 * @param channel
+	 *            the channel to read from
+	 * @param dumpFile
+	 *            the dump file that the data comes from
+	 */
+	public void processDumpFileContents(ReadableByteChannel channel,
+			MwDumpFile dumpFile) {
+		processDumpFileContents(new ByteLineReader(channel), dumpFile);
+	}
+
+	/**
+	 * Processes the lines of a dump file as described in
+	 * {@link #processDumpFileContents(InputStream, MwDumpFile)}.
+	 */
+	private void processDumpFileContents(ByteLineReader lineReader,
+			MwDumpFile dumpFile) {
 
 		logger.info("Processing JSON dump file " + dumpFile.toString());
 
 		try {
-		    processDumpFileContentsRecovery(inputStream);
+			if (this.parallelism > 1) {
+				processDumpFileContentsParallel(lineReader);
+				return;
+			}
+		    processDumpFileContentsRecovery(lineReader);
 		    /*
 			try {
 				MappingIterator<EntityDocument> documentIterator = documentReader.readValues(inputStream);
@@ -120,72 +401,396 @@ public class JsonDumpFileProcessor implements MwDumpFileProcessor {
 	 *            the document to process
 	 */
 	private void handleDocument(EntityDocument document) {
+		if (this.entityDocumentProcessor != null) {
+			handleDocument(document, this.entityDocumentProcessor);
+		}
+	}
+
+	/**
+	 * Delivers a {@link EntityDocument} to the given processor, calling the
+	 * processing method for the type of the document.
+	 *
+	 * @param document
+	 *            the document to process
+	 * @param processor
+	 *            the processor to deliver the document to
+	 */
+	private static void handleDocument(EntityDocument document,
+			EntityDocumentProcessor processor) {
 		if (document instanceof ItemDocument) {
-			this.entityDocumentProcessor
-					.processItemDocument((ItemDocument) document);
+			processor.processItemDocument((ItemDocument) document);
 		} else if (document instanceof PropertyDocument) {
-			this.entityDocumentProcessor
-					.processPropertyDocument((PropertyDocument) document);
+			processor.processPropertyDocument((PropertyDocument) document);
 		} else if(document instanceof LexemeDocument) {
-			this.entityDocumentProcessor
-					.processLexemeDocument((LexemeDocument) document);
+			processor.processLexemeDocument((LexemeDocument) document);
 		} else if(document instanceof MediaInfoDocument) {
-			this.entityDocumentProcessor
-					.processMediaInfoDocument((MediaInfoDocument) document);
+			processor.processMediaInfoDocument((MediaInfoDocument) document);
 		}
 	}
 
 	/**
-	 * Process dump file data from the given input stream. The method can
+	 * Process dump file data from the given line reader. The method can
 	 * recover from an errors that occurred while processing an input stream,
 	 * which is assumed to contain the JSON serialization of a list of JSON
 	 * entities, with each entity serialization in one line. To recover from the
 	 * previous error, the first line is skipped.
 	 *
-	 * @param inputStream
-	 *            the stream to read from
+	 * @param lineReader
+	 *            the reader for the lines of the dump
 	 * @throws IOException
 	 *             if there is a problem reading the stream
 	 */
-	private void processDumpFileContentsRecovery(InputStream inputStream)
+	private void processDumpFileContentsRecovery(ByteLineReader lineReader)
 			throws IOException {
 		JsonDumpFileProcessor.logger
 				.warn("Entering recovery mode to parse rest of file. This might be slightly slower.");
 
-		BufferedReader br = new BufferedReader(new InputStreamReader(
-				inputStream));
+		if (!lineReader.nextLine()) { // can happen if iterator already has
+										// consumed all the stream
+			return;
+		}
+		JsonDumpFileProcessor.logger.warn("Skipping rest of current line: "
+				+ lineReader.getLinePrefix(100));
+
+		while (lineReader.nextLine() && lineReader.getLineLength() > 1) {
+			EntityDocument document = parseLine(lineReader.getBuffer(),
+					lineReader.getLineOffset(), lineReader.getLineLength());
+			if (document != null) {
+				handleDocument(document);
+			}
+			if (this.checkpointer != null) {
+				this.checkpointer.documentsDelivered(
+						lineReader.getNextLinePosition(), document,
+						document == null ? 0 : 1);
+			}
+		}
+	}
+
+	/**
+	 * Parses one line of the dump, which is expected to contain the JSON
+	 * serialization of one entity, possibly followed by a comma. The line is
+	 * given as a slice of a byte array, which is parsed without converting it
+	 * to a string first. Errors are logged and lead to the line being
+	 * skipped. Lines that are rejected by the prefilter are skipped without
+	 * deserializing them.
+	 *
+	 * @param buffer
+	 *            the array that contains the line
+	 * @param offset
+	 *            the position of the first byte of the line
+	 * @param length
+	 *            the length of the line, without line terminator
+	 * @return the parsed document, or null if the line could not be parsed
+	 *         or was skipped
+	 * @throws IOException
+	 *             if there was a low-level problem reading the line
+	 */
+	private EntityDocument parseLine(byte[] buffer, int offset, int length)
+			throws IOException {
+		int jsonLength = length;
+		if (buffer[offset + length - 1] == ',') {
+			jsonLength--;
+		}
+		if (this.prefilter != null
+				&& !acceptLine(buffer, offset, jsonLength)) {
+			return null;
+		}
+		if (this.tokenFilter != null) {
+			try (JsonParser parser = this.tokenFilter.filter(this.documentReader
+					.getFactory().createParser(buffer, offset, jsonLength))) {
+				return documentReader.readValue(parser);
+			} catch (JsonProcessingException e) {
+				logProblematicLine(e, buffer, offset, length);
+				return null;
+			}
+		}
+		try {
+			return documentReader.readValue(buffer, offset, jsonLength);
+		} catch (JsonProcessingException e) {
+			logProblematicLine(e, buffer, offset, length);
+			return null;
+		}
+	}
+
+	/**
+	 * Reports an error that occurred when parsing a line of the dump.
+	 *
+	 * @param exception
+	 *            the exception to log
+	 * @param buffer
+	 *            the array that contains the line
+	 * @param offset
+	 *            the position of the first byte of the line
+	 * @param length
+	 *            the length of the line
+	 */
+	private void logProblematicLine(JsonProcessingException exception,
+			byte[] buffer, int offset, int length) {
+		logJsonProcessingException(exception);
+		JsonDumpFileProcessor.logger.error("Problematic line was: "
+				+ new String(buffer, offset, Math.min(50, length),
+						StandardCharsets.UTF_8) + "...");
+	}
+
+	/**
+	 * Checks if the prefilter accepts the entity of the given line. Only the
+	 * top-level "type" and "id" fields are read, and the values of all other
+	 * fields are skipped without being parsed into objects. Lines where
+	 * neither field can be found, e.g., since the JSON is broken, are
+	 * accepted, so that errors are reported when deserializing them.
+	 *
+	 * @param buffer
+	 *            the array that contains the line
+	 * @param offset
+	 *            the position of the first byte of the JSON
+	 * @param length
+	 *            the length of the JSON
+	 * @return true if the line should be deserialized
+	 */
+	private boolean acceptLine(byte[] buffer, int offset, int length) {
+		String entityType = null;
+		String entityId = null;
+		try (JsonParser parser = this.documentReader.getFactory()
+				.createParser(buffer, offset, length)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return true;
+			}
+			while ((entityType == null || entityId == null)
+					&& parser.nextToken() == JsonToken.FIELD_NAME) {
+				String fieldName = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
+				if (value == JsonToken.VALUE_STRING && "type".equals(fieldName)) {
+					entityType = parser.getText();
+				} else if (value == JsonToken.VALUE_STRING
+						&& "id".equals(fieldName)) {
+					entityId = parser.getText();
+				} else {
+					parser.skipChildren();
+				}
+			}
+		} catch (IOException e) {
+			// fall through; the deserializer will report the problem
+		}
+		if (entityType == null && entityId == null) {
+			return true;
+		}
+		return this.prefilter.accept(entityType, entityId);
+	}
+
+	/**
+	 * Process dump file data from the given line reader using several
+	 * threads. A dedicated reader thread splits the input into batches of
+	 * lines, which are parsed by a pool of worker threads. The documents are
+	 * delivered to the {@link EntityDocumentProcessor} from the calling
+	 * thread, and to the worker processors, if any, from the worker threads.
+	 * The method only returns after all worker threads have stopped. Lines
+	 * that cannot be parsed are skipped, as in
+	 * {@link #processDumpFileContentsRecovery(ByteLineReader)}.
+	 *
+	 * @param lineReader
+	 *            the reader for the lines of the dump
+	 * @throws IOException
+	 *             if there is a problem reading the stream
+	 */
+	private void processDumpFileContentsParallel(ByteLineReader lineReader)
+			throws IOException {
+		JsonDumpFileProcessor.logger.info("Using " + this.parallelism
+				+ " threads to parse dump ("
+				+ (this.preserveOrder ? "ordered" : "unordered") + ").");
+
+		int maxBatchesInFlight = BATCHES_PER_WORKER * this.parallelism;
+		Semaphore batchesInFlight = new Semaphore(maxBatchesInFlight);
+		BlockingQueue<LineBatch> parsedBatches = new LinkedBlockingQueue<>();
+		ExecutorService workers = Executors.newFixedThreadPool(
+				this.parallelism, new DaemonThreadFactory("wdtk-json-worker-"));
+		IOException[] readerFailure = new IOException[1];
+
+		Thread reader = new Thread(() -> {
+			try {
+				readBatches(lineReader, workers, batchesInFlight,
+						parsedBatches);
+			} catch (IOException e) {
+				readerFailure[0] = e;
+			} catch (InterruptedException e) {
+				// processing was aborted by the delivering thread
+				return;
+			}
+			try {
+				// wait until all batches have been delivered
+				batchesInFlight.acquire(maxBatchesInFlight);
+				parsedBatches.add(END_OF_DUMP);
+			} catch (InterruptedException e) {
+				// processing was aborted by the delivering thread
+			}
+		}, "wdtk-json-reader");
+		reader.setDaemon(true);
+		reader.start();
+
+		try {
+			deliverBatches(parsedBatches, batchesInFlight);
+			reader.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(
+					"Interrupted while processing JSON dump");
+		} finally {
+			reader.interrupt();
+			workers.shutdownNow();
+			awaitTermination(workers);
+		}
+
+		if (readerFailure[0] != null) {
+			throw readerFailure[0];
+		}
+	}
+
+	/**
+	 * Waits until the given workers have finished their current batches, so
+	 * that worker processors are no longer used when processing ends, even if
+	 * it was aborted.
+	 */
+	private void awaitTermination(ExecutorService workers) {
+		try {
+			while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+				logger.info("Waiting for worker threads to finish.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Reads the lines of the given reader, collects them into batches, and
+	 * hands each batch to a worker for parsing. Parsed batches are put
+	 * into the given queue. The first line of the input is skipped, and
+	 * reading stops at the first line that cannot contain an entity.
+	 *
+	 * @param lineReader
+	 *            the reader for the lines of the dump
+	 * @param workers
+	 *            the executor that parses batches
+	 * @param batchesInFlight
+	 *            semaphore with one permit per batch that may be in flight
+	 * @param parsedBatches
+	 *            the queue that parsed batches are put into
+	 * @throws IOException
+	 *             if there is a problem reading the stream
+	 * @throws InterruptedException
+	 *             if the thread was interrupted while waiting for a permit
+	 */
+	private void readBatches(ByteLineReader lineReader,
+			ExecutorService workers, Semaphore batchesInFlight,
+			BlockingQueue<LineBatch> parsedBatches) throws IOException,
+			InterruptedException {
 
-		String line = br.readLine();
-		if (line == null) { // can happen if iterator already has consumed all
-							// the stream
+		// the first line contains the opening bracket of the JSON array
+		if (!lineReader.nextLine()) {
 			return;
 		}
-		if (line.length() >= 100) {
-			line = line.substring(0, 100) + "[...]"
-					+ line.substring(line.length() - 50);
+
+		long sequenceNumber = 0;
+		LineBatch batch = new LineBatch(sequenceNumber, this.batchSize);
+		while (lineReader.nextLine() && lineReader.getLineLength() > 1) {
+			batch.addLine(lineReader.getBuffer(), lineReader.getLineOffset(),
+					lineReader.getLineLength());
+			batch.endPosition = lineReader.getNextLinePosition();
+			if (batch.isFull()) {
+				submitBatch(batch, workers, batchesInFlight, parsedBatches);
+				batch = new LineBatch(++sequenceNumber, this.batchSize);
+			}
+		}
+		if (batch.lineCount > 0) {
+			submitBatch(batch, workers, batchesInFlight, parsedBatches);
 		}
-		JsonDumpFileProcessor.logger.warn("Skipping rest of current line: "
-				+ line);
+	}
 
-		line = br.readLine();
-		while (line != null && line.length() > 1) {
+	/**
+	 * Hands a batch to a worker thread for parsing, blocking while too many
+	 * batches are in flight.
+	 */
+	private void submitBatch(LineBatch batch, ExecutorService workers,
+			Semaphore batchesInFlight, BlockingQueue<LineBatch> parsedBatches)
+			throws InterruptedException {
+		batchesInFlight.acquire();
+		workers.execute(() -> {
 			try {
-				EntityDocument document;
-				if (line.charAt(line.length() - 1) == ',') {
-					document = documentReader.readValue(line.substring(0,
-							line.length() - 1));
-				} else {
-					document = documentReader.readValue(line);
+				EntityDocumentProcessor workerProcessor = this.workerProcessors == null ? null
+						: this.workerProcessors.get();
+				int lineStart = 0;
+				for (int i = 0; i < batch.lineCount; i++) {
+					EntityDocument document = parseLine(batch.data, lineStart,
+							batch.lineEnds[i] - lineStart);
+					if (document != null) {
+						if (workerProcessor != null) {
+							handleDocument(document, workerProcessor);
+						}
+						if (this.entityDocumentProcessor != null) {
+							batch.documents.add(document);
+						}
+						batch.documentCount++;
+						batch.lastDocument = document;
+					}
+					lineStart = batch.lineEnds[i];
 				}
-				handleDocument(document);
-			} catch (JsonProcessingException e) {
-				logJsonProcessingException(e);
-				JsonDumpFileProcessor.logger.error("Problematic line was: "
-						+ line.substring(0, Math.min(50, line.length()))
-						+ "...");
+			} catch (IOException e) {
+				batch.failure = new RuntimeException("Cannot read JSON input: "
+						+ e.getMessage(), e);
+			} catch (RuntimeException e) {
+				batch.failure = e;
+			}
+			parsedBatches.add(batch);
+		});
+	}
+
+	/**
+	 * Takes parsed batches from the given queue and delivers their documents
+	 * until the end of the dump has been reached. If the order of the dump is
+	 * to be preserved, batches that are completed early are held back until
+	 * all preceding batches have been delivered.
+	 *
+	 * @param parsedBatches
+	 *            the queue that parsed batches are taken from
+	 * @param batchesInFlight
+	 *            semaphore that is released for each delivered batch
+	 * @throws InterruptedException
+	 *             if the thread was interrupted while waiting for a batch
+	 */
+	private void deliverBatches(BlockingQueue<LineBatch> parsedBatches,
+			Semaphore batchesInFlight) throws InterruptedException {
+		Map<Long, LineBatch> earlyBatches = new HashMap<>();
+		long nextSequenceNumber = 0;
+
+		LineBatch batch = parsedBatches.take();
+		while (batch != END_OF_DUMP) {
+			if (this.preserveOrder) {
+				earlyBatches.put(batch.sequenceNumber, batch);
+				LineBatch nextBatch = earlyBatches.remove(nextSequenceNumber);
+				while (nextBatch != null) {
+					deliverBatch(nextBatch, batchesInFlight);
+					nextSequenceNumber++;
+					nextBatch = earlyBatches.remove(nextSequenceNumber);
+				}
+			} else {
+				deliverBatch(batch, batchesInFlight);
 			}
+			batch = parsedBatches.take();
+		}
+	}
 
-			line = br.readLine();
+	/**
+	 * Delivers the documents of one parsed batch to the processor.
+	 */
+	private void deliverBatch(LineBatch batch, Semaphore batchesInFlight) {
+		if (batch.failure != null) {
+			throw batch.failure;
+		}
+		for (EntityDocument document : batch.documents) {
+			handleDocument(document);
+		}
+		if (this.checkpointer != null) {
+			this.checkpointer.documentsDelivered(batch.endPosition,
+					batch.lastDocument, batch.documentCount);
 		}
+		batchesInFlight.release();
 	}
 }
@@ -0,0 +1,321 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.wikidata.wdtk.dumpfiles.wmf.WmfDumpFile;
+import org.wikidata.wdtk.util.CompressionType;
+
+/**
+ * Local uncompressed dump file that is read through memory mappings instead
+ * of file streams. This avoids the system calls and buffer copies of stream
+ * access, which matters when decompressed dumps are kept on fast storage for
+ * repeated processing.
+ * <p>
+ * Any range of the file can be read directly. For JSON dumps, the file can be
+ * split into ranges that start and end at line boundaries, so that several
+ * threads or processes can each process one range with their own reader,
+ * see {@link #split(int)}.
+ */
+public class MappedDumpFile extends MwLocalDumpFile {
+
+	/**
+	 * Default number of bytes that are mapped at once.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 30;
+
+	/**
+	 * Maximal number of bytes that are mapped at once.
+	 */
+	final int chunkSize;
+
+	/**
+	 * Constructor. The meta-data of the dump file is guessed from its name.
+	 *
+	 * @param filePath
+	 *            path to the uncompressed dump file in the file system
+	 */
+	public MappedDumpFile(String filePath) {
+		this(filePath, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Constructor. The meta-data of the dump file is guessed from its name.
+	 *
+	 * @param filePath
+	 *            path to the uncompressed dump file in the file system
+	 * @param chunkSize
+	 *            the maximal number of bytes that are mapped at once
+	 */
+	public MappedDumpFile(String filePath, int chunkSize) {
+		super(filePath);
+		if (WmfDumpFile.getDumpFileCompressionType(this.dumpFileName) != CompressionType.NONE) {
+			throw new IllegalArgumentException("Dump file \""
+					+ this.dumpFileName
+					+ "\" is compressed and cannot be memory-mapped.");
+		}
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException(
+					"The chunk size must be positive.");
+		}
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Returns the size of the dump file.
+	 *
+	 * @return size in bytes
+	 * @throws IOException
+	 *             if the size could not be determined
+	 */
+	public long getSize() throws IOException {
+		checkAvailable();
+		return Files.size(this.dumpFilePath);
+	}
+
+	@Override
+	public InputStream getDumpFileStream() throws IOException {
+		return getDumpFileStream(0, -1);
+	}
+
+	/**
+	 * Returns a channel over the mapped content of the dump, so that the dump
+	 * is read from the mapping rather than through a file channel.
+	 */
+	@Override
+	public ReadableByteChannel getDumpFileChannel() throws IOException {
+		return getDumpFileChannel(0, -1);
+	}
+
+	/**
+	 * Returns an input stream for the given range of the dump.
+	 * <p>
+	 * It is important to close the stream after use.
+	 *
+	 * @param start
+	 *            the position where the stream starts
+	 * @param end
+	 *            the position where the stream ends, or -1 to read to the end
+	 *            of the dump
+	 * @return an input stream to read the dump file
+	 * @throws IOException
+	 *             if the dump file contents could not be accessed
+	 */
+	public InputStream getDumpFileStream(long start, long end)
+			throws IOException {
+		checkAvailable();
+		return new MappedFileInputStream(this.dumpFilePath, start, end,
+				this.chunkSize);
+	}
+
+	/**
+	 * Returns a channel for the given range of the dump. Reading from the
+	 * channel copies the data from the mapping directly into the buffer of
+	 * the caller.
+	 * <p>
+	 * It is important to close the channel after use.
+	 *
+	 * @param start
+	 *            the position where the channel starts
+	 * @param end
+	 *            the position where the channel ends, or -1 to read to the
+	 *            end of the dump
+	 * @return a channel to read the dump file
+	 * @throws IOException
+	 *             if the dump file contents could not be accessed
+	 */
+	public ReadableByteChannel getDumpFileChannel(long start, long end)
+			throws IOException {
+		checkAvailable();
+		return new MappedFileInputStream(this.dumpFilePath, start, end,
+				this.chunkSize);
+	}
+
+	/**
+	 * Returns the position of the first line that starts at or after the
+	 * given position. The search is done on the mapped file content.
+	 *
+	 * @param position
+	 *            the position to start searching at
+	 * @return the position of the line start, or the size of the dump if no
+	 *         line starts after the position
+	 * @throws IOException
+	 *             if the dump file could not be read
+	 */
+	public long findLineStart(long position) throws IOException {
+		if (position <= 0) {
+			return 0;
+		}
+		long size = getSize();
+		if (position >= size) {
+			return size;
+		}
+		// a line starts at the position if the previous byte ends a line
+		long result = position - 1;
+		try (InputStream inputStream = getDumpFileStream(result, -1)) {
+			int b;
+			while ((b = inputStream.read()) >= 0) {
+				result++;
+				if (b == '\n') {
+					return result;
+				}
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Returns a view of the given range of this dump. The content of the view
+	 * can be processed like a complete JSON dump, e.g., using
+	 * {@link DumpProcessingController#processDump(MwDumpFile)}: if the view
+	 * does not start at the beginning of the dump, its content is preceded by
+	 * an additional line "[", which is otherwise the first line of a JSON
+	 * dump. The range should start and end at line boundaries.
+	 *
+	 * @param start
+	 *            the position where the view starts
+	 * @param end
+	 *            the position where the view ends, or -1 for a view that
+	 *            ends with the dump
+	 * @return the view
+	 * @see #findLineStart(long)
+	 */
+	public MwDumpFile getSlice(long start, long end) {
+		return new DumpFileSlice(start, end);
+	}
+
+	/**
+	 * Splits the dump into the given number of slices of similar size. The
+	 * boundaries of the slices are moved to the next line start. Fewer
+	 * slices are returned if the dump has too few lines.
+	 *
+	 * @param count
+	 *            the number of slices
+	 * @return list of slices in the order of the dump
+	 * @throws IOException
+	 *             if the dump file could not be read
+	 * @see #getSlice(long, long)
+	 */
+	public List<MwDumpFile> split(int count) throws IOException {
+		if (count <= 0) {
+			throw new IllegalArgumentException(
+					"The number of slices must be positive.");
+		}
+		long size = getSize();
+		long sliceSize = size / count + 1;
+
+		List<MwDumpFile> result = new ArrayList<>();
+		long start = 0;
+		for (int i = 1; i < count && start < size; i++) {
+			long end = findLineStart(Math.max(start, i * sliceSize));
+			if (end > start && end < size) {
+				result.add(getSlice(start, end));
+				start = end;
+			}
+		}
+		result.add(getSlice(start, size));
+		return result;
+	}
+
+	/**
+	 * Throws an exception if the dump file is not available.
+	 */
+	private void checkAvailable() throws IOException {
+		if (!isAvailable()) {
+			throw new IOException("Local dump file \""
+					+ this.dumpFilePath.toString()
+					+ "\" is not available for reading.");
+		}
+	}
+
+	/**
+	 * Part of the dump between two positions.
+	 */
+	private class DumpFileSlice implements MwDumpFile {
+
+		final long start;
+		final long end;
+
+		DumpFileSlice(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public boolean isAvailable() {
+			return MappedDumpFile.this.isAvailable();
+		}
+
+		@Override
+		public String getProjectName() {
+			return MappedDumpFile.this.getProjectName();
+		}
+
+		@Override
+		public String getDateStamp() {
+			return MappedDumpFile.this.getDateStamp();
+		}
+
+		@Override
+		public DumpContentType getDumpContentType() {
+			return MappedDumpFile.this.getDumpContentType();
+		}
+
+		@Override
+		public InputStream getDumpFileStream() throws IOException {
+			InputStream inputStream = MappedDumpFile.this.getDumpFileStream(
+					this.start, this.end);
+			if (this.start == 0) {
+				return inputStream;
+			}
+			return new SequenceInputStream(new ByteArrayInputStream(
+					"[\n".getBytes(StandardCharsets.UTF_8)), inputStream);
+		}
+
+		@Override
+		public BufferedReader getDumpFileReader() throws IOException {
+			return new BufferedReader(new InputStreamReader(
+					getDumpFileStream(), StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public void prepareDumpFile() {
+			// nothing to do
+		}
+
+		@Override
+		public String toString() {
+			return MappedDumpFile.this.toString() + " [bytes " + this.start
+					+ "-" + this.end + "]";
+		}
+	}
+}
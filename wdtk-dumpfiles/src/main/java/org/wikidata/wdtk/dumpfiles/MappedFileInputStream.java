@@ -0,0 +1,184 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Input stream that reads a range of a file through memory mappings. The
+ * range is mapped in chunks of a fixed size, one after the other, so that
+ * ranges larger than the maximal size of one mapping can be read. Reading
+ * copies the data from the mapping directly into the given array, without
+ * any system calls or further buffering. The stream is also a channel, which
+ * copies the data from the mapping directly into the given buffer.
+ */
+class MappedFileInputStream extends InputStream implements
+		ReadableByteChannel {
+
+	final FileChannel channel;
+	final int chunkSize;
+	final long end;
+
+	/**
+	 * Position in the file where the next chunk starts.
+	 */
+	long nextChunkPosition;
+
+	/**
+	 * The current chunk, or null if no chunk has been mapped yet.
+	 */
+	MappedByteBuffer chunk = null;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param file
+	 *            the file to read
+	 * @param start
+	 *            the position of the first byte to read
+	 * @param end
+	 *            the position after the last byte to read, or -1 to read up
+	 *            to the end of the file
+	 * @param chunkSize
+	 *            the maximal number of bytes that are mapped at once
+	 * @throws IOException
+	 *             if the file could not be opened
+	 */
+	MappedFileInputStream(Path file, long start, long end, int chunkSize)
+			throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		long size = this.channel.size();
+		if (end < 0 || end > size) {
+			end = size;
+		}
+		if (start < 0 || start > end) {
+			this.channel.close();
+			throw new IllegalArgumentException("Invalid range " + start + "-"
+					+ end + " for file of size " + size + ".");
+		}
+		this.end = end;
+		this.nextChunkPosition = start;
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!ensureData()) {
+			return -1;
+		}
+		return this.chunk.get() & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!ensureData()) {
+			return -1;
+		}
+		int count = Math.min(len, this.chunk.remaining());
+		this.chunk.get(b, off, count);
+		return count;
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		if (!this.channel.isOpen()) {
+			throw new ClosedChannelException();
+		}
+		if (!dst.hasRemaining()) {
+			return 0;
+		}
+		if (!ensureData()) {
+			return -1;
+		}
+		int count = Math.min(dst.remaining(), this.chunk.remaining());
+		ByteBuffer slice = this.chunk.slice();
+		slice.limit(count);
+		dst.put(slice);
+		this.chunk.position(this.chunk.position() + count);
+		return count;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		if (n <= 0) {
+			return 0;
+		}
+		long remaining = this.chunk == null ? 0 : this.chunk.remaining();
+		if (n < remaining) {
+			this.chunk.position(this.chunk.position() + (int) n);
+			return n;
+		}
+		// drop the current chunk and continue after the skipped bytes
+		long skipped = Math.min(n, remaining + this.end
+				- this.nextChunkPosition);
+		this.nextChunkPosition += skipped - remaining;
+		this.chunk = null;
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return this.chunk == null ? 0 : this.chunk.remaining();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return this.channel.isOpen();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.chunk = null;
+		this.channel.close();
+	}
+
+	/**
+	 * Maps the next chunk if the current chunk has been read completely.
+	 *
+	 * @return false if the end of the range has been reached
+	 * @throws IOException
+	 *             if the file could not be mapped
+	 */
+	private boolean ensureData() throws IOException {
+		if (this.chunk != null && this.chunk.hasRemaining()) {
+			return true;
+		}
+		if (this.nextChunkPosition >= this.end) {
+			return false;
+		}
+		long size = Math.min(this.chunkSize, this.end - this.nextChunkPosition);
+		this.chunk = this.channel.map(FileChannel.MapMode.READ_ONLY,
+				this.nextChunkPosition, size);
+		this.nextChunkPosition += size;
+		return true;
+	}
+}
@@ -0,0 +1,108 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessorBroker;
+import org.wikidata.wdtk.datamodel.interfaces.MergeableEntityDocumentProcessor;
+
+/**
+ * Creates forks of {@link MergeableEntityDocumentProcessor} objects for the
+ * worker threads of a {@link JsonDumpFileProcessor}, and merges the forks
+ * into the original processors once the dump has been processed. Every call
+ * of {@link #get()} returns a processor that calls one new fork of each of
+ * the original processors.
+ */
+class MergeableProcessorForks implements Supplier<EntityDocumentProcessor> {
+
+	/**
+	 * The original processors.
+	 */
+	final List<MergeableEntityDocumentProcessor<?>> processors;
+
+	/**
+	 * Forks that have not been merged yet. Each list contains one fork for
+	 * each original processor, in the same order.
+	 */
+	final List<List<MergeableEntityDocumentProcessor<?>>> forks = new ArrayList<>();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param processors
+	 *            the processors to fork
+	 */
+	MergeableProcessorForks(List<MergeableEntityDocumentProcessor<?>> processors) {
+		this.processors = processors;
+	}
+
+	@Override
+	public EntityDocumentProcessor get() {
+		List<MergeableEntityDocumentProcessor<?>> workerForks = new ArrayList<>(
+				this.processors.size());
+		for (MergeableEntityDocumentProcessor<?> processor : this.processors) {
+			workerForks.add(processor.fork());
+		}
+		synchronized (this.forks) {
+			this.forks.add(workerForks);
+		}
+
+		if (workerForks.size() == 1) {
+			return workerForks.get(0);
+		}
+		EntityDocumentProcessorBroker broker = new EntityDocumentProcessorBroker();
+		for (EntityDocumentProcessor fork : workerForks) {
+			broker.registerEntityDocumentProcessor(fork);
+		}
+		return broker;
+	}
+
+	/**
+	 * Merges all forks that have been created so far into the original
+	 * processors. This must only be called when the forks are no longer in
+	 * use.
+	 */
+	void mergeForks() {
+		synchronized (this.forks) {
+			for (List<MergeableEntityDocumentProcessor<?>> workerForks : this.forks) {
+				for (int i = 0; i < this.processors.size(); i++) {
+					merge(this.processors.get(i), workerForks.get(i));
+				}
+			}
+			this.forks.clear();
+		}
+	}
+
+	/**
+	 * Merges a fork into its original processor. The types match since the
+	 * fork was created by the processor.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static void merge(MergeableEntityDocumentProcessor processor,
+			MergeableEntityDocumentProcessor fork) {
+		processor.merge(fork);
+	}
+}
@@ -23,6 +23,8 @@ package org.wikidata.wdtk.dumpfiles;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Comparator;
 
 /**
@@ -99,6 +101,24 @@ public interface MwDumpFile {
 	 */
 	InputStream getDumpFileStream() throws IOException;
 
+	/**
+	 * Returns a channel that provides access to the (uncompressed) text
+	 * content of the dump file. This provides the same data as
+	 * {@link #getDumpFileStream()}, but local files can be read into the
+	 * buffers of the caller without intermediate stream layers, which is
+	 * faster for uncompressed and gzip-compressed dumps. The default
+	 * implementation wraps the stream of the dump file.
+	 * <p>
+	 * It is important to close the channel after use.
+	 *
+	 * @return a channel to read the dump file
+	 * @throws IOException
+	 *             if the dump file contents could not be accessed
+	 */
+	default ReadableByteChannel getDumpFileChannel() throws IOException {
+		return Channels.newChannel(getDumpFileStream());
+	}
+
 	/**
 	 * Returns a buffered reader that provides access to the (uncompressed) text
 	 * content of the dump file.
@@ -21,13 +21,20 @@ package org.wikidata.wdtk.dumpfiles;
  */
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -43,6 +50,11 @@ import org.wikidata.wdtk.dumpfiles.wmf.WmfDumpFile;
  * Class for representing dump files that are found at arbitrary (local) file
  * paths. The meta-data for the dump file (content type, time stamp, etc.) can
  * be set explicitly, or be guessed from the file name (to the extent possible).
+ * <p>
+ * If the file is a manifest of dump shards, as created by {@link DumpSharder}
+ * and recognized by the suffix {@link DumpShardManifest#MANIFEST_FILE_SUFFIX},
+ * the dump consists of the entities of all shards, or of the shards chosen
+ * with {@link #selectShards(int...)}.
  *
  * @author Markus Damm
  * @author Markus Kroetzsch
@@ -83,6 +95,18 @@ public class MwLocalDumpFile implements MwDumpFile {
 	 */
 	final boolean isAvailable;
 
+	/**
+	 * The manifest if this is a manifest of dump shards and it has been read,
+	 * or null otherwise.
+	 */
+	DumpShardManifest shardManifest = null;
+
+	/**
+	 * Indexes of the shards that belong to this dump, or null if all shards
+	 * belong to it.
+	 */
+	List<Integer> selectedShards = null;
+
 	/**
 	 * Hash map defining the compression type of each type of dump.
 	 */
@@ -199,10 +223,164 @@ public class MwLocalDumpFile implements MwDumpFile {
 					+ this.dumpFilePath.toString()
 					+ "\" is not available for reading.");
 		}
+		if (isShardManifest()) {
+			return getShardsStream();
+		}
 		return this.directoryManager.getInputStreamForFile(this.dumpFileName,
 				WmfDumpFile.getDumpFileCompressionType(dumpFileName));
 	}
 
+	@Override
+	public ReadableByteChannel getDumpFileChannel() throws IOException {
+		if (isShardManifest()) {
+			return Channels.newChannel(getDumpFileStream());
+		}
+		if (!isAvailable()) {
+			throw new IOException("Local dump file \""
+					+ this.dumpFilePath.toString()
+					+ "\" is not available for reading.");
+		}
+		return this.directoryManager.getChannelForFile(this.dumpFileName,
+				WmfDumpFile.getDumpFileCompressionType(this.dumpFileName));
+	}
+
+	/**
+	 * Creates a copy of this dump file next to it that uses the given
+	 * compression, and returns the copy as a new dump file with the same
+	 * content type, date, and project. Recompressing a dump from bzip2 or
+	 * gzip to {@link CompressionType#LZ4} or {@link CompressionType#ZSTD} once
+	 * makes repeated processing considerably faster, since these formats are
+	 * much faster to decompress.
+	 *
+	 * @param compressionType
+	 *            the compression to use for the copy
+	 * @return the copy
+	 * @throws IOException
+	 *             if the dump could not be read or the copy could not be
+	 *             written
+	 */
+	public MwLocalDumpFile recompress(CompressionType compressionType)
+			throws IOException {
+		if (isShardManifest()) {
+			throw new IllegalStateException("Local dump file \""
+					+ this.dumpFilePath.toString()
+					+ "\" is a shard manifest and cannot be recompressed.");
+		}
+		String fileName = WmfDumpFile.getRecompressedDumpFileName(
+				this.dumpFileName, compressionType);
+		if (fileName.equals(this.dumpFileName)) {
+			throw new IllegalArgumentException("Local dump file \""
+					+ this.dumpFilePath.toString() + "\" already uses "
+					+ compressionType);
+		}
+		DirectoryManager outputDirectoryManager = DirectoryManagerFactory
+				.createDirectoryManager(this.dumpFilePath.getParent(), false);
+		try (InputStream inputStream = getDumpFileStream()) {
+			outputDirectoryManager.createFileAtomic(fileName, inputStream,
+					compressionType);
+		}
+		return new MwLocalDumpFile(this.dumpFilePath.resolveSibling(fileName)
+				.toString(), this.dumpContentType, this.dateStamp,
+				this.projectName);
+	}
+
+	/**
+	 * Returns true if this file is a manifest of dump shards.
+	 *
+	 * @return true if the file name ends with
+	 *         {@link DumpShardManifest#MANIFEST_FILE_SUFFIX}
+	 */
+	public boolean isShardManifest() {
+		return this.dumpFileName
+				.endsWith(DumpShardManifest.MANIFEST_FILE_SUFFIX);
+	}
+
+	/**
+	 * Returns the manifest of dump shards in this file.
+	 *
+	 * @return the manifest
+	 * @throws IOException
+	 *             if this is no manifest or it could not be read
+	 */
+	public synchronized DumpShardManifest getShardManifest() throws IOException {
+		if (this.shardManifest == null) {
+			if (!isShardManifest() || !isAvailable()) {
+				throw new IOException("Local dump file \""
+						+ this.dumpFilePath.toString()
+						+ "\" is not an available shard manifest.");
+			}
+			this.shardManifest = DumpShardManifest.read(this.directoryManager
+					.getInputStreamForFile(this.dumpFileName,
+							CompressionType.NONE));
+		}
+		return this.shardManifest;
+	}
+
+	/**
+	 * Restricts this dump to the shards with the given indexes, so that only
+	 * their entities are processed. The shards are read in the given order.
+	 * This is only possible if this file is a manifest of dump shards.
+	 *
+	 * @param shardIndexes
+	 *            the indexes of the shards to process, starting from 0, or no
+	 *            indexes to process all shards
+	 */
+	public void selectShards(int... shardIndexes) {
+		if (!isShardManifest()) {
+			throw new IllegalStateException("Local dump file \""
+					+ this.dumpFilePath.toString()
+					+ "\" is not a shard manifest.");
+		}
+		if (shardIndexes.length == 0) {
+			this.selectedShards = null;
+			return;
+		}
+		List<Integer> shards = new ArrayList<>(shardIndexes.length);
+		for (int shardIndex : shardIndexes) {
+			shards.add(shardIndex);
+		}
+		this.selectedShards = Collections.unmodifiableList(shards);
+	}
+
+	/**
+	 * Returns a stream that contains the entities of all selected shards in
+	 * the format of a JSON dump.
+	 */
+	private InputStream getShardsStream() throws IOException {
+		List<DumpShardManifest.Shard> shards = getShardManifest().getShards();
+		List<Integer> shardIndexes = this.selectedShards;
+		if (shardIndexes == null) {
+			shardIndexes = new ArrayList<>(shards.size());
+			for (int i = 0; i < shards.size(); i++) {
+				shardIndexes.add(i);
+			}
+		}
+
+		List<InputStream> inputStreams = new ArrayList<>();
+		inputStreams.add(new ByteArrayInputStream(
+				"[\n".getBytes(StandardCharsets.UTF_8)));
+		try {
+			for (int shardIndex : shardIndexes) {
+				if (shardIndex < 0 || shardIndex >= shards.size()) {
+					throw new IOException("Shard " + shardIndex
+							+ " does not exist in " + this.dumpFilePath);
+				}
+				String fileName = shards.get(shardIndex).getFileName();
+				inputStreams.add(this.directoryManager.getInputStreamForFile(
+						fileName,
+						WmfDumpFile.getDumpFileCompressionType(fileName)));
+			}
+		} catch (IOException e) {
+			for (InputStream inputStream : inputStreams) {
+				inputStream.close();
+			}
+			throw e;
+		}
+		inputStreams.add(new ByteArrayInputStream(
+				"]\n".getBytes(StandardCharsets.UTF_8)));
+		return new SequenceInputStream(Collections.enumeration(inputStreams));
+	}
+
 	@Override
 	public BufferedReader getDumpFileReader() throws IOException {
 		return new BufferedReader(new InputStreamReader(getDumpFileStream(),
@@ -216,7 +394,9 @@ public class MwLocalDumpFile implements MwDumpFile {
 
 	@Override
 	public String toString() {
-		return this.dumpFilePath.toString() + " (" + this.projectName + "/"
+		return this.dumpFilePath.toString()
+				+ (this.selectedShards == null ? "" : " " + this.selectedShards)
+				+ " (" + this.projectName + "/"
 				+ getDumpContentType().toString().toLowerCase() + "/"
 				+ this.dateStamp + ")";
 	}
@@ -233,9 +413,17 @@ public class MwLocalDumpFile implements MwDumpFile {
 			return DumpContentType.JSON;
 		} else if (lcDumpName.contains(".json.bz2")) {
 			return DumpContentType.JSON;
+		} else if (lcDumpName.contains(".json.lz4")) {
+			return DumpContentType.JSON;
+		} else if (lcDumpName.contains(".json.zst")) {
+			return DumpContentType.JSON;
+		} else if (lcDumpName.endsWith(DumpShardManifest.MANIFEST_FILE_SUFFIX)) {
+			return DumpContentType.JSON;
 		} else if (lcDumpName.contains(".sql.gz")) {
 			return DumpContentType.SITES;
-		} else if (lcDumpName.contains(".xml.bz2")) {
+		} else if (lcDumpName.contains(".xml.bz2")
+				|| lcDumpName.contains(".xml.lz4")
+				|| lcDumpName.contains(".xml.zst")) {
 			if (lcDumpName.contains("daily")) {
 				return DumpContentType.DAILY;
 			} else if (lcDumpName.contains("current")) {
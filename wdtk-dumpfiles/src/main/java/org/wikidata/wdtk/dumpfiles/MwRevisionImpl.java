@@ -60,6 +60,19 @@ public class MwRevisionImpl implements MwRevision {
 	 * Copy constructor.
 	 */
 	public MwRevisionImpl(MwRevision mwRevision) {
+		copyFrom(mwRevision);
+	}
+
+	/**
+	 * Overwrites all member fields with the data of the given revision. This
+	 * allows a single object to hold the data of changing revisions without
+	 * allocating a new copy each time. Only references to the (immutable)
+	 * strings of the given revision are kept.
+	 *
+	 * @param mwRevision
+	 *            the revision to copy the data from
+	 */
+	void copyFrom(MwRevision mwRevision) {
 		this.prefixedTitle = mwRevision.getPrefixedTitle();
 		this.timeStamp = mwRevision.getTimeStamp();
 		this.text = mwRevision.getText();
@@ -70,9 +70,16 @@ public class MwRevisionProcessorBroker implements MwRevisionProcessor {
 	/**
 	 * Holds the most current revision found in the block of revisions that is
 	 * currently being processed. If the current page block is not the first for
-	 * that page, this will not be stored and the value is null.
+	 * that page, this will not be stored and the value is null. Otherwise,
+	 * this is always {@link #currentRevisionBuffer}.
 	 */
 	MwRevisionImpl mostCurrentRevision;
+	/**
+	 * Object that is reused for holding the data of the most current revision
+	 * of each page, so that no new object is needed whenever a more current
+	 * revision is found.
+	 */
+	final MwRevisionImpl currentRevisionBuffer;
 	/**
 	 * Page id of the currently processed block of page revisions. Used to
 	 * detect when the block changes.
@@ -85,6 +92,7 @@ public class MwRevisionProcessorBroker implements MwRevisionProcessor {
 	public MwRevisionProcessorBroker() {
 		this.revisionSubscriptions = new ArrayList<>();
 		this.mostCurrentRevision = null;
+		this.currentRevisionBuffer = new MwRevisionImpl();
 		this.currentPageId = -1;
 		// TODO these initial sizes need to be configurable
 		encounteredPages = new BitVectorImpl(20000000);
@@ -151,14 +159,15 @@ public class MwRevisionProcessorBroker implements MwRevisionProcessor {
 					.getBit(this.currentPageId);
 			if (currentPageIsNew) {
 				this.encounteredPages.setBit(this.currentPageId, true);
-				this.mostCurrentRevision = new MwRevisionImpl(mwRevision);
+				this.currentRevisionBuffer.copyFrom(mwRevision);
+				this.mostCurrentRevision = this.currentRevisionBuffer;
 			} else {
 				this.mostCurrentRevision = null;
 			}
 		} else if (this.mostCurrentRevision != null
 				&& mwRevision.getRevisionId() > this.mostCurrentRevision
 						.getRevisionId()) {
-			this.mostCurrentRevision = new MwRevisionImpl(mwRevision);
+			this.mostCurrentRevision.copyFrom(mwRevision);
 		}
 
 		notifyMwRevisionProcessors(mwRevision, false);
@@ -0,0 +1,238 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * MwRevisionProcessor that records all calls in a bounded queue, so that
+ * they can be replayed to another processor on another thread. This is used
+ * to read several revision dumps concurrently while still delivering their
+ * revisions one dump after the other. The thread that reads the dump blocks
+ * when the queue is full, that is, when it holds the maximal number of
+ * revisions or when the texts of the buffered revisions have reached the
+ * maximal size. A single revision that is larger than this size is still
+ * buffered when the queue is otherwise empty, so the memory used by the
+ * queue is at most the maximal size plus the size of the largest revision,
+ * plus a small overhead per buffered revision.
+ * <p>
+ * The reading thread must call {@link #endOfDump(RuntimeException)} when it
+ * is done with the dump, also if reading failed; otherwise
+ * {@link #replay(MwRevisionProcessor)} will not return.
+ */
+class QueuedRevisionProcessor implements MwRevisionProcessor {
+
+	/**
+	 * Recorded call of
+	 * {@link MwRevisionProcessor#startRevisionProcessing(String, String, Map)}.
+	 */
+	static class StartEvent {
+		final String siteName;
+		final String baseUrl;
+		final Map<Integer, String> namespaces;
+
+		StartEvent(String siteName, String baseUrl,
+				Map<Integer, String> namespaces) {
+			this.siteName = siteName;
+			this.baseUrl = baseUrl;
+			this.namespaces = namespaces;
+		}
+	}
+
+	/**
+	 * Marker for a call of
+	 * {@link MwRevisionProcessor#finishRevisionProcessing()}.
+	 */
+	static final Object FINISH_EVENT = new Object();
+
+	/**
+	 * Marker for the end of the dump, after which no more events follow.
+	 */
+	static final Object END_EVENT = new Object();
+
+	final BlockingQueue<Object> events;
+
+	/**
+	 * Maximal estimated size of the buffered revisions in bytes.
+	 */
+	final long maxBufferedSize;
+
+	/**
+	 * Estimated size of the buffered revisions in bytes. Guarded by the lock
+	 * on {@link #events}.
+	 */
+	long bufferedSize = 0;
+
+	/**
+	 * Exception that terminated reading the dump, or null if there was none.
+	 */
+	volatile RuntimeException failure;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param capacity
+	 *            the maximal number of revisions that are buffered
+	 * @param maxBufferedSize
+	 *            the maximal estimated size in bytes of the revisions that
+	 *            are buffered, see {@link #getSize(MwRevision)}
+	 */
+	QueuedRevisionProcessor(int capacity, long maxBufferedSize) {
+		this.events = new ArrayBlockingQueue<>(capacity);
+		this.maxBufferedSize = maxBufferedSize;
+	}
+
+	/**
+	 * Estimates the memory used by the strings of the given revision, which
+	 * is dominated by its text. Strings use at most two bytes per character.
+	 *
+	 * @param mwRevision
+	 *            the revision
+	 * @return the estimated size in bytes
+	 */
+	static long getSize(MwRevision mwRevision) {
+		return 2L * (length(mwRevision.getText())
+				+ length(mwRevision.getComment())
+				+ length(mwRevision.getPrefixedTitle()));
+	}
+
+	private static int length(String string) {
+		return string == null ? 0 : string.length();
+	}
+
+	@Override
+	public void startRevisionProcessing(String siteName, String baseUrl,
+			Map<Integer, String> namespaces) {
+		// the dump file processor reuses its namespace map
+		put(new StartEvent(siteName, baseUrl, new HashMap<>(namespaces)));
+	}
+
+	@Override
+	public void processRevision(MwRevision mwRevision) {
+		// the dump file processor reuses its revision object
+		MwRevision copy = new MwRevisionImpl(mwRevision);
+		reserve(getSize(copy));
+		put(copy);
+	}
+
+	@Override
+	public void finishRevisionProcessing() {
+		put(FINISH_EVENT);
+	}
+
+	/**
+	 * Records that the dump has been read completely, or that reading was
+	 * aborted with the given exception.
+	 *
+	 * @param failure
+	 *            the exception that aborted reading, or null if reading
+	 *            finished normally
+	 */
+	void endOfDump(RuntimeException failure) {
+		this.failure = failure;
+		put(END_EVENT);
+	}
+
+	/**
+	 * Passes all recorded calls to the given processor, waiting for new calls
+	 * until the end of the dump has been recorded. If reading the dump was
+	 * aborted by an exception, this exception is rethrown after all
+	 * previously recorded calls have been replayed.
+	 *
+	 * @param mwRevisionProcessor
+	 *            the processor to call
+	 */
+	void replay(MwRevisionProcessor mwRevisionProcessor) {
+		while (true) {
+			Object event = take();
+			if (event == END_EVENT) {
+				if (this.failure != null) {
+					throw this.failure;
+				}
+				return;
+			} else if (event == FINISH_EVENT) {
+				mwRevisionProcessor.finishRevisionProcessing();
+			} else if (event instanceof StartEvent) {
+				StartEvent startEvent = (StartEvent) event;
+				mwRevisionProcessor.startRevisionProcessing(
+						startEvent.siteName, startEvent.baseUrl,
+						startEvent.namespaces);
+			} else {
+				MwRevision mwRevision = (MwRevision) event;
+				release(getSize(mwRevision));
+				mwRevisionProcessor.processRevision(mwRevision);
+			}
+		}
+	}
+
+	/**
+	 * Waits until the given number of bytes can be buffered and adds them to
+	 * the buffered size. A revision is always admitted if nothing else is
+	 * buffered, so that revisions larger than the maximal size do not block
+	 * forever.
+	 */
+	private void reserve(long size) {
+		synchronized (this.events) {
+			while (this.bufferedSize > 0
+					&& this.bufferedSize + size > this.maxBufferedSize) {
+				try {
+					this.events.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException(e.toString(), e);
+				}
+			}
+			this.bufferedSize += size;
+		}
+	}
+
+	/**
+	 * Removes the given number of bytes from the buffered size, waking up a
+	 * reading thread that waits in {@link #reserve(long)}.
+	 */
+	private void release(long size) {
+		synchronized (this.events) {
+			this.bufferedSize -= size;
+			this.events.notifyAll();
+		}
+	}
+
+	private void put(Object event) {
+		try {
+			this.events.put(event);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e.toString(), e);
+		}
+	}
+
+	private Object take() {
+		try {
+			return this.events.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e.toString(), e);
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+
+/**
+ * Interface that can be implemented by entity document processors that keep
+ * state across documents, so that this state can be saved together with the
+ * checkpoints of {@link DumpProcessingController}, and restored when
+ * processing is resumed from a checkpoint. Processors that do not implement
+ * this interface are not informed about checkpoints, and will only see the
+ * documents after the checkpoint when processing is resumed.
+ *
+ * @see DumpProcessingController#setCheckpointFile(String)
+ */
+public interface SnapshotHook {
+
+	/**
+	 * Saves the state of the processor. This is called when all documents
+	 * up to the given checkpoint have been processed, and before the
+	 * checkpoint is persisted. No documents are processed while this method
+	 * runs. If the method throws an exception, the checkpoint is not
+	 * persisted and processing continues.
+	 *
+	 * @param checkpoint
+	 *            the checkpoint that will be persisted
+	 * @throws IOException
+	 *             if the state could not be saved
+	 */
+	void saveSnapshot(DumpProcessingCheckpoint checkpoint) throws IOException;
+
+	/**
+	 * Restores the state of the processor that was saved for the given
+	 * checkpoint. This is called before processing is resumed from this
+	 * checkpoint.
+	 *
+	 * @param checkpoint
+	 *            the checkpoint that processing resumes from
+	 * @throws IOException
+	 *             if the state could not be restored; the dump is not
+	 *             processed in this case
+	 */
+	void restoreSnapshot(DumpProcessingCheckpoint checkpoint)
+			throws IOException;
+}
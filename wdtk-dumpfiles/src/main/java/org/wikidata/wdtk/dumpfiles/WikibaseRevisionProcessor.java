@@ -21,11 +21,18 @@ package org.wikidata.wdtk.dumpfiles;
  */
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wikidata.wdtk.datamodel.helpers.JsonDeserializer;
+import org.wikidata.wdtk.datamodel.implementation.EntityIdValueImpl;
 import org.wikidata.wdtk.datamodel.interfaces.*;
 
 import com.fasterxml.jackson.core.JsonParseException;
@@ -43,6 +50,12 @@ public class WikibaseRevisionProcessor implements MwRevisionProcessor {
 	static final Logger logger = LoggerFactory
 			.getLogger(WikibaseRevisionProcessor.class);
 
+	/**
+	 * Number of revisions per worker thread that may be pending (submitted
+	 * but not delivered yet) in pipelined mode.
+	 */
+	static final int PENDING_REVISIONS_PER_WORKER = 32;
+
 	/**
 	 * The IRI of the site that this data comes from. This cannot be extracted
 	 * from individual revisions.
@@ -50,6 +63,29 @@ public class WikibaseRevisionProcessor implements MwRevisionProcessor {
 	private final EntityDocumentProcessor entityDocumentProcessor;
 	private final JsonDeserializer jsonDeserializer;
 
+	/**
+	 * Predicate that decides which revisions are deserialized, or null if all
+	 * revisions are deserialized.
+	 */
+	private EntityPrefilter prefilter = null;
+
+	/**
+	 * Number of threads used to deserialize revisions; values below 2 disable
+	 * pipelined processing.
+	 */
+	private int parallelism = 1;
+
+	/**
+	 * Worker threads for pipelined processing, or null if they have not been
+	 * started.
+	 */
+	private ExecutorService workers = null;
+
+	/**
+	 * Documents of submitted revisions that have not been delivered yet, in
+	 * the order of submission.
+	 */
+	private final Deque<Future<EntityDocument>> pendingDocuments = new ArrayDeque<>();
 
 	/**
 	 * Constructor.
@@ -62,8 +98,60 @@ public class WikibaseRevisionProcessor implements MwRevisionProcessor {
 	 */
 	public WikibaseRevisionProcessor(
 			EntityDocumentProcessor entityDocumentProcessor, String siteIri) {
+		this(entityDocumentProcessor, siteIri, null);
+	}
+
+	/**
+	 * Constructor for a processor that filters the data of the entity
+	 * documents. The data that is removed by the filter is skipped while
+	 * parsing the JSON of revisions.
+	 *
+	 * @param entityDocumentProcessor
+	 *            the object that entity documents will be forwarded to
+	 * @param siteIri
+	 *            the IRI of the site that the data comes from, as used in
+	 *            {@link ItemIdValue#getSiteIri()}
+	 * @param filter
+	 *            the filter to apply, or null to keep all data
+	 */
+	public WikibaseRevisionProcessor(
+			EntityDocumentProcessor entityDocumentProcessor, String siteIri,
+			DocumentDataFilter filter) {
 		this.entityDocumentProcessor = entityDocumentProcessor;
-		this.jsonDeserializer = new JsonDeserializer(siteIri);
+		this.jsonDeserializer = new JsonDeserializer(siteIri, filter);
+	}
+
+	/**
+	 * Sets a prefilter that decides which entities are deserialized. The
+	 * prefilter is called with the entity type that corresponds to the
+	 * content model of a revision, and with the title of the revised page
+	 * (without namespace prefix) as the entity id. Revisions that are
+	 * rejected are skipped without parsing their JSON content.
+	 *
+	 * @param prefilter
+	 *            the prefilter to use, or null to deserialize all revisions
+	 */
+	public void setPrefilter(EntityPrefilter prefilter) {
+		this.prefilter = prefilter;
+	}
+
+	/**
+	 * Sets the number of threads that are used to deserialize the JSON of
+	 * revisions. With a value greater than one, revisions are handed to a
+	 * pool of worker threads, while the thread that calls
+	 * {@link #processRevision(MwRevision)} can continue to parse the dump.
+	 * Documents are still delivered to the {@link EntityDocumentProcessor}
+	 * from that thread only, in the order in which the revisions were
+	 * processed. Some documents may only be delivered in later calls of
+	 * {@link #processRevision(MwRevision)}, but all documents are delivered
+	 * when {@link #finishRevisionProcessing()} returns.
+	 *
+	 * @param parallelism
+	 *            the number of threads to use; values below 2 disable
+	 *            pipelined processing
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
 	}
 
 	@Override
@@ -77,107 +165,192 @@ public class WikibaseRevisionProcessor implements MwRevisionProcessor {
 
 	@Override
 	public void processRevision(MwRevision mwRevision) {
-		if (MwRevision.MODEL_WIKIBASE_ITEM.equals(mwRevision.getModel())) {
-			processItemRevision(mwRevision);
-		} else if (MwRevision.MODEL_WIKIBASE_PROPERTY.equals(mwRevision
-				.getModel())) {
-			processPropertyRevision(mwRevision);
-		} else if (MwRevision.MODEL_WIKIBASE_LEXEME.equals(mwRevision
-				.getModel())) {
-			processLexemeRevision(mwRevision);
-		} // else: ignore this revision
-	}
-
-	public void processItemRevision(MwRevision mwRevision) {
-		if(isWikibaseRedirection(mwRevision)) {
-			processEntityRedirectRevision(mwRevision);
+		String entityType = getEntityType(mwRevision.getModel());
+		if (entityType == null) {
+			return; // ignore this revision
+		}
+		if (this.prefilter != null
+				&& !this.prefilter.accept(entityType, mwRevision.getTitle())) {
 			return;
 		}
-
-		try {
-			ItemDocument document = jsonDeserializer.deserializeItemDocument(mwRevision.getText());
-			entityDocumentProcessor.processItemDocument(document);
-		} catch (JsonParseException e1) {
-			logger.error("Failed to parse JSON for item "
-					+ mwRevision.getPrefixedTitle() + ": " + e1.getMessage());
-		} catch (JsonMappingException e1) {
-			logger.error("Failed to map JSON for item "
-					+ mwRevision.getPrefixedTitle() + ": " + e1.getMessage());
-			e1.printStackTrace();
-			System.out.print(mwRevision.getText());
-		} catch (IOException e1) {
-			logger.error("Failed to read revision: " + e1.getMessage());
+		if (this.parallelism > 1) {
+			submitRevision(mwRevision);
+		} else {
+			handleDocument(deserializeRevision(mwRevision.getModel(),
+					mwRevision.getText(), mwRevision.getPrefixedTitle()));
 		}
 	}
 
+	public void processItemRevision(MwRevision mwRevision) {
+		handleDocument(deserializeRevision(MwRevision.MODEL_WIKIBASE_ITEM,
+				mwRevision.getText(), mwRevision.getPrefixedTitle()));
+	}
+
 	public void processPropertyRevision(MwRevision mwRevision) {
-		if(isWikibaseRedirection(mwRevision)) {
-			processEntityRedirectRevision(mwRevision);
-			return;
-		}
+		handleDocument(deserializeRevision(MwRevision.MODEL_WIKIBASE_PROPERTY,
+				mwRevision.getText(), mwRevision.getPrefixedTitle()));
+	}
 
+	/**
+	 * Hands the JSON of the given revision to a worker thread for
+	 * deserialization, and delivers the documents of earlier revisions that
+	 * are ready. Blocks if too many revisions are pending. Only the
+	 * immutable strings of the revision are used by the worker, since the
+	 * revision object itself may be reused by the caller.
+	 *
+	 * @param mwRevision
+	 *            the revision to deserialize
+	 */
+	private void submitRevision(MwRevision mwRevision) {
+		if (this.workers == null) {
+			this.workers = Executors.newFixedThreadPool(this.parallelism,
+					new DaemonThreadFactory("wdtk-revision-worker-"));
+		}
+		String model = mwRevision.getModel();
+		String text = mwRevision.getText();
+		String prefixedTitle = mwRevision.getPrefixedTitle();
+		this.pendingDocuments.add(this.workers.submit(() -> deserializeRevision(
+				model, text, prefixedTitle)));
 		try {
-			PropertyDocument document = jsonDeserializer.deserializePropertyDocument(mwRevision.getText());
-			entityDocumentProcessor.processPropertyDocument(document);
-		} catch (JsonParseException e1) {
-			logger.error("Failed to parse JSON for property "
-					+ mwRevision.getPrefixedTitle() + ": " + e1.getMessage());
-		} catch (JsonMappingException e1) {
-			logger.error("Failed to map JSON for property "
-					+ mwRevision.getPrefixedTitle() + ": " + e1.getMessage());
-			e1.printStackTrace();
-			System.out.print(mwRevision.getText());
-		} catch (IOException e1) {
-			logger.error("Failed to read revision: " + e1.getMessage());
+			deliverDocuments(PENDING_REVISIONS_PER_WORKER * this.parallelism);
+		} catch (RuntimeException e) {
+			// processing is aborted, and finishRevisionProcessing() may
+			// not be called anymore
+			stopWorkers();
+			throw e;
 		}
 	}
 
-	private void processLexemeRevision(MwRevision mwRevision) {
-		if(isWikibaseRedirection(mwRevision)) {
-			processEntityRedirectRevision(mwRevision);
-			return;
+	/**
+	 * Delivers the documents of pending revisions in the order in which the
+	 * revisions were submitted. Documents are delivered as long as they are
+	 * ready, or as long as more than the given number of revisions are
+	 * pending.
+	 *
+	 * @param maxPending
+	 *            the number of revisions that may remain pending
+	 */
+	private void deliverDocuments(int maxPending) {
+		while (!this.pendingDocuments.isEmpty()
+				&& (this.pendingDocuments.size() > maxPending || this.pendingDocuments
+						.peek().isDone())) {
+			try {
+				handleDocument(this.pendingDocuments.poll().get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e.toString(), e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause().toString(),
+						e.getCause());
+			}
 		}
+	}
 
+	/**
+	 * Deserializes the JSON text of a revision. Errors are logged and lead to
+	 * the revision being skipped. This method is called from worker threads
+	 * when processing is pipelined.
+	 *
+	 * @param model
+	 *            the content model of the revision
+	 * @param text
+	 *            the text of the revision
+	 * @param prefixedTitle
+	 *            the title of the revised page, used for error messages
+	 * @return the document, or null if the text could not be deserialized
+	 */
+	private EntityDocument deserializeRevision(String model, String text,
+			String prefixedTitle) {
+		String kind = isWikibaseRedirection(text) ? "redirect"
+				: getEntityType(model);
 		try {
-			LexemeDocument document = jsonDeserializer.deserializeLexemeDocument(mwRevision.getText());
-			entityDocumentProcessor.processLexemeDocument(document);
+			switch (kind) {
+			case "redirect":
+				return jsonDeserializer.deserializeEntityRedirectDocument(text);
+			case EntityIdValueImpl.JSON_ENTITY_TYPE_ITEM:
+				return jsonDeserializer.deserializeItemDocument(text);
+			case EntityIdValueImpl.JSON_ENTITY_TYPE_PROPERTY:
+				return jsonDeserializer.deserializePropertyDocument(text);
+			default:
+				return jsonDeserializer.deserializeLexemeDocument(text);
+			}
 		} catch (JsonParseException e1) {
-			logger.error("Failed to parse JSON for lexeme "
-					+ mwRevision.getPrefixedTitle() + ": " + e1.getMessage());
+			logger.error("Failed to parse JSON for " + kind + " "
+					+ prefixedTitle + ": " + e1.getMessage());
 		} catch (JsonMappingException e1) {
-			logger.error("Failed to map JSON for lexeme "
-					+ mwRevision.getPrefixedTitle() + ": " + e1.getMessage());
-			e1.printStackTrace();
-			System.out.print(mwRevision.getText());
+			logger.error("Failed to map JSON for " + kind + " "
+					+ prefixedTitle + ": " + e1.getMessage(), e1);
 		} catch (IOException e1) {
 			logger.error("Failed to read revision: " + e1.getMessage());
 		}
+		return null;
 	}
 
-	private void processEntityRedirectRevision(MwRevision mwRevision) {
-		try {
-			EntityRedirectDocument document = jsonDeserializer.deserializeEntityRedirectDocument(mwRevision.getText());
-			entityDocumentProcessor.processEntityRedirectDocument(document);
-		} catch (JsonParseException e1) {
-			logger.error("Failed to parse JSON for redirect "
-					+ mwRevision.getPrefixedTitle() + ": " + e1.getMessage());
-		} catch (JsonMappingException e1) {
-			logger.error("Failed to map JSON for redirect "
-					+ mwRevision.getPrefixedTitle() + ": " + e1.getMessage());
-			e1.printStackTrace();
-			System.out.print(mwRevision.getText());
-		} catch (IOException e1) {
-			logger.error("Failed to read revision: " + e1.getMessage());
+	/**
+	 * Forwards the given document to the entity document processor.
+	 *
+	 * @param document
+	 *            the document, or null if there is nothing to forward
+	 */
+	private void handleDocument(EntityDocument document) {
+		if (document instanceof ItemDocument) {
+			entityDocumentProcessor.processItemDocument((ItemDocument) document);
+		} else if (document instanceof PropertyDocument) {
+			entityDocumentProcessor
+					.processPropertyDocument((PropertyDocument) document);
+		} else if (document instanceof LexemeDocument) {
+			entityDocumentProcessor
+					.processLexemeDocument((LexemeDocument) document);
+		} else if (document instanceof EntityRedirectDocument) {
+			entityDocumentProcessor
+					.processEntityRedirectDocument((EntityRedirectDocument) document);
+		}
+	}
+
+	/**
+	 * Returns the JSON name of the entity type that is stored in revisions of
+	 * the given content model.
+	 *
+	 * @param model
+	 *            the content model of a revision
+	 * @return the entity type, or null if the model is not a Wikibase model
+	 */
+	private String getEntityType(String model) {
+		if (MwRevision.MODEL_WIKIBASE_ITEM.equals(model)) {
+			return EntityIdValueImpl.JSON_ENTITY_TYPE_ITEM;
+		} else if (MwRevision.MODEL_WIKIBASE_PROPERTY.equals(model)) {
+			return EntityIdValueImpl.JSON_ENTITY_TYPE_PROPERTY;
+		} else if (MwRevision.MODEL_WIKIBASE_LEXEME.equals(model)) {
+			return EntityIdValueImpl.JSON_ENTITY_TYPE_LEXEME;
+		} else {
+			return null;
 		}
 	}
 
-	private boolean isWikibaseRedirection(MwRevision mwRevision) {
-		return mwRevision.getText().contains("\"redirect\":"); //Hacky but fast
+	private boolean isWikibaseRedirection(String text) {
+		return text.contains("\"redirect\":"); //Hacky but fast
 	}
 
 	@Override
 	public void finishRevisionProcessing() {
-		// nothing to do
+		try {
+			deliverDocuments(0);
+		} finally {
+			stopWorkers();
+		}
+	}
+
+	/**
+	 * Stops the worker threads, if they have been started, and discards the
+	 * documents of revisions that are still pending. A new pool of workers
+	 * is started when further revisions are submitted.
+	 */
+	private void stopWorkers() {
+		if (this.workers != null) {
+			this.workers.shutdownNow();
+			this.workers = null;
+		}
+		this.pendingDocuments.clear();
 	}
 
 }
@@ -24,6 +24,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 
 
 import org.slf4j.Logger;
@@ -43,6 +45,17 @@ public class JsonOnlineDumpFile extends WmfDumpFile {
 
 	private boolean isPrepared;
 
+	/**
+	 * MD5 checksum of the dump file as published with the dump, or null if
+	 * it is not known.
+	 */
+	String md5Checksum = null;
+
+	/**
+	 * True if {@link #md5Checksum} has been fetched already.
+	 */
+	boolean md5ChecksumFetched = false;
+
 	/**
 	 * Constructor. Currently only "wikidatawiki" is supported as a project
 	 * name, since the dumps are placed under a non-systematic directory
@@ -73,6 +86,10 @@ public class JsonOnlineDumpFile extends WmfDumpFile {
 
 	@Override
 	public InputStream getDumpFileStream() throws IOException {
+		if (!this.isPrepared && WmfDumpFile.isStreamingDownloads()) {
+			return getStreamingDumpFileStream();
+		}
+
 		prepareDumpFile();
 
 		String fileName = WmfDumpFile.getDumpFileName(DumpContentType.JSON,
@@ -84,6 +101,55 @@ public class JsonOnlineDumpFile extends WmfDumpFile {
 		return dailyDirectoryManager.getInputStreamForFile(fileName, WmfDumpFile.getDumpFileCompressionType(fileName));
 	}
 
+	@Override
+	public ReadableByteChannel getDumpFileChannel() throws IOException {
+		if (!this.isPrepared && WmfDumpFile.isStreamingDownloads()) {
+			return Channels.newChannel(getStreamingDumpFileStream());
+		}
+
+		prepareDumpFile();
+
+		String fileName = WmfDumpFile.getDumpFileName(DumpContentType.JSON,
+				this.projectName, this.dateStamp);
+		DirectoryManager jsonDirectoryManager = this.dumpfileDirectoryManager
+				.getSubdirectoryManager(WmfDumpFile.getDumpFileDirectoryName(
+						DumpContentType.JSON, this.dateStamp));
+
+		return jsonDirectoryManager.getChannelForFile(fileName,
+				WmfDumpFile.getDumpFileCompressionType(fileName));
+	}
+
+	/**
+	 * Returns a stream that downloads the dump file while it is read.
+	 *
+	 * @see WmfDumpFile#setStreamingDownloads(boolean)
+	 * @return the stream
+	 * @throws IOException
+	 *             if the dump file is not available or could not be opened
+	 */
+	InputStream getStreamingDumpFileStream() throws IOException {
+		String fileName = WmfDumpFile.getDumpFileName(DumpContentType.JSON,
+				this.projectName, this.dateStamp);
+		String urlString = getBaseUrl() + fileName;
+
+		if (!isAvailable()) {
+			throw new IOException(
+					"Dump file not available (yet). Aborting dump retrieval.");
+		}
+
+		logger.info("Processing JSON dump file " + fileName
+				+ " while downloading it from " + urlString);
+
+		DirectoryManager dailyDirectoryManager = this.dumpfileDirectoryManager
+				.getSubdirectoryManager(WmfDumpFile.getDumpFileDirectoryName(
+						DumpContentType.JSON, this.dateStamp));
+
+		return dailyDirectoryManager.getInputStreamForDownload(fileName,
+				createDownload(this.webResourceFetcher, urlString,
+						getMd5Checksum()),
+				WmfDumpFile.getDumpFileCompressionType(fileName));
+	}
+
 	@Override
 	public void prepareDumpFile() throws IOException {
 		if (this.isPrepared) {
@@ -106,10 +172,9 @@ public class JsonOnlineDumpFile extends WmfDumpFile {
 				.getSubdirectoryManager(WmfDumpFile.getDumpFileDirectoryName(
 						DumpContentType.JSON, this.dateStamp));
 
-		try (InputStream inputStream = webResourceFetcher
-				.getInputStreamForUrl(urlString)) {
-			dailyDirectoryManager.createFileAtomic(fileName, inputStream);
-		}
+		dailyDirectoryManager.createFileAtomic(fileName,
+				createDownload(this.webResourceFetcher, urlString,
+						getMd5Checksum()));
 
 		this.isPrepared = true;
 
@@ -137,6 +202,24 @@ public class JsonOnlineDumpFile extends WmfDumpFile {
 		return result;
 	}
 
+	/**
+	 * Returns the MD5 checksum of the dump file, as published in the
+	 * checksum file of the dump.
+	 *
+	 * @return checksum, or null if it could not be found
+	 */
+	String getMd5Checksum() {
+		if (!this.md5ChecksumFetched) {
+			this.md5Checksum = fetchMd5Checksum(this.webResourceFetcher,
+					getBaseUrl() + "wikidata-" + this.dateStamp
+							+ "-md5sums.txt", WmfDumpFile.getDumpFileName(
+							DumpContentType.JSON, this.projectName,
+							this.dateStamp));
+			this.md5ChecksumFetched = true;
+		}
+		return this.md5Checksum;
+	}
+
 	/**
 	 * Returns the base URL under which the files for this dump are found.
 	 *
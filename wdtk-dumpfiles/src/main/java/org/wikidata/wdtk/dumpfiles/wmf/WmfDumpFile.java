@@ -2,6 +2,7 @@ package org.wikidata.wdtk.dumpfiles.wmf;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
@@ -10,6 +11,8 @@ import java.util.Map;
 import org.wikidata.wdtk.dumpfiles.DumpContentType;
 import org.wikidata.wdtk.dumpfiles.MwDumpFile;
 import org.wikidata.wdtk.util.CompressionType;
+import org.wikidata.wdtk.util.ResumableDownload;
+import org.wikidata.wdtk.util.WebResourceFetcher;
 
 /*
  * #%L
@@ -85,10 +88,71 @@ public abstract class WmfDumpFile implements MwDumpFile {
 		WmfDumpFile.REVISION_DUMP.put(DumpContentType.JSON, false);
 	}
 
+	/**
+	 * Number of segments that are downloaded in parallel.
+	 */
+	static int downloadSegments = 1;
+
+	/**
+	 * True if online dumps are processed while they are downloaded.
+	 */
+	static boolean streamingDownloads = false;
+
 	protected final String dateStamp;
 	protected final String projectName;
 	Boolean isDone;
 
+	/**
+	 * Sets the number of segments that dump files are split into when they
+	 * are downloaded. The segments are downloaded in parallel using HTTP
+	 * range requests. Independently of this setting, interrupted downloads
+	 * are resumed when the dump is downloaded again. The default is 1.
+	 *
+	 * @param segments
+	 *            the number of segments to download in parallel
+	 */
+	public static void setDownloadSegments(int segments) {
+		downloadSegments = segments;
+	}
+
+	/**
+	 * Returns the number of segments that are downloaded in parallel.
+	 *
+	 * @see #setDownloadSegments(int)
+	 * @return the number of segments
+	 */
+	public static int getDownloadSegments() {
+		return downloadSegments;
+	}
+
+	/**
+	 * Sets whether online dump files are processed while they are downloaded.
+	 * In this mode, the data is written to the local dump file directory
+	 * while it is returned by {@link #getDumpFileStream()}, so that the
+	 * download and the processing overlap. If the processing stops before the
+	 * end of the dump, the partially downloaded file is kept and the download
+	 * is resumed when the dump is processed again. Streamed downloads are
+	 * never segmented. The default is false, where dumps are downloaded
+	 * completely before they are processed.
+	 *
+	 * @param streaming
+	 *            true if dumps should be processed while downloading them
+	 */
+	public static void setStreamingDownloads(boolean streaming) {
+		streamingDownloads = streaming;
+	}
+
+	/**
+	 * Returns true if online dump files are processed while they are
+	 * downloaded.
+	 *
+	 * @see #setStreamingDownloads(boolean)
+	 * @return true if downloads are streamed
+	 */
+	public static boolean isStreamingDownloads() {
+		return streamingDownloads;
+	}
+
 	public WmfDumpFile(String dateStamp, String projectName) {
 		this.dateStamp = dateStamp;
 		this.projectName = projectName;
@@ -125,6 +189,81 @@ public abstract class WmfDumpFile implements MwDumpFile {
 				StandardCharsets.UTF_8));
 	}
 
+	/**
+	 * Creates a download of the given URL with the current download settings.
+	 *
+	 * @param webResourceFetcher
+	 *            the object to use for accessing the Web
+	 * @param urlString
+	 *            the URL of the dump file
+	 * @return the download
+	 */
+	protected static ResumableDownload createDownload(
+			WebResourceFetcher webResourceFetcher, String urlString) {
+		ResumableDownload download = new ResumableDownload(
+				webResourceFetcher, urlString);
+		download.setSegments(downloadSegments);
+		return download;
+	}
+
+	/**
+	 * Creates a download of the given URL with the current download settings
+	 * that verifies the given MD5 checksum.
+	 *
+	 * @param webResourceFetcher
+	 *            the object to use for accessing the Web
+	 * @param urlString
+	 *            the URL of the dump file
+	 * @param md5Checksum
+	 *            the expected MD5 checksum of the dump file as a hexadecimal
+	 *            string, or null if the download should not be verified
+	 * @return the download
+	 */
+	protected static ResumableDownload createDownload(
+			WebResourceFetcher webResourceFetcher, String urlString,
+			String md5Checksum) {
+		ResumableDownload download = createDownload(webResourceFetcher,
+				urlString);
+		if (md5Checksum != null) {
+			download.setChecksum("MD5", md5Checksum);
+		}
+		return download;
+	}
+
+	/**
+	 * Reads the MD5 checksum of a file from a checksum file as published
+	 * with the dumps, which has lines of the form "&lt;md5&gt;  &lt;file
+	 * name&gt;".
+	 *
+	 * @param webResourceFetcher
+	 *            the object to use for accessing the Web
+	 * @param md5sumsUrlString
+	 *            the URL of the checksum file
+	 * @param fileName
+	 *            the name of the file to find the checksum for
+	 * @return the checksum, or null if the checksum file could not be read
+	 *         or does not list the file
+	 */
+	protected static String fetchMd5Checksum(
+			WebResourceFetcher webResourceFetcher, String md5sumsUrlString,
+			String fileName) {
+		try (InputStream in = webResourceFetcher
+				.getInputStreamForUrl(md5sumsUrlString)) {
+			BufferedReader bufferedReader = new BufferedReader(
+					new InputStreamReader(in, StandardCharsets.UTF_8));
+			String inputLine;
+			while ((inputLine = bufferedReader.readLine()) != null) {
+				String[] parts = inputLine.trim().split("\\s+");
+				if (parts.length == 2 && parts[1].equals(fileName)) {
+					return parts[0];
+				}
+			}
+		} catch (IOException e) {
+			// file not found or not readable; the download is not verified
+		}
+		return null;
+	}
+
 	/**
 	 * Finds out if the dump is ready. For online dumps, this should return true
 	 * if the file can be fetched from the Web. For local dumps, this should
@@ -202,11 +341,36 @@ public abstract class WmfDumpFile implements MwDumpFile {
 			return CompressionType.GZIP;
 		} else if (fileName.endsWith(".bz2")) {
 			return CompressionType.BZ2;
+		} else if (fileName.endsWith(".lz4")) {
+			return CompressionType.LZ4;
+		} else if (fileName.endsWith(".zst")) {
+			return CompressionType.ZSTD;
 		} else {
 			return CompressionType.NONE;
 		}
 	}
 
+	/**
+	 * Returns the name of a copy of the given dump file that uses another
+	 * compression. The compression suffix of the given name is replaced by
+	 * the suffix of the given compression type, e.g.,
+	 * "wikidata-20150223-all.json.gz" becomes
+	 * "wikidata-20150223-all.json.lz4" for {@link CompressionType#LZ4}.
+	 *
+	 * @param fileName
+	 *            the name of the dump file
+	 * @param compressionType
+	 *            the compression of the copy
+	 * @return file name of the copy
+	 */
+	public static String getRecompressedDumpFileName(String fileName,
+			CompressionType compressionType) {
+		String suffix = getDumpFileCompressionType(fileName)
+				.getFileExtension();
+		return fileName.substring(0, fileName.length() - suffix.length())
+				+ compressionType.getFileExtension();
+	}
+
 	/**
 	 * Returns the name of the directory where the dumpfile of the given type
 	 * and date should be stored.
@@ -22,8 +22,11 @@ package org.wikidata.wdtk.dumpfiles.wmf;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
 
 import org.wikidata.wdtk.dumpfiles.DumpContentType;
+import org.wikidata.wdtk.util.CompressionType;
 import org.wikidata.wdtk.util.DirectoryManager;
 
 /**
@@ -35,6 +38,14 @@ import org.wikidata.wdtk.util.DirectoryManager;
  */
 public class WmfLocalDumpFile extends WmfDumpFile {
 
+	/**
+	 * Compression types that dumps can be recompressed to with
+	 * {@link #recompress(CompressionType)}, in the order in which copies are
+	 * preferred when reading the dump.
+	 */
+	public static final CompressionType[] RECOMPRESSION_TYPES = {
+			CompressionType.LZ4, CompressionType.ZSTD };
+
 	/**
 	 * DirectoryManager for the directory of this local dumpfile.
 	 */
@@ -95,13 +106,72 @@ public class WmfLocalDumpFile extends WmfDumpFile {
 
 	@Override
 	public InputStream getDumpFileStream() throws IOException {
-		String dumpFileName = WmfDumpFile.getDumpFileName(this.dumpContentType,
-				this.projectName, this.dateStamp);
+		String dumpFileName = getLocalDumpFileName();
 
 		return this.localDumpfileDirectoryManager.getInputStreamForFile(
 				dumpFileName, WmfDumpFile.getDumpFileCompressionType(dumpFileName));
 	}
 
+	@Override
+	public ReadableByteChannel getDumpFileChannel() throws IOException {
+		String dumpFileName = getLocalDumpFileName();
+
+		return this.localDumpfileDirectoryManager.getChannelForFile(
+				dumpFileName, WmfDumpFile.getDumpFileCompressionType(dumpFileName));
+	}
+
+	/**
+	 * Creates a copy of this dump file that uses one of the compression types
+	 * {@link #RECOMPRESSION_TYPES}, which are much faster to decompress than
+	 * the formats of the Wikimedia Foundation. The copy is created next to
+	 * the downloaded file, and will be read instead of the downloaded file
+	 * from then on. This is useful for dumps that are processed many times.
+	 * The downloaded file is not changed, and can be deleted afterwards
+	 * to save space. Nothing is done if the copy exists already.
+	 *
+	 * @param compressionType
+	 *            the compression to use for the copy
+	 * @throws IOException
+	 *             if the dump could not be read or the copy could not be
+	 *             written
+	 */
+	public void recompress(CompressionType compressionType) throws IOException {
+		if (!Arrays.asList(RECOMPRESSION_TYPES).contains(compressionType)) {
+			throw new IllegalArgumentException(
+					"Dumps cannot be recompressed as " + compressionType);
+		}
+		String fileName = WmfDumpFile.getRecompressedDumpFileName(WmfDumpFile
+				.getDumpFileName(this.dumpContentType, this.projectName,
+						this.dateStamp), compressionType);
+		if (this.localDumpfileDirectoryManager.hasFile(fileName)) {
+			return;
+		}
+		try (InputStream inputStream = getDumpFileStream()) {
+			this.localDumpfileDirectoryManager.createFileAtomic(fileName,
+					inputStream, compressionType);
+		}
+	}
+
+	/**
+	 * Returns the name of the local file that holds the data of this dump.
+	 * This is a copy created by {@link #recompress(CompressionType)} if one
+	 * exists, and the downloaded file otherwise.
+	 *
+	 * @return file name
+	 */
+	String getLocalDumpFileName() {
+		String dumpFileName = WmfDumpFile.getDumpFileName(this.dumpContentType,
+				this.projectName, this.dateStamp);
+		for (CompressionType compressionType : RECOMPRESSION_TYPES) {
+			String fileName = WmfDumpFile.getRecompressedDumpFileName(
+					dumpFileName, compressionType);
+			if (this.localDumpfileDirectoryManager.hasFile(fileName)) {
+				return fileName;
+			}
+		}
+		return dumpFileName;
+	}
+
 	@Override
 	public void prepareDumpFile() {
 		// nothing to do
@@ -109,9 +179,8 @@ public class WmfLocalDumpFile extends WmfDumpFile {
 
 	@Override
 	protected boolean fetchIsDone() {
-		return this.localDumpfileDirectoryManager.hasFile(WmfDumpFile
-				.getDumpFileName(this.dumpContentType, this.projectName,
-						this.dateStamp));
+		return this.localDumpfileDirectoryManager
+				.hasFile(getLocalDumpFileName());
 	}
 
 }
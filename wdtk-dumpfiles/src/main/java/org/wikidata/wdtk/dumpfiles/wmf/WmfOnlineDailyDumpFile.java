@@ -24,6 +24,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
 
 import org.slf4j.Logger;
@@ -53,6 +54,17 @@ class WmfOnlineDailyDumpFile extends WmfDumpFile {
 	 */
 	boolean isPrepared = false;
 
+	/**
+	 * MD5 checksum of the dump file as published with the dump, or null if
+	 * it is not known.
+	 */
+	String md5Checksum = null;
+
+	/**
+	 * True if {@link #md5Checksum} has been fetched already.
+	 */
+	boolean md5ChecksumFetched = false;
+
 	/**
 	 * Constructor.
 	 *
@@ -93,6 +105,20 @@ class WmfOnlineDailyDumpFile extends WmfDumpFile {
 				WmfDumpFile.getDumpFileCompressionType(fileName));
 	}
 
+	@Override
+	public ReadableByteChannel getDumpFileChannel() throws IOException {
+		prepareDumpFile();
+
+		String fileName = WmfDumpFile.getDumpFileName(DumpContentType.DAILY,
+				this.projectName, this.dateStamp);
+		DirectoryManager dailyDirectoryManager = this.dumpfileDirectoryManager
+				.getSubdirectoryManager(WmfDumpFile.getDumpFileDirectoryName(
+						DumpContentType.DAILY, this.dateStamp));
+
+		return dailyDirectoryManager.getChannelForFile(fileName,
+				WmfDumpFile.getDumpFileCompressionType(fileName));
+	}
+
 	@Override
 	public void prepareDumpFile() throws IOException {
 		if (this.isPrepared) {
@@ -115,12 +141,9 @@ class WmfOnlineDailyDumpFile extends WmfDumpFile {
 				.getSubdirectoryManager(WmfDumpFile.getDumpFileDirectoryName(
 						DumpContentType.DAILY, this.dateStamp));
 
-		long size;
-		try (InputStream inputStream = webResourceFetcher
-				.getInputStreamForUrl(urlString)) {
-			size = dailyDirectoryManager
-					.createFileAtomic(fileName, inputStream);
-		}
+		long size = dailyDirectoryManager.createFileAtomic(fileName,
+				createDownload(this.webResourceFetcher, urlString,
+						getMd5Checksum()));
 
 		this.isPrepared = true;
 
@@ -144,6 +167,24 @@ class WmfOnlineDailyDumpFile extends WmfDumpFile {
 		return result;
 	}
 
+	/**
+	 * Returns the MD5 checksum of the dump file, as published in the
+	 * checksum file of the dump.
+	 *
+	 * @return checksum, or null if it could not be found
+	 */
+	String getMd5Checksum() {
+		if (!this.md5ChecksumFetched) {
+			this.md5Checksum = fetchMd5Checksum(this.webResourceFetcher,
+					getBaseUrl() + this.projectName + "-" + this.dateStamp
+							+ "-md5sums.txt", WmfDumpFile.getDumpFileName(
+							DumpContentType.DAILY, this.projectName,
+							this.dateStamp));
+			this.md5ChecksumFetched = true;
+		}
+		return this.md5Checksum;
+	}
+
 	/**
 	 * Returns the base URL under which the files for this dump are found.
 	 *
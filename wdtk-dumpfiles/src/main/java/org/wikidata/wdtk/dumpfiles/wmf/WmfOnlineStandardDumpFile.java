@@ -24,12 +24,15 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wikidata.wdtk.dumpfiles.DumpContentType;
 import org.wikidata.wdtk.util.DirectoryManager;
+import org.wikidata.wdtk.util.ResumableDownload;
 import org.wikidata.wdtk.util.WebResourceFetcher;
 
 /**
@@ -56,6 +59,12 @@ public class WmfOnlineStandardDumpFile extends WmfDumpFile {
 	 */
 	boolean isPrepared = false;
 
+	/**
+	 * MD5 checksum of the dump file as published with the dump, or null if
+	 * it is not known.
+	 */
+	String md5Checksum = null;
+
 	/**
 	 * Constructor.
 	 *
@@ -89,6 +98,10 @@ public class WmfOnlineStandardDumpFile extends WmfDumpFile {
 
 	@Override
 	public InputStream getDumpFileStream() throws IOException {
+		if (!this.isPrepared && WmfDumpFile.isStreamingDownloads()) {
+			return getStreamingDumpFileStream();
+		}
+
 		prepareDumpFile();
 
 		String fileName = WmfDumpFile.getDumpFileName(this.dumpContentType,
@@ -101,6 +114,59 @@ public class WmfOnlineStandardDumpFile extends WmfDumpFile {
 				WmfDumpFile.getDumpFileCompressionType(fileName));
 	}
 
+	@Override
+	public ReadableByteChannel getDumpFileChannel() throws IOException {
+		if (!this.isPrepared && WmfDumpFile.isStreamingDownloads()) {
+			return Channels.newChannel(getStreamingDumpFileStream());
+		}
+
+		prepareDumpFile();
+
+		String fileName = WmfDumpFile.getDumpFileName(this.dumpContentType,
+				this.projectName, this.dateStamp);
+		DirectoryManager thisDumpDirectoryManager = this.dumpfileDirectoryManager
+				.getSubdirectoryManager(WmfDumpFile.getDumpFileDirectoryName(
+						this.dumpContentType, this.dateStamp));
+
+		return thisDumpDirectoryManager.getChannelForFile(fileName,
+				WmfDumpFile.getDumpFileCompressionType(fileName));
+	}
+
+	/**
+	 * Returns a stream that downloads the dump file while it is read.
+	 *
+	 * @see WmfDumpFile#setStreamingDownloads(boolean)
+	 * @return the stream
+	 * @throws IOException
+	 *             if the dump file is not available or could not be opened
+	 */
+	InputStream getStreamingDumpFileStream() throws IOException {
+		String fileName = WmfDumpFile.getDumpFileName(this.dumpContentType,
+				this.projectName, this.dateStamp);
+		String urlString = getBaseUrl() + fileName;
+
+		if (!isAvailable()) {
+			throw new IOException(
+					"Dump file not available (yet). Aborting dump retrieval.");
+		}
+
+		logger.info("Processing "
+				+ this.dumpContentType.toString().toLowerCase() + " dump file "
+				+ fileName + " while downloading it from " + urlString);
+
+		DirectoryManager thisDumpDirectoryManager = this.dumpfileDirectoryManager
+				.getSubdirectoryManager(WmfDumpFile.getDumpFileDirectoryName(
+						this.dumpContentType, this.dateStamp));
+
+		ResumableDownload download = createDownload(this.webResourceFetcher,
+				urlString);
+		if (this.md5Checksum != null) {
+			download.setChecksum("MD5", this.md5Checksum);
+		}
+		return thisDumpDirectoryManager.getInputStreamForDownload(fileName,
+				download, WmfDumpFile.getDumpFileCompressionType(fileName));
+	}
+
 	@Override
 	public void prepareDumpFile() throws IOException {
 		if (this.isPrepared) {
@@ -124,12 +190,13 @@ public class WmfOnlineStandardDumpFile extends WmfDumpFile {
 				.getSubdirectoryManager(WmfDumpFile.getDumpFileDirectoryName(
 						this.dumpContentType, this.dateStamp));
 
-		long size;
-		try (InputStream inputStream = webResourceFetcher
-				.getInputStreamForUrl(urlString)) {
-			size = thisDumpDirectoryManager.createFileAtomic(fileName,
-					inputStream);
+		ResumableDownload download = createDownload(this.webResourceFetcher,
+				urlString);
+		if (this.md5Checksum != null) {
+			download.setChecksum("MD5", this.md5Checksum);
 		}
+		long size = thisDumpDirectoryManager.createFileAtomic(fileName,
+				download);
 
 		this.isPrepared = true;
 
@@ -153,6 +220,8 @@ public class WmfOnlineStandardDumpFile extends WmfDumpFile {
 			while (!found && (inputLine = bufferedReader.readLine()) != null) {
 				if (inputLine.endsWith(filePostfix)) {
 					found = true;
+					// lines have the form "<md5>  <file name>"
+					this.md5Checksum = inputLine.split("\\s+")[0];
 				}
 			}
 			bufferedReader.close();
@@ -0,0 +1,127 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ByteLineReaderTest {
+
+	@Test
+	public void testLines() throws IOException {
+		List<String> lines = readLines("[\n{\"a\":1},\n{\"b\":2}\n]\n", 4);
+		assertEquals(List.of("[", "{\"a\":1},", "{\"b\":2}", "]"), lines);
+	}
+
+	@Test
+	public void testCarriageReturnAndMissingFinalNewline() throws IOException {
+		List<String> lines = readLines("abc\r\n\r\ndéf", 2);
+		assertEquals(List.of("abc", "", "déf"), lines);
+	}
+
+	@Test
+	public void testLongLines() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append((char) ('a' + (i % 26)));
+		}
+		String longLine = sb.toString();
+		List<String> lines = readLines("x\n" + longLine + "\ny", 16);
+		assertEquals(List.of("x", longLine, "y"), lines);
+	}
+
+	@Test
+	public void testPositions() throws IOException {
+		byte[] data = "ab\ncde\r\nf".getBytes(StandardCharsets.UTF_8);
+		ByteLineReader reader = new ByteLineReader(new ByteArrayInputStream(
+				data), 3);
+
+		assertTrue(reader.nextLine());
+		assertEquals(0, reader.getLinePosition());
+		assertEquals(3, reader.getNextLinePosition());
+		assertTrue(reader.nextLine());
+		assertEquals(3, reader.getLinePosition());
+		assertEquals(3, reader.getLineLength());
+		assertEquals(8, reader.getNextLinePosition());
+		assertTrue(reader.nextLine());
+		assertEquals(8, reader.getLinePosition());
+		assertEquals(9, reader.getNextLinePosition());
+		assertFalse(reader.nextLine());
+	}
+
+	@Test
+	public void testChannel() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append((char) ('a' + (i % 26)));
+		}
+		String longLine = sb.toString();
+		byte[] data = ("x\n" + longLine + "\r\ny\n" + longLine)
+				.getBytes(StandardCharsets.UTF_8);
+
+		List<String> result = new ArrayList<>();
+		try (ByteLineReader reader = new ByteLineReader(
+				Channels.newChannel(new ByteArrayInputStream(data)), 16)) {
+			while (reader.nextLine()) {
+				result.add(reader.getLinePrefix(2000));
+			}
+			assertEquals(data.length, reader.getNextLinePosition());
+		}
+		assertEquals(List.of("x", longLine, "y", longLine), result);
+	}
+
+	@Test
+	public void testEmptyStream() throws IOException {
+		ByteLineReader reader = new ByteLineReader(new ByteArrayInputStream(
+				new byte[0]));
+		assertFalse(reader.nextLine());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidBufferSize() {
+		new ByteLineReader(new ByteArrayInputStream(new byte[0]), 0);
+	}
+
+	private List<String> readLines(String content, int bufferSize)
+			throws IOException {
+		List<String> result = new ArrayList<>();
+		try (ByteLineReader reader = new ByteLineReader(
+				new ByteArrayInputStream(content
+						.getBytes(StandardCharsets.UTF_8)), bufferSize)) {
+			while (reader.nextLine()) {
+				result.add(new String(reader.getBuffer(), reader
+						.getLineOffset(), reader.getLineLength(),
+						StandardCharsets.UTF_8));
+			}
+		}
+		return result;
+	}
+}
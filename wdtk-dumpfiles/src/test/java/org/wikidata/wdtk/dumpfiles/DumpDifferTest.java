@@ -0,0 +1,269 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocument;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
+import org.wikidata.wdtk.util.DirectoryManagerFactory;
+import org.wikidata.wdtk.util.DirectoryManagerImpl;
+
+public class DumpDifferTest {
+
+	/**
+	 * Test processor that records all reported differences.
+	 */
+	static class RecordingDiffProcessor implements DumpDiffProcessor {
+
+		final List<String> added = new ArrayList<>();
+		final List<String> removed = new ArrayList<>();
+		final List<String> changed = new ArrayList<>();
+
+		@Override
+		public void entityAdded(EntityDocument newDocument) {
+			added.add(newDocument.getEntityId().getId());
+		}
+
+		@Override
+		public void entityRemoved(EntityDocument oldDocument) {
+			removed.add(oldDocument.getEntityId().getId());
+		}
+
+		@Override
+		public void entityChanged(EntityDocument oldDocument,
+				EntityDocument newDocument) {
+			assertEquals(oldDocument.getEntityId(), newDocument.getEntityId());
+			changed.add(newDocument.getEntityId().getId());
+		}
+	}
+
+	Path directory;
+
+	@Before
+	public void setUp() throws IOException {
+		DirectoryManagerFactory
+				.setDirectoryManagerClass(DirectoryManagerImpl.class);
+		this.directory = Files.createTempDirectory("wdtk-diff");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (Path file : Files.newDirectoryStream(this.directory)) {
+			Files.delete(file);
+		}
+		Files.delete(this.directory);
+	}
+
+	@Test
+	public void testDiffDumps() throws IOException {
+		MwDumpFile oldDump = writeDump("old.json",
+				item("Q1", 1, "one", "2020-01-01"),
+				item("Q2", 2, "two", "2020-01-01"),
+				item("Q3", 3, "three", "2020-01-01"),
+				item("Q5", 5, "five", "2020-01-01"),
+				item("Q10", 10, "ten", "2020-01-01"),
+				item("Q11", 11, "eleven", "2020-01-01"));
+		MwDumpFile newDump = writeDump("new.json",
+				item("Q1", 1, "one", "2020-01-01"),
+				item("Q2", 20, "two", "2021-01-01"),
+				item("Q3", 30, "Three", "2021-01-01"),
+				item("Q4", 40, "four", "2021-01-01"),
+				"{\"type\":\"item\",\"labels\":{\"en\":{\"language\":\"en\",\"value\":\"ten\"}},\"id\":\"Q10\",\"lastrevid\":100}",
+				item("Q11", 11, "eleven", "2020-01-01"),
+				item("Q12", 120, "twelve", "2021-01-01"));
+
+		DumpDiffer differ = new DumpDiffer();
+		RecordingDiffProcessor processor = new RecordingDiffProcessor();
+		differ.diffDumps(oldDump, newDump, processor);
+
+		assertEquals(Arrays.asList("Q4", "Q12"), processor.added);
+		assertEquals(Arrays.asList("Q5"), processor.removed);
+		assertEquals(Arrays.asList("Q3"), processor.changed);
+		assertEquals(2, differ.getAddedCount());
+		assertEquals(1, differ.getRemovedCount());
+		assertEquals(1, differ.getChangedCount());
+		assertEquals(4, differ.getUnchangedCount());
+		// Q2, Q3, and Q10 needed digests, Q3 and Q10 deserialization
+		assertEquals(3, differ.digestComparisons);
+		assertEquals(2, differ.documentComparisons);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsortedDump() throws IOException {
+		MwDumpFile oldDump = writeDump("old.json",
+				item("Q1", 1, "one", "2020-01-01"),
+				item("Q10", 10, "ten", "2020-01-01"),
+				item("Q2", 2, "two", "2020-01-01"));
+		MwDumpFile newDump = writeDump("new.json",
+				item("Q1", 1, "one", "2020-01-01"));
+		new DumpDiffer().diffDumps(oldDump, newDump,
+				new RecordingDiffProcessor());
+	}
+
+	@Test
+	public void testSortDump() throws IOException {
+		String[] lines = new String[50];
+		for (int i = 0; i < lines.length; i++) {
+			int number = (i * 37) % lines.length + 1;
+			lines[i] = item((i % 5 == 0 ? "P" : "Q") + number, i, "label "
+					+ number, "2020-01-01");
+		}
+		MwDumpFile dump = writeDump("unsorted.json", lines);
+
+		for (long runSize : new long[] { DumpSorter.DEFAULT_RUN_SIZE, 500 }) {
+			DumpSorter sorter = new DumpSorter();
+			sorter.setRunSize(runSize);
+			MwLocalDumpFile sortedDump = sorter.sortDump(dump, this.directory,
+					"sorted.json.gz");
+			try (Stream<Path> files = Files.list(this.directory)) {
+				// run files have been deleted
+				assertEquals(2, files.count());
+			}
+
+			List<String> ids = processDump(sortedDump);
+			assertEquals(lines.length, ids.size());
+			for (int i = 1; i < ids.size(); i++) {
+				assertTrue(DumpSorter.compareEntityIds(ids.get(i - 1),
+						ids.get(i)) < 0);
+			}
+
+			RecordingDiffProcessor processor = new RecordingDiffProcessor();
+			DumpDiffer differ = new DumpDiffer();
+			differ.diffDumps(sortedDump, sortedDump, processor);
+			assertEquals(lines.length, differ.getUnchangedCount());
+		}
+	}
+
+	@Test
+	public void testSortMockDump() throws IOException {
+		Path file = this.directory.resolve("wikidata-20150223-all.json");
+		try (InputStream in = DumpDifferTest.class
+				.getResourceAsStream("/mock-dump-for-long-testing.json")) {
+			Files.copy(in, file);
+		}
+		MwLocalDumpFile dump = new MwLocalDumpFile(file.toString());
+		DumpSorter sorter = new DumpSorter();
+		sorter.setRunSize(20000);
+		MwLocalDumpFile sortedDump = sorter.sortDump(dump, this.directory,
+				"sorted.json.gz");
+
+		List<String> ids = processDump(dump);
+		List<String> sortedIds = processDump(sortedDump);
+		ids.sort(DumpSorter::compareEntityIds);
+		assertEquals(ids, sortedIds);
+	}
+
+	@Test
+	public void testSortMockDumpInSeveralMergePasses() throws IOException {
+		Path file = this.directory.resolve("wikidata-20150223-all.json");
+		try (InputStream in = DumpDifferTest.class
+				.getResourceAsStream("/mock-dump-for-long-testing.json")) {
+			Files.copy(in, file);
+		}
+		MwLocalDumpFile dump = new MwLocalDumpFile(file.toString());
+		DumpSorter sorter = new DumpSorter();
+		sorter.setRunSize(2000);
+		sorter.setMergeFanIn(3);
+		MwLocalDumpFile sortedDump = sorter.sortDump(dump, this.directory,
+				"sorted.json.gz");
+		try (Stream<Path> files = Files.list(this.directory)) {
+			// run files of all merge passes have been deleted
+			assertEquals(2, files.count());
+		}
+
+		List<String> ids = processDump(dump);
+		List<String> sortedIds = processDump(sortedDump);
+		ids.sort(DumpSorter::compareEntityIds);
+		assertEquals(ids, sortedIds);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMergeFanInTooSmall() {
+		new DumpSorter().setMergeFanIn(1);
+	}
+
+	@Test
+	public void testCompareEntityIds() {
+		assertTrue(DumpSorter.compareEntityIds("Q2", "Q10") < 0);
+		assertTrue(DumpSorter.compareEntityIds("Q10", "Q2") > 0);
+		assertTrue(DumpSorter.compareEntityIds("P31", "Q2") < 0);
+		assertTrue(DumpSorter.compareEntityIds("L5", "M1") < 0);
+		assertTrue(DumpSorter.compareEntityIds("Q99999999999", "Q1x") < 0);
+		assertEquals(0, DumpSorter.compareEntityIds("Q42", "Q42"));
+	}
+
+	private String item(String id, long revisionId, String label,
+			String modified) {
+		String type = id.startsWith("P") ? "property\",\"datatype\":\"string"
+				: "item";
+		return "{\"type\":\"" + type + "\",\"id\":\"" + id
+				+ "\",\"labels\":{\"en\":{\"language\":\"en\",\"value\":\""
+				+ label + "\"}},\"lastrevid\":" + revisionId
+				+ ",\"modified\":\"" + modified + "T00:00:00Z\"}";
+	}
+
+	private MwDumpFile writeDump(String fileName, String... lines)
+			throws IOException {
+		Path file = this.directory.resolve(fileName);
+		Files.write(file, ("[\n" + String.join(",\n", lines) + "\n]\n")
+				.getBytes(StandardCharsets.UTF_8));
+		return new MwLocalDumpFile(file.toString(), DumpContentType.JSON,
+				"20200101", "wikidatawiki");
+	}
+
+	private List<String> processDump(MwDumpFile dumpFile) {
+		List<String> ids = new ArrayList<>();
+		DumpProcessingController dpc = new DumpProcessingController(
+				"wikidatawiki");
+		dpc.setOfflineMode(true);
+		dpc.registerEntityDocumentProcessor(new EntityDocumentProcessor() {
+			@Override
+			public void processItemDocument(ItemDocument itemDocument) {
+				ids.add(itemDocument.getEntityId().getId());
+			}
+
+			@Override
+			public void processPropertyDocument(
+					PropertyDocument propertyDocument) {
+				ids.add(propertyDocument.getEntityId().getId());
+			}
+		}, null, true);
+		dpc.processDump(dumpFile);
+		return ids;
+	}
+}
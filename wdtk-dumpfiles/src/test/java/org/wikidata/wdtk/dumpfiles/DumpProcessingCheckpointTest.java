@@ -0,0 +1,287 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
+import org.wikidata.wdtk.dumpfiles.wmf.WmfDumpFile;
+import org.wikidata.wdtk.testing.MockDirectoryManager;
+import org.wikidata.wdtk.testing.MockStringContentFactory;
+import org.wikidata.wdtk.util.DirectoryManagerFactory;
+import org.wikidata.wdtk.util.DirectoryManagerImpl;
+
+public class DumpProcessingCheckpointTest {
+
+	static final String DUMP_RESOURCE = "mock-dump-for-long-testing.json";
+
+	/**
+	 * Test processor that records the ids of all documents, keeps its
+	 * snapshots in a list that survives a simulated crash, and can fail
+	 * after a given number of documents.
+	 */
+	private static class CrashingProcessor implements EntityDocumentProcessor,
+			SnapshotHook {
+
+		final List<String> ids = new ArrayList<>();
+		final List<String> savedIds;
+		final int crashAfter;
+
+		CrashingProcessor(List<String> savedIds, int crashAfter) {
+			this.savedIds = savedIds;
+			this.crashAfter = crashAfter;
+		}
+
+		@Override
+		public void processItemDocument(ItemDocument itemDocument) {
+			process(itemDocument.getEntityId().getId());
+		}
+
+		@Override
+		public void processPropertyDocument(PropertyDocument propertyDocument) {
+			process(propertyDocument.getEntityId().getId());
+		}
+
+		void process(String id) {
+			if (this.ids.size() == this.crashAfter) {
+				throw new IllegalStateException("Simulated crash");
+			}
+			this.ids.add(id);
+		}
+
+		@Override
+		public void saveSnapshot(DumpProcessingCheckpoint checkpoint) {
+			assertEquals(this.ids.size(), checkpoint.getDocumentCount());
+			assertEquals(this.ids.get(this.ids.size() - 1),
+					checkpoint.getLastEntityId());
+			this.savedIds.clear();
+			this.savedIds.addAll(this.ids);
+		}
+
+		@Override
+		public void restoreSnapshot(DumpProcessingCheckpoint checkpoint) {
+			this.ids.clear();
+			this.ids.addAll(this.savedIds);
+		}
+	}
+
+	Path directory;
+	Path checkpointFile;
+
+	@Before
+	public void setUp() throws IOException {
+		this.directory = Files.createTempDirectory("wdtk-resume");
+		this.checkpointFile = this.directory.resolve("checkpoint.properties");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (Path file : Files.newDirectoryStream(this.directory)) {
+			Files.delete(file);
+		}
+		Files.delete(this.directory);
+	}
+
+	@Test
+	public void testResumeAfterCrash() throws IOException {
+		MockDirectoryManager dm = createMockDumpDirectory();
+		List<String> expectedIds = processCompletely(createController(dm, 1));
+		assertEquals(101, expectedIds.size());
+
+		List<String> savedIds = new ArrayList<>();
+		crash(createController(dm, 1), savedIds, 40);
+		DumpProcessingCheckpoint checkpoint = DumpProcessingCheckpoint
+				.read(this.checkpointFile);
+		assertNotNull(checkpoint);
+		assertEquals(40, checkpoint.getDocumentCount());
+		assertEquals(expectedIds.get(39), checkpoint.getLastEntityId());
+
+		CrashingProcessor processor = new CrashingProcessor(savedIds, -1);
+		DumpProcessingController dpc = createController(dm, 1);
+		dpc.registerEntityDocumentProcessor(processor, null, true);
+		dpc.processMostRecentJsonDump();
+
+		assertEquals(expectedIds, processor.ids);
+		assertFalse(Files.exists(this.checkpointFile));
+	}
+
+	@Test
+	public void testResumeParallelProcessing() throws IOException {
+		MockDirectoryManager dm = createMockDumpDirectory();
+		List<String> expectedIds = processCompletely(createController(dm, 1));
+
+		List<String> savedIds = new ArrayList<>();
+		crash(createController(dm, 3), savedIds, 70);
+
+		CrashingProcessor processor = new CrashingProcessor(savedIds, -1);
+		DumpProcessingController dpc = createController(dm, 3);
+		dpc.registerEntityDocumentProcessor(processor, null, true);
+		dpc.processMostRecentJsonDump();
+
+		assertEquals(expectedIds, processor.ids);
+	}
+
+	@Test
+	public void testResumeGzipCheckpointDumpFile() throws IOException {
+		DirectoryManagerFactory
+				.setDirectoryManagerClass(DirectoryManagerImpl.class);
+		Path dumpPath = this.directory.resolve("wikidata-20150223-all.json.gz");
+		// flush after each chunk to get many deflate blocks
+		try (InputStream in = DumpProcessingCheckpointTest.class
+				.getResourceAsStream("/" + DUMP_RESOURCE);
+				OutputStream out = new GZIPOutputStream(
+						Files.newOutputStream(dumpPath), true)) {
+			byte[] buffer = new byte[4096];
+			int count;
+			while ((count = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, count);
+				out.flush();
+			}
+		}
+		GzipCheckpointDumpFile dumpFile = new GzipCheckpointDumpFile(
+				dumpPath.toString(), 1000);
+		assertTrue(dumpFile.getCheckpointIndex().getCheckpoints().size() > 10);
+
+		DumpProcessingController dpc = createController(null, 1);
+		CrashingProcessor processor = new CrashingProcessor(
+				new ArrayList<>(), -1);
+		dpc.registerEntityDocumentProcessor(processor, null, true);
+		dpc.setCheckpointFile(null);
+		dpc.processDump(dumpFile);
+		List<String> expectedIds = processor.ids;
+
+		List<String> savedIds = new ArrayList<>();
+		dpc = createController(null, 1);
+		dpc.registerEntityDocumentProcessor(new CrashingProcessor(savedIds,
+				55), null, true);
+		try {
+			dpc.processDump(dumpFile);
+			fail("Expected simulated crash");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		processor = new CrashingProcessor(savedIds, -1);
+		dpc = createController(null, 1);
+		dpc.registerEntityDocumentProcessor(processor, null, true);
+		dpc.processDump(dumpFile);
+
+		assertEquals(expectedIds, processor.ids);
+	}
+
+	@Test
+	public void testCheckpointForOtherDumpIsIgnored() throws IOException {
+		MockDirectoryManager dm = createMockDumpDirectory();
+		new DumpProcessingCheckpoint(new MwLocalDumpFile(
+				"other-20140101.json.gz"), 1000, "Q1", 1)
+				.write(this.checkpointFile);
+
+		List<String> ids = processCompletely(createController(dm, 1));
+
+		assertEquals(101, ids.size());
+		assertFalse(Files.exists(this.checkpointFile));
+	}
+
+	@Test(expected = IOException.class)
+	public void testCheckpointWithoutDateIsRejected() throws IOException {
+		new DumpProcessingCheckpoint(new MwLocalDumpFile(
+				"wikidata-20150223-all.json.gz"), 1000, "Q1", 1)
+				.write(this.checkpointFile);
+		List<String> lines = new ArrayList<>();
+		for (String line : Files.readAllLines(this.checkpointFile)) {
+			if (!line.startsWith("date=")) {
+				lines.add(line);
+			}
+		}
+		Files.write(this.checkpointFile, lines);
+
+		DumpProcessingCheckpoint.read(this.checkpointFile);
+	}
+
+	private void crash(DumpProcessingController dpc, List<String> savedIds,
+			int crashAfter) {
+		dpc.registerEntityDocumentProcessor(new CrashingProcessor(savedIds,
+				crashAfter), null, true);
+		try {
+			dpc.processMostRecentJsonDump();
+			fail("Expected simulated crash");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	private List<String> processCompletely(DumpProcessingController dpc) {
+		CrashingProcessor processor = new CrashingProcessor(new ArrayList<>(),
+				-1);
+		dpc.registerEntityDocumentProcessor(processor, null, true);
+		dpc.processMostRecentJsonDump();
+		return processor.ids;
+	}
+
+	private DumpProcessingController createController(MockDirectoryManager dm,
+			int parallelism) {
+		DumpProcessingController dpc = new DumpProcessingController(
+				"wikidatawiki");
+		if (dm != null) {
+			dpc.downloadDirectoryManager = dm;
+		}
+		dpc.setOfflineMode(true);
+		dpc.setParallelism(parallelism);
+		dpc.setCheckpointFile(this.checkpointFile.toString());
+		dpc.setCheckpointInterval(0);
+		return dpc;
+	}
+
+	private MockDirectoryManager createMockDumpDirectory() throws IOException {
+		Path dmPath = Paths.get(System.getProperty("user.dir"));
+		MockDirectoryManager dm = new MockDirectoryManager(dmPath, true, true);
+		URL resourceUrl = DumpProcessingCheckpointTest.class.getResource("/"
+				+ DUMP_RESOURCE);
+		Path filePath = dmPath.resolve("dumpfiles").resolve("wikidatawiki")
+				.resolve("json-20150223")
+				.resolve("wikidata-20150223"
+						+ WmfDumpFile.getDumpFilePostfix(DumpContentType.JSON));
+		dm.setFileContents(filePath,
+				MockStringContentFactory.getStringFromUrl(resourceUrl),
+				WmfDumpFile.getDumpFileCompressionType(filePath.toString()));
+		return dm;
+	}
+}
@@ -0,0 +1,222 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
+import org.wikidata.wdtk.dumpfiles.DumpShardManifest.Partitioning;
+import org.wikidata.wdtk.dumpfiles.DumpShardManifest.Shard;
+import org.wikidata.wdtk.dumpfiles.DumpSorter.EntityLine;
+import org.wikidata.wdtk.util.DirectoryManagerFactory;
+import org.wikidata.wdtk.util.DirectoryManagerImpl;
+
+public class DumpSharderTest {
+
+	Path directory;
+	MwLocalDumpFile dumpFile;
+
+	@Before
+	public void setUp() throws IOException {
+		DirectoryManagerFactory
+				.setDirectoryManagerClass(DirectoryManagerImpl.class);
+		this.directory = Files.createTempDirectory("wdtk-shards");
+		Path file = this.directory.resolve("wikidata-20150223-all.json");
+		try (InputStream in = DumpSharderTest.class
+				.getResourceAsStream("/mock-dump-for-long-testing.json")) {
+			Files.copy(in, file);
+		}
+		this.dumpFile = new MwLocalDumpFile(file.toString());
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (Path file : Files.newDirectoryStream(this.directory)) {
+			Files.delete(file);
+		}
+		Files.delete(this.directory);
+	}
+
+	@Test
+	public void testHashSharding() throws IOException {
+		List<String> expectedIds = processDump(this.dumpFile);
+
+		DumpShardManifest manifest = new DumpSharder(4).shardDump(
+				this.dumpFile, this.directory, "wikidata-20150223");
+
+		assertEquals(Partitioning.HASH, manifest.getPartitioning());
+		assertEquals("20150223", manifest.getDateStamp());
+		assertEquals(4, manifest.getShards().size());
+		assertEquals(expectedIds.size(), manifest.getEntityCount());
+		for (Shard shard : manifest.getShards()) {
+			assertEquals(Files.size(this.directory.resolve(shard
+					.getFileName())), shard.getSize());
+			assertTrue(shard.getUncompressedSize() > shard.getSize());
+		}
+
+		MwLocalDumpFile shardedDump = new MwLocalDumpFile(this.directory
+				.resolve("wikidata-20150223.shards").toString());
+		assertTrue(shardedDump.isShardManifest());
+		assertEquals(DumpContentType.JSON, shardedDump.getDumpContentType());
+		assertEquals("20150223", shardedDump.getDateStamp());
+
+		List<String> ids = processDump(shardedDump);
+		assertEquals(expectedIds.size(), ids.size());
+		assertEquals(new HashSet<>(expectedIds), new HashSet<>(ids));
+
+		for (int i = 0; i < 4; i++) {
+			shardedDump.selectShards(i);
+			ids = processDump(shardedDump);
+			assertEquals(manifest.getShards().get(i).getEntityCount(),
+					ids.size());
+			for (String id : ids) {
+				assertEquals(i, manifest.getShardIndex(id));
+			}
+		}
+	}
+
+	@Test
+	public void testIdRangeSharding() throws IOException {
+		DumpSharder sharder = new DumpSharder(3);
+		sharder.setIdRangePartitioning(3000);
+		DumpShardManifest manifest = sharder.shardDump(this.dumpFile,
+				this.directory, "ranges");
+
+		assertEquals(0, manifest.getShardIndex("Q1"));
+		assertEquals(0, manifest.getShardIndex("P1000"));
+		assertEquals(1, manifest.getShardIndex("Q1001"));
+		assertEquals(2, manifest.getShardIndex("Q3000"));
+		assertEquals(2, manifest.getShardIndex("Q1000000"));
+
+		MwLocalDumpFile shardedDump = new MwLocalDumpFile(this.directory
+				.resolve("ranges.shards").toString());
+		shardedDump.selectShards(2, 0);
+		List<String> ids = processDump(shardedDump);
+		assertEquals(manifest.getShards().get(0).getEntityCount()
+				+ manifest.getShards().get(2).getEntityCount(), ids.size());
+		for (String id : ids) {
+			assertFalse(manifest.getShardIndex(id) == 1);
+		}
+	}
+
+	@Test
+	public void testManifestRoundTrip() throws IOException {
+		DumpShardManifest manifest = new DumpSharder(2).shardDump(
+				this.dumpFile, this.directory, "test");
+		DumpShardManifest read = DumpShardManifest.read(Files
+				.newInputStream(this.directory.resolve("test.shards")));
+
+		assertEquals(manifest.getPartitioning(), read.getPartitioning());
+		assertEquals(manifest.getProjectName(), read.getProjectName());
+		assertEquals(manifest.getEntityCount(), read.getEntityCount());
+		for (int i = 0; i < 2; i++) {
+			Shard shard = manifest.getShards().get(i);
+			Shard readShard = read.getShards().get(i);
+			assertEquals(shard.getFileName(), readShard.getFileName());
+			assertEquals(shard.getEntityCount(), readShard.getEntityCount());
+			assertEquals(shard.getSize(), readShard.getSize());
+			assertEquals(shard.getUncompressedSize(),
+					readShard.getUncompressedSize());
+		}
+	}
+
+	@Test
+	public void testReadEntityId() {
+		byte[] json = "{\"type\":\"item\",\"labels\":{\"id\":\"x\"},\"id\":\"Q42\"}"
+				.getBytes();
+		assertEquals("Q42", DumpSharder.readEntityId(json, 0, json.length));
+		byte[] broken = "{\"type\":".getBytes();
+		assertNull(DumpSharder.readEntityId(broken, 0, broken.length));
+	}
+
+	@Test
+	public void testReadEntityLine() throws IOException {
+		String dump = "[\n{\"id\":\"Q1\"},\n{\"type\":\"item\"},\n{\"id\":\"Q2\"}\n]\n";
+		try (ByteLineReader lineReader = new ByteLineReader(
+				new ByteArrayInputStream(dump.getBytes(StandardCharsets.UTF_8)))) {
+			assertTrue(lineReader.nextLine());
+			assertNull(DumpSharder.readEntityLine(lineReader));
+
+			assertTrue(lineReader.nextLine());
+			EntityLine line = DumpSharder.readEntityLine(lineReader);
+			assertEquals("Q1", line.entityId);
+			assertEquals("{\"id\":\"Q1\"}", new String(line.json,
+					StandardCharsets.UTF_8));
+
+			assertTrue(lineReader.nextLine());
+			line = DumpSharder.readEntityLine(lineReader);
+			assertNull(line.entityId);
+			assertEquals("{\"type\":\"item\"}", new String(line.json,
+					StandardCharsets.UTF_8));
+
+			assertTrue(lineReader.nextLine());
+			assertEquals("Q2", DumpSharder.readEntityLine(lineReader).entityId);
+
+			assertTrue(lineReader.nextLine());
+			assertNull(DumpSharder.readEntityLine(lineReader));
+			assertFalse(lineReader.nextLine());
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSelectShardsOfDump() {
+		this.dumpFile.selectShards(0);
+	}
+
+	private List<String> processDump(MwDumpFile dumpFile) {
+		List<String> ids = new ArrayList<>();
+		DumpProcessingController dpc = new DumpProcessingController(
+				"wikidatawiki");
+		dpc.setOfflineMode(true);
+		dpc.registerEntityDocumentProcessor(new EntityDocumentProcessor() {
+			@Override
+			public void processItemDocument(ItemDocument itemDocument) {
+				ids.add(itemDocument.getEntityId().getId());
+			}
+
+			@Override
+			public void processPropertyDocument(
+					PropertyDocument propertyDocument) {
+				ids.add(propertyDocument.getEntityId().getId());
+			}
+		}, null, true);
+		dpc.processDump(dumpFile);
+		return ids;
+	}
+}
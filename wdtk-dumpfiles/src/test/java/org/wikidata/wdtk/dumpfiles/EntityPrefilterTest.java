@@ -0,0 +1,227 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.LexemeDocument;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
+
+public class EntityPrefilterTest {
+
+	static final String DUMP_RESOURCE = "/mock-dump-for-long-testing.json";
+
+	/**
+	 * Test processor that records the ids of all documents.
+	 */
+	private static class RecordingDocumentProcessor implements
+			EntityDocumentProcessor {
+
+		final List<String> ids = new ArrayList<>();
+
+		@Override
+		public void processItemDocument(ItemDocument itemDocument) {
+			ids.add(itemDocument.getEntityId().getId());
+		}
+
+		@Override
+		public void processPropertyDocument(PropertyDocument propertyDocument) {
+			ids.add(propertyDocument.getEntityId().getId());
+		}
+
+		@Override
+		public void processLexemeDocument(LexemeDocument lexemeDocument) {
+			ids.add(lexemeDocument.getEntityId().getId());
+		}
+	}
+
+	@Test
+	public void testIdPrefilter() {
+		EntityPrefilter prefilter = EntityPrefilter.forIds(Arrays.asList(
+				"Q42", "P31"));
+		assertTrue(prefilter.accept("item", "Q42"));
+		assertTrue(prefilter.accept(null, "P31"));
+		assertFalse(prefilter.accept("item", "Q43"));
+		assertFalse(prefilter.accept("item", null));
+	}
+
+	@Test
+	public void testTypePrefilter() {
+		EntityPrefilter prefilter = EntityPrefilter.forTypes(Collections
+				.singleton("property"));
+		assertTrue(prefilter.accept("property", "P31"));
+		assertFalse(prefilter.accept("item", "Q42"));
+		assertFalse(prefilter.accept(null, "P31"));
+	}
+
+	@Test
+	public void testIdRangePrefilter() {
+		EntityPrefilter prefilter = EntityPrefilter.forIdRange("Q10", "Q1000");
+		assertTrue(prefilter.accept("item", "Q10"));
+		assertTrue(prefilter.accept("item", "Q99"));
+		assertTrue(prefilter.accept("item", "Q1000"));
+		assertFalse(prefilter.accept("item", "Q9"));
+		assertFalse(prefilter.accept("item", "Q1001"));
+		assertFalse(prefilter.accept("property", "P99"));
+		assertFalse(prefilter.accept("item", "Q"));
+		assertFalse(prefilter.accept("item", "Q1a"));
+		assertFalse(prefilter.accept("item", null));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testIdRangeWithDifferentPrefixes() {
+		EntityPrefilter.forIdRange("Q1", "P10");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testIdRangeWithInvalidId() {
+		EntityPrefilter.forIdRange("Q1", "Q1-2");
+	}
+
+	@Test
+	public void testJsonDumpWithTypePrefilter() throws IOException {
+		List<String> expectedIds = new ArrayList<>();
+		for (String[] entity : getDumpEntities()) {
+			if ("property".equals(entity[0])) {
+				expectedIds.add(entity[1]);
+			}
+		}
+		assertFalse(expectedIds.isEmpty());
+
+		EntityPrefilter prefilter = EntityPrefilter.forTypes(Collections
+				.singleton("property"));
+		assertEquals(expectedIds, processJsonDump(prefilter, 1));
+		assertEquals(expectedIds, processJsonDump(prefilter, 3));
+	}
+
+	@Test
+	public void testJsonDumpWithIdPrefilter() throws IOException {
+		List<String[]> entities = getDumpEntities();
+		List<String> expectedIds = Arrays.asList(entities.get(1)[1],
+				entities.get(50)[1], entities.get(entities.size() - 1)[1]);
+
+		EntityPrefilter prefilter = EntityPrefilter.forIds(expectedIds);
+		assertEquals(expectedIds, processJsonDump(prefilter, 1));
+		assertEquals(expectedIds, processJsonDump(prefilter, 3));
+	}
+
+	@Test
+	public void testJsonDumpWithoutPrefilter() throws IOException {
+		List<String> expectedIds = new ArrayList<>();
+		for (String[] entity : getDumpEntities()) {
+			expectedIds.add(entity[1]);
+		}
+		assertEquals(expectedIds, processJsonDump(null, 1));
+	}
+
+	@Test
+	public void testRevisionPrefilter() throws IOException {
+		RecordingDocumentProcessor processor = new RecordingDocumentProcessor();
+		WikibaseRevisionProcessor revisionProcessor = new WikibaseRevisionProcessor(
+				processor, Datamodel.SITE_WIKIDATA);
+		revisionProcessor.setPrefilter((entityType, entityId) -> {
+			assertEquals(entityId.startsWith("P") ? "property" : "item",
+					entityType);
+			return "P1".equals(entityId);
+		});
+		MwRevisionProcessorBroker broker = new MwRevisionProcessorBroker();
+		broker.registerMwRevisionProcessor(revisionProcessor,
+				MwRevision.MODEL_WIKIBASE_ITEM, true);
+		broker.registerMwRevisionProcessor(revisionProcessor,
+				MwRevision.MODEL_WIKIBASE_PROPERTY, true);
+
+		try (InputStream in = EntityPrefilterTest.class
+				.getResourceAsStream("/mock-dump-for-testing.xml")) {
+			new MwRevisionDumpFileProcessor(broker).processDumpFileContents(in,
+					new MwLocalDumpFile("mock-dump-for-testing.xml"));
+		}
+
+		assertEquals(Collections.singletonList("P1"), processor.ids);
+	}
+
+	/**
+	 * Processes the test dump with the given prefilter and parallelism, and
+	 * returns the ids of the delivered documents.
+	 */
+	private List<String> processJsonDump(EntityPrefilter prefilter,
+			int parallelism) throws IOException {
+		RecordingDocumentProcessor processor = new RecordingDocumentProcessor();
+		JsonDumpFileProcessor dumpFileProcessor = new JsonDumpFileProcessor(
+				processor, Datamodel.SITE_WIKIDATA, parallelism, true);
+		dumpFileProcessor.setPrefilter(prefilter);
+		try (InputStream in = EntityPrefilterTest.class
+				.getResourceAsStream(DUMP_RESOURCE)) {
+			dumpFileProcessor.processDumpFileContents(in,
+					new MwLocalDumpFile(DUMP_RESOURCE.substring(1)));
+		}
+		return processor.ids;
+	}
+
+	/**
+	 * Returns the type and id of each entity of the test dump, using a
+	 * regular expression on the raw JSON.
+	 */
+	private List<String[]> getDumpEntities() throws IOException {
+		Pattern typePattern = Pattern.compile("^\\{\"type\":\"([a-z]+)\"");
+		Pattern idPattern = Pattern.compile("\"id\":\"([A-Z][0-9]+)\"");
+		List<String[]> result = new ArrayList<>();
+		try (InputStream in = EntityPrefilterTest.class
+				.getResourceAsStream(DUMP_RESOURCE);
+				Scanner scanner = new Scanner(in,
+						StandardCharsets.UTF_8.name())) {
+			while (scanner.hasNextLine()) {
+				String line = scanner.nextLine();
+				Matcher typeMatcher = typePattern.matcher(line);
+				if (!typeMatcher.find()) {
+					continue;
+				}
+				// the first id at the top level follows the sitelinks
+				Matcher idMatcher = idPattern.matcher(line);
+				String id = null;
+				while (idMatcher.find()) {
+					if (line.lastIndexOf("\"claims\"", idMatcher.start()) < 0) {
+						id = idMatcher.group(1);
+						break;
+					}
+				}
+				result.add(new String[] { typeMatcher.group(1), id });
+			}
+		}
+		return result;
+	}
+}
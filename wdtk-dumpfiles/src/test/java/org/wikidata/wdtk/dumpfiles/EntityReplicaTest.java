@@ -0,0 +1,273 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
+import org.wikidata.wdtk.dumpfiles.wmf.WmfDumpFile;
+import org.wikidata.wdtk.dumpfiles.wmf.WmfDumpFileManager;
+import org.wikidata.wdtk.testing.MockDirectoryManager;
+import org.wikidata.wdtk.util.DirectoryManagerFactory;
+import org.wikidata.wdtk.util.DirectoryManagerImpl;
+
+public class EntityReplicaTest {
+
+	Path directory;
+	MockDirectoryManager dm;
+
+	@Before
+	public void setUp() throws IOException {
+		DirectoryManagerFactory
+				.setDirectoryManagerClass(DirectoryManagerImpl.class);
+		this.directory = Files.createTempDirectory("wdtk-replica");
+		Path dmPath = Paths.get(System.getProperty("user.dir"));
+		this.dm = new MockDirectoryManager(dmPath, true, true);
+		this.dm.setDirectory(dmPath.resolve("dumpfiles").resolve(
+				"wikidatawiki"));
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (Path file : Files.newDirectoryStream(this.directory)) {
+			Files.delete(file);
+		}
+		Files.delete(this.directory);
+	}
+
+	@Test
+	public void testSeedAndUpdate() throws IOException {
+		EntityReplica replica = new EntityReplica(this.directory);
+		assertFalse(replica.isSeeded());
+		replica.seed(getJsonDump());
+		assertTrue(replica.isSeeded());
+		assertEquals("20150223", replica.getDateStamp());
+		assertEquals("{P1=P1 v5, Q1=Q1 v10, Q2=Q2 v20}",
+				readLabels(replica.getDumpFile()).toString());
+
+		mockDailyDump("20150222", "Q1", 9);
+		mockDailyDump("20150224", "Q1", 30, "Q1", 31, "Q3", 32);
+		mockDailyDump("20150225", "Q2", 40, "Q1", 31);
+		List<String> changes = new ArrayList<>();
+		replica.registerEntityDocumentProcessor(new EntityDocumentProcessor() {
+			@Override
+			public void processItemDocument(ItemDocument itemDocument) {
+				changes.add(itemDocument.getEntityId().getId());
+			}
+		});
+
+		assertEquals(2, replica.update(getDumpFileManager()));
+		assertEquals("20150225", replica.getDateStamp());
+		assertEquals(40, replica.getLastRevisionId());
+		assertEquals(2, replica.getDeltaCount());
+		assertEquals("[Q1, Q3, Q2]", changes.toString());
+		assertEquals("{P1=P1 v5, Q1=Q1 v31, Q2=Q2 v40, Q3=Q3 v32}",
+				readLabels(replica.getDumpFile()).toString());
+
+		assertEquals(0, replica.update(getDumpFileManager()));
+		assertEquals(3, changes.size());
+	}
+
+	@Test
+	public void testPersistenceAndCompaction() throws IOException {
+		EntityReplica replica = new EntityReplica(this.directory);
+		replica.seed(getJsonDump());
+		mockDailyDump("20150224", "Q2", 30);
+		replica.update(getDumpFileManager());
+
+		EntityReplica reloaded = new EntityReplica(this.directory);
+		assertTrue(reloaded.isSeeded());
+		assertEquals("20150224", reloaded.getDateStamp());
+		assertEquals(30, reloaded.getLastRevisionId());
+		assertEquals(1, reloaded.getDeltaCount());
+
+		reloaded.compact();
+		assertEquals(0, reloaded.getDeltaCount());
+		assertEquals("{P1=P1 v5, Q1=Q1 v10, Q2=Q2 v30}",
+				readLabels(reloaded.getDumpFile()).toString());
+		assertFalse(Files.exists(this.directory
+				.resolve("base-20150223.json.gz")));
+		assertFalse(Files.exists(this.directory
+				.resolve("delta-20150224.json.gz")));
+
+		reloaded = new EntityReplica(this.directory);
+		assertEquals(0, reloaded.getDeltaCount());
+		assertEquals("{P1=P1 v5, Q1=Q1 v10, Q2=Q2 v30}",
+				readLabels(reloaded.getDumpFile()).toString());
+	}
+
+	@Test
+	public void testOlderRevisionsAreNotApplied() throws IOException {
+		EntityReplica replica = new EntityReplica(this.directory);
+		replica.seed(getJsonDump());
+		mockDailyDump("20150224", "Q2", 15);
+		replica.update(getDumpFileManager());
+
+		assertEquals(15, replica.getLastRevisionId());
+		assertEquals("{P1=P1 v5, Q1=Q1 v10, Q2=Q2 v20}",
+				readLabels(replica.getDumpFile()).toString());
+	}
+
+	@Test
+	public void testRedirectsRemoveEntities() throws IOException {
+		EntityReplica replica = new EntityReplica(this.directory);
+		replica.seed(getJsonDump());
+		List<String> changes = new ArrayList<>();
+		replica.registerEntityDocumentProcessor(new EntityDocumentProcessor() {
+			@Override
+			public void processItemDocument(ItemDocument itemDocument) {
+				changes.add(itemDocument.getEntityId().getId());
+			}
+		});
+		mockDailyDump("20150224", "Q1>Q2", 30, "Q3", 31);
+		mockDailyDump("20150225", "Q3>Q2", 40);
+		replica.update(getDumpFileManager());
+
+		assertEquals(40, replica.getLastRevisionId());
+		assertEquals("[Q3]", changes.toString());
+		assertEquals("{P1=P1 v5, Q2=Q2 v20}",
+				readLabels(replica.getDumpFile()).toString());
+
+		// an entity that was a redirect can be restored
+		mockDailyDump("20150226", "Q1", 50);
+		replica.update(getDumpFileManager());
+		assertEquals("{P1=P1 v5, Q1=Q1 v50, Q2=Q2 v20}",
+				readLabels(replica.getDumpFile()).toString());
+
+		replica.compact();
+		assertEquals("{P1=P1 v5, Q1=Q1 v50, Q2=Q2 v20}",
+				readLabels(replica.getDumpFile()).toString());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testUpdateWithoutSeed() throws IOException {
+		new EntityReplica(this.directory).update(getDumpFileManager());
+	}
+
+	private MwDumpFile getJsonDump() throws IOException {
+		Path file = this.directory.resolve("wikidata-20150223-all.json");
+		Files.write(file, ("[\n" + entityJson("Q2", 20) + ",\n"
+				+ entityJson("P1", 5) + ",\n" + entityJson("Q1", 10) + "\n]\n")
+				.getBytes(StandardCharsets.UTF_8));
+		return new MwLocalDumpFile(file.toString(), DumpContentType.JSON,
+				"20150223", "wikidatawiki");
+	}
+
+	private WmfDumpFileManager getDumpFileManager() throws IOException {
+		return new WmfDumpFileManager("wikidatawiki", this.dm, null);
+	}
+
+	private String entityJson(String id, long revisionId) {
+		String json = "{\"id\":\"" + id + "\",\"type\":\""
+				+ (id.startsWith("P") ? "property\",\"datatype\":\"string"
+						: "item")
+				+ "\",\"labels\":{\"en\":{\"language\":\"en\",\"value\":\""
+				+ id + " v" + revisionId + "\"}}";
+		return revisionId > 0 ? json + ",\"lastrevid\":" + revisionId + "}"
+				: json + "}";
+	}
+
+	/**
+	 * Creates a mocked daily dump with one page for each pair of entity id
+	 * and revision id in the given list. An id of the form "Q1&gt;Q2" stands
+	 * for a redirect from Q1 to Q2.
+	 */
+	private void mockDailyDump(String dateStamp, Object... revisions)
+			throws IOException {
+		StringBuilder contents = new StringBuilder(
+				"<mediawiki xmlns=\"http://www.mediawiki.org/xml/export-0.8/\" version=\"0.8\" xml:lang=\"en\">\n"
+						+ "  <siteinfo>\n    <sitename>Wikidata</sitename>\n"
+						+ "    <namespaces>\n      <namespace key=\"0\" case=\"first-letter\" />\n"
+						+ "    </namespaces>\n  </siteinfo>\n");
+		for (int i = 0; i < revisions.length; i += 2) {
+			String id = (String) revisions[i];
+			int revisionId = (Integer) revisions[i + 1];
+			String text = entityJson(id, 0).replace(" v0", " v" + revisionId);
+			if (id.contains(">")) {
+				String[] ids = id.split(">");
+				id = ids[0];
+				text = "{\"entity\":\"" + ids[0] + "\",\"redirect\":\""
+						+ ids[1] + "\"}";
+			}
+			contents.append("  <page>\n    <title>").append(id)
+					.append("</title>\n    <ns>0</ns>\n    <id>")
+					.append(id.substring(1)).append("</id>\n")
+					.append("    <revision>\n      <id>").append(revisionId)
+					.append("</id>\n      <timestamp>2015-02-23T00:00:00Z</timestamp>\n")
+					.append("      <contributor><ip>127.0.0.1</ip></contributor>\n")
+					.append("      <text xml:space=\"preserve\">")
+					.append(text.replace("\"", "&quot;"))
+					.append("</text>\n      <sha1>ignored</sha1>\n")
+					.append("      <model>wikibase-item</model>\n")
+					.append("      <format>application/json</format>\n")
+					.append("    </revision>\n  </page>\n");
+		}
+		contents.append("</mediawiki>\n");
+
+		Path dumpPath = Paths.get(System.getProperty("user.dir"))
+				.resolve("dumpfiles").resolve("wikidatawiki")
+				.resolve("daily-" + dateStamp);
+		Path filePath = dumpPath.resolve("wikidatawiki-" + dateStamp
+				+ WmfDumpFile.getDumpFilePostfix(DumpContentType.DAILY));
+		this.dm.setFileContents(filePath, contents.toString(),
+				WmfDumpFile.getDumpFileCompressionType(filePath.toString()));
+	}
+
+	private Map<String, String> readLabels(MwDumpFile dumpFile) {
+		Map<String, String> labels = new LinkedHashMap<>();
+		DumpProcessingController dpc = new DumpProcessingController(
+				"wikidatawiki");
+		dpc.setOfflineMode(true);
+		dpc.registerEntityDocumentProcessor(new EntityDocumentProcessor() {
+			@Override
+			public void processItemDocument(ItemDocument itemDocument) {
+				labels.put(itemDocument.getEntityId().getId(), itemDocument
+						.findLabel("en"));
+			}
+
+			@Override
+			public void processPropertyDocument(
+					PropertyDocument propertyDocument) {
+				labels.put(propertyDocument.getEntityId().getId(),
+						propertyDocument.findLabel("en"));
+			}
+		}, null, true);
+		dpc.processDump(dumpFile);
+		return labels;
+	}
+}
@@ -0,0 +1,259 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.wikidata.wdtk.dumpfiles.GzipCheckpointIndex.Checkpoint;
+import org.wikidata.wdtk.testing.MockStringContentFactory;
+import org.wikidata.wdtk.util.DirectoryManagerFactory;
+import org.wikidata.wdtk.util.DirectoryManagerImpl;
+
+public class GzipCheckpointDumpFileTest {
+
+	Path directory;
+
+	@Before
+	public void setUp() throws IOException {
+		DirectoryManagerFactory
+				.setDirectoryManagerClass(DirectoryManagerImpl.class);
+		this.directory = Files.createTempDirectory("wdtk-checkpoints");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (Path file : Files.newDirectoryStream(this.directory)) {
+			Files.delete(file);
+		}
+		Files.delete(this.directory);
+	}
+
+	@Test
+	public void testCheckpointsAtLineStarts() throws IOException {
+		byte[] data = MockStringContentFactory.newMockJsonDump(3000);
+		GzipCheckpointDumpFile dumpFile = createDumpFile(data, 1);
+
+		List<Checkpoint> checkpoints = dumpFile.getCheckpointIndex()
+				.getCheckpoints();
+		assertTrue(checkpoints.size() > 10);
+		assertEquals(0, checkpoints.get(0).getUncompressedOffset());
+		assertEquals(data.length, dumpFile.getCheckpointIndex()
+				.getUncompressedSize());
+
+		for (int i = 0; i < checkpoints.size(); i++) {
+			int offset = (int) checkpoints.get(i).getUncompressedOffset();
+			assertTrue(offset == 0 || data[offset - 1] == '\n');
+			assertArrayEquals(Arrays.copyOfRange(data, offset, data.length),
+					readAll(dumpFile.getDumpFileStream(i, checkpoints.size())));
+		}
+	}
+
+	@Test
+	public void testMultipleMembers() throws IOException {
+		byte[] data = MockStringContentFactory.newMockJsonDump(3000);
+		GzipCheckpointDumpFile dumpFile = createDumpFile(data, 3);
+
+		List<Checkpoint> checkpoints = dumpFile.getCheckpointIndex()
+				.getCheckpoints();
+		for (int i = 0; i < checkpoints.size(); i++) {
+			int offset = (int) checkpoints.get(i).getUncompressedOffset();
+			assertArrayEquals(Arrays.copyOfRange(data, offset, data.length),
+					readAll(dumpFile.getDumpFileStream(i, checkpoints.size())));
+		}
+	}
+
+	@Test
+	public void testRangeBetweenCheckpoints() throws IOException {
+		byte[] data = MockStringContentFactory.newMockJsonDump(2000);
+		GzipCheckpointDumpFile dumpFile = createDumpFile(data, 1);
+
+		List<Checkpoint> checkpoints = dumpFile.getCheckpointIndex()
+				.getCheckpoints();
+		int from = (int) checkpoints.get(2).getUncompressedOffset();
+		int to = (int) checkpoints.get(5).getUncompressedOffset();
+		assertArrayEquals(Arrays.copyOfRange(data, from, to),
+				readAll(dumpFile.getDumpFileStream(2, 5)));
+	}
+
+	@Test
+	public void testIndexFileIsReused() throws IOException {
+		byte[] data = MockStringContentFactory.newMockJsonDump(1000);
+		GzipCheckpointDumpFile dumpFile = createDumpFile(data, 1);
+		GzipCheckpointIndex index = dumpFile.getCheckpointIndex();
+
+		assertTrue(Files.exists(this.directory.resolve(dumpFile
+				.getIndexFileName())));
+
+		GzipCheckpointDumpFile otherDumpFile = new GzipCheckpointDumpFile(
+				dumpFile.getPath().toString(), 1);
+		GzipCheckpointIndex otherIndex = otherDumpFile.getCheckpointIndex();
+		assertEquals(index.getCheckpoints().size(), otherIndex
+				.getCheckpoints().size());
+		for (int i = 0; i < index.getCheckpoints().size(); i++) {
+			Checkpoint checkpoint = index.getCheckpoints().get(i);
+			Checkpoint otherCheckpoint = otherIndex.getCheckpoints().get(i);
+			assertEquals(checkpoint.getCompressedBitOffset(),
+					otherCheckpoint.getCompressedBitOffset());
+			assertEquals(checkpoint.getUncompressedOffset(),
+					otherCheckpoint.getUncompressedOffset());
+			assertArrayEquals(checkpoint.window, otherCheckpoint.window);
+		}
+	}
+
+	@Test
+	public void testSplit() throws IOException {
+		byte[] data = MockStringContentFactory.newMockJsonDump(3000);
+		GzipCheckpointDumpFile dumpFile = createDumpFile(data, 1);
+
+		List<MwDumpFile> slices = dumpFile.split(4);
+		assertEquals(4, slices.size());
+
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		for (MwDumpFile slice : slices) {
+			byte[] sliceData = readAll(slice.getDumpFileStream());
+			assertEquals("[\n", new String(sliceData, 0, 2,
+					StandardCharsets.UTF_8));
+			if (content.size() == 0) {
+				content.write(sliceData);
+			} else {
+				content.write(sliceData, 2, sliceData.length - 2);
+			}
+		}
+		assertArrayEquals(data, content.toByteArray());
+	}
+
+	@Test
+	public void testFindCheckpoint() throws IOException {
+		byte[] data = MockStringContentFactory.newMockJsonDump(1000);
+		GzipCheckpointIndex index = createDumpFile(data, 1)
+				.getCheckpointIndex();
+
+		Checkpoint checkpoint = index.getCheckpoints().get(3);
+		assertEquals(3, index.findCheckpoint(checkpoint
+				.getUncompressedOffset()));
+		assertEquals(3, index.findCheckpoint(checkpoint
+				.getUncompressedOffset() + 1));
+		assertEquals(2, index.findCheckpoint(checkpoint
+				.getUncompressedOffset() - 1));
+		assertEquals(0, index.findCheckpoint(0));
+	}
+
+	@Test
+	public void testUnalignedBlockStart() throws IOException {
+		byte[] data = MockStringContentFactory.newMockJsonDump(200);
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		deflater.setInput(data);
+		deflater.finish();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		while (!deflater.finished()) {
+			out.write(buffer, 0, deflater.deflate(buffer));
+		}
+		deflater.end();
+		byte[] compressed = out.toByteArray();
+
+		for (int bitOffset = 1; bitOffset < 8; bitOffset++) {
+			// shift the deflate data by some bits and add an empty trailer
+			byte[] shifted = new byte[compressed.length + 9];
+			for (int i = 0; i < compressed.length; i++) {
+				shifted[i] |= (byte) ((compressed[i] & 0xff) << bitOffset);
+				shifted[i + 1] |= (byte) ((compressed[i] & 0xff) >>> (8 - bitOffset));
+			}
+			Checkpoint checkpoint = new Checkpoint(bitOffset, 0, 0,
+					new byte[0]);
+			assertArrayEquals(data, readAll(new GzipCheckpointInputStream(
+					new ByteArrayInputStream(shifted), checkpoint, -1)));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testNoGzipData() throws IOException {
+		new GzipCheckpointIndexBuilder(100).buildIndex(new ByteArrayInputStream(
+				"[\n]\n".getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSpacing() {
+		new GzipCheckpointIndexBuilder(0);
+	}
+
+	/**
+	 * Writes the given data to a gzip file with the given number of members
+	 * and returns a dump file for it with a small checkpoint spacing.
+	 */
+	private GzipCheckpointDumpFile createDumpFile(byte[] data, int members)
+			throws IOException {
+		Path file = this.directory.resolve("test-20150815.json.gz");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int memberSize = data.length / members + 1;
+		for (int start = 0; start < data.length; start += memberSize) {
+			try (GZIPOutputStream gzipOut = new GZIPOutputStream(
+					new NonClosingOutputStream(out))) {
+				gzipOut.write(data, start,
+						Math.min(memberSize, data.length - start));
+			}
+		}
+		Files.write(file, out.toByteArray());
+		return new GzipCheckpointDumpFile(file.toString(), 10000);
+	}
+
+	private byte[] readAll(InputStream in) throws IOException {
+		try (InputStream inputStream = in) {
+			return inputStream.readAllBytes();
+		}
+	}
+
+	/**
+	 * Stream that ignores calls of {@link #close()}, used to write several
+	 * gzip members to one stream.
+	 */
+	private static class NonClosingOutputStream extends
+			FilterOutputStream {
+
+		NonClosingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+}
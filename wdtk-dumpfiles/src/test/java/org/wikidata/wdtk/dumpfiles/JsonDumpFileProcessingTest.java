@@ -21,17 +21,31 @@ package org.wikidata.wdtk.dumpfiles;
  */
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.junit.Ignore;
 import org.junit.Test;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.interfaces.DocumentDataFilter;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocument;
 import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessorFilter;
 import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.LexemeDocument;
+import org.wikidata.wdtk.datamodel.interfaces.MergeableEntityDocumentProcessor;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
 import org.wikidata.wdtk.dumpfiles.wmf.WmfDumpFile;
 import org.wikidata.wdtk.testing.MockDirectoryManager;
 import org.wikidata.wdtk.testing.MockStringContentFactory;
@@ -68,6 +82,67 @@ public class JsonDumpFileProcessingTest {
 
 	}
 
+	/**
+	 * Test class that records the ids of all documents in the order in which
+	 * they are processed.
+	 */
+	private static class RecordingDocumentProcessor implements EntityDocumentProcessor {
+
+		final List<String> ids = new ArrayList<>();
+		final List<EntityDocument> documents = new ArrayList<>();
+
+		@Override
+		public void processItemDocument(ItemDocument itemDocument) {
+			ids.add(itemDocument.getEntityId().getId());
+			documents.add(itemDocument);
+		}
+
+		@Override
+		public void processPropertyDocument(PropertyDocument propertyDocument) {
+			ids.add(propertyDocument.getEntityId().getId());
+			documents.add(propertyDocument);
+		}
+
+		@Override
+		public void processLexemeDocument(LexemeDocument lexemeDocument) {
+			ids.add(lexemeDocument.getEntityId().getId());
+			documents.add(lexemeDocument);
+		}
+	}
+
+	/**
+	 * Test class that records the ids of all documents and the threads that
+	 * processed them, and that can be forked.
+	 */
+	private static class MergeableRecordingProcessor extends
+			RecordingDocumentProcessor implements
+			MergeableEntityDocumentProcessor<MergeableRecordingProcessor> {
+
+		final Set<Thread> threads = new HashSet<>();
+		int forkCount = 0;
+		int mergeCount = 0;
+
+		@Override
+		public void processItemDocument(ItemDocument itemDocument) {
+			threads.add(Thread.currentThread());
+			super.processItemDocument(itemDocument);
+		}
+
+		@Override
+		public synchronized MergeableRecordingProcessor fork() {
+			forkCount++;
+			return new MergeableRecordingProcessor();
+		}
+
+		@Override
+		public void merge(MergeableRecordingProcessor fork) {
+			mergeCount++;
+			ids.addAll(fork.ids);
+			documents.addAll(fork.documents);
+			threads.addAll(fork.threads);
+		}
+	}
+
 	@Test
 	public void testRegularJsonProcessing() throws IOException {
 		Path dmPath = Paths.get(System.getProperty("user.dir"));
@@ -159,6 +234,178 @@ public class JsonDumpFileProcessingTest {
 		assertEquals(101, timer.entityCount);
 	}
 
+	@Test
+	public void testParallelJsonProcessing() throws IOException {
+		Path dmPath = Paths.get(System.getProperty("user.dir"));
+		MockDirectoryManager dm = new MockDirectoryManager(dmPath, true, true);
+		setLocalJsonDumpFile("mock-dump-for-long-testing.json", "20150223", dm);
+
+		DumpProcessingController dpc = new DumpProcessingController(
+				"wikidatawiki");
+		dpc.downloadDirectoryManager = dm;
+		dpc.setOfflineMode(true);
+		dpc.setParallelism(4);
+
+		EntityTimerProcessor timer = new EntityTimerProcessor(0);
+		dpc.registerEntityDocumentProcessor(timer, null, true);
+
+		timer.open();
+		dpc.processMostRecentJsonDump();
+		timer.close();
+
+		assertEquals(101, timer.entityCount);
+	}
+
+	@Test
+	public void testParallelJsonProcessingPreservesOrder() throws IOException {
+		RecordingDocumentProcessor sequential = processResource(
+				"mock-dump-for-long-testing.json", 1, true);
+		RecordingDocumentProcessor parallel = processResource(
+				"mock-dump-for-long-testing.json", 4, true);
+
+		assertEquals(101, sequential.ids.size());
+		assertEquals(sequential.ids, parallel.ids);
+	}
+
+	@Test
+	public void testUnorderedParallelJsonProcessing() throws IOException {
+		RecordingDocumentProcessor sequential = processResource(
+				"mock-dump-for-long-testing.json", 1, true);
+		RecordingDocumentProcessor parallel = processResource(
+				"mock-dump-for-long-testing.json", 4, false);
+
+		assertEquals(sequential.ids.size(), parallel.ids.size());
+		assertEquals(new HashSet<>(sequential.ids), new HashSet<>(parallel.ids));
+	}
+
+	@Test
+	public void testBuggyParallelJsonProcessing() throws IOException {
+		RecordingDocumentProcessor sequential = processResource(
+				"mock-dump-with-bugs.json", 1, true);
+		RecordingDocumentProcessor parallel = processResource(
+				"mock-dump-with-bugs.json", 3, true);
+
+		assertTrue(parallel.ids.size() >= 3);
+		assertEquals(sequential.ids, parallel.ids);
+	}
+
+	@Test
+	public void testMergeableProcessorsAreForked() throws IOException {
+		Path dmPath = Paths.get(System.getProperty("user.dir"));
+		MockDirectoryManager dm = new MockDirectoryManager(dmPath, true, true);
+		setLocalJsonDumpFile("mock-dump-for-long-testing.json", "20150223", dm);
+
+		DumpProcessingController dpc = new DumpProcessingController(
+				"wikidatawiki");
+		dpc.downloadDirectoryManager = dm;
+		dpc.setOfflineMode(true);
+		dpc.setParallelism(3);
+
+		MergeableRecordingProcessor mergeable = new MergeableRecordingProcessor();
+		RecordingDocumentProcessor recorder = new RecordingDocumentProcessor();
+		dpc.registerEntityDocumentProcessor(mergeable, null, true);
+		dpc.registerEntityDocumentProcessor(recorder, null, true);
+		dpc.processMostRecentJsonDump();
+
+		assertEquals(101, recorder.ids.size());
+		assertEquals(recorder.ids.size(), mergeable.ids.size());
+		assertEquals(new HashSet<>(recorder.ids), new HashSet<>(mergeable.ids));
+		assertTrue(mergeable.forkCount >= 1);
+		assertEquals(mergeable.forkCount, mergeable.mergeCount);
+		assertFalse(mergeable.threads.contains(Thread.currentThread()));
+	}
+
+	@Test
+	public void testMergeableProcessorsWithoutParallelism() throws IOException {
+		RecordingDocumentProcessor sequential = processResource(
+				"mock-dump-for-long-testing.json", 1, true);
+
+		Path dmPath = Paths.get(System.getProperty("user.dir"));
+		MockDirectoryManager dm = new MockDirectoryManager(dmPath, true, true);
+		setLocalJsonDumpFile("mock-dump-for-long-testing.json", "20150223", dm);
+
+		DumpProcessingController dpc = new DumpProcessingController(
+				"wikidatawiki");
+		dpc.downloadDirectoryManager = dm;
+		dpc.setOfflineMode(true);
+
+		MergeableRecordingProcessor mergeable = new MergeableRecordingProcessor();
+		dpc.registerEntityDocumentProcessor(mergeable, null, true);
+		dpc.processMostRecentJsonDump();
+
+		assertEquals(sequential.ids, mergeable.ids);
+		assertEquals(0, mergeable.forkCount);
+	}
+
+	@Test
+	public void testFilteredJsonProcessing() throws IOException {
+		DocumentDataFilter filter = new DocumentDataFilter();
+		filter.setLanguageFilter(Collections.singleton("de"));
+		filter.setPropertyFilter(Collections.singleton(Datamodel
+				.makeWikidataPropertyIdValue("P18")));
+		filter.setSiteLinkFilter(Collections.emptySet());
+
+		RecordingDocumentProcessor unfiltered = new RecordingDocumentProcessor();
+		processResource("mock-dump-for-testing.json", 1, true,
+				new EntityDocumentProcessorFilter(unfiltered, filter), null);
+		assertEquals(4, unfiltered.documents.size());
+
+		for (int parallelism : new int[] { 1, 3 }) {
+			RecordingDocumentProcessor filtered = processResource(
+					"mock-dump-for-testing.json", parallelism, true,
+					new RecordingDocumentProcessor(), filter);
+			assertEquals(unfiltered.documents, filtered.documents);
+		}
+	}
+
+	@Test
+	public void testControllerFiltersWhileParsing() throws IOException {
+		Path dmPath = Paths.get(System.getProperty("user.dir"));
+		MockDirectoryManager dm = new MockDirectoryManager(dmPath, true, true);
+		setLocalJsonDumpFile("mock-dump-for-testing.json", "20150223", dm);
+
+		DumpProcessingController dpc = new DumpProcessingController(
+				"wikidatawiki");
+		dpc.downloadDirectoryManager = dm;
+		dpc.setOfflineMode(true);
+		dpc.setLanguageFilter(Collections.emptySet());
+		dpc.setPropertyFilter(Collections.singleton(Datamodel
+				.makeWikidataPropertyIdValue("P31")));
+
+		RecordingDocumentProcessor recorder = new RecordingDocumentProcessor();
+		dpc.registerEntityDocumentProcessor(recorder, null, true);
+		dpc.processMostRecentJsonDump();
+
+		assertEquals(4, recorder.documents.size());
+		ItemDocument item = (ItemDocument) recorder.documents.get(0);
+		assertTrue(item.getLabels().isEmpty());
+		assertTrue(item.getAliases().isEmpty());
+		assertEquals(1, item.getStatementGroups().size());
+		assertEquals(1, item.getSiteLinks().size());
+	}
+
+	private RecordingDocumentProcessor processResource(String fileName,
+			int parallelism, boolean preserveOrder) throws IOException {
+		RecordingDocumentProcessor recorder = new RecordingDocumentProcessor();
+		processResource(fileName, parallelism, preserveOrder, recorder, null);
+		return recorder;
+	}
+
+	private <T extends EntityDocumentProcessor> T processResource(
+			String fileName, int parallelism, boolean preserveOrder,
+			T recorder, DocumentDataFilter filter) throws IOException {
+		JsonDumpFileProcessor processor = new JsonDumpFileProcessor(recorder,
+				Datamodel.SITE_WIKIDATA, parallelism, preserveOrder);
+		processor.setDocumentDataFilter(filter);
+		processor.batchSize = 7;
+		MwDumpFile dumpFile = new MwLocalDumpFile(fileName);
+		try (InputStream inputStream = JsonDumpFileProcessingTest.class
+				.getResourceAsStream("/" + fileName)) {
+			processor.processDumpFileContents(inputStream, dumpFile);
+		}
+		return recorder;
+	}
+
 	private void setLocalJsonDumpFile(String fileName, String dateStamp,
 			MockDirectoryManager dm) throws IOException {
 
@@ -0,0 +1,254 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
+import org.wikidata.wdtk.testing.MockStringContentFactory;
+import org.wikidata.wdtk.util.DirectoryManagerFactory;
+import org.wikidata.wdtk.util.DirectoryManagerImpl;
+
+public class MappedDumpFileTest {
+
+	Path directory;
+
+	@Before
+	public void setUp() throws IOException {
+		DirectoryManagerFactory
+				.setDirectoryManagerClass(DirectoryManagerImpl.class);
+		this.directory = Files.createTempDirectory("wdtk-mapped");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (Path file : Files.newDirectoryStream(this.directory)) {
+			Files.delete(file);
+		}
+		Files.delete(this.directory);
+	}
+
+	@Test
+	public void testReadAcrossChunks() throws IOException {
+		byte[] data = MockStringContentFactory.newMockJsonDump(500);
+		MappedDumpFile dumpFile = createDumpFile(data, 1000);
+
+		assertEquals(data.length, dumpFile.getSize());
+		assertArrayEquals(data, readAll(dumpFile.getDumpFileStream()));
+		assertArrayEquals(Arrays.copyOfRange(data, 999, 4321),
+				readAll(dumpFile.getDumpFileStream(999, 4321)));
+	}
+
+	@Test
+	public void testSkip() throws IOException {
+		byte[] data = MockStringContentFactory.newMockJsonDump(500);
+		MappedDumpFile dumpFile = createDumpFile(data, 1000);
+
+		try (InputStream inputStream = dumpFile.getDumpFileStream()) {
+			assertEquals(data[0], inputStream.read());
+			assertEquals(10, inputStream.skip(10));
+			assertEquals(data[11], inputStream.read());
+			assertEquals(2500, inputStream.skip(2500));
+			assertEquals(data[2512], inputStream.read());
+			assertEquals(data.length - 2513,
+					inputStream.skip(data.length));
+			assertEquals(-1, inputStream.read());
+		}
+	}
+
+	@Test
+	public void testFindLineStart() throws IOException {
+		byte[] data = "[\nabc\n\ndef\n]\n".getBytes(StandardCharsets.UTF_8);
+		MappedDumpFile dumpFile = createDumpFile(data, 3);
+
+		assertEquals(0, dumpFile.findLineStart(0));
+		assertEquals(2, dumpFile.findLineStart(1));
+		assertEquals(2, dumpFile.findLineStart(2));
+		assertEquals(6, dumpFile.findLineStart(3));
+		assertEquals(7, dumpFile.findLineStart(7));
+		assertEquals(11, dumpFile.findLineStart(8));
+		assertEquals(data.length, dumpFile.findLineStart(12));
+		assertEquals(data.length, dumpFile.findLineStart(100));
+	}
+
+	@Test
+	public void testSplit() throws IOException {
+		byte[] data = MockStringContentFactory.newMockJsonDump(3000);
+		MappedDumpFile dumpFile = createDumpFile(data, 4096);
+
+		List<MwDumpFile> slices = dumpFile.split(4);
+		assertEquals(4, slices.size());
+
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		for (MwDumpFile slice : slices) {
+			byte[] sliceData = readAll(slice.getDumpFileStream());
+			assertEquals("[\n", new String(sliceData, 0, 2,
+					StandardCharsets.UTF_8));
+			if (content.size() == 0) {
+				content.write(sliceData);
+			} else {
+				content.write(sliceData, 2, sliceData.length - 2);
+			}
+		}
+		assertArrayEquals(data, content.toByteArray());
+	}
+
+	@Test
+	public void testSplitSmallDump() throws IOException {
+		byte[] data = "[\n]\n".getBytes(StandardCharsets.UTF_8);
+		MappedDumpFile dumpFile = createDumpFile(data, 4096);
+
+		List<MwDumpFile> slices = dumpFile.split(8);
+		assertEquals(2, slices.size());
+		assertArrayEquals("[\n".getBytes(StandardCharsets.UTF_8),
+				readAll(slices.get(0).getDumpFileStream()));
+		assertArrayEquals(data, readAll(slices.get(1).getDumpFileStream()));
+	}
+
+	@Test
+	public void testProcessSlices() throws IOException {
+		Path file = this.directory.resolve("wikidata-20150223-all.json");
+		try (InputStream in = MappedDumpFileTest.class
+				.getResourceAsStream("/mock-dump-for-long-testing.json")) {
+			Files.copy(in, file);
+		}
+		MappedDumpFile dumpFile = new MappedDumpFile(file.toString(), 10000);
+
+		List<String> expectedIds = new ArrayList<>();
+		processDump(dumpFile, expectedIds);
+		assertEquals(101, expectedIds.size());
+
+		List<String> ids = new ArrayList<>();
+		for (MwDumpFile slice : dumpFile.split(5)) {
+			processDump(slice, ids);
+		}
+		assertEquals(expectedIds, ids);
+	}
+
+	@Test
+	public void testReadChannelAcrossChunks() throws IOException {
+		byte[] data = MockStringContentFactory.newMockJsonDump(500);
+		MappedDumpFile dumpFile = createDumpFile(data, 1000);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (ReadableByteChannel channel = dumpFile.getDumpFileChannel()) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(777);
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				byte[] bytes = new byte[buffer.remaining()];
+				buffer.get(bytes);
+				out.write(bytes);
+				buffer.clear();
+			}
+		}
+		assertArrayEquals(data, out.toByteArray());
+
+		try (ReadableByteChannel channel = dumpFile.getDumpFileChannel(5,
+				15)) {
+			ByteBuffer buffer = ByteBuffer.allocate(20);
+			while (channel.read(buffer) >= 0) {
+				// read to the end of the range
+			}
+			assertEquals(10, buffer.position());
+			assertArrayEquals(Arrays.copyOfRange(data, 5, 15),
+					Arrays.copyOf(buffer.array(), 10));
+		}
+	}
+
+	@Test
+	public void testProcessingUsesMappedStream() throws IOException {
+		Path file = this.directory.resolve("wikidata-20150223-all.json");
+		try (InputStream in = MappedDumpFileTest.class
+				.getResourceAsStream("/mock-dump-for-long-testing.json")) {
+			Files.copy(in, file);
+		}
+		List<String> ranges = new ArrayList<>();
+		MappedDumpFile dumpFile = new MappedDumpFile(file.toString(), 1000) {
+			@Override
+			public ReadableByteChannel getDumpFileChannel(long start,
+					long end) throws IOException {
+				ranges.add(start + "-" + end);
+				return super.getDumpFileChannel(start, end);
+			}
+		};
+
+		List<String> ids = new ArrayList<>();
+		processDump(dumpFile, ids);
+		assertEquals(101, ids.size());
+		assertEquals(Arrays.asList("0--1"), ranges);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCompressedDumpFile() {
+		new MappedDumpFile(this.directory.resolve(
+				"wikidata-20150223-all.json.gz").toString());
+	}
+
+	private void processDump(MwDumpFile dumpFile, List<String> ids) {
+		DumpProcessingController dpc = new DumpProcessingController(
+				"wikidatawiki");
+		dpc.setOfflineMode(true);
+		dpc.registerEntityDocumentProcessor(new EntityDocumentProcessor() {
+			@Override
+			public void processItemDocument(ItemDocument itemDocument) {
+				ids.add(itemDocument.getEntityId().getId());
+			}
+
+			@Override
+			public void processPropertyDocument(
+					PropertyDocument propertyDocument) {
+				ids.add(propertyDocument.getEntityId().getId());
+			}
+		}, null, true);
+		dpc.processDump(dumpFile);
+	}
+
+	private MappedDumpFile createDumpFile(byte[] data, int chunkSize)
+			throws IOException {
+		Path file = this.directory.resolve("test-20150815.json");
+		Files.write(file, data);
+		return new MappedDumpFile(file.toString(), chunkSize);
+	}
+
+	private byte[] readAll(InputStream in) throws IOException {
+		try (InputStream inputStream = in) {
+			return inputStream.readAllBytes();
+		}
+	}
+}
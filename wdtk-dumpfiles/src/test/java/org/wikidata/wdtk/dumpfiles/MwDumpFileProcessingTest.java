@@ -21,9 +21,13 @@ package org.wikidata.wdtk.dumpfiles;
  */
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -33,6 +37,7 @@ import java.util.Map;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
 import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
 import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
 import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
@@ -506,6 +511,64 @@ public class MwDumpFileProcessingTest {
 		assertEquals(5, mwrpStats.getCurrentRevisionCount());
 	}
 
+	@Test
+	public void testConcurrentRecentDumpFileProcessing() throws IOException {
+		Path dmPath = Paths.get(System.getProperty("user.dir"));
+		MockDirectoryManager dm = new MockDirectoryManager(dmPath, true, true);
+		mockLocalDumpFile("20140420", 4, DumpContentType.DAILY, dm);
+		mockLocalDumpFile("20140419", 3, DumpContentType.DAILY, dm);
+		mockLocalDumpFile("20140418", 2, DumpContentType.DAILY, dm);
+		mockLocalDumpFile("20140417", 1, DumpContentType.DAILY, dm);
+		mockLocalDumpFile("20140418", 2, DumpContentType.FULL, dm);
+
+		List<TestMwRevisionProcessor> sequential = processRecentRevisionDumps(
+				dm, 1, DumpProcessingController.DEFAULT_REVISION_DUMP_QUEUE_SIZE);
+		List<TestMwRevisionProcessor> concurrent = processRecentRevisionDumps(
+				dm, 3, DumpProcessingController.DEFAULT_REVISION_DUMP_QUEUE_SIZE);
+		// only one revision at a time is buffered for each dump
+		List<TestMwRevisionProcessor> small = processRecentRevisionDumps(dm,
+				3, 1);
+
+		assertEquals(19, sequential.get(0).revisions.size());
+		assertEquals(5, sequential.get(1).revisions.size());
+		assertEquals("Wikidata Toolkit Test", concurrent.get(0).siteName);
+		assertEqualRevisionLists(sequential.get(0).revisions,
+				concurrent.get(0).revisions, "all");
+		assertEqualRevisionLists(sequential.get(1).revisions,
+				concurrent.get(1).revisions, "current");
+		assertEqualRevisionLists(sequential.get(0).revisions,
+				small.get(0).revisions, "all");
+		assertEqualRevisionLists(sequential.get(1).revisions,
+				small.get(1).revisions, "current");
+	}
+
+	/**
+	 * Processes all recent revision dumps with processors for all and for
+	 * current revisions, which are returned in this order.
+	 */
+	private List<TestMwRevisionProcessor> processRecentRevisionDumps(
+			MockDirectoryManager dm, int concurrentRevisionDumps,
+			long revisionDumpQueueSize) {
+		DumpProcessingController dpc = new DumpProcessingController(
+				"wikidatawiki");
+		dpc.downloadDirectoryManager = dm;
+		dpc.setOfflineMode(true);
+		dpc.setConcurrentRevisionDumps(concurrentRevisionDumps);
+		dpc.setRevisionDumpQueueSize(revisionDumpQueueSize);
+
+		TestMwRevisionProcessor tmrpAll = new TestMwRevisionProcessor();
+		dpc.registerMwRevisionProcessor(tmrpAll, null, false);
+		TestMwRevisionProcessor tmrpCurrent = new TestMwRevisionProcessor();
+		dpc.registerMwRevisionProcessor(tmrpCurrent, null, true);
+
+		dpc.processAllRecentRevisionDumps();
+
+		List<TestMwRevisionProcessor> result = new ArrayList<>();
+		result.add(tmrpAll);
+		result.add(tmrpCurrent);
+		return result;
+	}
+
 	@Test
 	public void testMwMostRecentFullDumpFileProcessing() throws IOException {
 		Path dmPath = Paths.get(System.getProperty("user.dir"));
@@ -527,4 +590,124 @@ public class MwDumpFileProcessingTest {
 		assertEquals(9, mwrpStats.getCurrentRevisionCount());
 	}
 
+	@Test
+	public void testPipelinedRevisionProcessing() throws IOException {
+		String dumpContents = createEntityDump(40, 5);
+		List<String> sequentialCurrent = new ArrayList<>();
+		List<String> sequentialAll = new ArrayList<>();
+		processEntityDump(dumpContents, 1, sequentialCurrent, sequentialAll);
+		assertEquals(40, sequentialCurrent.size());
+		assertEquals(200, sequentialAll.size());
+		assertEquals("Q1:1005", sequentialCurrent.get(0));
+
+		List<String> pipelinedCurrent = new ArrayList<>();
+		List<String> pipelinedAll = new ArrayList<>();
+		processEntityDump(dumpContents, 4, pipelinedCurrent, pipelinedAll);
+		assertEquals(sequentialCurrent, pipelinedCurrent);
+		assertEquals(sequentialAll, pipelinedAll);
+	}
+
+	@Test
+	public void testPipelinedRevisionProcessingStopsWorkersOnFailure()
+			throws IOException, InterruptedException {
+		WikibaseRevisionProcessor processor = new WikibaseRevisionProcessor(
+				new EntityDocumentProcessor() {
+					@Override
+					public void processItemDocument(ItemDocument itemDocument) {
+						throw new IllegalStateException("failing processor");
+					}
+				}, Datamodel.SITE_WIKIDATA);
+		processor.setParallelism(4);
+		MwRevisionProcessorBroker broker = new MwRevisionProcessorBroker();
+		broker.registerMwRevisionProcessor(processor,
+				MwRevision.MODEL_WIKIBASE_ITEM, false);
+		try {
+			new MwRevisionDumpFileProcessor(broker).processDumpFileContents(
+					new ByteArrayInputStream(createEntityDump(40, 5).getBytes(
+							StandardCharsets.UTF_8)),
+					new MwLocalDumpFile(
+							"wikidatawiki-20140420-pages-meta-history.xml"));
+			fail("exception of the processor should be passed on");
+		} catch (IllegalStateException e) {
+			assertEquals("failing processor", e.getMessage());
+		}
+
+		// workers are stopped even though processing was not finished
+		for (int i = 0; i < 100 && hasRevisionWorkers(); i++) {
+			Thread.sleep(50);
+		}
+		assertFalse(hasRevisionWorkers());
+	}
+
+	private boolean hasRevisionWorkers() {
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().startsWith("wdtk-revision-worker-")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Processes the given XML dump with entity document processors for
+	 * current and for all revisions, which record the id and revision id of
+	 * each document in the given lists.
+	 */
+	private void processEntityDump(String dumpContents, int parallelism,
+			List<String> current, List<String> all) throws IOException {
+		MwRevisionProcessorBroker broker = new MwRevisionProcessorBroker();
+		for (boolean onlyCurrent : new boolean[] { true, false }) {
+			List<String> documents = onlyCurrent ? current : all;
+			WikibaseRevisionProcessor processor = new WikibaseRevisionProcessor(
+					new EntityDocumentProcessor() {
+						@Override
+						public void processItemDocument(ItemDocument itemDocument) {
+							documents.add(itemDocument.getEntityId().getId()
+									+ ":" + itemDocument.getRevisionId());
+						}
+					}, Datamodel.SITE_WIKIDATA);
+			processor.setParallelism(parallelism);
+			broker.registerMwRevisionProcessor(processor,
+					MwRevision.MODEL_WIKIBASE_ITEM, onlyCurrent);
+		}
+		new MwRevisionDumpFileProcessor(broker).processDumpFileContents(
+				new ByteArrayInputStream(dumpContents
+						.getBytes(StandardCharsets.UTF_8)),
+				new MwLocalDumpFile("wikidatawiki-20140420-pages-meta-history.xml"));
+	}
+
+	/**
+	 * Creates an XML dump with the given number of item pages, each with the
+	 * given number of revisions that contain item JSON.
+	 */
+	private String createEntityDump(int pageCount, int revisionCount)
+			throws IOException {
+		StringBuilder sb = new StringBuilder(MockStringContentFactory
+				.getStringFromUrl(MwDumpFileProcessingTest.class
+						.getResource("/mock-dump-header.xml")));
+		for (int pageId = 1; pageId <= pageCount; pageId++) {
+			sb.append("  <page>\n    <title>Q").append(pageId)
+					.append("</title>\n    <ns>0</ns>\n    <id>")
+					.append(pageId).append("</id>\n");
+			for (int i = 1; i <= revisionCount; i++) {
+				int revId = 1000 * pageId + i;
+				sb.append("    <revision>\n      <id>").append(revId)
+						.append("</id>\n      <timestamp>2014-02-19T23:34:00Z</timestamp>\n")
+						.append("      <contributor><ip>127.0.0.1</ip></contributor>\n")
+						.append("      <text xml:space=\"preserve\">{&quot;type&quot;:&quot;item&quot;,&quot;id&quot;:&quot;Q")
+						.append(pageId)
+						.append("&quot;,&quot;lastrevid&quot;:").append(revId)
+						.append(",&quot;labels&quot;:{&quot;en&quot;:{&quot;language&quot;:&quot;en&quot;,&quot;value&quot;:&quot;Revision ")
+						.append(revId)
+						.append("&quot;}}}</text>\n")
+						.append("      <model>wikibase-item</model>\n")
+						.append("      <format>application/json</format>\n")
+						.append("    </revision>\n");
+			}
+			sb.append("  </page>\n");
+		}
+		sb.append("</mediawiki>\n");
+		return sb.toString();
+	}
+
 }
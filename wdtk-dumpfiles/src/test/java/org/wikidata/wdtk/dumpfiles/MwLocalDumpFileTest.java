@@ -107,6 +107,28 @@ public class MwLocalDumpFileTest {
 		assertNull(br.readLine());
 	}
 
+	@Test
+	public void testJsonChannel() throws IOException {
+		this.dm.setFileContents(this.dmPath
+				.resolve("testdump-20150512.json.gz"),
+				"Test contents\nline 2", CompressionType.GZIP);
+		MwLocalDumpFile df = new MwLocalDumpFile(
+				"/testdump-20150512.json.gz");
+		try (ByteLineReader reader = new ByteLineReader(
+				df.getDumpFileChannel())) {
+			assertTrue(reader.nextLine());
+			assertEquals("Test contents", reader.getLinePrefix(100));
+			assertTrue(reader.nextLine());
+			assertEquals("line 2", reader.getLinePrefix(100));
+			assertFalse(reader.nextLine());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnavailableChannel() throws IOException {
+		new MwLocalDumpFile("/testdump-20150512.json.gz").getDumpFileChannel();
+	}
+
 	@Test(expected = IOException.class)
 	public void testUnavailableReader() throws IOException {
 		MwLocalDumpFile df = new MwLocalDumpFile(
@@ -150,6 +172,36 @@ public class MwLocalDumpFileTest {
 		assertEquals(df.getDumpContentType(), DumpContentType.CURRENT);
 	}
 
+	@Test
+	public void testGuessRecompressedDumps() throws IOException {
+		this.dm.setFileContents(this.dmPath.resolve("test.json.lz4"), "");
+		this.dm.setFileContents(this.dmPath.resolve("daily.xml.zst"), "");
+		assertEquals(DumpContentType.JSON,
+				new MwLocalDumpFile("/test.json.lz4").getDumpContentType());
+		assertEquals(DumpContentType.DAILY,
+				new MwLocalDumpFile("/daily.xml.zst").getDumpContentType());
+	}
+
+	@Test
+	public void testRecompress() throws IOException {
+		this.dm.setFileContents(this.dmPath
+				.resolve("testdump-20150512.json.gz"),
+				"Test contents", CompressionType.GZIP);
+		MwLocalDumpFile df = new MwLocalDumpFile(
+				"/testdump-20150512.json.gz", null, null, "wikidatawiki");
+
+		MwLocalDumpFile copy = df.recompress(CompressionType.LZ4);
+		assertEquals(this.dmPath.resolve("testdump-20150512.json.lz4"),
+				copy.getPath());
+		assertTrue(copy.isAvailable());
+		assertEquals(DumpContentType.JSON, copy.getDumpContentType());
+		assertEquals("20150512", copy.getDateStamp());
+		assertEquals("wikidatawiki", copy.getProjectName());
+		BufferedReader br = copy.getDumpFileReader();
+		assertEquals("Test contents", br.readLine());
+		assertNull(br.readLine());
+	}
+
 	@Test
 	public void testGuessUnknownDumpType() throws IOException {
 		this.dm.setFileContents(this.dmPath.resolve("current-dump"), "");
@@ -0,0 +1,139 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import org.junit.Test;
+
+public class MwRevisionImplTest {
+
+	/**
+	 * Fills the given revision with data that is different for each field and
+	 * for each value of the given seed, the way the XML parser fills its
+	 * single revision buffer.
+	 */
+	static void fillRevision(MwRevisionImpl mwRevision, int seed) {
+		mwRevision.resetCurrentPageData();
+		mwRevision.resetCurrentRevisionData();
+		mwRevision.prefixedTitle = "Property:P" + seed;
+		mwRevision.timeStamp = "2014-02-" + (10 + seed) + "T23:34:33Z";
+		mwRevision.text = "{\"id\":\"P" + seed + "\"}";
+		mwRevision.model = MwRevision.MODEL_WIKIBASE_PROPERTY;
+		mwRevision.format = "application/json" + seed;
+		mwRevision.comment = "comment " + seed;
+		mwRevision.contributor = "User" + seed;
+		mwRevision.contributorId = 100 + seed;
+		mwRevision.namespace = 120 + seed;
+		mwRevision.pageId = 1000 + seed;
+		mwRevision.revisionId = 10000 + seed;
+		mwRevision.parentRevisionId = 5000 + seed;
+	}
+
+	/**
+	 * Checks that the given revision holds the data written by
+	 * {@link #fillRevision(MwRevisionImpl, int)} for the given seed.
+	 */
+	static void assertRevision(MwRevision mwRevision, int seed) {
+		assertEquals("Property:P" + seed, mwRevision.getPrefixedTitle());
+		assertEquals("2014-02-" + (10 + seed) + "T23:34:33Z",
+				mwRevision.getTimeStamp());
+		assertEquals("{\"id\":\"P" + seed + "\"}", mwRevision.getText());
+		assertEquals(MwRevision.MODEL_WIKIBASE_PROPERTY, mwRevision.getModel());
+		assertEquals("application/json" + seed, mwRevision.getFormat());
+		assertEquals("comment " + seed, mwRevision.getComment());
+		assertEquals("User" + seed, mwRevision.getContributor());
+		assertEquals(100 + seed, mwRevision.getContributorId());
+		assertEquals(120 + seed, mwRevision.getNamespace());
+		assertEquals(1000 + seed, mwRevision.getPageId());
+		assertEquals(10000 + seed, mwRevision.getRevisionId());
+		assertEquals(5000 + seed, mwRevision.getParentRevisionId());
+	}
+
+	@Test
+	public void testCopyFromCopiesAllFields() {
+		MwRevisionImpl source = new MwRevisionImpl();
+		fillRevision(source, 1);
+		MwRevisionImpl copy = new MwRevisionImpl();
+		copy.copyFrom(source);
+		assertRevision(copy, 1);
+
+		// Overwriting a previous copy must not leave any old data behind
+		fillRevision(source, 2);
+		copy.copyFrom(source);
+		assertRevision(copy, 2);
+	}
+
+	@Test
+	public void testCopyConstructorCopiesAllFields() {
+		MwRevisionImpl source = new MwRevisionImpl();
+		fillRevision(source, 3);
+		assertRevision(new MwRevisionImpl(source), 3);
+	}
+
+	@Test
+	public void testCopyIsIndependentOfReusedSource() {
+		MwRevisionImpl source = new MwRevisionImpl();
+		fillRevision(source, 1);
+		MwRevisionImpl copy = new MwRevisionImpl();
+		copy.copyFrom(source);
+
+		fillRevision(source, 2);
+		assertRevision(copy, 1);
+		source.resetCurrentPageData();
+		source.resetCurrentRevisionData();
+		assertRevision(copy, 1);
+	}
+
+	@Test
+	public void testCurrentRevisionIsIndependentOfParserBuffer() {
+		MwRevisionProcessorBroker broker = new MwRevisionProcessorBroker();
+		MwDumpFileProcessingTest.TestMwRevisionProcessor currentRevisions = new MwDumpFileProcessingTest.TestMwRevisionProcessor();
+		broker.registerMwRevisionProcessor(currentRevisions, null, true);
+
+		// The parser reuses one buffer for all revisions; seeds 1 and 2 are
+		// two revisions of the same page, seed 3 is the revision of another
+		// page that overwrites the buffer before the previous page is
+		// reported as finished.
+		MwRevisionImpl parserBuffer = new MwRevisionImpl();
+		broker.startRevisionProcessing("wikidatawiki", "", null);
+		fillRevision(parserBuffer, 1);
+		parserBuffer.pageId = 1001;
+		broker.processRevision(parserBuffer);
+		fillRevision(parserBuffer, 2);
+		parserBuffer.pageId = 1001;
+		broker.processRevision(parserBuffer);
+		fillRevision(parserBuffer, 3);
+		broker.processRevision(parserBuffer);
+		broker.finishRevisionProcessing();
+
+		assertEquals(2, currentRevisions.revisions.size());
+		MwRevision first = currentRevisions.revisions.get(0);
+		assertEquals(1001, first.getPageId());
+		assertEquals(10002, first.getRevisionId());
+		assertEquals("{\"id\":\"P2\"}", first.getText());
+		assertEquals("User2", first.getContributor());
+		assertRevision(currentRevisions.revisions.get(1), 3);
+		assertNotSame(parserBuffer, broker.currentRevisionBuffer);
+	}
+
+}
@@ -20,10 +20,16 @@ package org.wikidata.wdtk.dumpfiles.wmf;
  * #L%
  */
 
+import java.io.IOException;
+import java.nio.file.Paths;
+
 import org.junit.Test;
+import org.wikidata.wdtk.testing.MockDirectoryManager;
+import org.wikidata.wdtk.testing.MockWebResourceFetcher;
 import org.wikidata.wdtk.util.CompressionType;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 public class WmfDumpFileTest {
 
@@ -33,5 +39,35 @@ public class WmfDumpFileTest {
 		assertEquals(WmfDumpFile.getDumpFileCompressionType("bar.txt.bz2"), CompressionType.BZ2);
 		assertEquals(WmfDumpFile.getDumpFileCompressionType("baz.txt"), CompressionType.NONE);
 		assertEquals(WmfDumpFile.getDumpFileCompressionType("bat.txt"), CompressionType.NONE);
+		assertEquals(WmfDumpFile.getDumpFileCompressionType("foo.json.lz4"), CompressionType.LZ4);
+		assertEquals(WmfDumpFile.getDumpFileCompressionType("foo.json.zst"), CompressionType.ZSTD);
+	}
+
+	@Test
+	public void getRecompressedDumpFileName() {
+		assertEquals("foo.json.lz4", WmfDumpFile.getRecompressedDumpFileName("foo.json.gz", CompressionType.LZ4));
+		assertEquals("foo.xml.zst", WmfDumpFile.getRecompressedDumpFileName("foo.xml.bz2", CompressionType.ZSTD));
+		assertEquals("foo.json.lz4", WmfDumpFile.getRecompressedDumpFileName("foo.json", CompressionType.LZ4));
+	}
+
+	@Test
+	public void fetchMd5Checksum() throws IOException {
+		MockWebResourceFetcher wrf = new MockWebResourceFetcher();
+		String url = "https://dumps.wikimedia.org/wikidatawiki/entities/20150223/wikidata-20150223-md5sums.txt";
+		wrf.setWebResourceContents(url,
+				"0123456789abcdef0123456789abcdef  wikidata-20150223-all.json.bz2\n"
+						+ "fedcba9876543210fedcba9876543210  wikidata-20150223-all.json.gz\n");
+		assertEquals("fedcba9876543210fedcba9876543210", WmfDumpFile
+				.fetchMd5Checksum(wrf, url, "wikidata-20150223-all.json.gz"));
+		assertNull(WmfDumpFile.fetchMd5Checksum(wrf, url,
+				"wikidata-20150223-all.json"));
+		assertNull(WmfDumpFile.fetchMd5Checksum(wrf, url + ".missing",
+				"wikidata-20150223-all.json.gz"));
+
+		JsonOnlineDumpFile dump = new JsonOnlineDumpFile("20150223",
+				"wikidatawiki", wrf, new MockDirectoryManager(
+						Paths.get(System.getProperty("user.dir")), true, false));
+		assertEquals("fedcba9876543210fedcba9876543210",
+				dump.getMd5Checksum());
 	}
 }
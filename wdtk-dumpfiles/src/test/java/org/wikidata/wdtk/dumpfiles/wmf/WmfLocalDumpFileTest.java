@@ -20,7 +20,9 @@ package org.wikidata.wdtk.dumpfiles.wmf;
  * #L%
  */
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -31,6 +33,7 @@ import org.junit.Test;
 import org.mockito.Mockito;
 import org.wikidata.wdtk.dumpfiles.DumpContentType;
 import org.wikidata.wdtk.testing.MockDirectoryManager;
+import org.wikidata.wdtk.util.CompressionType;
 
 public class WmfLocalDumpFileTest {
 
@@ -70,4 +73,35 @@ public class WmfLocalDumpFileTest {
 		assertFalse(dumpFile.isAvailable());
 	}
 
+	@Test
+	public void recompressedDumpFileIsPreferred() throws IOException {
+		MockDirectoryManager dm = new MockDirectoryManager(this.dmPath, true,
+				false);
+		Path thisDumpPath = this.dmPath.resolve("json-20150223");
+		dm.setFileContents(thisDumpPath.resolve("wikidata-20150223-all.json.gz"),
+				"gzip contents", CompressionType.GZIP);
+		WmfLocalDumpFile dumpFile = new WmfLocalDumpFile("20150223",
+				"wikidatawiki", dm, DumpContentType.JSON);
+		assertEquals("gzip contents", dumpFile.getDumpFileReader().readLine());
+
+		dumpFile.recompress(CompressionType.LZ4);
+		assertTrue(dm.getSubdirectoryManager("json-20150223").hasFile(
+				"wikidata-20150223-all.json.lz4"));
+
+		dm.setFileContents(thisDumpPath.resolve("wikidata-20150223-all.json.gz"),
+				"changed contents", CompressionType.GZIP);
+		dumpFile = new WmfLocalDumpFile("20150223", "wikidatawiki", dm,
+				DumpContentType.JSON);
+		assertTrue(dumpFile.isAvailable());
+		assertEquals("gzip contents", dumpFile.getDumpFileReader().readLine());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void recompressToSlowFormat() throws IOException {
+		Path thisDumpPath = this.dmPath.resolve("json-20150223");
+		dm.setDirectory(thisDumpPath);
+		new WmfLocalDumpFile("20150223", "wikidatawiki", dm,
+				DumpContentType.JSON).recompress(CompressionType.BZ2);
+	}
+
 }
@@ -72,6 +72,25 @@ public class WmfOnlineDailyDumpFileTest {
 		assertEquals(DumpContentType.DAILY, dump.getDumpContentType());
 	}
 
+	@Test
+	public void dumpWithChecksum() throws IOException {
+		String dateStamp = "20140220";
+		String baseUrl = "https://dumps.wikimedia.org/other/incr/wikidatawiki/"
+				+ dateStamp + "/";
+		String fileName = "wikidatawiki-" + dateStamp
+				+ "-pages-meta-hist-incr.xml.bz2";
+		wrf.setWebResourceContents(baseUrl + "status.txt", "done");
+		wrf.setWebResourceContents(baseUrl + fileName, "Line1",
+				CompressionType.BZ2);
+		wrf.setWebResourceContents(baseUrl + "wikidatawiki-" + dateStamp
+				+ "-md5sums.txt", "0123456789abcdef0123456789abcdef  "
+				+ fileName + "\n");
+		WmfOnlineDailyDumpFile dump = new WmfOnlineDailyDumpFile(dateStamp,
+				"wikidatawiki", wrf, dm);
+
+		assertEquals("0123456789abcdef0123456789abcdef", dump.getMd5Checksum());
+	}
+
 	@Test
 	public void missingDumpProperties() {
 		String dateStamp = "20140220";
@@ -93,6 +93,31 @@ public class WmfOnlineStandardDumpFileTest {
 		assertEquals(DumpContentType.CURRENT, dump.getDumpContentType());
 	}
 
+	@Test
+	public void streamingDownload() throws IOException {
+		wrf.setWebResourceContentsFromResource(
+				"https://dumps.wikimedia.org/wikidatawiki/20140210/",
+				"/wikidatawiki-20140508-index.html", this.getClass());
+		wrf.setWebResourceContents(
+				"https://dumps.wikimedia.org/wikidatawiki/20140210/wikidatawiki-20140210-pages-meta-current.xml.bz2",
+				"Line1", CompressionType.BZ2);
+		wrf.setWebResourceContentsFromResource(
+				"https://dumps.wikimedia.org/wikidatawiki/20140210/wikidatawiki-20140210-md5sums.txt",
+				"/wikidatawiki-20140210-md5sums.txt", this.getClass());
+		MwDumpFile dump = new WmfOnlineStandardDumpFile("20140210",
+				"wikidatawiki", wrf, dm, DumpContentType.CURRENT);
+
+		WmfDumpFile.setStreamingDownloads(true);
+		try (BufferedReader br = dump.getDumpFileReader()) {
+			assertEquals(br.readLine(), "Line1");
+			assertNull(br.readLine());
+		} finally {
+			WmfDumpFile.setStreamingDownloads(false);
+		}
+		assertTrue(dm.getSubdirectoryManager("current-20140210").hasFile(
+				"wikidatawiki-20140210-pages-meta-current.xml.bz2"));
+	}
+
 	@Test
 	public void missingFullDumpProperties() {
 		MwDumpFile dump = new WmfOnlineStandardDumpFile("20140210",
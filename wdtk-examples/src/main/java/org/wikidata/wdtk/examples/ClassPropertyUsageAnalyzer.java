@@ -64,6 +64,11 @@ import org.wikidata.wdtk.datamodel.interfaces.ValueSnak;
  * <p>
  * The code is somewhat complex and not always clean. It should be considered as
  * an advanced example, not as a first introduction.
+ * <p>
+ * Since the documents of classes are only recorded if the class was used
+ * earlier in the dump, the results depend on the order of the documents.
+ * The analyzer is therefore always called from one thread, even if the
+ * dump is parsed with several threads (see {@link ExampleHelpers#PARALLELISM}).
  *
  * @author Markus Kroetzsch
  *
@@ -0,0 +1,156 @@
+package org.wikidata.wdtk.examples;
+
+/*
+ * #%L
+ * Wikidata Toolkit Examples
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.helpers.DatamodelMapper;
+import org.wikidata.wdtk.datamodel.implementation.EntityDocumentImpl;
+import org.wikidata.wdtk.datamodel.implementation.EntityIdValueCache;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocument;
+import org.wikidata.wdtk.dumpfiles.ByteLineReader;
+import org.wikidata.wdtk.dumpfiles.MwLocalDumpFile;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * This benchmark measures how much heap memory the documents of a JSON dump
+ * retain when all of them are kept in memory. The used heap is measured
+ * after garbage collection before and after loading the documents, so the
+ * result is an estimate that is most accurate for dumps with many entities.
+ * The measurement is made once without and once with the
+ * {@link EntityIdValueCache}.
+ * <p>
+ * The path to a local JSON dump can be given as the first argument. The
+ * whole dump is loaded into memory, so the JVM needs a large enough heap.
+ */
+public class DocumentFootprintBenchmark {
+
+	/**
+	 * Path to the dump that is used if no other path is given.
+	 */
+	private final static String DUMP_FILE = "./src/resources/sample-dump-20150815.json.gz";
+
+	public static void main(String[] args) throws IOException {
+		ExampleHelpers.configureLogging();
+		DocumentFootprintBenchmark.printDocumentation();
+
+		MwLocalDumpFile dumpFile = new MwLocalDumpFile(
+				args.length > 0 ? args[0] : DUMP_FILE);
+		ObjectReader documentReader = new DatamodelMapper(
+				Datamodel.SITE_WIKIDATA).readerFor(EntityDocumentImpl.class)
+				.with(DeserializationFeature.ACCEPT_EMPTY_ARRAY_AS_NULL_OBJECT);
+
+		// Load the dump once before measuring, so that classes and other
+		// static data that are initialized on first use are not counted:
+		try (InputStream inputStream = dumpFile.getDumpFileStream()) {
+			readDocuments(inputStream, documentReader);
+		}
+
+		measure("Without id cache", dumpFile, documentReader);
+		EntityIdValueCache.setMaximumSize(1000000);
+		measure("With id cache", dumpFile, documentReader);
+		System.out.println("Ids in cache: " + EntityIdValueCache.size());
+	}
+
+	/**
+	 * Loads all documents of the dump and prints the heap memory that they
+	 * retain per document.
+	 */
+	private static void measure(String name, MwLocalDumpFile dumpFile,
+			ObjectReader documentReader) throws IOException {
+		long startBytes = getUsedMemory();
+		List<EntityDocument> documents;
+		try (InputStream inputStream = dumpFile.getDumpFileStream()) {
+			documents = readDocuments(inputStream, documentReader);
+		}
+		long retainedBytes = getUsedMemory() - startBytes;
+
+		System.out.println(name + ": " + documents.size() + " entities, "
+				+ (documents.isEmpty() ? 0 : retainedBytes / documents.size())
+				+ " bytes retained per entity");
+		// keep the documents reachable until they have been measured
+		documents.clear();
+	}
+
+	/**
+	 * Parses all entities of the dump and returns them in a list.
+	 */
+	private static List<EntityDocument> readDocuments(InputStream inputStream,
+			ObjectReader documentReader) throws IOException {
+		List<EntityDocument> documents = new ArrayList<>();
+		ByteLineReader lineReader = new ByteLineReader(inputStream);
+		lineReader.nextLine(); // skip opening bracket
+		while (lineReader.nextLine() && lineReader.getLineLength() > 1) {
+			byte[] buffer = lineReader.getBuffer();
+			int offset = lineReader.getLineOffset();
+			int length = lineReader.getLineLength();
+			if (buffer[offset + length - 1] == ',') {
+				length--;
+			}
+			try {
+				documents.add(documentReader.readValue(buffer, offset, length));
+			} catch (JsonProcessingException e) {
+				// ignore broken entities in the benchmark
+			}
+		}
+		return documents;
+	}
+
+	/**
+	 * Returns the number of bytes of heap memory that are used after garbage
+	 * collection.
+	 */
+	private static long getUsedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		// several collections make the result more stable
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+		}
+		return used;
+	}
+
+	/**
+	 * Prints some basic documentation about this program.
+	 */
+	public static void printDocumentation() {
+		System.out
+				.println("********************************************************************");
+		System.out.println("*** Wikidata Toolkit: DocumentFootprintBenchmark");
+		System.out.println("*** ");
+		System.out
+				.println("*** This program measures how much heap memory the documents of a");
+		System.out
+				.println("*** JSON dump retain when all of them are kept in memory.");
+		System.out.println("*** ");
+		System.out.println("*** See source code for further details.");
+		System.out
+				.println("********************************************************************");
+	}
+}
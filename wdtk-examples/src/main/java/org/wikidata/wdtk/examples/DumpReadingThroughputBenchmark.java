@@ -0,0 +1,123 @@
+package org.wikidata.wdtk.examples;
+
+/*
+ * #%L
+ * Wikidata Toolkit Examples
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+
+import org.wikidata.wdtk.dumpfiles.ByteLineReader;
+import org.wikidata.wdtk.dumpfiles.MwDumpFile;
+import org.wikidata.wdtk.dumpfiles.MwLocalDumpFile;
+
+/**
+ * This benchmark compares the throughput of reading a dump through
+ * {@link MwDumpFile#getDumpFileStream()} and through
+ * {@link MwDumpFile#getDumpFileChannel()}. In both cases, the dump is split
+ * into lines with a {@link ByteLineReader}, but no JSON is parsed, so that
+ * the measurement shows the cost of reading and decompressing the data. The
+ * channel avoids intermediate stream layers for uncompressed and
+ * gzip-compressed dumps; for other compression formats, both variants
+ * should perform alike.
+ * <p>
+ * The path to a local dump can be given as the first argument. Larger
+ * dumps give more reliable results.
+ */
+public class DumpReadingThroughputBenchmark {
+
+	/**
+	 * Path to the dump that is used if no other path is given.
+	 */
+	private final static String DUMP_FILE = "./src/resources/sample-dump-20150815.json.gz";
+
+	/**
+	 * Number of times that each variant is run.
+	 */
+	private final static int RUNS = 3;
+
+	public static void main(String[] args) throws IOException {
+		ExampleHelpers.configureLogging();
+		DumpReadingThroughputBenchmark.printDocumentation();
+
+		MwLocalDumpFile dumpFile = new MwLocalDumpFile(
+				args.length > 0 ? args[0] : DUMP_FILE);
+
+		// The first run of each variant mainly measures warm-up effects:
+		for (int run = 1; run <= RUNS; run++) {
+			System.out.println("*** Run " + run + ":");
+			measure("Stream", dumpFile, false);
+			measure("Channel", dumpFile, true);
+		}
+	}
+
+	/**
+	 * Reads all lines of the dump with one of the two methods and prints the
+	 * throughput in uncompressed megabytes per second.
+	 */
+	private static void measure(String name, MwDumpFile dumpFile,
+			boolean useChannel) throws IOException {
+		long startTime = System.nanoTime();
+		long lineCount = 0;
+		long byteCount;
+		if (useChannel) {
+			try (ReadableByteChannel channel = dumpFile.getDumpFileChannel();
+					ByteLineReader lineReader = new ByteLineReader(channel)) {
+				while (lineReader.nextLine()) {
+					lineCount++;
+				}
+				byteCount = lineReader.getNextLinePosition();
+			}
+		} else {
+			try (InputStream inputStream = dumpFile.getDumpFileStream();
+					ByteLineReader lineReader = new ByteLineReader(inputStream)) {
+				while (lineReader.nextLine()) {
+					lineCount++;
+				}
+				byteCount = lineReader.getNextLinePosition();
+			}
+		}
+		long nanos = Math.max(1, System.nanoTime() - startTime);
+
+		System.out.println(name + ": " + lineCount + " lines, "
+				+ (byteCount >> 20) + "MB in " + (nanos / 1000000) + "ms, "
+				+ String.format("%.1f", byteCount * 1000.0 / nanos)
+				+ "MB/s");
+	}
+
+	/**
+	 * Prints some basic documentation about this program.
+	 */
+	public static void printDocumentation() {
+		System.out
+				.println("********************************************************************");
+		System.out.println("*** Wikidata Toolkit: DumpReadingThroughputBenchmark");
+		System.out.println("*** ");
+		System.out
+				.println("*** This program measures how fast a dump can be read through an");
+		System.out
+				.println("*** input stream and through a channel, without parsing JSON.");
+		System.out.println("*** ");
+		System.out.println("*** See source code for further details.");
+		System.out
+				.println("********************************************************************");
+	}
+}
@@ -28,6 +28,7 @@ import java.util.Map.Entry;
 
 import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
 import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.MergeableEntityDocumentProcessor;
 import org.wikidata.wdtk.datamodel.interfaces.MonolingualTextValue;
 import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
 import org.wikidata.wdtk.datamodel.interfaces.PropertyIdValue;
@@ -53,11 +54,14 @@ import org.wikidata.wdtk.datamodel.interfaces.TermedDocument;
  * and stored in CSV files item-term-counts.csv (for items) and
  * property-term-counts.csv (for properties).</li>
  * </ul>
+ * The processor can be forked to process a dump with several threads, see
+ * {@link ExampleHelpers#PARALLELISM}.
  *
  * @author Markus Kroetzsch
  *
  */
-class EntityStatisticsProcessor implements EntityDocumentProcessor {
+class EntityStatisticsProcessor implements EntityDocumentProcessor,
+		MergeableEntityDocumentProcessor<EntityStatisticsProcessor> {
 
 	/**
 	 * Simple record class to keep track of some usage numbers for one type of
@@ -82,6 +86,29 @@ class EntityStatisticsProcessor implements EntityDocumentProcessor {
 		final HashMap<String, Integer> descriptionCounts = new HashMap<>();
 		final HashMap<String, Integer> aliasCounts = new HashMap<>();
 
+		/**
+		 * Adds the numbers of the given statistics to this object.
+		 *
+		 * @param other
+		 *            the statistics to add
+		 */
+		void add(UsageStatistics other) {
+			this.count += other.count;
+			this.countLabels += other.countLabels;
+			this.countDescriptions += other.countDescriptions;
+			this.countAliases += other.countAliases;
+			this.countStatements += other.countStatements;
+			this.countReferencedStatements += other.countReferencedStatements;
+
+			addCounts(this.propertyCountsMain, other.propertyCountsMain);
+			addCounts(this.propertyCountsQualifier,
+					other.propertyCountsQualifier);
+			addCounts(this.propertyCountsReferences,
+					other.propertyCountsReferences);
+			addCounts(this.labelCounts, other.labelCounts);
+			addCounts(this.descriptionCounts, other.descriptionCounts);
+			addCounts(this.aliasCounts, other.aliasCounts);
+		}
 	}
 
 	UsageStatistics itemStatistics = new UsageStatistics();
@@ -89,6 +116,12 @@ class EntityStatisticsProcessor implements EntityDocumentProcessor {
 	long countSiteLinks = 0;
 	final HashMap<String, Integer> siteLinkStatistics = new HashMap<>();
 
+	/**
+	 * Should a report be printed from time to time? This is disabled for
+	 * forks, which only see a part of the data.
+	 */
+	boolean printReports = true;
+
 	/**
 	 * Main method. Processes the whole dump using this processor and writes the
 	 * results to a file. To change which dump file to use and whether to run in
@@ -121,7 +154,7 @@ class EntityStatisticsProcessor implements EntityDocumentProcessor {
 		}
 
 		// Print a report every 10000 items:
-		if (this.itemStatistics.count % 10000 == 0) {
+		if (this.printReports && this.itemStatistics.count % 10000 == 0) {
 			printStatus();
 		}
 	}
@@ -135,6 +168,21 @@ class EntityStatisticsProcessor implements EntityDocumentProcessor {
 		countStatements(this.propertyStatistics, propertyDocument);
 	}
 
+	@Override
+	public EntityStatisticsProcessor fork() {
+		EntityStatisticsProcessor fork = new EntityStatisticsProcessor();
+		fork.printReports = false;
+		return fork;
+	}
+
+	@Override
+	public void merge(EntityStatisticsProcessor fork) {
+		this.itemStatistics.add(fork.itemStatistics);
+		this.propertyStatistics.add(fork.propertyStatistics);
+		this.countSiteLinks += fork.countSiteLinks;
+		addCounts(this.siteLinkStatistics, fork.siteLinkStatistics);
+	}
+
 	/**
 	 * Count the terms (labels, descriptions, aliases) of an item or property
 	 * document.
@@ -444,4 +492,19 @@ class EntityStatisticsProcessor implements EntityDocumentProcessor {
 			map.put(key, count);
 		}
 	}
+
+	/**
+	 * Helper method that adds the counts of one hash map to the counts of
+	 * another, as used when merging forks of this processor.
+	 *
+	 * @param map
+	 *            the map where the counts are stored
+	 * @param otherMap
+	 *            the map with the counts to add
+	 */
+	static <K> void addCounts(Map<K, Integer> map, Map<K, Integer> otherMap) {
+		for (Entry<K, Integer> entry : otherMap.entrySet()) {
+			map.merge(entry.getKey(), entry.getValue(), Integer::sum);
+		}
+	}
 }
@@ -22,6 +22,7 @@ package org.wikidata.wdtk.examples;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -37,6 +38,8 @@ import org.wikidata.wdtk.dumpfiles.DumpProcessingController;
 import org.wikidata.wdtk.dumpfiles.EntityTimerProcessor;
 import org.wikidata.wdtk.dumpfiles.EntityTimerProcessor.TimeoutException;
 import org.wikidata.wdtk.dumpfiles.MwDumpFile;
+import org.wikidata.wdtk.util.CompressionType;
+import org.wikidata.wdtk.util.DirectoryManagerFactory;
 
 /**
  * Class for sharing code that is used in many examples. It contains several
@@ -82,6 +85,24 @@ public class ExampleHelpers {
 	 */
 	public static final int TIMEOUT_SEC = 0;
 
+	/**
+	 * Number of threads used to parse dumps. Examples whose processors
+	 * implement
+	 * {@link org.wikidata.wdtk.datamodel.interfaces.MergeableEntityDocumentProcessor}
+	 * also process the documents of JSON dumps on all of these threads, using
+	 * one fork of the processor per thread. Other processors are still called
+	 * from one thread only.
+	 */
+	public static final int PARALLELISM = 1;
+
+	/**
+	 * Number of threads used to compress output files that are opened with
+	 * {@link #openExampleFileOuputStream(String, CompressionType)}. Applied by
+	 * {@link #configureCompression()}.
+	 */
+	public static final int COMPRESSION_THREADS = Runtime.getRuntime()
+			.availableProcessors();
+
 	/**
 	 * Identifier of the dump file that was processed last. This can be used to
 	 * name files generated while processing a dump file.
@@ -108,6 +129,16 @@ public class ExampleHelpers {
 		Logger.getRootLogger().addAppender(consoleAppender);
 	}
 
+	/**
+	 * Defines how output files are compressed. Examples that write compressed
+	 * files should call this once at startup, before opening any file with
+	 * {@link #openExampleFileOuputStream(String, CompressionType)}. Set
+	 * {@link #COMPRESSION_THREADS} to 1 to compress on the calling thread.
+	 */
+	public static void configureCompression() {
+		DirectoryManagerFactory.setCompressionThreads(COMPRESSION_THREADS);
+	}
+
 	/**
 	 * Processes all entities in a Wikidata dump using the given entity
 	 * processor. By default, the most recent JSON dump will be used. In offline
@@ -123,6 +154,7 @@ public class ExampleHelpers {
 		DumpProcessingController dumpProcessingController = new DumpProcessingController(
 				"wikidatawiki");
 		dumpProcessingController.setOfflineMode(OFFLINE_MODE);
+		dumpProcessingController.setParallelism(PARALLELISM);
 
 		// // Optional: Use another download directory:
 		// dumpProcessingController.setDownloadDirectory(System.getProperty("user.dir"));
@@ -212,6 +244,42 @@ public class ExampleHelpers {
 	 */
 	public static FileOutputStream openExampleFileOuputStream(String filename)
 			throws IOException {
+		Path filePath = getExampleOutputDirectory().resolve(filename);
+		return new FileOutputStream(filePath.toFile());
+	}
+
+	/**
+	 * Opens a new output stream for a file of the given name in the example
+	 * output directory ({@link ExampleHelpers#EXAMPLE_OUTPUT_DIRECTORY}),
+	 * which compresses the data as required. Compression runs on as many
+	 * threads as set up by {@link #configureCompression()}. Any file of this
+	 * name that exists already will be replaced. The caller is responsible for
+	 * eventually closing the stream.
+	 *
+	 * @param filename
+	 *            the name of the file to write to
+	 * @param compressionType
+	 *            the compression to use
+	 * @return OutputStream for the file
+	 * @throws IOException
+	 *             if the file or example output directory could not be created
+	 */
+	public static OutputStream openExampleFileOuputStream(String filename,
+			CompressionType compressionType) throws IOException {
+		return DirectoryManagerFactory.createDirectoryManager(
+				getExampleOutputDirectory(), false).getOutputStreamForFile(
+				filename, compressionType);
+	}
+
+	/**
+	 * Returns the directory for files of the dump that was processed last,
+	 * creating it if needed.
+	 *
+	 * @return the directory
+	 * @throws IOException
+	 *             if the directory could not be created
+	 */
+	private static Path getExampleOutputDirectory() throws IOException {
 		Path directoryPath;
 		if ("".equals(lastDumpFileName)) {
 			directoryPath = Paths.get(EXAMPLE_OUTPUT_DIRECTORY);
@@ -223,8 +291,7 @@ public class ExampleHelpers {
 		}
 
 		createDirectory(directoryPath);
-		Path filePath = directoryPath.resolve(filename);
-		return new FileOutputStream(filePath.toFile());
+		return directoryPath;
 	}
 
 	/**
@@ -0,0 +1,181 @@
+package org.wikidata.wdtk.examples;
+
+/*
+ * #%L
+ * Wikidata Toolkit Examples
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.helpers.DatamodelMapper;
+import org.wikidata.wdtk.datamodel.implementation.EntityDocumentImpl;
+import org.wikidata.wdtk.dumpfiles.ByteLineReader;
+import org.wikidata.wdtk.dumpfiles.MwLocalDumpFile;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * This benchmark compares the memory that is allocated per entity when
+ * parsing a JSON dump from strings (read with a {@link BufferedReader}) and
+ * from byte slices (read with a {@link ByteLineReader}). Both variants run on
+ * the main thread, and the number of bytes allocated by this thread is
+ * measured with the JVM's thread management interface. Decompression is part
+ * of both measurements, so an uncompressed dump gives the clearest picture.
+ * <p>
+ * The path to a local JSON dump can be given as the first argument.
+ */
+public class JsonParsingAllocationBenchmark {
+
+	/**
+	 * Path to the dump that is used if no other path is given.
+	 */
+	private final static String DUMP_FILE = "./src/resources/sample-dump-20150815.json.gz";
+
+	public static void main(String[] args) throws IOException {
+		ExampleHelpers.configureLogging();
+		JsonParsingAllocationBenchmark.printDocumentation();
+
+		MwLocalDumpFile dumpFile = new MwLocalDumpFile(
+				args.length > 0 ? args[0] : DUMP_FILE);
+		ObjectReader documentReader = new DatamodelMapper(
+				Datamodel.SITE_WIKIDATA).readerFor(EntityDocumentImpl.class)
+				.with(DeserializationFeature.ACCEPT_EMPTY_ARRAY_AS_NULL_OBJECT);
+
+		// Run each variant twice and report the second run to reduce
+		// warm-up effects:
+		for (int run = 1; run <= 2; run++) {
+			System.out.println("*** Run " + run + ":");
+			measure("String lines", dumpFile, documentReader, false);
+			measure("Byte slices", dumpFile, documentReader, true);
+		}
+	}
+
+	/**
+	 * Parses all entities of the dump with one of the two methods and prints
+	 * the bytes allocated per entity.
+	 */
+	private static void measure(String name, MwLocalDumpFile dumpFile,
+			ObjectReader documentReader, boolean useBytes) throws IOException {
+		long startBytes = getAllocatedBytes();
+		long startTime = System.nanoTime();
+		long entityCount;
+		try (InputStream inputStream = dumpFile.getDumpFileStream()) {
+			if (useBytes) {
+				entityCount = parseByteLines(inputStream, documentReader);
+			} else {
+				entityCount = parseStringLines(inputStream, documentReader);
+			}
+		}
+		long allocatedBytes = getAllocatedBytes() - startBytes;
+		long millis = (System.nanoTime() - startTime) / 1000000;
+
+		System.out.println(name + ": " + entityCount + " entities in "
+				+ millis + "ms, "
+				+ (entityCount == 0 ? 0 : allocatedBytes / entityCount)
+				+ " bytes allocated per entity");
+	}
+
+	/**
+	 * Parses a dump in the way that was used before byte-level line framing:
+	 * each line is decoded to a string and copied to remove the trailing
+	 * comma.
+	 */
+	private static long parseStringLines(InputStream inputStream,
+			ObjectReader documentReader) throws IOException {
+		BufferedReader br = new BufferedReader(new InputStreamReader(
+				inputStream, StandardCharsets.UTF_8));
+		long count = 0;
+		br.readLine(); // skip opening bracket
+		String line = br.readLine();
+		while (line != null && line.length() > 1) {
+			try {
+				if (line.charAt(line.length() - 1) == ',') {
+					documentReader.readValue(line.substring(0,
+							line.length() - 1));
+				} else {
+					documentReader.readValue(line);
+				}
+				count++;
+			} catch (JsonProcessingException e) {
+				// ignore broken entities in the benchmark
+			}
+			line = br.readLine();
+		}
+		return count;
+	}
+
+	/**
+	 * Parses a dump by handing slices of a reused byte buffer to Jackson.
+	 */
+	private static long parseByteLines(InputStream inputStream,
+			ObjectReader documentReader) throws IOException {
+		ByteLineReader lineReader = new ByteLineReader(inputStream);
+		long count = 0;
+		lineReader.nextLine(); // skip opening bracket
+		while (lineReader.nextLine() && lineReader.getLineLength() > 1) {
+			byte[] buffer = lineReader.getBuffer();
+			int offset = lineReader.getLineOffset();
+			int length = lineReader.getLineLength();
+			if (buffer[offset + length - 1] == ',') {
+				length--;
+			}
+			try {
+				documentReader.readValue(buffer, offset, length);
+				count++;
+			} catch (JsonProcessingException e) {
+				// ignore broken entities in the benchmark
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the current thread so far.
+	 */
+	private static long getAllocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean()).getThreadAllocatedBytes(Thread
+				.currentThread().getId());
+	}
+
+	/**
+	 * Prints some basic documentation about this program.
+	 */
+	public static void printDocumentation() {
+		System.out
+				.println("********************************************************************");
+		System.out.println("*** Wikidata Toolkit: JsonParsingAllocationBenchmark");
+		System.out.println("*** ");
+		System.out
+				.println("*** This program measures how many bytes are allocated per entity");
+		System.out
+				.println("*** when parsing a JSON dump from strings or from byte slices.");
+		System.out.println("*** ");
+		System.out.println("*** See source code for further details.");
+		System.out
+				.println("********************************************************************");
+	}
+}
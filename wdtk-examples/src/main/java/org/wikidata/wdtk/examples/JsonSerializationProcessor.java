@@ -20,19 +20,18 @@ package org.wikidata.wdtk.examples;
  * #L%
  */
 
-import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
-import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
 import org.wikidata.wdtk.datamodel.helpers.Datamodel;
 import org.wikidata.wdtk.datamodel.helpers.DatamodelFilter;
 import org.wikidata.wdtk.datamodel.implementation.DataObjectFactoryImpl;
 import org.wikidata.wdtk.datamodel.helpers.JsonSerializer;
 import org.wikidata.wdtk.datamodel.interfaces.*;
+import org.wikidata.wdtk.util.CompressionType;
 
 /**
  * This example illustrates how to create a JSON serialization of some of the
@@ -66,6 +65,7 @@ public class JsonSerializationProcessor implements EntityDocumentProcessor {
 	 */
 	public static void main(String[] args) throws IOException {
 		ExampleHelpers.configureLogging();
+		ExampleHelpers.configureCompression();
 		JsonSerializationProcessor.printDocumentation();
 
 		JsonSerializationProcessor jsonSerializationProcessor = new JsonSerializationProcessor();
@@ -99,10 +99,8 @@ public class JsonSerializationProcessor implements EntityDocumentProcessor {
 		this.datamodelFilter = new DatamodelFilter(new DataObjectFactoryImpl(), documentDataFilter);
 
 		// The (compressed) file we write to.
-		OutputStream outputStream = new GzipCompressorOutputStream(
-				new BufferedOutputStream(
-						ExampleHelpers
-								.openExampleFileOuputStream(OUTPUT_FILE_NAME)));
+		OutputStream outputStream = ExampleHelpers.openExampleFileOuputStream(
+				OUTPUT_FILE_NAME, CompressionType.GZIP);
 		this.jsonSerializer = new JsonSerializer(outputStream);
 
 		this.jsonSerializer.open();
@@ -20,15 +20,15 @@ package org.wikidata.wdtk.examples;
  * #L%
  */
 
-import java.io.*;
+import java.io.IOException;
+import java.io.OutputStream;
 
-import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
-import org.apache.commons.compress.compressors.gzip.GzipParameters;
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.wikidata.wdtk.datamodel.interfaces.Sites;
 import org.wikidata.wdtk.dumpfiles.DumpProcessingController;
 import org.wikidata.wdtk.rdf.PropertyRegister;
 import org.wikidata.wdtk.rdf.RdfSerializer;
+import org.wikidata.wdtk.util.CompressionType;
 
 /**
  * This class shows how convert data from wikidata.org to RDF in N-Triples format. The
@@ -43,6 +43,8 @@ public class RdfSerializationExample {
 
 		// Define where log messages go
 		ExampleHelpers.configureLogging();
+		// Define how output files are compressed
+		ExampleHelpers.configureCompression();
 
 		// Print information about this program
 		printDocumentation();
@@ -53,18 +55,11 @@ public class RdfSerializationExample {
 		dumpProcessingController.setOfflineMode(ExampleHelpers.OFFLINE_MODE);
 		Sites sites = dumpProcessingController.getSitesInformation();
 
-		// Prepare a compressed output stream to write the data to
-		// (admittedly, this is slightly over-optimized for an example)
-		try(OutputStream bufferedFileOutputStream = new BufferedOutputStream(
-				ExampleHelpers.openExampleFileOuputStream("wikidata-simple-statements.nt.gz"),
-				1024 * 1024 * 5
-		)) {
-			GzipParameters gzipParameters = new GzipParameters();
-			gzipParameters.setCompressionLevel(7);
-			OutputStream compressorOutputStream = new GzipCompressorOutputStream(
-					bufferedFileOutputStream, gzipParameters);
-			OutputStream exportOutputStream = asynchronousOutputStream(compressorOutputStream);
-
+		// Prepare a compressed output stream to write the data to; the data
+		// is compressed on several threads while the dump is processed
+		try (OutputStream exportOutputStream = ExampleHelpers
+				.openExampleFileOuputStream("wikidata-simple-statements.nt.gz",
+						CompressionType.GZIP)) {
 			// Create a serializer processor
 			RdfSerializer serializer = new RdfSerializer(RDFFormat.NTRIPLES,
 					exportOutputStream, sites,
@@ -102,78 +97,4 @@ public class RdfSerializationExample {
         System.out
                 .println("********************************************************************");
     }
-
-	/**
-	 * Creates a separate thread for writing into the given output stream and
-	 * returns a pipe output stream that can be used to pass data to this
-	 * thread.
-	 * <p>
-	 * This code is inspired by
-	 * http://stackoverflow.com/questions/12532073/gzipoutputstream
-	 * -that-does-its-compression-in-a-separate-thread
-	 *
-	 * @param outputStream
-	 *            the stream to write to in the thread
-	 * @return a new stream that data should be written to
-	 * @throws IOException
-	 *             if the pipes could not be created for some reason
-	 */
-	public static OutputStream asynchronousOutputStream(
-			final OutputStream outputStream) throws IOException {
-		final int SIZE = 1024 * 1024 * 10;
-		final PipedOutputStream pos = new PipedOutputStream();
-		final PipedInputStream pis = new PipedInputStream(pos, SIZE);
-		final Thread worker = new Thread(() -> {
-			try {
-				byte[] bytes = new byte[SIZE];
-				for (int len; (len = pis.read(bytes)) > 0;) {
-					outputStream.write(bytes, 0, len);
-				}
-			} catch (IOException ioException) {
-				ioException.printStackTrace();
-			} finally {
-				close(pis);
-				close(outputStream);
-			}
-		}, "async-output-stream");
-		return new SyncCloseOutputStream(pos, worker);
-	}
-
-
-	/**
-	 * Helper class that joins a thread on a call to close, to ensure that the output stream has really been closed.
-	 */
-	private static final class SyncCloseOutputStream extends FilterOutputStream {
-		private final Thread worker;
-
-		public SyncCloseOutputStream(OutputStream out, Thread worker) {
-			super(out);
-			this.worker = worker;
-		}
-
-		@Override
-		public void close() throws IOException {
-			super.close();
-			try {
-				worker.join();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-		}
-	}
-
-	/**
-	 * Closes a Closeable and swallows any exceptions that might occur in the
-	 * process.
-	 *
-	 * @param closeable
-	 */
-	static void close(Closeable closeable) {
-		if (closeable != null) {
-			try {
-				closeable.close();
-			} catch (IOException ignored) {
-			}
-		}
-	}
 }
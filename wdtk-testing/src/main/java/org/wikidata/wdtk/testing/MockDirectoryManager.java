@@ -38,6 +38,8 @@ import java.util.List;
 import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
 import org.wikidata.wdtk.util.CompressionType;
 import org.wikidata.wdtk.util.DirectoryManager;
 
@@ -298,6 +300,12 @@ public class MockDirectoryManager implements DirectoryManager {
 			return new GZIPInputStream(getInputStreamForMockFile(fileName));
 		} else if (compressionType == CompressionType.BZ2) {
 			return new BZip2CompressorInputStream(
+					getInputStreamForMockFile(fileName), true);
+		} else if (compressionType == CompressionType.LZ4) {
+			return new FramedLZ4CompressorInputStream(
+					getInputStreamForMockFile(fileName), true);
+		} else if (compressionType == CompressionType.ZSTD) {
+			return new ZstdCompressorInputStream(
 					getInputStreamForMockFile(fileName));
 		} else {
 			return getInputStreamForMockFile(fileName);
@@ -29,9 +29,11 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.Random;
 
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
 import org.mockito.Mockito;
 import org.wikidata.wdtk.util.CompressionType;
 
@@ -166,12 +168,17 @@ public class MockStringContentFactory {
 			return string.getBytes(StandardCharsets.UTF_8);
 		case BZ2:
 		case GZIP:
+		case LZ4:
 			ByteArrayOutputStream out = new ByteArrayOutputStream();
 			OutputStreamWriter ow;
 			if (compressionType == CompressionType.GZIP) {
 				ow = new OutputStreamWriter(
 						new GzipCompressorOutputStream(out),
 						StandardCharsets.UTF_8);
+			} else if (compressionType == CompressionType.LZ4) {
+				ow = new OutputStreamWriter(
+						new FramedLZ4CompressorOutputStream(out),
+						StandardCharsets.UTF_8);
 			} else {
 				ow = new OutputStreamWriter(
 						new BZip2CompressorOutputStream(out),
@@ -186,4 +193,28 @@ public class MockStringContentFactory {
 					+ compressionType);
 		}
 	}
+
+	/**
+	 * Returns the content of a JSON dump with one entity per line. The lines
+	 * have varying length and content, so that compressed data consists of
+	 * many blocks. The content only depends on the number of entities.
+	 *
+	 * @param entityCount
+	 *            the number of entities in the dump
+	 * @return the UTF-8 encoded dump
+	 */
+	public static byte[] newMockJsonDump(int entityCount) {
+		Random random = new Random(entityCount);
+		StringBuilder sb = new StringBuilder("[\n");
+		for (int i = 0; i < entityCount; i++) {
+			sb.append("{\"id\":\"Q").append(i).append("\",\"labels\":\"");
+			int length = random.nextInt(200);
+			for (int j = 0; j < length; j++) {
+				sb.append((char) ('a' + random.nextInt(26)));
+			}
+			sb.append(i < entityCount - 1 ? "\"},\n" : "\"}\n");
+		}
+		sb.append("]\n");
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
 }
@@ -22,11 +22,39 @@ package org.wikidata.wdtk.util;
 
 /**
  * Enum for denoting several basic file types for which we provide transparent
- * decompression.
+ * decompression. Besides the formats of the dumps that are published by the
+ * Wikimedia Foundation, the fast formats {@link #LZ4} and {@link #ZSTD} are
+ * supported for files that are read many times, such as dumps that were
+ * recompressed after downloading them.
  * 
  * @author Markus Kroetzsch
  * 
  */
 public enum CompressionType {
-	NONE, GZIP, BZ2
+	NONE(""), GZIP(".gz"), BZ2(".bz2"),
+	/**
+	 * The LZ4 frame format. This is supported without further libraries.
+	 */
+	LZ4(".lz4"),
+	/**
+	 * Zstandard. This requires the optional dependency
+	 * <code>com.github.luben:zstd-jni</code> at runtime.
+	 */
+	ZSTD(".zst");
+
+	private final String fileExtension;
+
+	CompressionType(String fileExtension) {
+		this.fileExtension = fileExtension;
+	}
+
+	/**
+	 * Returns the extension of the names of files that use this compression.
+	 *
+	 * @return file extension including the leading dot, or the empty string
+	 *         for {@link #NONE}
+	 */
+	public String getFileExtension() {
+		return this.fileExtension;
+	}
 }
@@ -20,10 +20,19 @@ package org.wikidata.wdtk.util;
  * #L%
  */
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdUtils;
 
 /**
  * Interface for classes that read and write files from one directory. Allows
@@ -108,6 +117,88 @@ public interface DirectoryManager {
 	long createFileAtomic(String fileName, InputStream inputStream)
 			throws IOException;
 
+	/**
+	 * Creates a new file in the current directory, and fills it with the
+	 * data from the given input stream, compressed as required. Like
+	 * {@link #createFileAtomic(String, InputStream)}, implementations that
+	 * store files in the file system should write the data to a temporary
+	 * file first, so that the file only appears once it is complete. An
+	 * existing file of the same name is replaced. The default implementation
+	 * writes to the file directly, using
+	 * {@link #getOutputStreamForFile(String, CompressionType)}.
+	 *
+	 * @param fileName
+	 *            the name of the file
+	 * @param inputStream
+	 *            the input stream from which to load the file
+	 * @param compressionType
+	 *            the compression to use for the file
+	 * @return number of uncompressed bytes written to the file
+	 * @throws IOException
+	 */
+	default long createFileAtomic(String fileName, InputStream inputStream,
+			CompressionType compressionType) throws IOException {
+		try (OutputStream outputStream = getOutputStreamForFile(fileName,
+				compressionType)) {
+			return inputStream.transferTo(outputStream);
+		}
+	}
+
+	/**
+	 * Creates a new file in the current directory by downloading the given
+	 * resource. Implementations that store files in the file system should
+	 * use {@link ResumableDownload#downloadTo(java.nio.file.Path)}, so that
+	 * interrupted downloads are resumed and the data is verified before the
+	 * file is created. The default implementation simply uses
+	 * {@link #createFileAtomic(String, InputStream)} with the stream of the
+	 * whole resource.
+	 *
+	 * @param fileName
+	 *            the name of the file
+	 * @param download
+	 *            the resource to download
+	 * @return size of the new file in bytes
+	 * @throws IOException
+	 */
+	default long createFileAtomic(String fileName, ResumableDownload download)
+			throws IOException {
+		try (InputStream inputStream = download.openStream()) {
+			return createFileAtomic(fileName, inputStream);
+		}
+	}
+
+	/**
+	 * Returns an input stream to access the file of the given name within
+	 * the current directory, downloading the given resource to create the
+	 * file if it does not exist yet. The data can be read while it is
+	 * downloaded. Implementations that store files in the file system should
+	 * use {@link ResumableDownload#openCachingStream(java.nio.file.Path)}, so
+	 * that the file is only created once the stream was read completely,
+	 * while an incomplete download can be resumed later. The default
+	 * implementation downloads the file with
+	 * {@link #createFileAtomic(String, ResumableDownload)} before opening it.
+	 * <p>
+	 * It is important to close the stream after using it.
+	 *
+	 * @param fileName
+	 *            the name of the file
+	 * @param download
+	 *            the resource to download if the file does not exist
+	 * @param compressionType
+	 *            for types other than {@link CompressionType#NONE}, the data
+	 *            will be uncompressed appropriately
+	 * @return an InputStream to fetch data from the file
+	 * @throws IOException
+	 */
+	default InputStream getInputStreamForDownload(String fileName,
+			ResumableDownload download, CompressionType compressionType)
+			throws IOException {
+		if (!hasFile(fileName)) {
+			createFileAtomic(fileName, download);
+		}
+		return getInputStreamForFile(fileName, compressionType);
+	}
+
 	/**
 	 * Creates a new file in the current directory, and fill it with the given
 	 * data, encoded in UTF-8. Should only be used for short pieces of data.
@@ -133,6 +224,64 @@ public interface DirectoryManager {
 	 */
 	OutputStream getOutputStreamForFile(String fileName) throws IOException;
 
+	/**
+	 * Opens and returns an output stream that can be used to write to the file
+	 * of the given name within the current directory, compressing the data as
+	 * required. The stream is owned by the caller and must be closed after
+	 * use, which also completes the compressed data. If the file already
+	 * exists, it will be truncated at this operation.
+	 * <p>
+	 * If more than one thread is configured with
+	 * {@link DirectoryManagerFactory#setCompressionThreads(int)}, data is
+	 * compressed with a {@link ParallelCompressorOutputStream}. Otherwise, a
+	 * sequential encoder is used.
+	 *
+	 * @param fileName
+	 *            the name of the file
+	 * @param compressionType
+	 *            for types other than {@link CompressionType#NONE}, the data
+	 *            will be compressed appropriately
+	 * @return the stream to write to
+	 * @throws IOException
+	 */
+	default OutputStream getOutputStreamForFile(String fileName,
+			CompressionType compressionType) throws IOException {
+		OutputStream outputStream = getOutputStreamForFile(fileName);
+		int threads = DirectoryManagerFactory.getCompressionThreads();
+		switch (compressionType) {
+		case NONE:
+			return outputStream;
+		case GZIP:
+			if (threads > 1) {
+				return new ParallelCompressorOutputStream(outputStream,
+						compressionType, threads);
+			}
+			return new GZIPOutputStream(outputStream, 1 << 16);
+		case BZ2:
+			if (threads > 1) {
+				return new ParallelCompressorOutputStream(outputStream,
+						compressionType, threads);
+			}
+			return new BZip2CompressorOutputStream(new BufferedOutputStream(
+					outputStream, 1 << 16));
+		case LZ4:
+			return new FramedLZ4CompressorOutputStream(new BufferedOutputStream(
+					outputStream, 1 << 16));
+		case ZSTD:
+			if (!ZstdUtils.isZstdCompressionAvailable()) {
+				outputStream.close();
+				throw new IOException(
+						"Zstandard compression requires zstd-jni on the classpath.");
+			}
+			return new ZstdCompressorOutputStream(new BufferedOutputStream(
+					outputStream, 1 << 16));
+		default:
+			outputStream.close();
+			throw new IllegalArgumentException("Unsupported compression type: "
+					+ compressionType);
+		}
+	}
+
 	/**
 	 * Returns an input stream to access file of the given name within the
 	 * current directory, possibly uncompressing it if required.
@@ -151,6 +300,31 @@ public interface DirectoryManager {
 	InputStream getInputStreamForFile(String fileName,
 			CompressionType compressionType) throws IOException;
 
+	/**
+	 * Returns a channel to access the file of the given name within the
+	 * current directory, possibly uncompressing it if required. This provides
+	 * the same data as {@link #getInputStreamForFile(String, CompressionType)}
+	 * but allows implementations to read the data into buffers of the caller
+	 * without going through intermediate streams. The default implementation
+	 * wraps the input stream of the file.
+	 * <p>
+	 * It is important to close the channel after using it to free memory.
+	 *
+	 * @param fileName
+	 *            the name of the file
+	 * @param compressionType
+	 *            for types other than {@link CompressionType#NONE}, the file
+	 *            will be uncompressed appropriately and the returned channel
+	 *            will provide access to the uncompressed content
+	 * @return a channel to fetch data from the file
+	 * @throws IOException
+	 */
+	default ReadableByteChannel getChannelForFile(String fileName,
+			CompressionType compressionType) throws IOException {
+		return Channels.newChannel(getInputStreamForFile(fileName,
+				compressionType));
+	}
+
 	/**
 	 * Returns a list of the names of all subdirectories of the base directory.
 	 * The glob pattern can be used to filter the names; "*" should be used if
@@ -38,6 +38,16 @@ public class DirectoryManagerFactory {
 	 */
 	static Class<? extends DirectoryManager> dmClass = DirectoryManagerImpl.class;
 
+	/**
+	 * The number of threads used to decompress bzip2 files.
+	 */
+	static int bz2DecoderThreads = 1;
+
+	/**
+	 * The number of threads used to compress files.
+	 */
+	static int compressionThreads = 1;
+
 	/**
 	 * Sets the class of {@link DirectoryManager} that should be used when
 	 * creating instances here. This class should provide constructors for
@@ -51,6 +61,58 @@ public class DirectoryManagerFactory {
 		dmClass = clazz;
 	}
 
+	/**
+	 * Sets the number of threads that {@link DirectoryManagerImpl} uses to
+	 * decompress files of type {@link CompressionType#BZ2}. If the number is
+	 * greater than one, a {@link ParallelBZip2CompressorInputStream} is used,
+	 * which decompresses several blocks of the file at once. The default is 1,
+	 * which uses a sequential decoder. The setting affects all streams that
+	 * are opened afterwards.
+	 *
+	 * @param threads
+	 *            the number of decompression threads
+	 */
+	public static void setBz2DecoderThreads(int threads) {
+		bz2DecoderThreads = threads;
+	}
+
+	/**
+	 * Returns the number of threads that are used to decompress bzip2 files.
+	 *
+	 * @see #setBz2DecoderThreads(int)
+	 * @return the number of decompression threads
+	 */
+	public static int getBz2DecoderThreads() {
+		return bz2DecoderThreads;
+	}
+
+	/**
+	 * Sets the number of threads that are used to compress files that are
+	 * written with
+	 * {@link DirectoryManager#getOutputStreamForFile(String, CompressionType)}.
+	 * If the number is greater than one, a
+	 * {@link ParallelCompressorOutputStream} is used, which compresses
+	 * several blocks of the data at once. The default is 1, which uses a
+	 * sequential encoder. The setting affects all streams that are opened
+	 * afterwards.
+	 *
+	 * @param threads
+	 *            the number of compression threads
+	 */
+	public static void setCompressionThreads(int threads) {
+		compressionThreads = threads;
+	}
+
+	/**
+	 * Returns the number of threads that are used to compress files.
+	 *
+	 * @see #setCompressionThreads(int)
+	 * @return the number of compression threads
+	 */
+	public static int getCompressionThreads() {
+		return compressionThreads;
+	}
+
 	/**
 	 * Creates a new {@link DirectoryManager} for the given directory path.
 	 *
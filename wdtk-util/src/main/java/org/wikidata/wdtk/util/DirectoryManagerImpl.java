@@ -33,12 +33,16 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdUtils;
 
 /**
  * Class to read and write files from one directory. It is guaranteed that the
@@ -143,6 +147,49 @@ public class DirectoryManagerImpl implements DirectoryManager {
 		return fileSize;
 	}
 
+	@Override
+	public long createFileAtomic(String fileName, InputStream inputStream,
+			CompressionType compressionType) throws IOException {
+		long dataSize;
+		Path filePath = this.directory.resolve(fileName);
+		ensureWritePermission(filePath);
+
+		String fileTempName = fileName + ".part";
+		try (OutputStream outputStream = getOutputStreamForFile(fileTempName,
+				compressionType)) {
+			dataSize = inputStream.transferTo(outputStream);
+		}
+
+		Files.move(this.directory.resolve(fileTempName), filePath,
+				StandardCopyOption.REPLACE_EXISTING);
+
+		return dataSize;
+	}
+
+	@Override
+	public long createFileAtomic(String fileName, ResumableDownload download)
+			throws IOException {
+		Path filePath = this.directory.resolve(fileName);
+		ensureWritePermission(filePath);
+
+		return download.downloadTo(filePath);
+	}
+
+	@Override
+	public InputStream getInputStreamForDownload(String fileName,
+			ResumableDownload download, CompressionType compressionType)
+			throws IOException {
+		if (hasFile(fileName)) {
+			return getInputStreamForFile(fileName, compressionType);
+		}
+		Path filePath = this.directory.resolve(fileName);
+		ensureWritePermission(filePath);
+
+		return getCompressorInputStream(new BufferedInputStream(
+				download.openCachingStream(filePath),
+				ResumableDownload.BUFFER_SIZE), compressionType);
+	}
+
 	@Override
 	public void createFile(String fileName, String fileContents)
 			throws IOException {
@@ -176,6 +223,29 @@ public class DirectoryManagerImpl implements DirectoryManager {
 		return getCompressorInputStream(fileInputStream, compressionType);
 	}
 
+	/**
+	 * Returns a channel for the given file. Uncompressed files are read
+	 * through a {@link FileChannel} directly, and gzip files are decompressed
+	 * by a {@link GzipReadableByteChannel} without intermediate streams. Other
+	 * compression types are only available as streams, which are wrapped.
+	 */
+	@Override
+	public ReadableByteChannel getChannelForFile(String fileName,
+			CompressionType compressionType) throws IOException {
+		Path filePath = this.directory.resolve(fileName);
+
+		switch (compressionType) {
+		case NONE:
+			return FileChannel.open(filePath, StandardOpenOption.READ);
+		case GZIP:
+			return new GzipReadableByteChannel(FileChannel.open(filePath,
+					StandardOpenOption.READ));
+		default:
+			return Channels.newChannel(getInputStreamForFile(fileName,
+					compressionType));
+		}
+	}
+
 	/**
 	 * Returns an input stream that applies the required decompression to the
 	 * given input stream.
@@ -196,7 +266,23 @@ public class DirectoryManagerImpl implements DirectoryManager {
 		case GZIP:
 			return new GZIPInputStream(inputStream);
 		case BZ2:
+			int threads = DirectoryManagerFactory.getBz2DecoderThreads();
+			if (threads > 1) {
+				return new ParallelBZip2CompressorInputStream(
+						new BufferedInputStream(inputStream), threads);
+			}
 			return new BZip2CompressorInputStream(new BufferedInputStream(
+					inputStream), true);
+		case LZ4:
+			return new FramedLZ4CompressorInputStream(new BufferedInputStream(
+					inputStream), true);
+		case ZSTD:
+			if (!ZstdUtils.isZstdCompressionAvailable()) {
+				inputStream.close();
+				throw new IOException(
+						"Zstandard decompression requires zstd-jni on the classpath.");
+			}
+			return new ZstdCompressorInputStream(new BufferedInputStream(
 					inputStream));
 		default:
 			throw new IllegalArgumentException("Unsupported compression type: "
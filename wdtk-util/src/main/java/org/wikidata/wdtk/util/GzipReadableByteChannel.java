@@ -0,0 +1,303 @@
+package org.wikidata.wdtk.util;
+
+/*
+ * #%L
+ * Wikidata Toolkit Utilities
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Channel that decompresses gzip data read from another channel. The
+ * compressed data is read into a direct buffer and inflated from there into
+ * the buffers of the caller, so that no intermediate streams or byte arrays
+ * are involved, unlike when using {@link java.util.zip.GZIPInputStream}.
+ * <p>
+ * Files that consist of several concatenated gzip members, such as the files
+ * written by {@link ParallelCompressorOutputStream}, are read as one file.
+ * Data after the last member that does not start with a gzip header is
+ * ignored, as in {@link java.util.zip.GZIPInputStream}. The CRC and size of
+ * every member are checked.
+ * <p>
+ * Like most channels, this class is not safe for concurrent reading.
+ */
+public class GzipReadableByteChannel implements ReadableByteChannel {
+
+	/**
+	 * Default size of the buffer for compressed data in bytes.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	private static final int GZIP_MAGIC = 0x8b1f;
+
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+
+	private final ReadableByteChannel channel;
+
+	/**
+	 * Buffer for compressed data, which is always kept ready for reading.
+	 */
+	private final ByteBuffer input;
+
+	private final Inflater inflater = new Inflater(true);
+
+	private final CRC32 crc = new CRC32();
+
+	/**
+	 * Number of uncompressed bytes of the current member.
+	 */
+	private long memberSize = 0;
+
+	private boolean inMember = false;
+
+	private boolean firstMember = true;
+
+	private boolean endOfStream = false;
+
+	private boolean closed = false;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param channel
+	 *            the channel to read gzip data from
+	 */
+	public GzipReadableByteChannel(ReadableByteChannel channel) {
+		this(channel, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param channel
+	 *            the channel to read gzip data from
+	 * @param bufferSize
+	 *            the size of the buffer for compressed data in bytes
+	 */
+	public GzipReadableByteChannel(ReadableByteChannel channel, int bufferSize) {
+		if (bufferSize < 16) {
+			throw new IllegalArgumentException(
+					"The buffer size must be at least 16 bytes.");
+		}
+		this.channel = channel;
+		this.input = ByteBuffer.allocateDirect(bufferSize);
+		this.input.flip();
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		if (this.closed) {
+			throw new ClosedChannelException();
+		}
+		if (this.endOfStream) {
+			return -1;
+		}
+		if (!dst.hasRemaining()) {
+			return 0;
+		}
+
+		while (true) {
+			if (!this.inMember) {
+				if (!readHeader()) {
+					this.endOfStream = true;
+					return -1;
+				}
+				this.inMember = true;
+				this.inflater.setInput(this.input);
+			}
+
+			int start = dst.position();
+			int count;
+			try {
+				count = this.inflater.inflate(dst);
+			} catch (DataFormatException e) {
+				throw new ZipException("Invalid gzip data: " + e.getMessage());
+			}
+			if (count > 0) {
+				ByteBuffer inflated = dst.duplicate();
+				inflated.limit(dst.position()).position(start);
+				this.crc.update(inflated);
+				this.memberSize += count;
+				return count;
+			}
+
+			if (this.inflater.finished()) {
+				readTrailer();
+				this.inMember = false;
+			} else if (this.inflater.needsDictionary()) {
+				throw new ZipException("Invalid gzip data: dictionary needed");
+			} else if (this.inflater.needsInput()) {
+				if (!fillInput()) {
+					throw new EOFException("Unexpected end of gzip data");
+				}
+				this.inflater.setInput(this.input);
+			}
+		}
+	}
+
+	@Override
+	public boolean isOpen() {
+		return !this.closed;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!this.closed) {
+			this.closed = true;
+			this.inflater.end();
+			this.channel.close();
+		}
+	}
+
+	/**
+	 * Reads the header of the next gzip member.
+	 *
+	 * @return false if there is no further member
+	 * @throws IOException
+	 *             if the header could not be read or is invalid
+	 */
+	private boolean readHeader() throws IOException {
+		if (!ensureInput(2) || readShort() != GZIP_MAGIC) {
+			if (this.firstMember) {
+				throw new ZipException("Not in gzip format");
+			}
+			// trailing garbage is ignored like in GZIPInputStream
+			return false;
+		}
+		this.firstMember = false;
+		requireInput(8);
+		if ((this.input.get() & 0xff) != 8) {
+			throw new ZipException("Unsupported gzip compression method");
+		}
+		int flags = this.input.get() & 0xff;
+		// skip modification time, extra flags, and operating system
+		this.input.position(this.input.position() + 6);
+
+		if ((flags & FEXTRA) != 0) {
+			requireInput(2);
+			skipBytes(readShort());
+		}
+		if ((flags & FNAME) != 0) {
+			skipZeroTerminated();
+		}
+		if ((flags & FCOMMENT) != 0) {
+			skipZeroTerminated();
+		}
+		if ((flags & FHCRC) != 0) {
+			skipBytes(2);
+		}
+
+		this.inflater.reset();
+		this.crc.reset();
+		this.memberSize = 0;
+		return true;
+	}
+
+	/**
+	 * Reads and checks the trailer of the current member.
+	 *
+	 * @throws IOException
+	 *             if the trailer could not be read or does not match the data
+	 */
+	private void readTrailer() throws IOException {
+		requireInput(8);
+		long expectedCrc = readInt();
+		long expectedSize = readInt();
+		if (expectedCrc != this.crc.getValue()) {
+			throw new ZipException("Corrupt gzip data: CRC mismatch");
+		}
+		if (expectedSize != (this.memberSize & 0xffffffffL)) {
+			throw new ZipException("Corrupt gzip data: size mismatch");
+		}
+	}
+
+	private int readShort() {
+		return (this.input.get() & 0xff) | ((this.input.get() & 0xff) << 8);
+	}
+
+	private long readInt() {
+		return (readShort() | ((long) readShort() << 16)) & 0xffffffffL;
+	}
+
+	private void skipBytes(int count) throws IOException {
+		while (count > 0) {
+			requireInput(1);
+			int skipped = Math.min(count, this.input.remaining());
+			this.input.position(this.input.position() + skipped);
+			count -= skipped;
+		}
+	}
+
+	private void skipZeroTerminated() throws IOException {
+		do {
+			requireInput(1);
+		} while (this.input.get() != 0);
+	}
+
+	private void requireInput(int count) throws IOException {
+		if (!ensureInput(count)) {
+			throw new EOFException("Unexpected end of gzip data");
+		}
+	}
+
+	/**
+	 * Reads compressed data until the given number of bytes are available in
+	 * the input buffer, or the end of the underlying channel is reached.
+	 *
+	 * @return true if enough data is available
+	 */
+	private boolean ensureInput(int count) throws IOException {
+		while (this.input.remaining() < count) {
+			if (!fillInput()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads more compressed data into the input buffer, keeping the data that
+	 * has not been consumed yet.
+	 *
+	 * @return false if the end of the underlying channel was reached
+	 */
+	private boolean fillInput() throws IOException {
+		this.input.compact();
+		try {
+			int count;
+			do {
+				count = this.channel.read(this.input);
+			} while (count == 0);
+			return count > 0;
+		} finally {
+			this.input.flip();
+		}
+	}
+}
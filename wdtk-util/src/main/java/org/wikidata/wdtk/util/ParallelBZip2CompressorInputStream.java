@@ -0,0 +1,563 @@
+package org.wikidata.wdtk.util;
+
+/*
+ * #%L
+ * Wikidata Toolkit Utilities
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+/**
+ * Input stream that decompresses bzip2 data using several threads. The
+ * compressed input is scanned for the bit patterns that mark the start of
+ * bzip2 blocks and the end of bzip2 streams. Every block found in this way is
+ * turned into a complete single-block bzip2 stream of its own, which is
+ * decompressed on a worker thread with {@link BZip2CompressorInputStream}.
+ * The decompressed blocks are returned in their original order.
+ * <p>
+ * Concatenated bzip2 streams, as written by parallel compressors, are
+ * supported. The CRC of every block is checked, but the combined CRC of each
+ * stream is not. Since the block and stream markers can also occur by
+ * chance within compressed data, a block that cannot be decoded is merged
+ * with the parts of the input that follow it before the error is reported.
+ * <p>
+ * The reading methods of this class are not thread-safe, like those of other
+ * input streams.
+ */
+public class ParallelBZip2CompressorInputStream extends InputStream {
+
+	/**
+	 * The 48 bit pattern that starts every bzip2 block.
+	 */
+	static final long BLOCK_MAGIC = 0x314159265359L;
+
+	/**
+	 * The 48 bit pattern that ends every bzip2 stream.
+	 */
+	static final long END_OF_STREAM_MAGIC = 0x177245385090L;
+
+	static final long MAGIC_MASK = 0xffffffffffffL;
+
+	/**
+	 * Header used for the single-block streams that are decoded by workers.
+	 * The maximal block size is used, since the size of each block in the
+	 * input is not known in advance.
+	 */
+	static final byte[] STREAM_HEADER = { 'B', 'Z', 'h', '9' };
+
+	/**
+	 * Number of blocks per thread that are scanned ahead of the current read
+	 * position.
+	 */
+	static final int BLOCKS_PER_THREAD = 2;
+
+	/**
+	 * A compressed block, given as a range of bits in a byte array. The range
+	 * between an end of stream marker and the next block marker is also kept
+	 * as a block, so that it can be merged with the preceding block if the
+	 * marker turns out to be spurious.
+	 */
+	static class CompressedBlock {
+		byte[] data = new byte[1024];
+		int dataLength = 0;
+		/**
+		 * Position of the first bit of the block in the first byte of data.
+		 */
+		final int startBit;
+		/**
+		 * Number of bits of the block.
+		 */
+		long bitLength = -1;
+		/**
+		 * True if the block is directly followed by another block, i.e., if
+		 * it does not end at the end of the input.
+		 */
+		boolean followedByBlock = false;
+		/**
+		 * True if the block starts with an end of stream marker rather than
+		 * with a block marker. Such a block holds no data of its own.
+		 */
+		boolean endOfStream = false;
+
+		CompressedBlock(int startBit) {
+			this.startBit = startBit;
+		}
+
+		void append(int value) {
+			if (this.dataLength == this.data.length) {
+				this.data = Arrays.copyOf(this.data, 2 * this.data.length);
+			}
+			this.data[this.dataLength++] = (byte) value;
+		}
+	}
+
+	/**
+	 * A block that has been handed to a worker for decompression.
+	 */
+	static class PendingBlock {
+		final CompressedBlock block;
+		final Future<byte[]> result;
+
+		PendingBlock(CompressedBlock block, Future<byte[]> result) {
+			this.block = block;
+			this.result = result;
+		}
+	}
+
+	private final InputStream in;
+
+	private final ExecutorService executor;
+
+	private final int maxPendingBlocks;
+
+	private final ArrayDeque<PendingBlock> pendingBlocks = new ArrayDeque<>();
+
+	private final ArrayDeque<CompressedBlock> scannedBlocks = new ArrayDeque<>();
+
+	private final byte[] readBuffer = new byte[1 << 16];
+
+	/**
+	 * Block that is currently being scanned, or null if the scanner is
+	 * between blocks.
+	 */
+	private CompressedBlock currentBlock = null;
+
+	/**
+	 * Position of the first bit of the current block in the input.
+	 */
+	private long currentBlockStart = 0;
+
+	/**
+	 * The last 64 bits that have been scanned.
+	 */
+	private long bitRegister = 0;
+
+	/**
+	 * Number of bytes that have been scanned.
+	 */
+	private long scannedBytes = 0;
+
+	private boolean endOfInput = false;
+
+	private byte[] decodedBlock = new byte[0];
+
+	private int decodedPosition = 0;
+
+	private boolean closed = false;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param in
+	 *            the stream with the compressed data
+	 * @param threads
+	 *            the number of threads to use for decompression
+	 * @throws IOException
+	 *             if the stream does not start with a bzip2 header
+	 */
+	public ParallelBZip2CompressorInputStream(InputStream in, int threads)
+			throws IOException {
+		if (threads < 1) {
+			throw new IllegalArgumentException(
+					"The number of threads must be positive.");
+		}
+		this.in = in;
+		this.maxPendingBlocks = BLOCKS_PER_THREAD * threads;
+		this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "wdtk-bzip2-decoder");
+			thread.setDaemon(true);
+			return thread;
+		});
+		checkHeader();
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!ensureDecodedData()) {
+			return -1;
+		}
+		return this.decodedBlock[this.decodedPosition++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!ensureDecodedData()) {
+			return -1;
+		}
+		int count = Math.min(len, this.decodedBlock.length
+				- this.decodedPosition);
+		System.arraycopy(this.decodedBlock, this.decodedPosition, b, off,
+				count);
+		this.decodedPosition += count;
+		return count;
+	}
+
+	@Override
+	public int available() {
+		return this.decodedBlock.length - this.decodedPosition;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!this.closed) {
+			this.closed = true;
+			this.executor.shutdownNow();
+			this.pendingBlocks.clear();
+			this.in.close();
+		}
+	}
+
+	/**
+	 * Makes sure that there is decoded data left to read, decoding further
+	 * blocks if needed.
+	 *
+	 * @return false if the end of the data was reached
+	 * @throws IOException
+	 *             if the input could not be read or decoded
+	 */
+	private boolean ensureDecodedData() throws IOException {
+		if (this.closed) {
+			throw new IOException("Stream closed");
+		}
+		while (this.decodedPosition >= this.decodedBlock.length) {
+			fillPipeline();
+			PendingBlock pendingBlock = this.pendingBlocks.poll();
+			if (pendingBlock == null) {
+				return false;
+			}
+			this.decodedBlock = getDecodedBlock(pendingBlock);
+			this.decodedPosition = 0;
+		}
+		return true;
+	}
+
+	/**
+	 * Scans the input for further blocks and hands them to the workers until
+	 * enough blocks are pending or the input ends.
+	 *
+	 * @throws IOException
+	 *             if the input could not be read
+	 */
+	private void fillPipeline() throws IOException {
+		while (this.pendingBlocks.size() < this.maxPendingBlocks) {
+			CompressedBlock block = nextCompressedBlock();
+			if (block == null) {
+				return;
+			}
+			Future<byte[]> result;
+			if (block.endOfStream) {
+				result = CompletableFuture.completedFuture(new byte[0]);
+			} else {
+				List<CompressedBlock> parts = Collections.singletonList(block);
+				result = this.executor.submit(() -> decode(parts));
+			}
+			this.pendingBlocks.add(new PendingBlock(block, result));
+		}
+	}
+
+	/**
+	 * Waits for the given block to be decoded. If decoding failed, the block
+	 * is merged with following blocks, as long as they are adjacent, in case
+	 * the block was split at a spurious block or end of stream marker.
+	 *
+	 * @param pendingBlock
+	 *            the block to get the result for
+	 * @return the decoded data
+	 * @throws IOException
+	 *             if the block could not be decoded
+	 */
+	private byte[] getDecodedBlock(PendingBlock pendingBlock)
+			throws IOException {
+		IOException failure;
+		try {
+			return pendingBlock.result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(
+					"Interrupted while decompressing bzip2 data");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				failure = (IOException) e.getCause();
+			} else {
+				throw new IOException("Failed to decompress bzip2 block: "
+						+ e.getCause(), e.getCause());
+			}
+		}
+
+		List<CompressedBlock> parts = new ArrayList<>();
+		parts.add(pendingBlock.block);
+		while (parts.get(parts.size() - 1).followedByBlock) {
+			fillPipeline();
+			PendingBlock nextBlock = this.pendingBlocks.poll();
+			if (nextBlock == null) {
+				break;
+			}
+			nextBlock.result.cancel(true);
+			parts.add(nextBlock.block);
+			try {
+				return decode(parts);
+			} catch (IOException e) {
+				// try again with one more block
+			}
+		}
+		throw failure;
+	}
+
+	/**
+	 * Returns the next complete block found in the input.
+	 *
+	 * @return the block, or null if the input has ended
+	 * @throws IOException
+	 *             if the input could not be read
+	 */
+	private CompressedBlock nextCompressedBlock() throws IOException {
+		while (this.scannedBlocks.isEmpty() && !this.endOfInput) {
+			int count = this.in.read(this.readBuffer);
+			if (count < 0) {
+				this.endOfInput = true;
+				if (this.currentBlock != null) {
+					// the decoder reports the problem if the input is truncated
+					finishBlock(this.scannedBytes * 8, false);
+				}
+			} else {
+				for (int i = 0; i < count; i++) {
+					scanByte(this.readBuffer[i] & 0xff);
+				}
+			}
+		}
+		return this.scannedBlocks.poll();
+	}
+
+	/**
+	 * Reads and checks the header at the start of the input.
+	 *
+	 * @throws IOException
+	 *             if the header is missing
+	 */
+	private void checkHeader() throws IOException {
+		for (int i = 0; i < 3; i++) {
+			int value = this.in.read();
+			if (value != STREAM_HEADER[i]) {
+				throw new IOException("Input is not in bzip2 format.");
+			}
+			scanByte(value);
+		}
+	}
+
+	/**
+	 * Processes the next byte of the input, looking for block and stream
+	 * markers that end within this byte. Each marker ends the current block
+	 * and starts a new one, since a marker might occur by chance within
+	 * compressed data.
+	 *
+	 * @param value
+	 *            the byte to process
+	 */
+	private void scanByte(int value) {
+		long previousBits = this.bitRegister;
+		long bytePosition = this.scannedBytes++;
+		this.bitRegister = (this.bitRegister << 8) | value;
+		if (this.currentBlock != null) {
+			this.currentBlock.append(value);
+		}
+
+		for (int shift = 7; shift >= 0; shift--) {
+			long candidate = (this.bitRegister >>> shift) & MAGIC_MASK;
+			if (candidate != BLOCK_MAGIC && candidate != END_OF_STREAM_MAGIC) {
+				continue;
+			}
+			long magicStart = bytePosition * 8 + (8 - shift) - 48;
+			if (this.currentBlock != null) {
+				finishBlock(magicStart, true);
+			}
+			startBlock(magicStart, bytePosition, previousBits, value);
+			this.currentBlock.endOfStream = candidate == END_OF_STREAM_MAGIC;
+		}
+	}
+
+	/**
+	 * Starts a new block at the given bit position. The bytes of the input
+	 * that contain the start of the block are copied from the bit register.
+	 */
+	private void startBlock(long magicStart, long bytePosition,
+			long previousBits, int value) {
+		CompressedBlock block = new CompressedBlock((int) (magicStart & 7));
+		long startByte = magicStart >>> 3;
+		for (long position = startByte; position < bytePosition; position++) {
+			block.append((int) (previousBits >>> (8 * (bytePosition - 1 - position))) & 0xff);
+		}
+		block.append(value);
+		this.currentBlock = block;
+		this.currentBlockStart = magicStart;
+	}
+
+	/**
+	 * Completes the current block, which ends at the given bit position.
+	 */
+	private void finishBlock(long end, boolean followedByBlock) {
+		this.currentBlock.bitLength = end - this.currentBlockStart;
+		this.currentBlock.followedByBlock = followedByBlock;
+		this.scannedBlocks.add(this.currentBlock);
+		this.currentBlock = null;
+	}
+
+	/**
+	 * Decodes the given adjacent blocks by turning them into a bzip2 stream
+	 * of their own.
+	 *
+	 * @param blocks
+	 *            the blocks to decode, in the order of the input
+	 * @return the decoded data
+	 * @throws IOException
+	 *             if the data could not be decoded
+	 */
+	static byte[] decode(List<CompressedBlock> blocks) throws IOException {
+		CompressedBlock first = blocks.get(0);
+		if (first.bitLength < 80) {
+			throw new IOException("Truncated bzip2 block.");
+		}
+		long totalBits = 0;
+		for (CompressedBlock block : blocks) {
+			totalBits += block.bitLength;
+		}
+
+		BitWriter writer = new BitWriter((int) ((totalBits + 7) / 8) + 32);
+		for (byte b : STREAM_HEADER) {
+			writer.writeBits(b & 0xff, 8);
+		}
+		for (CompressedBlock block : blocks) {
+			writer.copyBits(block.data, block.startBit, block.bitLength);
+		}
+		// the combined CRC of a stream with one block is the block CRC
+		long blockCrc = readBits(first.data, first.startBit + 48, 32);
+		writer.writeBits(END_OF_STREAM_MAGIC >>> 24, 24);
+		writer.writeBits(END_OF_STREAM_MAGIC & 0xffffff, 24);
+		writer.writeBits(blockCrc, 32);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(
+				(int) Math.min(Integer.MAX_VALUE - 8, totalBits));
+		try (InputStream decoder = new BZip2CompressorInputStream(
+				new ByteArrayInputStream(writer.buffer, 0,
+						writer.getByteLength()))) {
+			byte[] buffer = new byte[1 << 16];
+			int count;
+			while ((count = decoder.read(buffer)) >= 0) {
+				out.write(buffer, 0, count);
+			}
+		} catch (RuntimeException e) {
+			// the decoder does not check all inputs for consistency
+			throw new IOException("Invalid bzip2 block: " + e, e);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Reads up to 57 bits starting at the given bit position.
+	 */
+	static long readBits(byte[] data, long bitPosition, int count) {
+		long result = 0;
+		for (int i = 0; i < count; i++) {
+			long position = bitPosition + i;
+			int bit = (data[(int) (position >>> 3)] >>> (7 - (position & 7))) & 1;
+			result = (result << 1) | bit;
+		}
+		return result;
+	}
+
+	/**
+	 * Simple writer for bit sequences, most significant bit first, as used
+	 * by bzip2.
+	 */
+	static class BitWriter {
+		final byte[] buffer;
+		long bitPosition = 0;
+
+		BitWriter(int capacity) {
+			this.buffer = new byte[capacity];
+		}
+
+		/**
+		 * Writes the lowest count bits of the given value, for count of at
+		 * most 32.
+		 */
+		void writeBits(long value, int count) {
+			for (int i = count - 1; i >= 0; i--) {
+				if (((value >>> i) & 1) != 0) {
+					this.buffer[(int) (this.bitPosition >>> 3)] |= (byte) (0x80 >>> (this.bitPosition & 7));
+				}
+				this.bitPosition++;
+			}
+		}
+
+		/**
+		 * Appends the given number of bits from the array, starting at the
+		 * given bit of its first byte.
+		 */
+		void copyBits(byte[] data, int startBit, long count) {
+			int writeShift = (int) (this.bitPosition & 7);
+			long fullBytes = count / 8;
+			int dataIndex = 0;
+			// align the source: take 8 bits at a time from (data, startBit)
+			for (long i = 0; i < fullBytes; i++) {
+				int value;
+				if (startBit == 0) {
+					value = data[dataIndex] & 0xff;
+				} else {
+					value = ((data[dataIndex] << startBit) | ((data[dataIndex + 1] & 0xff) >>> (8 - startBit))) & 0xff;
+				}
+				dataIndex++;
+				int target = (int) (this.bitPosition >>> 3);
+				if (writeShift == 0) {
+					this.buffer[target] = (byte) value;
+				} else {
+					this.buffer[target] |= (byte) (value >>> writeShift);
+					this.buffer[target + 1] = (byte) (value << (8 - writeShift));
+				}
+				this.bitPosition += 8;
+			}
+			int remainingBits = (int) (count % 8);
+			if (remainingBits > 0) {
+				writeBits(readBits(data, (long) dataIndex * 8 + startBit,
+						remainingBits), remainingBits);
+			}
+		}
+
+		int getByteLength() {
+			return (int) ((this.bitPosition + 7) >>> 3);
+		}
+	}
+}
@@ -0,0 +1,279 @@
+package org.wikidata.wdtk.util;
+
+/*
+ * #%L
+ * Wikidata Toolkit Utilities
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+
+/**
+ * Output stream that compresses data with gzip or bzip2 using several
+ * threads. The data is cut into blocks of a fixed size, and every block is
+ * compressed into a complete gzip member or bzip2 stream of its own on a
+ * worker thread. The compressed blocks are written to the underlying stream
+ * in their original order, so that the result is a sequence of concatenated
+ * gzip members or bzip2 streams. Standard decoders such as
+ * {@link java.util.zip.GZIPInputStream}, gunzip, and bunzip2 read such data
+ * as a single file; see also {@link ParallelBZip2CompressorInputStream}.
+ * <p>
+ * Compressing blocks independently costs a little compression ratio, since
+ * no block can refer to data of the previous one. The memory that is used is
+ * bounded by the block size times a small multiple of the number of
+ * threads, since writing blocks waits for the oldest pending block to be
+ * finished when too many blocks are waiting for compression.
+ * <p>
+ * The writing methods of this class are not thread-safe, like those of other
+ * output streams.
+ */
+public class ParallelCompressorOutputStream extends OutputStream {
+
+	/**
+	 * Default number of uncompressed bytes per block for
+	 * {@link CompressionType#GZIP}.
+	 */
+	public static final int DEFAULT_GZIP_BLOCK_SIZE = 1 << 20;
+
+	/**
+	 * Default number of uncompressed bytes per block for
+	 * {@link CompressionType#BZ2}. This is the size of the largest bzip2
+	 * block, so that every compressed stream usually consists of one block.
+	 */
+	public static final int DEFAULT_BZ2_BLOCK_SIZE = 900000;
+
+	/**
+	 * Number of blocks per thread that may wait for compression or for being
+	 * written.
+	 */
+	static final int BLOCKS_PER_THREAD = 2;
+
+	private final OutputStream out;
+
+	private final CompressionType compressionType;
+
+	private final ExecutorService executor;
+
+	private final int maxPendingBlocks;
+
+	private final int blockSize;
+
+	private final ArrayDeque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+
+	private byte[] buffer;
+
+	private int bufferCount = 0;
+
+	/**
+	 * True if at least one block has been handed to a worker.
+	 */
+	private boolean started = false;
+
+	private boolean closed = false;
+
+	/**
+	 * Constructor for a stream that uses the default block size of the
+	 * given compression type.
+	 *
+	 * @param out
+	 *            the stream to write the compressed data to
+	 * @param compressionType
+	 *            {@link CompressionType#GZIP} or {@link CompressionType#BZ2}
+	 * @param threads
+	 *            the number of threads to use for compression
+	 */
+	public ParallelCompressorOutputStream(OutputStream out,
+			CompressionType compressionType, int threads) {
+		this(out, compressionType, threads,
+				compressionType == CompressionType.BZ2 ? DEFAULT_BZ2_BLOCK_SIZE
+						: DEFAULT_GZIP_BLOCK_SIZE);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param out
+	 *            the stream to write the compressed data to
+	 * @param compressionType
+	 *            {@link CompressionType#GZIP} or {@link CompressionType#BZ2}
+	 * @param threads
+	 *            the number of threads to use for compression
+	 * @param blockSize
+	 *            the number of uncompressed bytes that are compressed
+	 *            together
+	 */
+	public ParallelCompressorOutputStream(OutputStream out,
+			CompressionType compressionType, int threads, int blockSize) {
+		if (compressionType != CompressionType.GZIP
+				&& compressionType != CompressionType.BZ2) {
+			throw new IllegalArgumentException("Unsupported compression type: "
+					+ compressionType);
+		}
+		if (threads < 1) {
+			throw new IllegalArgumentException(
+					"The number of threads must be positive.");
+		}
+		if (blockSize < 1) {
+			throw new IllegalArgumentException(
+					"The block size must be positive.");
+		}
+		this.out = out;
+		this.compressionType = compressionType;
+		this.blockSize = blockSize;
+		this.buffer = new byte[blockSize];
+		this.maxPendingBlocks = BLOCKS_PER_THREAD * threads;
+		this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "wdtk-"
+					+ compressionType.toString().toLowerCase() + "-encoder");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		this.buffer[this.bufferCount++] = (byte) b;
+		if (this.bufferCount == this.blockSize) {
+			submitBlock();
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		while (len > 0) {
+			int count = Math.min(len, this.blockSize - this.bufferCount);
+			System.arraycopy(b, off, this.buffer, this.bufferCount, count);
+			this.bufferCount += count;
+			off += count;
+			len -= count;
+			if (this.bufferCount == this.blockSize) {
+				submitBlock();
+			}
+		}
+	}
+
+	/**
+	 * Compresses and writes all data that has been written so far, and
+	 * flushes the underlying stream. Data that is buffered when this method
+	 * is called is compressed as a block of its own, so frequent flushing
+	 * makes compression less effective.
+	 */
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		if (this.bufferCount > 0) {
+			submitBlock();
+		}
+		while (!this.pendingBlocks.isEmpty()) {
+			writeOldestBlock();
+		}
+		this.out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		try {
+			if (this.bufferCount > 0 || !this.started) {
+				// an empty block gives a valid stream for empty input
+				submitBlock();
+			}
+			while (!this.pendingBlocks.isEmpty()) {
+				writeOldestBlock();
+			}
+		} finally {
+			this.closed = true;
+			this.executor.shutdownNow();
+			this.pendingBlocks.clear();
+			this.out.close();
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (this.closed) {
+			throw new IOException("Stream closed");
+		}
+	}
+
+	/**
+	 * Hands the buffered data to a worker for compression, and writes
+	 * finished blocks if too many blocks are pending.
+	 *
+	 * @throws IOException
+	 *             if an earlier block could not be compressed or written
+	 */
+	private void submitBlock() throws IOException {
+		while (this.pendingBlocks.size() >= this.maxPendingBlocks) {
+			writeOldestBlock();
+		}
+		byte[] data = this.buffer;
+		int length = this.bufferCount;
+		this.pendingBlocks.add(this.executor.submit(() -> compress(data,
+				length)));
+		this.started = true;
+		this.buffer = new byte[this.blockSize];
+		this.bufferCount = 0;
+	}
+
+	/**
+	 * Waits for the oldest pending block to be compressed and writes it.
+	 *
+	 * @throws IOException
+	 *             if the block could not be compressed or written
+	 */
+	private void writeOldestBlock() throws IOException {
+		Future<byte[]> block = this.pendingBlocks.poll();
+		try {
+			this.out.write(block.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while compressing "
+					+ this.compressionType + " data");
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to compress block: " + e.getCause(),
+					e.getCause());
+		}
+	}
+
+	/**
+	 * Compresses the given data into a complete gzip member or bzip2 stream.
+	 */
+	private byte[] compress(byte[] data, int length) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream(
+				length / 3 + 64);
+		try (OutputStream compressor = this.compressionType == CompressionType.GZIP ? new GZIPOutputStream(
+				result, 1 << 16) : new BZip2CompressorOutputStream(result)) {
+			compressor.write(data, 0, length);
+		}
+		return result.toByteArray();
+	}
+}
@@ -0,0 +1,721 @@
+package org.wikidata.wdtk.util;
+
+/*
+ * #%L
+ * Wikidata Toolkit Utilities
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Download of a Web resource into a local file that survives interruptions.
+ * The data is written to a temporary file with the name of the target file
+ * followed by {@link #PART_FILE_SUFFIX}. If a download is interrupted, the
+ * next download of the same resource continues where the previous one
+ * stopped, using
+ * {@link WebResourceFetcher#getInputStreamForUrl(String, long, long)}. Failed
+ * requests are also retried a few times before giving up.
+ * <p>
+ * If the size of the resource is known, the download can be split into
+ * several segments that are fetched in parallel. The progress of each
+ * segment is then recorded in a file with the suffix
+ * {@link #PROGRESS_FILE_SUFFIX}. If a checksum was given, the completed
+ * temporary file is verified against it before it is renamed to the target
+ * file.
+ * <p>
+ * Alternatively, the data can be read while it is downloaded, using
+ * {@link #openCachingStream(Path)}.
+ *
+ * @see DirectoryManager#createFileAtomic(String, ResumableDownload)
+ */
+public class ResumableDownload {
+
+	static final Logger logger = LoggerFactory
+			.getLogger(ResumableDownload.class);
+
+	/**
+	 * Suffix of the temporary file that the data is written to.
+	 */
+	public static final String PART_FILE_SUFFIX = ".part";
+
+	/**
+	 * Suffix of the file that records the progress of segmented downloads.
+	 */
+	public static final String PROGRESS_FILE_SUFFIX = ".part.progress";
+
+	/**
+	 * Number of times that a segment is requested again after a failure
+	 * without any progress.
+	 */
+	static final int MAX_RETRIES = 3;
+
+	/**
+	 * Number of bytes after which the progress of segmented downloads is
+	 * recorded.
+	 */
+	static final long PROGRESS_INTERVAL = 1 << 24;
+
+	static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Maximal number of remaining bytes that a caching stream still
+	 * downloads when it is closed, so that the download can be completed if
+	 * the reader stopped just before the end, e.g., after the end of a
+	 * compressed stream.
+	 */
+	static final long CLOSE_COMPLETION_LIMIT = BUFFER_SIZE;
+
+	static final String KEY_SIZE = "size";
+	static final String KEY_SEGMENTS = "segments";
+	static final String KEY_SEGMENT_PREFIX = "segment.";
+
+	final WebResourceFetcher webResourceFetcher;
+	final String urlString;
+
+	int segments = 1;
+	String checksumAlgorithm = null;
+	String checksum = null;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param webResourceFetcher
+	 *            the object to use for accessing the Web
+	 * @param urlString
+	 *            the URL of the resource to download
+	 */
+	public ResumableDownload(WebResourceFetcher webResourceFetcher,
+			String urlString) {
+		this.webResourceFetcher = webResourceFetcher;
+		this.urlString = urlString;
+	}
+
+	/**
+	 * Returns the URL of the resource.
+	 *
+	 * @return URL string
+	 */
+	public String getUrl() {
+		return this.urlString;
+	}
+
+	/**
+	 * Sets the number of segments that are downloaded in parallel. This is
+	 * only used if the size of the resource is known. The default is 1.
+	 *
+	 * @param segments
+	 *            the number of segments
+	 */
+	public void setSegments(int segments) {
+		if (segments <= 0) {
+			throw new IllegalArgumentException(
+					"The number of segments must be positive.");
+		}
+		this.segments = segments;
+	}
+
+	/**
+	 * Sets the checksum that the downloaded data must have. By default, the
+	 * data is not verified.
+	 *
+	 * @param algorithm
+	 *            the name of the {@link MessageDigest} algorithm, e.g., "MD5"
+	 *            or "SHA-1"
+	 * @param checksum
+	 *            the expected digest as a hexadecimal string
+	 */
+	public void setChecksum(String algorithm, String checksum) {
+		try {
+			MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalArgumentException(e.toString(), e);
+		}
+		this.checksumAlgorithm = algorithm;
+		this.checksum = checksum;
+	}
+
+	/**
+	 * Opens a stream for the whole resource. This is used by
+	 * {@link DirectoryManager} implementations that do not write to the file
+	 * system; the data is neither resumed nor verified in this case.
+	 *
+	 * @return the stream
+	 * @throws IOException
+	 *             if the resource could not be opened
+	 */
+	public InputStream openStream() throws IOException {
+		return this.webResourceFetcher.getInputStreamForUrl(this.urlString);
+	}
+
+	/**
+	 * Downloads the resource to the given file, resuming a previous
+	 * download if there is one.
+	 *
+	 * @param file
+	 *            the target file, which must not exist yet
+	 * @return size of the new file in bytes
+	 * @throws IOException
+	 *             if the download failed or the data did not match the
+	 *             checksum; in the first case, the download can be resumed
+	 *             later
+	 */
+	public long downloadTo(Path file) throws IOException {
+		Path partFile = file.resolveSibling(file.getFileName()
+				+ PART_FILE_SUFFIX);
+		Path progressFile = file.resolveSibling(file.getFileName()
+				+ PROGRESS_FILE_SUFFIX);
+
+		long size = this.webResourceFetcher.getContentLength(this.urlString);
+		int segmentCount = size > 0 ? (int) Math.min(this.segments, size) : 1;
+		long[] starts = new long[segmentCount];
+		long[] ends = new long[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			starts[i] = i * size / segmentCount;
+			ends[i] = size < 0 ? -1 : (i + 1) * size / segmentCount;
+		}
+		findResumePositions(partFile, progressFile, size, starts, ends);
+
+		try (FileChannel channel = FileChannel.open(partFile,
+				StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+			if (segmentCount == 1) {
+				downloadSegment(channel, starts, ends, 0, null);
+			} else {
+				downloadSegments(channel, progressFile, size, starts, ends);
+			}
+		}
+
+		long fileSize = Files.size(partFile);
+		if (size >= 0 && fileSize != size) {
+			throw new IOException("Downloaded " + fileSize + " bytes from "
+					+ this.urlString + " but expected " + size + " bytes.");
+		}
+		if (this.checksum != null) {
+			verifyChecksum(partFile);
+		}
+
+		Files.move(partFile, file);
+		Files.deleteIfExists(progressFile);
+		return fileSize;
+	}
+
+	/**
+	 * Opens a stream for the whole resource that stores all data in the given
+	 * file while it is read. This allows the data to be processed while it
+	 * is downloaded. As in {@link #downloadTo(Path)}, the data is written to
+	 * a temporary file first, which is verified and renamed when the end of
+	 * the stream has been reached. A previous download is resumed by first
+	 * returning the data of the temporary file.
+	 * <p>
+	 * If the stream is closed before the end was reached, e.g., because the
+	 * processing of the data failed, the temporary file is kept so that the
+	 * download can be resumed later. Failed requests are retried as in
+	 * {@link #downloadTo(Path)}. The download is never segmented.
+	 *
+	 * @param file
+	 *            the target file, which must not exist yet
+	 * @return the stream
+	 * @throws IOException
+	 *             if the resource or the file could not be opened
+	 */
+	public InputStream openCachingStream(Path file) throws IOException {
+		Path partFile = file.resolveSibling(file.getFileName()
+				+ PART_FILE_SUFFIX);
+		Path progressFile = file.resolveSibling(file.getFileName()
+				+ PROGRESS_FILE_SUFFIX);
+
+		long size = this.webResourceFetcher.getContentLength(this.urlString);
+		long[] starts = { 0 };
+		long[] ends = { size };
+		findResumePositions(partFile, progressFile, size, starts, ends);
+
+		return new CachingInputStream(file, partFile, size, starts[0]);
+	}
+
+	/**
+	 * Sets the start positions of the segments to where a previous download
+	 * stopped. If there is no usable previous download, the temporary file
+	 * is truncated.
+	 */
+	void findResumePositions(Path partFile, Path progressFile, long size,
+			long[] starts, long[] ends) throws IOException {
+		if (!Files.exists(partFile)) {
+			Files.deleteIfExists(progressFile);
+			return;
+		}
+
+		if (starts.length == 1 && !Files.exists(progressFile)) {
+			long partSize = Files.size(partFile);
+			if (size < 0 || partSize <= size) {
+				starts[0] = partSize;
+				logger.info("Resuming download of " + this.urlString
+						+ " after " + partSize + " bytes.");
+				return;
+			}
+		} else if (Files.exists(progressFile)) {
+			Properties properties = new Properties();
+			try (InputStream in = Files.newInputStream(progressFile)) {
+				properties.load(in);
+			}
+			if (Long.toString(size).equals(properties.getProperty(KEY_SIZE))
+					&& Integer.toString(starts.length).equals(
+							properties.getProperty(KEY_SEGMENTS))) {
+				long remaining = 0;
+				for (int i = 0; i < starts.length; i++) {
+					long position = Long.parseLong(properties.getProperty(
+							KEY_SEGMENT_PREFIX + i, Long.toString(starts[i])));
+					starts[i] = Math.max(starts[i],
+							Math.min(position, ends[i]));
+					remaining += ends[i] - starts[i];
+				}
+				logger.info("Resuming segmented download of "
+						+ this.urlString + " with " + remaining
+						+ " bytes remaining.");
+				return;
+			}
+		}
+
+		logger.info("Discarding incomplete download of " + this.urlString
+				+ " that cannot be resumed.");
+		Files.deleteIfExists(progressFile);
+		Files.delete(partFile);
+	}
+
+	/**
+	 * Downloads all segments in parallel, recording their progress.
+	 */
+	void downloadSegments(FileChannel channel, Path progressFile, long size,
+			long[] starts, long[] ends) throws IOException {
+		SegmentProgress progress = new SegmentProgress(channel, progressFile,
+				size, starts);
+		ExecutorService executor = Executors.newFixedThreadPool(starts.length);
+		boolean completed = false;
+		try {
+			List<Future<Void>> futures = new ArrayList<>();
+			for (int i = 0; i < starts.length; i++) {
+				int segment = i;
+				futures.add(executor.submit(() -> {
+					downloadSegment(channel, starts, ends, segment, progress);
+					return null;
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+			completed = true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e.toString(), e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause().toString(), e.getCause());
+		} finally {
+			// interrupting the threads would close the channel, so they are
+			// asked to stop after their current write instead
+			progress.stopped = true;
+			executor.shutdown();
+			boolean interrupted = false;
+			while (!executor.isTerminated()) {
+				try {
+					executor.awaitTermination(1, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			if (!completed) {
+				try {
+					progress.write();
+				} catch (IOException e) {
+					logger.warn("Could not record download progress: "
+							+ e.toString());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Downloads one segment, starting at its current start position. The
+	 * start position is updated while the data is written. The segment is
+	 * requested again if the download fails, unless it failed
+	 * {@link #MAX_RETRIES} times in a row without any progress.
+	 *
+	 * @param progress
+	 *            the object to report progress to, or null if progress is
+	 *            only recorded in the size of the file
+	 */
+	void downloadSegment(FileChannel channel, long[] starts, long[] ends,
+			int segment, SegmentProgress progress) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int failures = 0;
+		while (ends[segment] < 0 || starts[segment] < ends[segment]) {
+			if (progress != null && progress.stopped) {
+				return;
+			}
+			long failedPosition = starts[segment];
+			try (InputStream inputStream = this.webResourceFetcher
+					.getInputStreamForUrl(this.urlString, starts[segment],
+							ends[segment])) {
+				while (ends[segment] < 0 || starts[segment] < ends[segment]) {
+					if (progress != null && progress.stopped) {
+						return;
+					}
+					int length = ends[segment] < 0 ? buffer.length
+							: (int) Math.min(buffer.length, ends[segment]
+									- starts[segment]);
+					int count = inputStream.read(buffer, 0, length);
+					if (count < 0) {
+						if (ends[segment] < 0) {
+							return;
+						}
+						throw new EOFException("Download of "
+								+ this.urlString + " ended early.");
+					}
+					ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, count);
+					long position = starts[segment];
+					while (byteBuffer.hasRemaining()) {
+						position += channel.write(byteBuffer, position);
+					}
+					if (progress != null) {
+						progress.update(segment, position);
+					} else {
+						starts[segment] = position;
+					}
+				}
+			} catch (IOException e) {
+				if (starts[segment] > failedPosition) {
+					failures = 0;
+				}
+				failures++;
+				if (failures > MAX_RETRIES) {
+					throw e;
+				}
+				logger.warn("Download of " + this.urlString
+						+ " failed at byte " + starts[segment] + ": "
+						+ e.toString() + ". Retrying.");
+			}
+		}
+	}
+
+	/**
+	 * Checks the checksum of the given file. The file is deleted if it does
+	 * not match, since it cannot be repaired by resuming the download.
+	 */
+	void verifyChecksum(Path file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(this.checksumAlgorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e.toString(), e);
+		}
+		try (InputStream in = Files.newInputStream(file)) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int count;
+			while ((count = in.read(buffer)) >= 0) {
+				digest.update(buffer, 0, count);
+			}
+		}
+
+		StringBuilder actual = new StringBuilder();
+		for (byte b : digest.digest()) {
+			actual.append(String.format("%02x", b));
+		}
+		if (!actual.toString().equalsIgnoreCase(this.checksum)) {
+			Files.delete(file);
+			throw new IOException(this.checksumAlgorithm + " checksum "
+					+ actual + " of " + this.urlString
+					+ " does not match the expected checksum " + this.checksum
+					+ ". The download was discarded.");
+		}
+	}
+
+	/**
+	 * Stream returned by {@link ResumableDownload#openCachingStream(Path)}.
+	 * Data that is not in the temporary file yet is read from the Web and
+	 * written to the file before it is returned.
+	 */
+	class CachingInputStream extends InputStream {
+
+		final Path file;
+		final Path partFile;
+		final FileChannel channel;
+		/**
+		 * Expected size of the resource, or -1 if it is not known.
+		 */
+		final long size;
+
+		/**
+		 * Number of bytes in the temporary file.
+		 */
+		long cachedBytes;
+		/**
+		 * Number of bytes returned by this stream.
+		 */
+		long position = 0;
+
+		InputStream remoteStream = null;
+		int failures = 0;
+		long failedPosition = -1;
+		boolean completed = false;
+		boolean closed = false;
+
+		CachingInputStream(Path file, Path partFile, long size,
+				long cachedBytes) throws IOException {
+			this.file = file;
+			this.partFile = partFile;
+			this.size = size;
+			this.cachedBytes = cachedBytes;
+			this.channel = FileChannel.open(partFile, StandardOpenOption.READ,
+					StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (this.closed) {
+				throw new IOException("Stream closed");
+			}
+			if (len == 0) {
+				return 0;
+			}
+			if (this.completed) {
+				return -1;
+			}
+
+			if (this.position < this.cachedBytes) {
+				int count = this.channel.read(ByteBuffer.wrap(b, off,
+						(int) Math.min(len, this.cachedBytes - this.position)),
+						this.position);
+				if (count < 0) {
+					throw new EOFException("Temporary file "
+							+ this.partFile + " was truncated.");
+				}
+				this.position += count;
+				return count;
+			}
+
+			int count = readRemote(b, off, len);
+			if (count < 0) {
+				complete();
+				return -1;
+			}
+			this.position += count;
+			return count;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+			try {
+				if (!this.completed && this.size >= 0
+						&& this.size - this.cachedBytes <= CLOSE_COMPLETION_LIMIT) {
+					byte[] buffer = new byte[BUFFER_SIZE];
+					while (readRemote(buffer, 0, buffer.length) >= 0) {
+						// the data is stored in the temporary file
+					}
+					complete();
+				}
+			} catch (IOException e) {
+				logger.warn("Could not complete download of "
+						+ ResumableDownload.this.urlString + ": "
+						+ e.toString());
+			} finally {
+				closeRemoteStream();
+				this.channel.close();
+			}
+			if (!this.completed) {
+				logger.info("Stopped reading " + ResumableDownload.this.urlString
+						+ " after " + this.cachedBytes
+						+ " bytes. The download can be resumed.");
+			}
+		}
+
+		/**
+		 * Reads data from the Web and appends it to the temporary file.
+		 * Failed requests are retried from the end of the temporary file.
+		 *
+		 * @return number of bytes read, or -1 at the end of the resource
+		 */
+		int readRemote(byte[] b, int off, int len) throws IOException {
+			while (true) {
+				if (this.size >= 0 && this.cachedBytes >= this.size) {
+					return -1;
+				}
+				try {
+					if (this.remoteStream == null) {
+						this.remoteStream = ResumableDownload.this.webResourceFetcher
+								.getInputStreamForUrl(
+										ResumableDownload.this.urlString,
+										this.cachedBytes, this.size);
+					}
+					int count = this.remoteStream.read(b, off,
+							this.size < 0 ? len : (int) Math.min(len,
+									this.size - this.cachedBytes));
+					if (count < 0) {
+						if (this.size >= 0) {
+							throw new EOFException("Download of "
+									+ ResumableDownload.this.urlString
+									+ " ended early.");
+						}
+						return -1;
+					}
+					ByteBuffer byteBuffer = ByteBuffer.wrap(b, off, count);
+					while (byteBuffer.hasRemaining()) {
+						this.cachedBytes += this.channel.write(byteBuffer,
+								this.cachedBytes);
+					}
+					return count;
+				} catch (IOException e) {
+					closeRemoteStream();
+					if (this.cachedBytes > this.failedPosition) {
+						this.failures = 0;
+					}
+					this.failedPosition = this.cachedBytes;
+					this.failures++;
+					if (this.failures > MAX_RETRIES) {
+						throw e;
+					}
+					logger.warn("Download of " + ResumableDownload.this.urlString
+							+ " failed at byte " + this.cachedBytes + ": "
+							+ e.toString() + ". Retrying.");
+				}
+			}
+		}
+
+		/**
+		 * Verifies the temporary file and moves it to the target file.
+		 */
+		void complete() throws IOException {
+			closeRemoteStream();
+			this.channel.close();
+			long fileSize = Files.size(this.partFile);
+			if (this.size >= 0 && fileSize != this.size) {
+				throw new IOException("Downloaded " + fileSize + " bytes from "
+						+ ResumableDownload.this.urlString + " but expected "
+						+ this.size + " bytes.");
+			}
+			if (ResumableDownload.this.checksum != null) {
+				verifyChecksum(this.partFile);
+			}
+			Files.move(this.partFile, this.file);
+			this.completed = true;
+		}
+
+		void closeRemoteStream() {
+			if (this.remoteStream != null) {
+				try {
+					this.remoteStream.close();
+				} catch (IOException e) {
+					// nothing to do; the stream is not used any more
+				}
+				this.remoteStream = null;
+			}
+		}
+	}
+
+	/**
+	 * Records the progress of the segments of a download in the progress
+	 * file. The file is written whenever {@link #PROGRESS_INTERVAL} bytes
+	 * have been downloaded, after the data has been forced to the disk, so
+	 * that the recorded positions never exceed the stored data.
+	 */
+	static class SegmentProgress {
+
+		final FileChannel channel;
+		final Path progressFile;
+		final long size;
+		final long[] positions;
+		long unrecordedBytes = 0;
+
+		/**
+		 * Set when the download is aborted, so that all segments stop.
+		 */
+		volatile boolean stopped = false;
+
+		SegmentProgress(FileChannel channel, Path progressFile, long size,
+				long[] positions) {
+			this.channel = channel;
+			this.progressFile = progressFile;
+			this.size = size;
+			this.positions = positions;
+		}
+
+		synchronized void update(int segment, long position)
+				throws IOException {
+			this.unrecordedBytes += position - this.positions[segment];
+			this.positions[segment] = position;
+			if (this.unrecordedBytes >= PROGRESS_INTERVAL) {
+				write();
+			}
+		}
+
+		synchronized void write() throws IOException {
+			this.unrecordedBytes = 0;
+			this.channel.force(false);
+			Properties properties = new Properties();
+			properties.setProperty(KEY_SIZE, Long.toString(this.size));
+			properties.setProperty(KEY_SEGMENTS,
+					Integer.toString(this.positions.length));
+			for (int i = 0; i < this.positions.length; i++) {
+				properties.setProperty(KEY_SEGMENT_PREFIX + i,
+						Long.toString(this.positions[i]));
+			}
+			Path tempFile = this.progressFile.resolveSibling(this.progressFile
+					.getFileName() + ".new");
+			try (OutputStream out = Files.newOutputStream(tempFile)) {
+				properties.store(out, "Download progress");
+			}
+			Files.move(tempFile, this.progressFile,
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+	}
+}
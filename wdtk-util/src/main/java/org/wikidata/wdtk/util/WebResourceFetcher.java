@@ -20,6 +20,7 @@ package org.wikidata.wdtk.util;
  * #L%
  */
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -45,4 +46,88 @@ public interface WebResourceFetcher {
 	 */
 	InputStream getInputStreamForUrl(String urlString) throws IOException;
 
+	/**
+	 * Returns an InputStream for a part of the document at the given URL,
+	 * starting at the given byte offset. This can be used to resume
+	 * interrupted downloads or to download several parts of a document in
+	 * parallel. The stream should be closed after use.
+	 * <p>
+	 * The stream may continue after the given end position, so callers must
+	 * stop reading there themselves. The default implementation reads and
+	 * discards the data before the offset and ignores the end position.
+	 * Implementations should rather request only the required part of the
+	 * document if possible.
+	 *
+	 * @param urlString
+	 *            the URL of the document
+	 * @param offset
+	 *            the position of the first byte to return
+	 * @param end
+	 *            the position after the last byte that is needed, or -1 if
+	 *            the document is needed up to its end
+	 * @return InputStream for the requested part of the document
+	 * @throws IOException
+	 *             if the document at the URL could not be opened, the URL was
+	 *             invalid, or the document is shorter than the offset
+	 */
+	default InputStream getInputStreamForUrl(String urlString, long offset,
+			long end) throws IOException {
+		return skipToOffset(getInputStreamForUrl(urlString), urlString,
+				offset);
+	}
+
+	/**
+	 * Reads and discards the data before the given offset from a stream of
+	 * the complete document at the given URL. The stream is closed if this
+	 * fails.
+	 *
+	 * @param inputStream
+	 *            the stream of the complete document
+	 * @param urlString
+	 *            the URL of the document, used in error messages
+	 * @param offset
+	 *            the position of the first byte that is needed
+	 * @return the given stream, positioned at the offset
+	 * @throws IOException
+	 *             if the stream could not be read or the document is shorter
+	 *             than the offset
+	 */
+	static InputStream skipToOffset(InputStream inputStream,
+			String urlString, long offset) throws IOException {
+		try {
+			long remaining = offset;
+			while (remaining > 0) {
+				long skipped = inputStream.skip(remaining);
+				if (skipped <= 0) {
+					if (inputStream.read() < 0) {
+						throw new EOFException("Document at " + urlString
+								+ " ended before offset " + offset);
+					}
+					skipped = 1;
+				}
+				remaining -= skipped;
+			}
+		} catch (IOException e) {
+			inputStream.close();
+			throw e;
+		}
+		return inputStream;
+	}
+
+	/**
+	 * Returns the size of the document at the given URL in bytes, if it can
+	 * be found without downloading the document. The default implementation
+	 * always returns -1.
+	 *
+	 * @param urlString
+	 *            the URL of the document
+	 * @return the size in bytes, or -1 if it is not known
+	 * @throws IOException
+	 *             if the document at the URL could not be accessed or the URL
+	 *             was invalid
+	 */
+	default long getContentLength(String urlString) throws IOException {
+		return -1;
+	}
+
 }
\ No newline at end of file
@@ -40,6 +40,12 @@ public class WebResourceFetcherImpl implements WebResourceFetcher {
 
 	protected static Proxy proxy = null;
 
+	/**
+	 * HTTP status code that is sent if a requested range starts after the
+	 * end of the document.
+	 */
+	static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
 	/**
 	 * Returns the proxy that will be used for all requests made by Wikidata
 	 * Toolkit.
@@ -123,4 +129,67 @@ public class WebResourceFetcherImpl implements WebResourceFetcher {
 		return urlConnection.getInputStream();
 	}
 
+	/**
+	 * Returns an InputStream for a part of the document at the given URL. For
+	 * http(s) URLs, only the required part of the document is requested
+	 * using an HTTP Range header. If the server does not support this, the
+	 * data before the offset is read and discarded from the response. If the
+	 * offset is the size of the document, the returned stream is empty.
+	 */
+	@Override
+	public InputStream getInputStreamForUrl(String urlString, long offset,
+			long end) throws IOException {
+		if (offset == 0 && end < 0) {
+			return getInputStreamForUrl(urlString);
+		}
+		if (end >= 0 && offset >= end) {
+			return InputStream.nullInputStream();
+		}
+		URLConnection urlConnection = getUrlConnection(new URL(urlString));
+		if (urlConnection instanceof HttpURLConnection) {
+			HttpURLConnection httpConnection = (HttpURLConnection) urlConnection;
+			httpConnection.setRequestProperty("Range", "bytes=" + offset + "-"
+					+ (end < 0 ? "" : Long.toString(end - 1)));
+			int responseCode = httpConnection.getResponseCode();
+			if (responseCode == HTTP_RANGE_NOT_SATISFIABLE
+					&& ("bytes */" + offset).equals(httpConnection
+							.getHeaderField("Content-Range"))) {
+				// the range starts right at the end of the document
+				httpConnection.disconnect();
+				return InputStream.nullInputStream();
+			}
+			InputStream inputStream = httpConnection.getInputStream();
+			if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+				return inputStream;
+			}
+			// the server sends the whole document
+			return WebResourceFetcher.skipToOffset(inputStream, urlString,
+					offset);
+		}
+		return WebResourceFetcher.skipToOffset(urlConnection.getInputStream(),
+				urlString, offset);
+	}
+
+	/**
+	 * Returns the size of the document at the given URL. For http(s) URLs,
+	 * this is found with an HTTP HEAD request.
+	 */
+	@Override
+	public long getContentLength(String urlString) throws IOException {
+		URLConnection urlConnection = getUrlConnection(new URL(urlString));
+		if (urlConnection instanceof HttpURLConnection) {
+			HttpURLConnection httpConnection = (HttpURLConnection) urlConnection;
+			httpConnection.setRequestMethod("HEAD");
+			try {
+				if (httpConnection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+					return -1;
+				}
+				return httpConnection.getContentLengthLong();
+			} finally {
+				httpConnection.disconnect();
+			}
+		}
+		return urlConnection.getContentLengthLong();
+	}
+
 }
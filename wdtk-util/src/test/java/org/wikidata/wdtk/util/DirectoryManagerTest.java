@@ -35,6 +35,7 @@ import java.nio.file.Paths;
 
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -126,4 +127,20 @@ public class DirectoryManagerTest {
 		assertEquals("Test data",
 				new BufferedReader(new InputStreamReader(cin)).readLine());
 	}
+
+	@Test
+	public void getCompressionInputStreamLz4() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		OutputStreamWriter ow = new OutputStreamWriter(
+				new FramedLZ4CompressorOutputStream(out),
+				StandardCharsets.UTF_8);
+		ow.write("Test data");
+		ow.close();
+
+		ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+		InputStream cin = dm.getCompressorInputStream(in, CompressionType.LZ4);
+
+		assertEquals("Test data",
+				new BufferedReader(new InputStreamReader(cin)).readLine());
+	}
 }
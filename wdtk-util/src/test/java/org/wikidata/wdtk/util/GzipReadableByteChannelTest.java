@@ -0,0 +1,169 @@
+package org.wikidata.wdtk.util;
+
+/*
+ * #%L
+ * Wikidata Toolkit Utilities
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+import org.junit.Test;
+
+public class GzipReadableByteChannelTest {
+
+	@Test
+	public void testSingleMember() throws IOException {
+		byte[] data = TestDataFactory.createData(300000);
+		assertArrayEquals(data, readAll(gzip(data), 16, 1000));
+		assertArrayEquals(data, readAll(gzip(data),
+				GzipReadableByteChannel.DEFAULT_BUFFER_SIZE, 1 << 16));
+	}
+
+	@Test
+	public void testConcatenatedMembers() throws IOException {
+		byte[] data = TestDataFactory.createData(500000);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (OutputStream compressor = new ParallelCompressorOutputStream(out,
+				CompressionType.GZIP, 3, 70000)) {
+			compressor.write(data);
+		}
+		assertArrayEquals(data, readAll(out.toByteArray(), 100, 4096));
+	}
+
+	@Test
+	public void testOptionalHeaderFields() throws IOException {
+		byte[] data = TestDataFactory.createData(1000);
+		GzipParameters parameters = new GzipParameters();
+		parameters.setFilename("test.json");
+		parameters.setComment("a comment");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (OutputStream compressor = new GzipCompressorOutputStream(out,
+				parameters)) {
+			compressor.write(data);
+		}
+		assertArrayEquals(data, readAll(out.toByteArray(), 16, 100));
+	}
+
+	@Test
+	public void testEmptyMemberAndTrailingGarbage() throws IOException {
+		byte[] compressed = gzip(new byte[0]);
+		assertEquals(0, readAll(compressed, 16, 100).length);
+
+		byte[] data = TestDataFactory.createData(5000);
+		byte[] withGarbage = Arrays.copyOf(gzip(data),
+				gzip(data).length + 10);
+		assertArrayEquals(data, readAll(withGarbage, 16, 100));
+	}
+
+	@Test(expected = ZipException.class)
+	public void testCorruptChecksum() throws IOException {
+		byte[] compressed = gzip(TestDataFactory.createData(5000));
+		compressed[compressed.length - 8] ^= 1;
+		readAll(compressed, 64, 100);
+	}
+
+	@Test(expected = ZipException.class)
+	public void testNoGzipData() throws IOException {
+		readAll("not compressed".getBytes(), 64, 100);
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedData() throws IOException {
+		byte[] compressed = gzip(TestDataFactory.createData(5000));
+		readAll(Arrays.copyOf(compressed, compressed.length / 2), 64, 100);
+	}
+
+	@Test(expected = ClosedChannelException.class)
+	public void testReadAfterClose() throws IOException {
+		ReadableByteChannel channel = new GzipReadableByteChannel(
+				Channels.newChannel(new ByteArrayInputStream(gzip(new byte[1]))));
+		channel.close();
+		channel.read(ByteBuffer.allocate(10));
+	}
+
+	@Test
+	public void testDirectoryManagerChannels() throws IOException {
+		byte[] data = TestDataFactory.createData(100000);
+		Path directory = Files.createTempDirectory("wdtk-channel");
+		try {
+			Files.write(directory.resolve("test.gz"), gzip(data));
+			Files.write(directory.resolve("test.txt"), data);
+			DirectoryManagerImpl dm = new DirectoryManagerImpl(directory, true);
+
+			try (ReadableByteChannel channel = dm.getChannelForFile(
+					"test.gz", CompressionType.GZIP)) {
+				assertArrayEquals(data, readAll(channel, 4096));
+			}
+			try (ReadableByteChannel channel = dm.getChannelForFile(
+					"test.txt", CompressionType.NONE)) {
+				assertArrayEquals(data, readAll(channel, 4096));
+			}
+		} finally {
+			Files.deleteIfExists(directory.resolve("test.gz"));
+			Files.deleteIfExists(directory.resolve("test.txt"));
+			Files.delete(directory);
+		}
+	}
+
+	private byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (OutputStream compressor = new GZIPOutputStream(out)) {
+			compressor.write(data);
+		}
+		return out.toByteArray();
+	}
+
+	private byte[] readAll(byte[] compressed, int inputBufferSize,
+			int outputBufferSize) throws IOException {
+		return readAll(new GzipReadableByteChannel(Channels
+				.newChannel(new ByteArrayInputStream(compressed)),
+				inputBufferSize), outputBufferSize);
+	}
+
+	private byte[] readAll(ReadableByteChannel channel, int bufferSize)
+			throws IOException {
+		try (ReadableByteChannel input = channel) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+			while (input.read(buffer) >= 0) {
+				buffer.flip();
+				out.write(buffer.array(), 0, buffer.limit());
+				buffer.clear();
+			}
+			return out.toByteArray();
+		}
+	}
+}
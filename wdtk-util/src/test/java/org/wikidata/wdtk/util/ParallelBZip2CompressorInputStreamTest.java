@@ -0,0 +1,198 @@
+package org.wikidata.wdtk.util;
+
+/*
+ * #%L
+ * Wikidata Toolkit Utilities
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.Test;
+
+public class ParallelBZip2CompressorInputStreamTest {
+
+	@Test
+	public void testMultipleBlocks() throws IOException {
+		byte[] data = TestDataFactory.createData(1000000);
+		byte[] compressed = compress(data, 1);
+
+		assertArrayEquals(data, decompress(compressed, 4));
+	}
+
+	@Test
+	public void testSingleThread() throws IOException {
+		byte[] data = TestDataFactory.createData(300000);
+		byte[] compressed = compress(data, 1);
+
+		assertArrayEquals(data, decompress(compressed, 1));
+	}
+
+	@Test
+	public void testConcatenatedStreams() throws IOException {
+		byte[] data1 = TestDataFactory.createData(250000);
+		byte[] data2 = "Second stream".getBytes(StandardCharsets.UTF_8);
+		byte[] data3 = TestDataFactory.createData(120000);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(compress(data1, 1));
+		out.write(compress(data2, 9));
+		out.write(compress(data3, 1));
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		expected.write(data1);
+		expected.write(data2);
+		expected.write(data3);
+
+		assertArrayEquals(expected.toByteArray(),
+				decompress(out.toByteArray(), 3));
+	}
+
+	@Test
+	public void testEmptyStream() throws IOException {
+		byte[] compressed = compress(new byte[0], 9);
+
+		assertEquals(0, decompress(compressed, 2).length);
+	}
+
+	@Test(expected = IOException.class)
+	public void testNoBzip2Data() throws IOException {
+		decompress("not compressed".getBytes(StandardCharsets.UTF_8), 2);
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedData() throws IOException {
+		byte[] compressed = compress(TestDataFactory.createData(300000), 1);
+		decompress(Arrays.copyOf(compressed, compressed.length / 2), 2);
+	}
+
+	@Test
+	public void testSplitBlockIsMerged() throws IOException {
+		byte[] data = TestDataFactory.createData(50000);
+		byte[] compressed = compress(data, 1);
+
+		// find the end of the only block of the stream
+		long end = compressed.length * 8L - 80;
+		while (ParallelBZip2CompressorInputStream.readBits(compressed, end,
+				48) != ParallelBZip2CompressorInputStream.END_OF_STREAM_MAGIC) {
+			end--;
+		}
+		// split the block at an arbitrary bit, as a spurious marker would
+		long split = 32 + 12345;
+		ParallelBZip2CompressorInputStream.CompressedBlock first = createBlock(
+				compressed, 32, split);
+		ParallelBZip2CompressorInputStream.CompressedBlock second = createBlock(
+				compressed, split, end);
+
+		assertThrows(IOException.class,
+				() -> ParallelBZip2CompressorInputStream.decode(List.of(first)));
+		assertArrayEquals(data, ParallelBZip2CompressorInputStream.decode(List
+				.of(first, second)));
+	}
+
+	@Test
+	public void testSpuriousEndOfStreamMarker() throws IOException {
+		// The symbol map of a block has 16 bits that list the used groups of
+		// 16 byte values, followed by 16 bits for each used group. With the
+		// groups 3, 5, 6, 7, 9, 10, 11 and 14, and the right byte values in
+		// groups 3 and 5, the map starts with the end of stream marker.
+		byte[] alphabet = { 0x31, 0x35, 0x37, 0x3a, 0x3b, 0x3c, 0x51, 0x53,
+				0x58, 0x5b, 0x60, 0x70, (byte) 0x90, (byte) 0xa0, (byte) 0xb0,
+				(byte) 0xe0 };
+		byte[] data = new byte[200000];
+		Random random = new Random(42);
+		for (int i = 0; i < data.length; i++) {
+			// no repeated bytes, since runs add their lengths as byte values
+			do {
+				data[i] = alphabet[random.nextInt(alphabet.length)];
+			} while (i > 0 && data[i] == data[i - 1]);
+		}
+		byte[] second = TestDataFactory.createData(50000);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(compress(data, 1));
+		out.write(compress(second, 1));
+		byte[] compressed = out.toByteArray();
+
+		long marker = 4 * 8 + 48 + 32 + 1 + 24;
+		assertEquals(ParallelBZip2CompressorInputStream.END_OF_STREAM_MAGIC,
+				ParallelBZip2CompressorInputStream.readBits(compressed,
+						marker, 48));
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		expected.write(data);
+		expected.write(second);
+		assertArrayEquals(expected.toByteArray(), decompress(compressed, 2));
+	}
+
+	@Test
+	public void testDirectoryManagerDecoderSelection() throws IOException {
+		byte[] data = TestDataFactory.createData(200000);
+		byte[] compressed = compress(data, 1);
+		DirectoryManagerImpl dm = new DirectoryManagerImpl(
+				Paths.get(System.getProperty("user.dir")), true);
+
+		DirectoryManagerFactory.setBz2DecoderThreads(2);
+		try (InputStream in = dm.getCompressorInputStream(
+				new ByteArrayInputStream(compressed), CompressionType.BZ2)) {
+			assertEquals(ParallelBZip2CompressorInputStream.class,
+					in.getClass());
+			assertArrayEquals(data, in.readAllBytes());
+		} finally {
+			DirectoryManagerFactory.setBz2DecoderThreads(1);
+		}
+	}
+
+	private ParallelBZip2CompressorInputStream.CompressedBlock createBlock(
+			byte[] data, long start, long end) {
+		ParallelBZip2CompressorInputStream.CompressedBlock block = new ParallelBZip2CompressorInputStream.CompressedBlock(
+				(int) (start & 7));
+		for (int i = (int) (start >>> 3); i < data.length; i++) {
+			block.append(data[i]);
+		}
+		block.bitLength = end - start;
+		return block;
+	}
+
+	private byte[] compress(byte[] data, int blockSize) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BZip2CompressorOutputStream bzOut = new BZip2CompressorOutputStream(
+				out, blockSize)) {
+			bzOut.write(data);
+		}
+		return out.toByteArray();
+	}
+
+	private byte[] decompress(byte[] compressed, int threads)
+			throws IOException {
+		try (InputStream in = new ParallelBZip2CompressorInputStream(
+				new ByteArrayInputStream(compressed), threads)) {
+			return in.readAllBytes();
+		}
+	}
+}
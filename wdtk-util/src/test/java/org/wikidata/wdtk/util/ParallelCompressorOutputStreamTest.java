@@ -0,0 +1,149 @@
+package org.wikidata.wdtk.util;
+
+/*
+ * #%L
+ * Wikidata Toolkit Utilities
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.junit.Test;
+
+public class ParallelCompressorOutputStreamTest {
+
+	@Test
+	public void testGzipMultipleBlocks() throws IOException {
+		byte[] data = TestDataFactory.createData(1000000);
+		byte[] compressed = compress(data, CompressionType.GZIP, 4, 100000);
+
+		assertArrayEquals(data, new GZIPInputStream(
+				new ByteArrayInputStream(compressed)).readAllBytes());
+	}
+
+	@Test
+	public void testBz2MultipleBlocks() throws IOException {
+		byte[] data = TestDataFactory.createData(1000000);
+		byte[] compressed = compress(data, CompressionType.BZ2, 3, 150000);
+
+		assertArrayEquals(data, new BZip2CompressorInputStream(
+				new ByteArrayInputStream(compressed), true).readAllBytes());
+		assertArrayEquals(data, new ParallelBZip2CompressorInputStream(
+				new ByteArrayInputStream(compressed), 2).readAllBytes());
+	}
+
+	@Test
+	public void testSingleBytes() throws IOException {
+		byte[] data = TestDataFactory.createData(5000);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (OutputStream compressor = new ParallelCompressorOutputStream(out,
+				CompressionType.GZIP, 2, 1000)) {
+			for (byte b : data) {
+				compressor.write(b);
+			}
+		}
+
+		assertArrayEquals(data, new GZIPInputStream(
+				new ByteArrayInputStream(out.toByteArray())).readAllBytes());
+	}
+
+	@Test
+	public void testEmptyStream() throws IOException {
+		byte[] compressed = compress(new byte[0], CompressionType.GZIP, 2,
+				1000);
+		assertEquals(0, new GZIPInputStream(new ByteArrayInputStream(
+				compressed)).readAllBytes().length);
+
+		compressed = compress(new byte[0], CompressionType.BZ2, 2, 1000);
+		assertEquals(0, new BZip2CompressorInputStream(
+				new ByteArrayInputStream(compressed), true).readAllBytes().length);
+	}
+
+	@Test
+	public void testFlush() throws IOException {
+		byte[] data = TestDataFactory.createData(3000);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		OutputStream compressor = new ParallelCompressorOutputStream(out,
+				CompressionType.GZIP, 2, 100000);
+		compressor.write(data);
+		compressor.flush();
+
+		assertArrayEquals(data, new GZIPInputStream(
+				new ByteArrayInputStream(out.toByteArray())).readAllBytes());
+		compressor.close();
+	}
+
+	@Test(expected = IOException.class)
+	public void testWriteAfterClose() throws IOException {
+		OutputStream compressor = new ParallelCompressorOutputStream(
+				new ByteArrayOutputStream(), CompressionType.GZIP, 2);
+		compressor.close();
+		compressor.write(1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedCompressionType() {
+		new ParallelCompressorOutputStream(new ByteArrayOutputStream(),
+				CompressionType.NONE, 2);
+	}
+
+	@Test
+	public void testDirectoryManagerEncoderSelection() throws IOException {
+		byte[] data = TestDataFactory.createData(200000);
+		Path directory = Files.createTempDirectory("wdtk-compress");
+		DirectoryManagerImpl dm = new DirectoryManagerImpl(directory, false);
+
+		DirectoryManagerFactory.setCompressionThreads(2);
+		try {
+			try (OutputStream out = dm.getOutputStreamForFile("test.bz2",
+					CompressionType.BZ2)) {
+				assertTrue(out instanceof ParallelCompressorOutputStream);
+				out.write(data);
+			}
+			try (InputStream in = dm.getInputStreamForFile("test.bz2",
+					CompressionType.BZ2)) {
+				assertArrayEquals(data, in.readAllBytes());
+			}
+		} finally {
+			DirectoryManagerFactory.setCompressionThreads(1);
+			Files.deleteIfExists(directory.resolve("test.bz2"));
+			Files.delete(directory);
+		}
+	}
+
+	private byte[] compress(byte[] data, CompressionType compressionType,
+			int threads, int blockSize) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (OutputStream compressor = new ParallelCompressorOutputStream(out,
+				compressionType, threads, blockSize)) {
+			compressor.write(data);
+		}
+		return out.toByteArray();
+	}
+}
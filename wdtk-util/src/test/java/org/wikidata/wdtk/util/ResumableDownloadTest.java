@@ -0,0 +1,422 @@
+package org.wikidata.wdtk.util;
+
+/*
+ * #%L
+ * Wikidata Toolkit Utilities
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class ResumableDownloadTest {
+
+	/**
+	 * Size of the mock resource; larger than
+	 * {@link ResumableDownload#BUFFER_SIZE} to get several reads per segment.
+	 */
+	static final int SIZE = 300000;
+
+	byte[] data;
+	HttpServer server;
+	String url;
+	Path directory;
+	Path file;
+
+	/**
+	 * Number of content bytes sent by the server.
+	 */
+	final AtomicLong sentBytes = new AtomicLong();
+	/**
+	 * Number of content bytes that the server sends before it fails all
+	 * further requests.
+	 */
+	volatile long byteBudget = Long.MAX_VALUE;
+	volatile boolean supportRanges = true;
+	/**
+	 * Whether the server reports the size of the resource on HEAD requests.
+	 */
+	volatile boolean reportSize = true;
+	/**
+	 * Number of GET requests received by the server.
+	 */
+	final AtomicInteger getRequests = new AtomicInteger();
+
+	@Before
+	public void setUp() throws IOException {
+		// other tests may have set a proxy, which would not reach the server
+		WebResourceFetcherImpl.setProxy(null);
+		this.data = new byte[SIZE];
+		new Random(42).nextBytes(this.data);
+
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0),
+				0);
+		this.server.createContext("/dump", this::handle);
+		this.server.start();
+		this.url = "http://127.0.0.1:" + this.server.getAddress().getPort()
+				+ "/dump";
+
+		this.directory = Files.createTempDirectory("wdtk-download");
+		this.file = this.directory.resolve("dump.bz2");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		this.server.stop(0);
+		for (Path path : Files.newDirectoryStream(this.directory)) {
+			Files.delete(path);
+		}
+		Files.delete(this.directory);
+	}
+
+	@Test
+	public void testDownload() throws IOException {
+		ResumableDownload download = new ResumableDownload(
+				new WebResourceFetcherImpl(), this.url);
+		download.setChecksum("MD5", md5(this.data));
+
+		assertEquals(SIZE, download.downloadTo(this.file));
+		assertArrayEquals(this.data, Files.readAllBytes(this.file));
+		assertOnlyTargetFileExists();
+	}
+
+	@Test
+	public void testSegmentedDownload() throws IOException {
+		ResumableDownload download = new ResumableDownload(
+				new WebResourceFetcherImpl(), this.url);
+		download.setSegments(4);
+		download.setChecksum("MD5", md5(this.data));
+
+		assertEquals(SIZE, download.downloadTo(this.file));
+		assertArrayEquals(this.data, Files.readAllBytes(this.file));
+		assertEquals(SIZE, this.sentBytes.get());
+		assertOnlyTargetFileExists();
+	}
+
+	@Test
+	public void testResumePartFile() throws IOException {
+		Files.write(this.directory.resolve("dump.bz2.part"),
+				Arrays.copyOf(this.data, 100000));
+		ResumableDownload download = new ResumableDownload(
+				new WebResourceFetcherImpl(), this.url);
+
+		download.downloadTo(this.file);
+
+		assertArrayEquals(this.data, Files.readAllBytes(this.file));
+		assertEquals(SIZE - 100000, this.sentBytes.get());
+	}
+
+	@Test
+	public void testResumeWithoutRangeSupport() throws IOException {
+		this.supportRanges = false;
+		Files.write(this.directory.resolve("dump.bz2.part"),
+				Arrays.copyOf(this.data, 100000));
+		ResumableDownload download = new ResumableDownload(
+				new WebResourceFetcherImpl(), this.url);
+
+		download.downloadTo(this.file);
+
+		assertArrayEquals(this.data, Files.readAllBytes(this.file));
+		assertEquals(1, this.getRequests.get());
+	}
+
+	@Test
+	public void testResumeCompletePartFileOfUnknownSize() throws IOException {
+		this.reportSize = false;
+		Files.write(this.directory.resolve("dump.bz2.part"), this.data);
+		ResumableDownload download = new ResumableDownload(
+				new WebResourceFetcherImpl(), this.url);
+
+		assertEquals(SIZE, download.downloadTo(this.file));
+		assertArrayEquals(this.data, Files.readAllBytes(this.file));
+		assertEquals(0, this.sentBytes.get());
+		assertOnlyTargetFileExists();
+	}
+
+	@Test
+	public void testResumeSegmentedDownload() throws IOException {
+		this.byteBudget = 150000;
+		ResumableDownload download = new ResumableDownload(
+				new WebResourceFetcherImpl(), this.url);
+		download.setSegments(3);
+		download.setChecksum("SHA-1", sha1(this.data));
+		try {
+			download.downloadTo(this.file);
+			fail("Expected download to fail");
+		} catch (IOException e) {
+			// expected
+		}
+		assertFalse(Files.exists(this.file));
+		assertTrue(Files.exists(this.directory.resolve("dump.bz2.part")));
+		assertTrue(Files.exists(this.directory
+				.resolve("dump.bz2.part.progress")));
+
+		this.byteBudget = Long.MAX_VALUE;
+		this.sentBytes.set(0);
+		download.downloadTo(this.file);
+
+		assertArrayEquals(this.data, Files.readAllBytes(this.file));
+		assertTrue(this.sentBytes.get() < SIZE);
+		assertOnlyTargetFileExists();
+	}
+
+	@Test
+	public void testCachingStream() throws IOException {
+		ResumableDownload download = new ResumableDownload(
+				new WebResourceFetcherImpl(), this.url);
+		download.setChecksum("MD5", md5(this.data));
+
+		try (InputStream in = download.openCachingStream(this.file)) {
+			assertArrayEquals(this.data, readAll(in));
+			assertTrue(Files.exists(this.file));
+		}
+		assertArrayEquals(this.data, Files.readAllBytes(this.file));
+		assertOnlyTargetFileExists();
+	}
+
+	@Test
+	public void testResumeCachingStream() throws IOException {
+		ResumableDownload download = new ResumableDownload(
+				new WebResourceFetcherImpl(), this.url);
+		try (InputStream in = download.openCachingStream(this.file)) {
+			byte[] buffer = new byte[100000];
+			int offset = 0;
+			while (offset < buffer.length) {
+				offset += in.read(buffer, offset, buffer.length - offset);
+			}
+			assertArrayEquals(Arrays.copyOf(this.data, 100000), buffer);
+		}
+		assertFalse(Files.exists(this.file));
+		Path partFile = this.directory.resolve("dump.bz2.part");
+		assertTrue(Files.size(partFile) >= 100000);
+
+		long cachedBytes = Files.size(partFile);
+		this.sentBytes.set(0);
+		try (InputStream in = download.openCachingStream(this.file)) {
+			assertArrayEquals(this.data, readAll(in));
+		}
+		assertArrayEquals(this.data, Files.readAllBytes(this.file));
+		assertEquals(SIZE - cachedBytes, this.sentBytes.get());
+		assertOnlyTargetFileExists();
+	}
+
+	@Test
+	public void testCachingStreamCompletedOnClose() throws IOException {
+		ResumableDownload download = new ResumableDownload(
+				new WebResourceFetcherImpl(), this.url);
+		try (InputStream in = download.openCachingStream(this.file)) {
+			byte[] buffer = new byte[SIZE - 10];
+			int offset = 0;
+			while (offset < buffer.length) {
+				offset += in.read(buffer, offset, buffer.length - offset);
+			}
+		}
+		assertArrayEquals(this.data, Files.readAllBytes(this.file));
+		assertOnlyTargetFileExists();
+	}
+
+	@Test
+	public void testCachingStreamChecksumMismatch() throws IOException {
+		ResumableDownload download = new ResumableDownload(
+				new WebResourceFetcherImpl(), this.url);
+		download.setChecksum("MD5", "0123456789abcdef0123456789abcdef");
+		try (InputStream in = download.openCachingStream(this.file)) {
+			readAll(in);
+			fail("Expected checksum mismatch");
+		} catch (IOException e) {
+			// expected
+		}
+		assertFalse(Files.exists(this.file));
+		assertFalse(Files.exists(this.directory.resolve("dump.bz2.part")));
+	}
+
+	@Test
+	public void testChecksumMismatch() throws IOException {
+		ResumableDownload download = new ResumableDownload(
+				new WebResourceFetcherImpl(), this.url);
+		download.setChecksum("MD5", "0123456789abcdef0123456789abcdef");
+		try {
+			download.downloadTo(this.file);
+			fail("Expected checksum mismatch");
+		} catch (IOException e) {
+			// expected
+		}
+		assertFalse(Files.exists(this.file));
+		assertFalse(Files.exists(this.directory.resolve("dump.bz2.part")));
+	}
+
+	@Test
+	public void testContentLength() throws IOException {
+		assertEquals(SIZE, new WebResourceFetcherImpl().getContentLength(
+				this.url));
+	}
+
+	@Test
+	public void testRangeRequest() throws IOException {
+		byte[] content = new byte[SIZE - 1234];
+		try (InputStream in = new WebResourceFetcherImpl()
+				.getInputStreamForUrl(this.url, 1234, -1)) {
+			int offset = 0;
+			int count;
+			while (offset < content.length
+					&& (count = in.read(content, offset, content.length
+							- offset)) >= 0) {
+				offset += count;
+			}
+			assertEquals(-1, in.read());
+		}
+		assertArrayEquals(Arrays.copyOfRange(this.data, 1234, SIZE), content);
+
+		try (InputStream in = new WebResourceFetcherImpl()
+				.getInputStreamForUrl(this.url, 1000, 1010)) {
+			byte[] part = new byte[20];
+			int offset = 0;
+			int count;
+			while ((count = in.read(part, offset, part.length - offset)) > 0) {
+				offset += count;
+			}
+			assertEquals(10, offset);
+			assertArrayEquals(Arrays.copyOfRange(this.data, 1000, 1010),
+					Arrays.copyOf(part, 10));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownChecksumAlgorithm() {
+		new ResumableDownload(new WebResourceFetcherImpl(), this.url)
+				.setChecksum("NO-SUCH-DIGEST", "00");
+	}
+
+	private byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[7000];
+		int count;
+		while ((count = in.read(buffer)) >= 0) {
+			out.write(buffer, 0, count);
+		}
+		return out.toByteArray();
+	}
+
+	private void assertOnlyTargetFileExists() throws IOException {
+		try (Stream<Path> files = Files.list(this.directory)) {
+			assertEquals(1, files.count());
+		}
+	}
+
+	/**
+	 * Serves {@link #data}, supporting HEAD requests and Range headers of the
+	 * forms "bytes=N-" and "bytes=N-M". Ranges that start at the end of the
+	 * data are answered with status 416.
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		if (this.sentBytes.get() >= this.byteBudget) {
+			exchange.sendResponseHeaders(503, -1);
+			exchange.close();
+			return;
+		}
+
+		int start = 0;
+		int end = SIZE;
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		if (this.supportRanges && range != null && range.startsWith("bytes=")) {
+			String[] bounds = range.substring(6).split("-", -1);
+			start = Integer.parseInt(bounds[0]);
+			if (!bounds[1].isEmpty()) {
+				end = Integer.parseInt(bounds[1]) + 1;
+			}
+			if (start >= SIZE) {
+				exchange.getResponseHeaders().set("Content-Range",
+						"bytes */" + SIZE);
+				exchange.sendResponseHeaders(416, -1);
+				exchange.close();
+				return;
+			}
+			exchange.getResponseHeaders().set("Content-Range",
+					"bytes " + start + "-" + (end - 1) + "/" + SIZE);
+		}
+
+		if ("HEAD".equals(exchange.getRequestMethod())) {
+			if (this.reportSize) {
+				exchange.getResponseHeaders().set("Content-Length",
+						Integer.toString(SIZE));
+			}
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+			return;
+		}
+		this.getRequests.incrementAndGet();
+
+		exchange.sendResponseHeaders(
+				exchange.getResponseHeaders().containsKey("Content-Range") ? 206
+						: 200, end - start);
+		try (OutputStream out = exchange.getResponseBody()) {
+			for (int position = start; position < end; position += 1000) {
+				int length = Math.min(1000, end - position);
+				if (this.sentBytes.addAndGet(length) > this.byteBudget) {
+					// simulate a broken connection
+					throw new IOException("Byte budget exhausted");
+				}
+				out.write(this.data, position, length);
+			}
+		}
+	}
+
+	private static String md5(byte[] bytes) {
+		return digest("MD5", bytes);
+	}
+
+	private static String sha1(byte[] bytes) {
+		return digest("SHA-1", bytes);
+	}
+
+	private static String digest(String algorithm, byte[] bytes) {
+		try {
+			StringBuilder sb = new StringBuilder();
+			for (byte b : MessageDigest.getInstance(algorithm).digest(bytes)) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e.toString(), e);
+		}
+	}
+}
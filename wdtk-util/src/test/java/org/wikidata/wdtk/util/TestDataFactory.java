@@ -0,0 +1,47 @@
+package org.wikidata.wdtk.util;
+
+/*
+ * #%L
+ * Wikidata Toolkit Utilities
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Random;
+
+/**
+ * Creates data for the tests of compressed streams.
+ */
+class TestDataFactory {
+
+	/**
+	 * Creates compressible data that is not too repetitive, so that several
+	 * compressed blocks of different length are needed. The data only
+	 * depends on its size.
+	 *
+	 * @param size
+	 *            the number of bytes
+	 * @return the data
+	 */
+	static byte[] createData(int size) {
+		Random random = new Random(size);
+		byte[] result = new byte[size];
+		for (int i = 0; i < size; i++) {
+			result[i] = (byte) ('a' + random.nextInt(random.nextInt(26) + 1));
+		}
+		return result;
+	}
+}